@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.bench;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ulong;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ushort;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.comtel2000.opcua.client.service.OpcUaConverter;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.XmlElement;
+import org.eclipse.milo.opcua.stack.core.types.structured.EUInformation;
+import org.eclipse.milo.opcua.stack.core.types.structured.Range;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link OpcUaConverter#toString(Variant)} for every built-in scalar type, arrays,
+ * ExtensionObjects (Range, EUInformation) and the NodeId name lookup. Run with {@code -prof gc} to
+ * get the allocation rate per operation.
+ *
+ * @author comtel
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpcUaConverterBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Scalar {
+
+    @Param({ "Boolean", "SByte", "Byte", "Int16", "UInt16", "Int32", "UInt32", "Int64", "UInt64", "Float", "Double", "String", "DateTime", "Guid",
+        "ByteString", "XmlElement", "NodeId", "ExpandedNodeId", "StatusCode", "QualifiedName", "LocalizedText" })
+    public String type;
+
+    Variant variant;
+
+    @Setup
+    public void setup() {
+      variant = new Variant(create(type));
+    }
+
+    static Object create(String type) {
+      switch (type) {
+        case "Boolean":
+          return Boolean.TRUE;
+        case "SByte":
+          return (byte) -42;
+        case "Byte":
+          return ubyte(42);
+        case "Int16":
+          return (short) -4242;
+        case "UInt16":
+          return ushort(4242);
+        case "Int32":
+          return -424242;
+        case "UInt32":
+          return uint(424242);
+        case "Int64":
+          return -42424242424242L;
+        case "UInt64":
+          return ulong(42424242424242L);
+        case "Float":
+          return 42.42f;
+        case "Double":
+          return 4242.4242;
+        case "String":
+          return "Demo.Static.Scalar.String";
+        case "DateTime":
+          return DateTime.now();
+        case "Guid":
+          return UUID.fromString("72962b91-fa75-4ae6-8d28-b404dc7daf63");
+        case "ByteString":
+          return ByteString.of(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        case "XmlElement":
+          return XmlElement.of("<a>42</a>");
+        case "NodeId":
+          return new NodeId(2, "Demo.Static.Scalar.Double");
+        case "ExpandedNodeId":
+          return new ExpandedNodeId(Identifiers.Double);
+        case "StatusCode":
+          return StatusCode.GOOD;
+        case "QualifiedName":
+          return new QualifiedName(2, "Double");
+        case "LocalizedText":
+          return LocalizedText.english("Double");
+        default:
+          throw new IllegalArgumentException(type);
+      }
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Array {
+
+    @Param({ "Double", "Int32", "String", "Byte" })
+    public String type;
+
+    @Param({ "10", "1000" })
+    public int length;
+
+    Variant variant;
+
+    @Setup
+    public void setup() {
+      Random random = new Random(42);
+      switch (type) {
+        case "Double":
+          Double[] d = new Double[length];
+          for (int i = 0; i < length; i++) {
+            d[i] = random.nextDouble();
+          }
+          variant = new Variant(d);
+          break;
+        case "Int32":
+          Integer[] n = new Integer[length];
+          for (int i = 0; i < length; i++) {
+            n[i] = random.nextInt();
+          }
+          variant = new Variant(n);
+          break;
+        case "String":
+          String[] s = new String[length];
+          for (int i = 0; i < length; i++) {
+            s[i] = "value" + i;
+          }
+          variant = new Variant(s);
+          break;
+        case "Byte":
+          byte[] b = new byte[length];
+          random.nextBytes(b);
+          variant = new Variant(b);
+          break;
+        default:
+          throw new IllegalArgumentException(type);
+      }
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Structure {
+
+    Variant range;
+
+    Variant euInformation;
+
+    @Setup
+    public void setup() {
+      range = new Variant(ExtensionObject.encode(new Range(0.0, 100.5)));
+      euInformation = new Variant(ExtensionObject.encode(
+          new EUInformation("http://www.opcfoundation.org/UA/units/un/cefact", 4408652, LocalizedText.english("°C"), LocalizedText.english("degree Celsius"))));
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Node {
+
+    /** resolved by the data type name lookup */
+    NodeId known = Identifiers.Double;
+
+    /** numeric id without a name */
+    NodeId unknown = new NodeId(0, 999999);
+  }
+
+  @Benchmark
+  public String scalar(Scalar s) {
+    return OpcUaConverter.toString(s.variant);
+  }
+
+  @Benchmark
+  public String array(Array a) {
+    return OpcUaConverter.toString(a.variant);
+  }
+
+  @Benchmark
+  public String range(Structure s) {
+    return OpcUaConverter.toString(s.range);
+  }
+
+  @Benchmark
+  public String euInformation(Structure s) {
+    return OpcUaConverter.toString(s.euInformation);
+  }
+
+  @Benchmark
+  public String knownNodeId(Node n) {
+    return OpcUaConverter.toString(n.known);
+  }
+
+  @Benchmark
+  public String unknownNodeId(Node n) {
+    return OpcUaConverter.toString(n.unknown);
+  }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.comtel2000.opcua.client.service.OpcUaConverter;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link OpcUaConverter#toWritableDataTypeObject(NodeId, String)}, the parsing of a
+ * user entered value before a write.
+ *
+ * @author comtel
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WritableDataTypeBenchmark {
+
+  @Param({ "Boolean", "Int32", "UInt32", "Int64", "Double", "String", "DateTime", "NodeId", "LocalizedText" })
+  public String type;
+
+  NodeId dataType;
+
+  String text;
+
+  @Setup
+  public void setup() {
+    switch (type) {
+      case "Boolean":
+        dataType = Identifiers.Boolean;
+        text = "true";
+        break;
+      case "Int32":
+        dataType = Identifiers.Int32;
+        text = "-424242";
+        break;
+      case "UInt32":
+        dataType = Identifiers.UInt32;
+        text = "424242";
+        break;
+      case "Int64":
+        dataType = Identifiers.Int64;
+        text = "-42424242424242";
+        break;
+      case "Double":
+        dataType = Identifiers.Double;
+        text = "4242.4242";
+        break;
+      case "String":
+        dataType = Identifiers.String;
+        text = "Demo.Static.Scalar.String";
+        break;
+      case "DateTime":
+        dataType = Identifiers.DateTime;
+        text = "2016-10-17T12:00:00+02:00";
+        break;
+      case "NodeId":
+        dataType = Identifiers.NodeId;
+        text = "ns=2;s=Demo.Static.Scalar.Double";
+        break;
+      case "LocalizedText":
+        dataType = Identifiers.LocalizedText;
+        text = "Double";
+        break;
+      default:
+        throw new IllegalArgumentException(type);
+    }
+  }
+
+  @Benchmark
+  public Object parse() throws Exception {
+    return OpcUaConverter.toWritableDataTypeObject(dataType, text);
+  }
+}
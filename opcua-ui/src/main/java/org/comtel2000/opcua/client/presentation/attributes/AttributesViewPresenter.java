@@ -17,11 +17,9 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -39,6 +37,7 @@ import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple4;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,8 +78,6 @@ public class AttributesViewPresenter implements Initializable {
 
   private final ProgressIndicator progress = new ProgressIndicator(-1);
 
-  private final Map<Object, String> customDataTypeCache = new ConcurrentHashMap<>();
-
   private final ObjectProperty<ReferenceDescription> selectedReference = new SimpleObjectProperty<>();
   private final ObjectProperty<DataValue> selectedDataValue = new SimpleObjectProperty<>();
 
@@ -121,7 +118,6 @@ public class AttributesViewPresenter implements Initializable {
     });
 
     state.showAttributeItemProperty().addListener((l, a, b) -> updateAttributes(b));
-    state.connectedProperty().addListener((l) -> customDataTypeCache.clear());
 
     bindContextMenu();
   }
@@ -242,22 +238,12 @@ public class AttributesViewPresenter implements Initializable {
         }
 
       }
-      if (dataType != null) {
-        String type = OpcUaConverter.toString(dataType);
-        if (type == null) {
-          NodeId node = dataType;
-          String cached = customDataTypeCache.computeIfAbsent(dataType.getIdentifier(), (v) -> {
-            try {
-              logger.debug("search for custom DataType: {}", node.getIdentifier());
-              List<DataValue> list = connection.read(node, AttributeId.DisplayName).get();
-              return !list.isEmpty() ? OpcUaConverter.toString(list.get(0).getValue()) : null;
-            } catch (InterruptedException | ExecutionException e) {
-              logger.error(e.getMessage(), e);
-            }
-            return null;
-          });
-          type = String.format("%s (%s)", dataType.getIdentifier(), cached);
-        }
+      return new Tuple4<>(additionals, value, dataType, level);
+    }).thenCompose(r -> getDataTypeName(r.v3).thenApply(type -> {
+      List<AttributeItem> additionals = r.v1;
+      DataValue value = r.v2;
+      EnumSet<AccessLevel> level = r.v4;
+      if (type != null) {
         additionals.add(AttributeItem.get("Value (DataType)", type));
       }
 
@@ -271,7 +257,7 @@ public class AttributesViewPresenter implements Initializable {
 
       }
       return new Tuple2<>(additionals, value);
-    }).whenCompleteAsync((l, th) -> {
+    })).whenCompleteAsync((l, th) -> {
       if (th != null) {
         state.statusTextProperty().set(th.getMessage());
         logger.error(th.getMessage(), th);
@@ -286,6 +272,22 @@ public class AttributesViewPresenter implements Initializable {
 
   }
 
+  private CompletableFuture<String> getDataTypeName(NodeId dataType) {
+    if (dataType == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    String type = OpcUaConverter.toString(dataType);
+    if (type != null) {
+      return CompletableFuture.completedFuture(type);
+    }
+    return connection.getDataTypeCache().lookup(dataType).handle((name, t) -> {
+      if (t != null) {
+        logger.error(t.getMessage(), t);
+      }
+      return String.format("%s (%s)", dataType.getIdentifier(), name);
+    });
+  }
+
   private List<AttributeItem> getAttributes(ReferenceDescription b) {
     final List<AttributeItem> list = new ArrayList<>();
     if (b == null) {
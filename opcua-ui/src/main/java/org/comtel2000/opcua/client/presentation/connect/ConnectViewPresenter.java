@@ -14,11 +14,14 @@
 package org.comtel2000.opcua.client.presentation.connect;
 
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -26,6 +29,7 @@ import org.comtel2000.opcua.client.presentation.binding.StatusBinding;
 import org.comtel2000.opcua.client.presentation.datatree.DataTreeNode;
 import org.comtel2000.opcua.client.service.OpcUaClientConnector;
 import org.comtel2000.opcua.client.service.PersistenceService;
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
 import org.eclipse.milo.opcua.sdk.client.api.identity.UsernameProvider;
 import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
 import org.eclipse.milo.opcua.stack.core.types.structured.ApplicationDescription;
@@ -78,6 +82,9 @@ public class ConnectViewPresenter implements Initializable {
   @FXML
   private RadioMenuItem securityItem;
 
+  @FXML
+  private RadioMenuItem fastConnectItem;
+
   @FXML
   private MenuItem aboutItem;
 
@@ -160,6 +167,8 @@ public class ConnectViewPresenter implements Initializable {
 
     connection.onConnectionChanged((b, t) -> Platform.runLater(() -> state.connectedProperty().set(b)));
 
+    session.bind(fastConnectItem.selectedProperty(), "fastConnect");
+
     securityItem.selectedProperty().bindBidirectional(security.selectedProperty());
     securityPane.visibleProperty().bind(security.selectedProperty());
     securityPane.setPrefHeight(0);
@@ -174,11 +183,7 @@ public class ConnectViewPresenter implements Initializable {
     
     addressUrl.set(address.getSelectionModel().getSelectedItem());
     logger.debug("try to open url: {}", addressUrl.get());
-    connection.getEndpoints(addressUrl.get()).thenCompose(endpoints -> {
-      EndpointDescription endpoint =
-          connection.findLowestEndpoint(endpoints).orElseThrow(() -> new CompletionException(new Exception("no endpoint found: " + addressUrl.get())));
-      return connection.connect(addressUrl.get(), endpoint);
-    }).whenCompleteAsync((c, ex) -> {
+    openConnection(addressUrl.get()).whenCompleteAsync((c, ex) -> {
       state.progressVisibleProperty().set(false);
       if (ex != null) {
         state.statusTextProperty().set(ex.getMessage());
@@ -190,12 +195,27 @@ public class ConnectViewPresenter implements Initializable {
     }, FX_PLATFORM_EXECUTOR);
   }
 
+  private CompletableFuture<UaClient> openConnection(String url) {
+    if (fastConnectItem.isSelected()) {
+      // cached endpoints, alternative urls separated by ';'
+      return connection.fastConnect(splitUrls(url), connection::findLowestEndpoint);
+    }
+    return connection.getEndpoints(url).thenCompose(endpoints -> {
+      EndpointDescription endpoint =
+          connection.findLowestEndpoint(endpoints).orElseThrow(() -> new CompletionException(new Exception("no endpoint found: " + url)));
+      return connection.connect(url, endpoint);
+    });
+  }
+
   @FXML
   void disconnect() {
     state.progressVisibleProperty().set(true);
-    Executors.newSingleThreadExecutor().execute(() -> {
-      connection.disconnect().thenAcceptAsync(c -> state.progressVisibleProperty().set(false), FX_PLATFORM_EXECUTOR);
-    });
+    connection.disconnect().whenCompleteAsync((c, t) -> {
+      state.progressVisibleProperty().set(false);
+      if (t != null) {
+        logger.error(t.getMessage(), t);
+      }
+    }, FX_PLATFORM_EXECUTOR);
   }
 
   @FXML
@@ -216,18 +236,33 @@ public class ConnectViewPresenter implements Initializable {
   }
 
 
+  private static List<String> splitUrls(String url) {
+    return Arrays.stream(url.split(";")).map(String::trim).filter(u -> !u.isEmpty()).collect(Collectors.toList());
+  }
+
   private void updateAddressHistory() {
     String adr = addressUrl.get();
     if (adr == null || adr.length() < 1) {
       return;
     }
-    if (!address.getItems().contains(adr)) {
-      address.getItems().add(0, adr);
-      if (address.getItems().size() > 20) {
-        address.getItems().remove(address.getItems().size() - 1);
+    // the alternative urls of a fast connect are stored one by one
+    List<String> urls = splitUrls(adr);
+    if (urls.isEmpty()) {
+      return;
+    }
+    if (urls.size() > 1) {
+      address.getItems().remove(adr);
+    }
+    for (int i = urls.size() - 1; i >= 0; i--) {
+      if (!address.getItems().contains(urls.get(i))) {
+        address.getItems().add(0, urls.get(i));
+        if (address.getItems().size() > 20) {
+          address.getItems().remove(address.getItems().size() - 1);
+        }
       }
     }
-    address.getSelectionModel().select(adr);
+    address.getSelectionModel()
+        .select(connection.getEndpointDescription().map(EndpointDescription::getEndpointUrl).filter(urls::contains).orElse(urls.get(0)));
   }
 
   private void readHierarchy() {
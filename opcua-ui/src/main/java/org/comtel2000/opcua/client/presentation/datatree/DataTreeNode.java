@@ -13,14 +13,23 @@
  *******************************************************************************/
 package org.comtel2000.opcua.client.presentation.datatree;
 
-import java.util.Arrays;
-import java.util.Collections;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import org.comtel2000.opcua.client.service.OpcUaClientConnector;
+import org.comtel2000.opcua.client.service.ReferenceStore;
 import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,20 +37,47 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Objects;
 
 import javafx.application.Platform;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.Event;
 import javafx.scene.control.TreeItem;
 
+/**
+ * Lazy tree node of the address space. The browsed children are kept in a compact
+ * {@link ReferenceStore} and tree items are created in windows of {@link #PAGE_SIZE} rows. A
+ * placeholder row at the end of the window loads the next window as soon as it is shown (scrolled
+ * into the viewport) or selected.
+ *
+ * @author comtel
+ *
+ */
 public class DataTreeNode extends TreeItem<ReferenceDescription> {
 
   protected final static Logger logger = LoggerFactory.getLogger(DataTreeNode.class);
 
+  /** tree items created per window (system property {@code opcua.tree.pageSize}) */
+  public final static int PAGE_SIZE = Math.max(1, Integer.getInteger("opcua.tree.pageSize", 500));
+
   boolean updated;
   boolean leaf;
 
+  private CompletableFuture<StatusCode> browsing;
+
+  /** children of the last browse, drops duplicates across pages */
+  private ReferenceStore store;
+
+  /** rows of the store shown as tree items */
+  private int materialized;
+
+  /** max rows to show until the placeholder is reached */
+  private int limit = PAGE_SIZE;
+
+  private MoreNode more;
+
   final OpcUaClientConnector connection;
 
+  final static UInteger NODE_CLASS_MASK = uint(
+      NodeClass.Object.getValue() | NodeClass.Variable.getValue() | NodeClass.Method.getValue() | NodeClass.DataType.getValue());
+
   private final static java.util.function.Predicate<? super ReferenceDescription> hasNotifierFilterEventSource = r -> {
     return r != null && r.getNodeId() != null && r.getNodeId().isLocal();// && !Identifiers.HasNotifier.equals(r.getReferenceTypeId()) && !Identifiers.HasEventSource.equals(r.getReferenceTypeId());
   };
@@ -62,10 +98,80 @@ public class DataTreeNode extends TreeItem<ReferenceDescription> {
   }
 
   public void rebrowse() {
+    cancelBrowse();
     updated = false;
+    store = null;
+    materialized = 0;
+    limit = PAGE_SIZE;
+    more = null;
     super.getChildren().clear();
     getChildren();
-    
+  }
+
+  /**
+   * @return number of browsed children (including the not yet shown)
+   */
+  public int getChildCount() {
+    ReferenceStore s = store;
+    return s != null ? s.size() : super.getChildren().size();
+  }
+
+  /**
+   * Show the next window of children.
+   */
+  public void loadMore() {
+    if (store == null || materialized >= store.size()) {
+      return;
+    }
+    limit = materialized + PAGE_SIZE;
+    materialize();
+  }
+
+  /**
+   * Browse the children if not done yet and show the child of the given node.
+   *
+   * @param node child node
+   * @return tree item of the child or {@code null} if not a child, completed on the FX thread
+   */
+  public CompletableFuture<TreeItem<ReferenceDescription>> findChild(NodeId node) {
+    getChildren();
+    CompletableFuture<StatusCode> browse = browsing;
+    CompletableFuture<?> ready = browse != null ? browse.handle((status, t) -> status) : CompletableFuture.completedFuture(null);
+    return ready.thenApplyAsync(v -> showChild(node), Platform::runLater);
+  }
+
+  private TreeItem<ReferenceDescription> showChild(NodeId node) {
+    int row = store != null ? store.indexOf(node) : -1;
+    if (row < 0) {
+      return null;
+    }
+    if (row >= materialized) {
+      limit = row + 1;
+      materialize();
+    }
+    return super.getChildren().get(row);
+  }
+
+  /**
+   * @param item tree item
+   * @return {@code true} if the item is the placeholder of not yet shown children
+   */
+  public static boolean isPlaceholder(TreeItem<?> item) {
+    return item instanceof MoreNode;
+  }
+
+  /**
+   * Show the next window of children if the given item is a placeholder.
+   *
+   * @param item tree item
+   * @return {@code true} if the item was a placeholder
+   */
+  public static boolean loadMore(TreeItem<?> item) {
+    if (!(item instanceof MoreNode)) {
+      return false;
+    }
+    ((MoreNode) item).owner.loadMore();
+    return true;
   }
 
   @Override
@@ -74,42 +180,103 @@ public class DataTreeNode extends TreeItem<ReferenceDescription> {
       return super.getChildren();
     }
     updated = true;
-    connection.getHierarchicalReferences(getValue().getNodeId()).thenApply(r -> {
-      if (r.getStatusCode().isGood() && r.getReferences() != null && r.getReferences().length > 0) {
-        return toTreeItemList(r.getReferences());
-      }
-      if (r.getStatusCode().isBad()) {
-        logger.error("getHierarchicalReferences failed with status code: {}", r.getStatusCode());
+    NodeId nodeId = getNodeId();
+    if (nodeId == null) {
+      leaf = true;
+      return super.getChildren();
+    }
+    ReferenceStore children = new ReferenceStore();
+    store = children;
+    materialized = 0;
+    limit = PAGE_SIZE;
+    CompletableFuture<StatusCode> browse = connection.getHierarchicalReferences(nodeId, NODE_CLASS_MASK, (refs, last) -> addPage(children, refs));
+    browsing = browse;
+    browse.whenCompleteAsync((status, t) -> browseCompleted(browse, status, t), Platform::runLater);
+    return super.getChildren();
+  }
+
+  private CompletionStage<?> addPage(ReferenceStore children, ReferenceDescription[] refs) {
+    // next page is requested after the current page is stored
+    return CompletableFuture.runAsync(() -> addChildren(children, refs), Platform::runLater);
+  }
+
+  private void addChildren(ReferenceStore children, ReferenceDescription[] refs) {
+    if (children != store) {
+      return;
+    }
+    for (ReferenceDescription ref : refs) {
+      if (hasNotifierFilterEventSource.test(ref)) {
+        children.add(ref);
       }
-      return Collections.<DataTreeNode>emptyList();
-    }).whenCompleteAsync(this::updateChildren, Platform::runLater);
-    return FXCollections.emptyObservableList();
+    }
+    materialize();
   }
 
-  private NodeId getNodeId(){
-    ReferenceDescription rd = getValue();
-    if (rd != null && rd.getNodeId() != null && rd.getNodeId().isLocal()){
-      return rd.getNodeId().local().get();
+  /**
+   * Create the tree items of the stored rows up to the limit and update the placeholder.
+   */
+  private void materialize() {
+    ObservableList<TreeItem<ReferenceDescription>> children = super.getChildren();
+    int end = Math.min(limit, store.size());
+    if (end > materialized) {
+      List<TreeItem<ReferenceDescription>> items = new ArrayList<>(end - materialized);
+      for (int i = materialized; i < end; i++) {
+        items.add(new DataTreeNode(connection, store.get(i)));
+      }
+      materialized = end;
+      children.addAll(more != null ? children.size() - 1 : children.size(), items);
+    }
+    int remaining = store.size() - materialized;
+    if (remaining > 0) {
+      if (more == null) {
+        more = new MoreNode(this);
+        children.add(more);
+      }
+      more.setRemaining(remaining);
+    } else if (more != null) {
+      children.remove(more);
+      more = null;
     }
-    return null;
   }
-  
-  private void updateChildren(List<DataTreeNode> list, Throwable t) {
-    if (t != null) {
-      logger.error(t.getMessage(), t);
-      updated = false;
+
+  private void browseCompleted(CompletableFuture<StatusCode> browse, StatusCode status, Throwable t) {
+    if (browse != browsing) {
       return;
     }
-    if (!super.getChildren().isEmpty()) {
-      logger.error("double update detected: {}", list);
+    browsing = null;
+    if (t != null) {
+      if (!(t instanceof CancellationException)) {
+        logger.error(t.getMessage(), t);
+        updated = false;
+      }
       return;
     }
-    leaf = list.isEmpty();
-    if (!super.getChildren().addAll(list)) {
+    if (status.isBad()) {
+      logger.error("getHierarchicalReferences failed with status code: {}", status);
+    }
+    logger.debug("{} children of {}", store.size(), getNodeId());
+    if (store.size() == 0) {
+      leaf = true;
       fireEvent(new TreeModificationEvent<ReferenceDescription>(valueChangedEvent(), DataTreeNode.this, getValue()));
     }
   }
 
+  private void cancelBrowse() {
+    CompletableFuture<StatusCode> browse = browsing;
+    browsing = null;
+    if (browse != null) {
+      browse.cancel(false);
+    }
+  }
+
+  private NodeId getNodeId(){
+    ReferenceDescription rd = getValue();
+    if (rd != null && rd.getNodeId() != null && rd.getNodeId().isLocal()){
+      return rd.getNodeId().local().get();
+    }
+    return null;
+  }
+  
   private static boolean isLeafType(ReferenceDescription rd) {
     if (rd.getTypeDefinition() == null || rd.getTypeDefinition().getIdentifier() == null || !rd.getNodeId().isLocal()) {
       return false;
@@ -127,14 +294,6 @@ public class DataTreeNode extends TreeItem<ReferenceDescription> {
     return false;
   }
   
-  private List<DataTreeNode> toTreeItemList(ReferenceDescription[] refs){
-    return Arrays.stream(refs).filter(hasNotifierFilterEventSource).map(this::createNode).distinct().collect(Collectors.toList());
-  }
-  
-  private DataTreeNode createNode(ReferenceDescription ref) {
-    return new DataTreeNode(connection, ref);
-  }
-
   private void fireEvent(TreeModificationEvent<ReferenceDescription> evt) {
     Event.fireEvent(this, evt);
   }
@@ -156,6 +315,28 @@ public class DataTreeNode extends TreeItem<ReferenceDescription> {
   
   @Override
   public String toString() {
-    return "DataTreeNode [updated=" + updated + ", leaf=" + leaf + ", children=" + super.getChildren().size() + "]";
+    return "DataTreeNode [updated=" + updated + ", leaf=" + leaf + ", children=" + materialized + "/" + getChildCount() + "]";
+  }
+
+  /**
+   * Placeholder row of the not yet shown children.
+   */
+  private static class MoreNode extends TreeItem<ReferenceDescription> {
+
+    final DataTreeNode owner;
+
+    MoreNode(DataTreeNode owner) {
+      this.owner = owner;
+    }
+
+    void setRemaining(int remaining) {
+      setValue(new ReferenceDescription(null, true, null, QualifiedName.NULL_VALUE, LocalizedText.english("\u2026 " + remaining + " more"),
+          NodeClass.Unspecified, null));
+    }
+
+    @Override
+    public boolean isLeaf() {
+      return true;
+    }
   }
 }
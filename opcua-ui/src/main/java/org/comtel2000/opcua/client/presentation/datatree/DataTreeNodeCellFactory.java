@@ -18,7 +18,9 @@ import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javafx.application.Platform;
 import javafx.scene.Node;
+import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeTableCell;
 import javafx.scene.control.TreeTableColumn;
 import javafx.scene.shape.Rectangle;
@@ -39,6 +41,11 @@ public class DataTreeNodeCellFactory
         if (!empty && item != null) {
           setText(item.getDisplayName().getText());
           setGraphic(createGraphicNode(item));
+          TreeItem<ReferenceDescription> treeItem = getTreeTableRow() != null ? getTreeTableRow().getTreeItem() : null;
+          if (DataTreeNode.isPlaceholder(treeItem)) {
+            // placeholder scrolled into the viewport: show the next window
+            Platform.runLater(() -> DataTreeNode.loadMore(treeItem));
+          }
         } else {
           setText(null);
           setGraphic(null);
@@ -15,33 +15,54 @@ package org.comtel2000.opcua.client.presentation.datatree;
 
 import java.io.StringWriter;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
 import org.comtel2000.opcua.client.presentation.binding.StatusBinding;
+import org.comtel2000.opcua.client.service.NodeSearchIndex;
 import org.comtel2000.opcua.client.service.OpcUaClientConnector;
+import org.comtel2000.opcua.client.service.PrefetchScheduler;
 import org.eclipse.milo.opcua.stack.core.serialization.xml.XmlEncoder;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.geometry.Side;
+import javafx.scene.Node;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeTableColumn;
+import javafx.scene.control.TreeTableRow;
 import javafx.scene.control.TreeTableView;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.util.Duration;
 
 public class DataTreeViewPresenter implements Initializable {
 
@@ -53,6 +74,9 @@ public class DataTreeViewPresenter implements Initializable {
   @Inject
   StatusBinding state;
 
+  @FXML
+  private TextField search;
+
   @FXML
   private TreeTableView<ReferenceDescription> tableTree;
 
@@ -75,9 +99,31 @@ public class DataTreeViewPresenter implements Initializable {
   private MenuItem copyItem;
 
   private final BooleanProperty variableItem = new SimpleBooleanProperty(false);
+
+  private PrefetchScheduler prefetch;
+
+  /** collects selection, scroll and hover changes before the prefetch is updated */
+  private final PauseTransition prefetchDelay = new PauseTransition(Duration.millis(150));
+
+  private TreeItem<ReferenceDescription> hovered;
+
+  private final static int MAX_SEARCH_RESULTS = 20;
+
+  private final ContextMenu searchResults = new ContextMenu();
+
+  /** browse paths start with the separator, everything else is looked up in the search index */
+  private final static String BROWSE_PATH_PREFIX = "/";
+
+  private final PauseTransition searchDelay = new PauseTransition(Duration.millis(200));
+
+  /** sequence of the last search, results of older searches are dropped */
+  private int searchSeq;
+
+  private ResourceBundle resource;
   
   @Override
   public void initialize(URL url, ResourceBundle rb) {
+    resource = rb;
 
     tableTree.setRowFactory(new DataTreeNodeRowFactory<ReferenceDescription>());
 
@@ -86,22 +132,213 @@ public class DataTreeViewPresenter implements Initializable {
 
     display.setCellFactory(new DataTreeNodeCellFactory());
 
-    browse.setCellValueFactory(p -> new ReadOnlyStringWrapper(p.getValue().getValue().getBrowseName().toParseableString()));
+    browse.setCellValueFactory(
+        p -> new ReadOnlyStringWrapper(!DataTreeNode.isPlaceholder(p.getValue()) ? p.getValue().getValue().getBrowseName().toParseableString() : ""));
 
     node.setCellValueFactory(
         p -> new ReadOnlyStringWrapper(p.getValue().getValue().getNodeId() != null ? p.getValue().getValue().getNodeId().toParseableString() : ""));
 
     tableTree.rootProperty().bind(state.rootNodeProperty());
     tableTree.getSelectionModel().selectedItemProperty().addListener((l, a, b) -> nodeChanged(b));
+    connection.onAddressSpaceChanged(n -> Platform.runLater(() -> addressSpaceChanged(tableTree.getRoot(), n)));
 
     bindContextMenu();
 
     // copy key not registered in ContenxtMenu
     registerKeys();
+
+    bindPrefetch();
+    bindSearch();
+  }
+
+  private void bindSearch() {
+    search.disableProperty().bind(state.connectedProperty().not());
+    // short queries scan the whole index, search after typing paused and not on the FX thread
+    searchDelay.setOnFinished(e -> showSearchResults(search.getText(), false));
+    search.textProperty().addListener((l, a, b) -> searchDelay.playFromStart());
+    search.setOnAction(e -> {
+      String text = search.getText();
+      searchDelay.stop();
+      if (text != null && text.startsWith(BROWSE_PATH_PREFIX)) {
+        // browse path resolved by the server
+        searchSeq++;
+        searchResults.hide();
+        connection.translateBrowsePath(text).whenCompleteAsync((path, t) -> {
+          if (t != null) {
+            logger.error(t.getMessage(), t);
+          }
+          if (path == null || path.isEmpty()) {
+            state.statusTextProperty().set(String.format(resource.getString("datatree.search.notfound"), text));
+          } else {
+            reveal(path);
+          }
+        }, Platform::runLater);
+      } else {
+        showSearchResults(text, true);
+      }
+    });
+  }
+
+  /**
+   * Search the index in the background and show the results.
+   *
+   * @param revealFirst reveal the first result instead of showing the list
+   */
+  private void showSearchResults(String text, boolean revealFirst) {
+    int seq = ++searchSeq;
+    if (text == null || text.trim().isEmpty() || text.startsWith(BROWSE_PATH_PREFIX)) {
+      searchResults.getItems().clear();
+      searchResults.hide();
+      return;
+    }
+    String query = text.trim();
+    NodeSearchIndex index = connection.getSearchIndex();
+    CompletableFuture.supplyAsync(() -> {
+      List<Tuple2<String, List<NodeId>>> found = new ArrayList<>();
+      for (int row : index.search(query, MAX_SEARCH_RESULTS)) {
+        ReferenceDescription rd = index.getReference(row);
+        found.add(new Tuple2<>(rd.getDisplayName().getText() + "  [" + rd.getNodeId().toParseableString() + "]", index.getPath(row)));
+      }
+      return found;
+    }, connection.getExecutor()).whenCompleteAsync((found, t) -> {
+      if (seq != searchSeq) {
+        return;
+      }
+      if (t != null) {
+        logger.error(t.getMessage(), t);
+        return;
+      }
+      if (revealFirst) {
+        searchResults.hide();
+        if (found.isEmpty()) {
+          state.statusTextProperty().set(String.format(resource.getString("datatree.search.notfound"), query));
+        } else {
+          reveal(found.get(0).v2);
+        }
+        return;
+      }
+      searchResults.getItems().clear();
+      for (Tuple2<String, List<NodeId>> f : found) {
+        MenuItem item = new MenuItem(f.v1);
+        item.setOnAction(e -> reveal(f.v2));
+        searchResults.getItems().add(item);
+      }
+      if (searchResults.getItems().isEmpty()) {
+        searchResults.hide();
+      } else if (!searchResults.isShowing()) {
+        searchResults.show(search, Side.BOTTOM, 0, 0);
+      }
+    }, Platform::runLater);
+  }
+
+  /**
+   * Expand the tree along the path (starting with a child of the root node) and select the last
+   * node. If a node of the path is not found the deepest found node is selected.
+   */
+  private void reveal(List<NodeId> path) {
+    TreeItem<ReferenceDescription> root = tableTree.getRoot();
+    if (path.isEmpty() || root == null) {
+      return;
+    }
+    List<TreeItem<ReferenceDescription>> found = new ArrayList<>();
+    CompletableFuture<TreeItem<ReferenceDescription>> step = CompletableFuture.completedFuture(root);
+    for (NodeId node : path) {
+      step = step.thenCompose(item -> {
+        if (!(item instanceof DataTreeNode)) {
+          return CompletableFuture.completedFuture(null);
+        }
+        if (item != root) {
+          found.add(item);
+        }
+        item.setExpanded(true);
+        return ((DataTreeNode) item).findChild(node);
+      });
+    }
+    step.whenCompleteAsync((item, t) -> {
+      if (item == null) {
+        String missing = path.get(found.size()).toParseableString();
+        if (found.isEmpty()) {
+          state.statusTextProperty().set(String.format(resource.getString("datatree.search.notfound"), missing));
+          return;
+        }
+        state.statusTextProperty().set(String.format(resource.getString("datatree.search.partial"), found.size(), path.size(), missing));
+        item = found.get(found.size() - 1);
+      }
+      tableTree.getSelectionModel().select(item);
+      tableTree.scrollTo(tableTree.getRow(item));
+      tableTree.requestFocus();
+    }, Platform::runLater);
+  }
+
+  private void bindPrefetch() {
+    prefetch = new PrefetchScheduler(connection, DataTreeNode.NODE_CLASS_MASK);
+    prefetchDelay.setOnFinished(e -> updatePrefetch());
+    state.rootNodeProperty().addListener(l -> prefetch.clear());
+    tableTree.getSelectionModel().selectedItemProperty().addListener(l -> prefetchDelay.playFromStart());
+    tableTree.expandedItemCountProperty().addListener(l -> prefetchDelay.playFromStart());
+    tableTree.addEventFilter(ScrollEvent.ANY, e -> prefetchDelay.playFromStart());
+    tableTree.addEventFilter(MouseEvent.MOUSE_MOVED, this::hover);
+    tableTree.addEventFilter(MouseEvent.MOUSE_EXITED, e -> hover(null));
+  }
+
+  @SuppressWarnings("unchecked")
+  private void hover(MouseEvent e) {
+    Node n = e != null ? e.getPickResult().getIntersectedNode() : null;
+    while (n != null && !(n instanceof TreeTableRow)) {
+      n = n.getParent();
+    }
+    TreeItem<ReferenceDescription> item = n != null ? ((TreeTableRow<ReferenceDescription>) n).getTreeItem() : null;
+    if (item != hovered) {
+      hovered = item;
+      prefetchDelay.playFromStart();
+    }
+  }
+
+  /**
+   * Prefetch the children of the hovered node, two levels of the selected node and of the not
+   * browsed visible nodes nearest to the selection.
+   */
+  @SuppressWarnings("unchecked")
+  private void updatePrefetch() {
+    if (!state.connectedProperty().get()) {
+      return;
+    }
+    List<Tuple2<NodeId, Integer>> requests = new ArrayList<>();
+    Set<NodeId> added = new HashSet<>();
+    addPrefetch(requests, added, hovered, 1);
+    TreeItem<ReferenceDescription> selected = tableTree.getSelectionModel().getSelectedItem();
+    addPrefetch(requests, added, selected, 2);
+
+    List<TreeTableRow<ReferenceDescription>> rows = tableTree.lookupAll(".tree-table-row-cell").stream()
+        .filter(n -> n instanceof TreeTableRow && n.isVisible()).map(n -> (TreeTableRow<ReferenceDescription>) n)
+        .filter(r -> r.getTreeItem() != null && r.getIndex() >= 0).collect(Collectors.toList());
+    if (!rows.isEmpty()) {
+      int first = rows.stream().mapToInt(TreeTableRow::getIndex).min().getAsInt();
+      int last = rows.stream().mapToInt(TreeTableRow::getIndex).max().getAsInt();
+      int index = tableTree.getSelectionModel().getSelectedIndex();
+      int anchor = index >= first && index <= last ? index : (first + last) / 2;
+      rows.sort(Comparator.comparingInt(r -> Math.abs(r.getIndex() - anchor)));
+      rows.forEach(r -> addPrefetch(requests, added, r.getTreeItem(), 1));
+    }
+    prefetch.update(requests);
+  }
+
+  private static void addPrefetch(List<Tuple2<NodeId, Integer>> requests, Set<NodeId> added, TreeItem<ReferenceDescription> item, int depth) {
+    if (!(item instanceof DataTreeNode) || item.isLeaf() || (depth == 1 && ((DataTreeNode) item).isUpdated())) {
+      return;
+    }
+    ReferenceDescription rd = item.getValue();
+    NodeId node = rd != null && rd.getNodeId() != null ? rd.getNodeId().local().orElse(null) : null;
+    if (node != null && added.add(node)) {
+      requests.add(new Tuple2<>(node, depth));
+    }
   }
 
 
   private void nodeChanged(TreeItem<ReferenceDescription> item) {
+    if (DataTreeNode.loadMore(item)) {
+      return;
+    }
     if (item != null) {
       // check for sub node
       item.getChildren();
@@ -111,6 +348,23 @@ public class DataTreeViewPresenter implements Initializable {
     variableItem.set(item != null && item.getValue() != null && item.getValue().getNodeClass() == NodeClass.Variable);
   }
 
+  /**
+   * Browse the loaded tree nodes of the changed node again.
+   */
+  private void addressSpaceChanged(TreeItem<ReferenceDescription> item, NodeId node) {
+    if (!(item instanceof DataTreeNode) || !((DataTreeNode) item).isUpdated()) {
+      return;
+    }
+    ReferenceDescription rd = item.getValue();
+    if (rd != null && rd.getNodeId() != null && node.equals(rd.getNodeId().local().orElse(null))) {
+      ((DataTreeNode) item).rebrowse();
+      return;
+    }
+    for (TreeItem<ReferenceDescription> child : new ArrayList<>(item.getChildren())) {
+      addressSpaceChanged(child, node);
+    }
+  }
+
   private void bindContextMenu() {
     rebrowseItem.disableProperty().bind(state.connectedProperty().not().or(tableTree.getSelectionModel().selectedItemProperty().isNull()));
     monitorItem.disableProperty().bind(state.connectedProperty().not().or(tableTree.getSelectionModel().selectedItemProperty().isNull()).or(variableItem.not()));
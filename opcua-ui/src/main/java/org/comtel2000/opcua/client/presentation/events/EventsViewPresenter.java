@@ -13,33 +13,43 @@
  *******************************************************************************/
 package org.comtel2000.opcua.client.presentation.events;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import javax.xml.stream.XMLStreamException;
 
 import org.comtel2000.opcua.client.presentation.binding.StatusBinding;
+import org.comtel2000.opcua.client.service.ItemListFormat;
+import org.comtel2000.opcua.client.service.ItemListReader;
+import org.comtel2000.opcua.client.service.ItemListWriter;
+import org.comtel2000.opcua.client.service.MonitoredItemSpec;
 import org.comtel2000.opcua.client.service.OpcUaClientConnector;
 import org.comtel2000.opcua.client.service.OpcUaConverter;
-import org.eclipse.milo.opcua.stack.core.serialization.xml.XmlDecoder;
-import org.eclipse.milo.opcua.stack.core.serialization.xml.XmlEncoder;
+import org.comtel2000.opcua.client.service.SubscriptionMetrics;
+import org.comtel2000.opcua.client.service.ValueRecorder;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
 import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.ReadOnlyObjectWrapper;
@@ -61,6 +71,9 @@ public class EventsViewPresenter implements Initializable {
 
   private static final Logger logger = LoggerFactory.getLogger(EventsViewPresenter.class);
 
+  /** items per subscribe request of an import */
+  private final static int IMPORT_CHUNK_SIZE = Integer.getInteger("opcua.import.chunkSize", 1000);
+
   @Inject
   OpcUaClientConnector connection;
 
@@ -87,6 +100,9 @@ public class EventsViewPresenter implements Initializable {
   @FXML
   private TableColumn<MonitoredEvent, Double> samplingrate;
 
+  @FXML
+  private TableColumn<MonitoredEvent, String> monitoring;
+
   @FXML
   private TableColumn<MonitoredEvent, String> value;
 
@@ -96,9 +112,15 @@ public class EventsViewPresenter implements Initializable {
   @FXML
   private TableColumn<MonitoredEvent, String> timestamp;
 
+  @FXML
+  private TableColumn<MonitoredEvent, String> publish;
+
   @FXML
   private MenuItem showItem;
 
+  @FXML
+  private MenuItem monitoringItem;
+
   @FXML
   private MenuItem removeItem;
 
@@ -111,13 +133,36 @@ public class EventsViewPresenter implements Initializable {
   @FXML
   private MenuItem importItem;
 
+  @FXML
+  private MenuItem recordItem;
+
+  private ValueRecorder recorder;
+
   ResourceBundle rb;
 
+  private final MonitoredEventRowFactory<MonitoredEvent> rowFactory = new MonitoredEventRowFactory<>();
+
+  /** publishes the latest values once per frame and the subscription metrics once per second */
+  private final AnimationTimer renderer = new AnimationTimer() {
+
+    private long lastMetrics;
+
+    @Override
+    public void handle(long now) {
+      rowFactory.flushVisibleRows();
+      if (now - lastMetrics >= 1_000_000_000L) {
+        lastMetrics = now;
+        updateMetrics();
+      }
+    }
+  };
+
   @Override
   public void initialize(URL url, ResourceBundle rb) {
     this.rb = rb;
     
-    table.setRowFactory(new MonitoredEventRowFactory<MonitoredEvent>());
+    table.setRowFactory(rowFactory);
+    renderer.start();
     
     id.setCellValueFactory(p -> new ReadOnlyStringWrapper(
         String.format("%s (%s)", p.getValue().getSubscription().getSubscriptionId(), p.getValue().getMonitoredItem().getMonitoredItemId())));
@@ -128,7 +173,9 @@ public class EventsViewPresenter implements Initializable {
 
     value.setCellValueFactory(p -> p.getValue().valueProperty());
 
-    samplingrate.setCellValueFactory(p -> new ReadOnlyObjectWrapper<Double>(p.getValue().getSubscription().getRevisedPublishingInterval()));
+    samplingrate.setCellValueFactory(p -> new ReadOnlyObjectWrapper<Double>(p.getValue().getMonitoredItem().getRevisedSamplingInterval()));
+
+    monitoring.setCellValueFactory(p -> p.getValue().specProperty().asString());
 
     quality.setCellValueFactory(p -> new ReadOnlyStringWrapper(OpcUaConverter.toString(p.getValue().getMonitoredItem().getStatusCode())));
 
@@ -136,7 +183,19 @@ public class EventsViewPresenter implements Initializable {
 
     lasterror.setCellValueFactory(p -> p.getValue().lasterrorProperty());
 
+    publish.setCellValueFactory(p -> p.getValue().publishProperty());
+
     table.setItems(monitoredItems);
+    monitoredItems.addListener((ListChangeListener.Change<? extends MonitoredEvent> c) -> {
+      while (c.next()) {
+        if (c.wasAdded()) {
+          c.getAddedSubList().forEach(e -> e.setRecorder(recorder));
+        }
+        if (c.wasRemoved()) {
+          c.getRemoved().forEach(e -> e.setRecorder(null));
+        }
+      }
+    });
 
     table.setOnDragOver(event -> {
       event.acceptTransferModes(TransferMode.COPY);
@@ -182,11 +241,30 @@ public class EventsViewPresenter implements Initializable {
 
     state.connectedProperty().addListener((l, a, b) -> {
       if (b && !monitoredItems.isEmpty()) {
-        List<ReferenceDescription> items = monitoredItems.stream().map(MonitoredEvent::getReferenceDescription).collect(Collectors.toList());
-        monitoredItems.clear();
-        subscribe(items);
+        // items of transferred subscriptions are still valid, the session recovery owns the items of
+        // recreated ones, only resubscribe the items of a previous client
+        List<MonitoredEvent> lost = monitoredItems.stream()
+            .filter(e -> !connection.isActive(e.getSubscription()) && !connection.isRecreated(e.getSubscription())).collect(Collectors.toList());
+        if (lost.isEmpty()) {
+          return;
+        }
+        Map<MonitoredItemSpec, List<ReferenceDescription>> items = lost.stream().collect(Collectors.groupingBy(MonitoredEvent::getSpec,
+            LinkedHashMap::new, Collectors.mapping(MonitoredEvent::getReferenceDescription, Collectors.toList())));
+        monitoredItems.removeAll(lost);
+        items.forEach((spec, references) -> subscribe(references, spec));
       }
     });
+    connection.onSubscriptionsRecreated(items -> Platform.runLater(() -> replaceItems(items)));
+  }
+
+  private void replaceItems(Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>> items) {
+    for (int i = 0; i < monitoredItems.size(); i++) {
+      MonitoredEvent e = monitoredItems.get(i);
+      Tuple2<UaSubscription, UaMonitoredItem> item = items.get(e.getMonitoredItem());
+      if (item != null) {
+        monitoredItems.set(i, new MonitoredEvent(e.getReferenceDescription(), item.v1, item.v2, e.getSpec()));
+      }
+    }
   }
 
   private void subscribe(ReferenceDescription rd) {
@@ -210,36 +288,67 @@ public class EventsViewPresenter implements Initializable {
   }
 
   private void subscribe(List<ReferenceDescription> references) {
+    subscribe(references, MonitoredItemSpec.DEFAULT);
+  }
+
+  /**
+   * @return number of items with a good status, completed after the subscribed items were added
+   */
+  private CompletableFuture<Integer> subscribe(List<ReferenceDescription> references, MonitoredItemSpec spec) {
     if (references == null || references.isEmpty()) {
-      return;
+      return CompletableFuture.completedFuture(0);
     }
     if (!state.connectedProperty().get()) {
       state.statusTextProperty().set("subscribe failed: not connected");
-      return;
+      return CompletableFuture.completedFuture(0);
     }
     state.subscribeTreeItemList().removeAll(references);
 
     try {
       List<NodeId> nodes = references.stream().map(ReferenceDescription::getNodeId).map(e -> e.local().get()).collect(Collectors.toList());
-      connection.subscribe(nodes).whenCompleteAsync((s, t) -> {
+      return connection.subscribeEach(nodes, spec).handleAsync((s, t) -> {
         if (t != null) {
           logger.error(t.getMessage(), t);
         }
-        if (s != null && s.v2.size() == references.size()) {
+        int good = 0;
+        if (s != null && s.size() == references.size()) {
           for (int i = 0; i < references.size(); i++) {
-            monitoredItems.add(new MonitoredEvent(references.get(i), s.v1, s.v2.get(i)));
+            monitoredItems.add(new MonitoredEvent(references.get(i), s.get(i).v1, s.get(i).v2, spec));
+            if (s.get(i).v2.getStatusCode().isGood()) {
+              good++;
+            }
           }
         }
+        return good;
       }, Platform::runLater);
 
     } catch (Exception e) {
       logger.error(e.getMessage(), e);
+      return CompletableFuture.completedFuture(0);
+    }
+  }
+
+  /**
+   * @return number of subscribed items, items of a remote server are not subscribed
+   * @throws IllegalStateException (failed future) if not connected
+   */
+  private CompletableFuture<Integer> subscribeItems(List<Tuple2<ReferenceDescription, MonitoredItemSpec>> items) {
+    if (!state.connectedProperty().get()) {
+      CompletableFuture<Integer> f = new CompletableFuture<>();
+      f.completeExceptionally(new IllegalStateException("not connected"));
+      return f;
     }
+    Map<MonitoredItemSpec, List<ReferenceDescription>> bySpec = items.stream().filter(i -> i.v1.getNodeId().isLocal())
+        .collect(Collectors.groupingBy(i -> i.v2, LinkedHashMap::new, Collectors.mapping(i -> i.v1, Collectors.toList())));
+    List<CompletableFuture<Integer>> results = bySpec.entrySet().stream().map(e -> subscribe(e.getValue(), e.getKey())).collect(Collectors.toList());
+    return CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()]))
+        .thenApply(v -> results.stream().mapToInt(CompletableFuture::join).sum());
   }
 
   private void bindContextMenu() {
     showItem.disableProperty().bind(table.getSelectionModel().selectedItemProperty().isNull());
     removeItem.disableProperty().bind(table.getSelectionModel().selectedItemProperty().isNull());
+    monitoringItem.disableProperty().bind(table.getSelectionModel().selectedItemProperty().isNull());
     removeAllItem.disableProperty().bind(Bindings.isEmpty(table.getItems()));
     exportItem.disableProperty().bind(Bindings.isEmpty(table.getItems()));
     importItem.disableProperty().bind(state.connectedProperty().not());
@@ -247,16 +356,30 @@ public class EventsViewPresenter implements Initializable {
   }
 
 
+  private void updateMetrics() {
+    if (monitoredItems.isEmpty() || !publish.isVisible()) {
+      return;
+    }
+    Map<UaSubscription, String> metrics = new IdentityHashMap<>();
+    for (MonitoredEvent item : monitoredItems) {
+      item.publishProperty().set(metrics.computeIfAbsent(item.getSubscription(),
+          s -> connection.getSubscriptionMetrics(s).map(SubscriptionMetrics::toString).orElse(null)));
+    }
+  }
+
   @FXML
   void exportFile() {
     FileChooser fileChooser = new FileChooser();
     fileChooser.setTitle(rb.getString("events.export.title"));
     fileChooser.setInitialDirectory(Paths.get(System.getProperty("user.home")).toFile());
-    fileChooser.getExtensionFilters().addAll(new ExtensionFilter("XML Files", "*.xml"));
-    fileChooser.setInitialFileName("subscriptions.xml");
+    List<ExtensionFilter> filters = Arrays.stream(ItemListFormat.values())
+        .map(f -> new ExtensionFilter(f.getDescription(), "*." + f.getExtension())).collect(Collectors.toList());
+    fileChooser.getExtensionFilters().addAll(filters);
+    fileChooser.setInitialFileName("subscriptions." + ItemListFormat.BINARY.getExtension());
     File file = fileChooser.showSaveDialog(table.getScene().getWindow());
     if (file != null) {
-      exportItems(file);
+      int selected = filters.indexOf(fileChooser.getSelectedExtensionFilter());
+      exportItems(file, selected >= 0 ? ItemListFormat.values()[selected] : ItemListFormat.BINARY);
     }
   }
 
@@ -265,7 +388,10 @@ public class EventsViewPresenter implements Initializable {
     FileChooser fileChooser = new FileChooser();
     fileChooser.setTitle(rb.getString("events.import.title"));
     fileChooser.setInitialDirectory(Paths.get(System.getProperty("user.home")).toFile());
-    fileChooser.getExtensionFilters().addAll(new ExtensionFilter("XML Files", "*.xml"));
+    fileChooser.getExtensionFilters().add(new ExtensionFilter("Item Lists",
+        Arrays.stream(ItemListFormat.values()).map(f -> "*." + f.getExtension()).collect(Collectors.toList())));
+    Arrays.stream(ItemListFormat.values())
+        .forEach(f -> fileChooser.getExtensionFilters().add(new ExtensionFilter(f.getDescription(), "*." + f.getExtension())));
 
     File file = fileChooser.showOpenDialog(table.getScene().getWindow());
     if (file != null) {
@@ -273,6 +399,69 @@ public class EventsViewPresenter implements Initializable {
     }
   }
 
+  @FXML
+  void toggleRecording() {
+    if (recorder != null) {
+      stopRecording();
+      return;
+    }
+    FileChooser fileChooser = new FileChooser();
+    fileChooser.setTitle(rb.getString("events.record.title"));
+    fileChooser.setInitialDirectory(Paths.get(System.getProperty("user.home")).toFile());
+    fileChooser.getExtensionFilters().addAll(new ExtensionFilter("Recording Files", "*.rec"));
+    fileChooser.setInitialFileName("values.rec");
+    File file = fileChooser.showSaveDialog(table.getScene().getWindow());
+    if (file == null) {
+      return;
+    }
+    try {
+      recorder = ValueRecorder.create(file.toPath());
+    } catch (IOException e) {
+      logger.error(e.getMessage(), e);
+      state.statusTextProperty().set("recording failed: " + e.getMessage());
+      return;
+    }
+    ValueRecorder r = recorder;
+    r.setOnFailure(e -> Platform.runLater(() -> recordingFailed(r, e)));
+    monitoredItems.forEach(e -> e.setRecorder(recorder));
+    recordItem.setText(rb.getString("events.record.stop"));
+    state.statusTextProperty().set("recording to " + file);
+  }
+
+  /**
+   * Close an active recording on shutdown, the last block is written and the file is cut.
+   */
+  @PreDestroy
+  public void closeRecording() {
+    if (recorder != null) {
+      stopRecording();
+    }
+  }
+
+  /**
+   * A block write of the recording failed (e.g. disk full), the recorder closed itself.
+   */
+  private void recordingFailed(ValueRecorder failed, IOException e) {
+    logger.error("recording failed: {}", e.getMessage(), e);
+    if (recorder != failed) {
+      return;
+    }
+    stopRecording();
+    state.statusTextProperty().set(String.format("recording failed after %d samples: %s", failed.getSampleCount(), e.getMessage()));
+  }
+
+  private void stopRecording() {
+    monitoredItems.forEach(e -> e.setRecorder(null));
+    try {
+      recorder.close();
+      state.statusTextProperty().set(String.format("recording stopped (%d samples)", recorder.getSampleCount()));
+    } catch (IOException e) {
+      logger.error(e.getMessage(), e);
+    }
+    recorder = null;
+    recordItem.setText(rb.getString("events.record"));
+  }
+
   @FXML
   void showAttributes() {
     MonitoredEvent item = table.getSelectionModel().getSelectedItem();
@@ -282,6 +471,32 @@ public class EventsViewPresenter implements Initializable {
     state.showAttributeItemProperty().set(item.getReferenceDescription());
   }
 
+  @FXML
+  void editMonitoring() {
+    MonitoredEvent item = table.getSelectionModel().getSelectedItem();
+    if (item == null) {
+      return;
+    }
+    MonitoringDialog dialog = new MonitoringDialog(rb, item.getName(), item.getSpec());
+    dialog.initOwner(table.getScene().getWindow());
+    dialog.showAndWait().filter(spec -> !spec.equals(item.getSpec())).ifPresent(spec -> {
+      connection.modify(item.getSubscription(), item.getMonitoredItem(), spec).whenCompleteAsync((code, t) -> {
+        if (t != null) {
+          logger.error(t.getMessage(), t);
+          item.lasterrorProperty().set(t.getMessage());
+          return;
+        }
+        if (code.isGood()) {
+          item.specProperty().set(spec);
+          table.refresh();
+        } else {
+          item.lasterrorProperty().set(code.toString());
+        }
+        state.statusTextProperty().set(String.format("modify %s: %s", item.getName(), OpcUaConverter.toString(code)));
+      }, Platform::runLater);
+    });
+  }
+
   @FXML
   void removeAllItems() {
     if (!table.isFocused()) {
@@ -299,49 +514,75 @@ public class EventsViewPresenter implements Initializable {
     if (item == null) {
       return;
     }
-    connection.unsubscribe(item.getSubscription().getSubscriptionId(), item.getMonitoredItem()).whenCompleteAsync((s, t) -> monitoredItems.remove(item),
+    connection.unsubscribe(item.getSubscription(), item.getMonitoredItem()).whenCompleteAsync((s, t) -> monitoredItems.remove(item),
         Platform::runLater);
   }
 
 
-  private void exportItems(File file) {
-
-    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-      XmlEncoder encoder = new XmlEncoder();
-      encoder.setOutput(writer);
-      monitoredItems.stream().map(MonitoredEvent::getReferenceDescription).forEach(rd -> {
-        try {
-          writer.write("<ReferenceDescription>");
-          ReferenceDescription.encode(rd, encoder);
-          writer.write("</ReferenceDescription>");
-          writer.write(System.lineSeparator());
-        } catch (IOException e) {
-          logger.error(e.getMessage(), e);
+  /**
+   * Write the items on the connection executor.
+   *
+   * @param file target file
+   * @param format format if not given by the file extension
+   */
+  private void exportItems(File file, ItemListFormat format) {
+    List<Tuple2<ReferenceDescription, MonitoredItemSpec>> items =
+        monitoredItems.stream().map(e -> new Tuple2<>(e.getReferenceDescription(), e.getSpec())).collect(Collectors.toList());
+    CompletableFuture.supplyAsync(() -> {
+      ItemListFormat f;
+      try {
+        f = ItemListFormat.of(file.toPath());
+      } catch (IllegalArgumentException e) {
+        f = format;
+      }
+      try (ItemListWriter writer = ItemListWriter.create(file.toPath(), f)) {
+        for (Tuple2<ReferenceDescription, MonitoredItemSpec> item : items) {
+          writer.write(item.v1, item.v2);
         }
-      });
-      writer.flush();
-    } catch (IOException | XMLStreamException e) {
-      logger.error(e.getMessage(), e);
-    }
+        return writer.getCount();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, connection.getExecutor()).whenCompleteAsync((count, t) -> {
+      if (t != null) {
+        logger.error(t.getMessage(), t);
+        state.statusTextProperty().set("export failed: " + t.getMessage());
+      } else {
+        state.statusTextProperty().set(String.format("%d items exported to %s", count, file));
+      }
+    }, Platform::runLater);
   }
 
+  /**
+   * Read the items in chunks, the next chunk is read after the previous one is subscribed. The
+   * import stops if the connection is lost.
+   *
+   * @param file item list
+   */
   private void importItems(File file) {
-
-    List<ReferenceDescription> references = new ArrayList<>();
-    try (BufferedReader reader = Files.newBufferedReader(file.toPath())) {
-      reader.lines().filter(l -> l.startsWith("<ReferenceDescription>")).map(StringReader::new).forEach(r -> {
-        try {
-          XmlDecoder decoder = new XmlDecoder(r);
-          decoder.skipElement();
-          references.add(ReferenceDescription.decode(decoder));
-        } catch (Exception e) {
-          logger.error(e.getMessage(), e);
-        }
-      });
-    } catch (IOException e) {
+    ItemListReader reader;
+    try {
+      reader = ItemListReader.open(file.toPath());
+    } catch (IOException | IllegalArgumentException e) {
       logger.error(e.getMessage(), e);
+      state.statusTextProperty().set("import failed: " + e.getMessage());
+      return;
     }
-
-    subscribe(references);
+    reader.setErrorHandler((record, e) -> logger.warn("{} record {} skipped: {}", file, record, e.getMessage()));
+    AtomicLong subscribed = new AtomicLong();
+    reader.forEachChunk(IMPORT_CHUNK_SIZE, chunk -> CompletableFuture.supplyAsync(() -> {
+      state.statusTextProperty().set(String.format("importing %d items ...", reader.getCount()));
+      return subscribeItems(chunk);
+    }, Platform::runLater).thenCompose(f -> f).thenAccept(n -> subscribed.addAndGet(n)), connection.getExecutor()).whenCompleteAsync((count, t) -> {
+      if (t != null) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        logger.error(cause.getMessage(), cause);
+        state.statusTextProperty().set(String.format("import failed after %d items: %s", subscribed.get(), cause.getMessage()));
+      } else {
+        // items of a remote server or with a bad status are failed, malformed records are skipped
+        state.statusTextProperty().set(String.format("%d items imported, %d failed (%d malformed records skipped)", subscribed.get(),
+            count - subscribed.get(), reader.getErrorCount()));
+      }
+    }, Platform::runLater);
   }
 }
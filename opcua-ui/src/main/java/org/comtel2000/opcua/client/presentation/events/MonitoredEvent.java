@@ -13,18 +13,25 @@
  *******************************************************************************/
 package org.comtel2000.opcua.client.presentation.events;
 
+import java.io.UncheckedIOException;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+import org.comtel2000.opcua.client.service.MonitoredItemSpec;
 import org.comtel2000.opcua.client.service.OpcUaConverter;
+import org.comtel2000.opcua.client.service.ValueRecorder;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
 import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
 
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.StringProperty;
 
 public class MonitoredEvent implements Consumer<DataValue> {
@@ -33,12 +40,23 @@ public class MonitoredEvent implements Consumer<DataValue> {
   private ReadOnlyStringWrapper value;
   private ReadOnlyStringWrapper timestamp;
   private ReadOnlyStringWrapper lasterror;
+  private ReadOnlyStringWrapper publish;
+  private final ObjectProperty<MonitoredItemSpec> spec;
 
   private final ReferenceDescription reference;
   private final UaSubscription subsciption;
   private final UaMonitoredItem item;
 
+  private final AtomicReference<DataValue> latest = new AtomicReference<>();
+
+  private volatile ValueRecorder recorder;
+
   public MonitoredEvent(ReferenceDescription reference, UaSubscription subsciption, UaMonitoredItem item) {
+    this(reference, subsciption, item, MonitoredItemSpec.DEFAULT);
+  }
+
+  public MonitoredEvent(ReferenceDescription reference, UaSubscription subsciption, UaMonitoredItem item, MonitoredItemSpec spec) {
+    this.spec = new SimpleObjectProperty<>(Objects.requireNonNull(spec));
     this.reference = Objects.requireNonNull(reference);
     this.subsciption = Objects.requireNonNull(subsciption);
     this.item = Objects.requireNonNull(item);
@@ -52,13 +70,49 @@ public class MonitoredEvent implements Consumer<DataValue> {
     }
   }
 
+  /**
+   * Called by the subscription thread. Only the latest value is kept until the next
+   * {@link #flush()}, every value is passed to the active recorder. A recorder which failed to
+   * write is dropped, it reports the failure itself (see {@link ValueRecorder#setOnFailure}).
+   */
   @Override
   public void accept(DataValue v) {
-    timestampProperty().set(DateTimeFormatter.ISO_LOCAL_TIME.format(OpcUaConverter.toZonedDateTime(v.getSourceTime())));
+    latest.set(v);
+    ValueRecorder r = recorder;
+    if (r != null) {
+      try {
+        r.record(item.getClientHandle().intValue(), v);
+      } catch (UncheckedIOException e) {
+        recorder = null;
+      }
+    }
+  }
+
+  /**
+   * @param recorder recorder of all received values or {@code null} to stop recording
+   */
+  public void setRecorder(ValueRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  /**
+   * Format and publish the latest received value. Must be called on the FX application thread.
+   *
+   * @return {@code true} if a new value was published
+   */
+  public boolean flush() {
+    DataValue v = latest.getAndSet(null);
+    if (v == null) {
+      return false;
+    }
+    // the source timestamp is optional, fall back to the server timestamp
+    DateTime time = v.getSourceTime() != null ? v.getSourceTime() : v.getServerTime();
+    timestampProperty().set(time != null ? DateTimeFormatter.ISO_LOCAL_TIME.format(OpcUaConverter.toZonedDateTime(time)) : null);
     valueProperty().set(OpcUaConverter.toString(v.getValue()));
     if (!v.getStatusCode().isGood()) {
       lasterrorProperty().set(v.getStatusCode().toString());
     }
+    return true;
   }
 
   public String getName() {
@@ -105,6 +159,31 @@ public class MonitoredEvent implements Consumer<DataValue> {
     return lasterror;
   }
 
+  public String getPublish() {
+    return publishProperty().get();
+  }
+
+  /**
+   * @return publish statistics of the subscription
+   */
+  public StringProperty publishProperty() {
+    if (publish == null) {
+      publish = new ReadOnlyStringWrapper();
+    }
+    return publish;
+  }
+
+  public MonitoredItemSpec getSpec() {
+    return spec.get();
+  }
+
+  /**
+   * @return requested monitoring parameters of the item
+   */
+  public ObjectProperty<MonitoredItemSpec> specProperty() {
+    return spec;
+  }
+
   public ReferenceDescription getReferenceDescription() {
     return reference;
   }
@@ -13,6 +13,10 @@
  *******************************************************************************/
 package org.comtel2000.opcua.client.presentation.events;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
 import javafx.beans.Observable;
 import javafx.css.PseudoClass;
 import javafx.scene.control.TableRow;
@@ -26,6 +30,8 @@ public class MonitoredEventRowFactory<T extends MonitoredEvent> implements Callb
 
   private final Callback<TableView<T>, TableRow<T>> callbackFactory;
 
+  private final Set<TableRow<T>> rows = Collections.newSetFromMap(new WeakHashMap<>());
+
   public MonitoredEventRowFactory(Callback<TableView<T>, TableRow<T>> callbackFactory) {
     this.callbackFactory = callbackFactory;
   }
@@ -37,16 +43,34 @@ public class MonitoredEventRowFactory<T extends MonitoredEvent> implements Callb
   @Override
   public TableRow<T> call(TableView<T> tableView) {
     TableRow<T> row = callbackFactory != null ? callbackFactory.call(tableView) : new TableRow<>();
-    row.itemProperty().addListener((Observable observable) -> updateRowStyle(row));
+    row.itemProperty().addListener((Observable observable) -> {
+      if (row.getItem() != null) {
+        row.getItem().flush();
+      }
+      updateRowStyle(row);
+    });
+    rows.add(row);
     return row;
   }
 
+  /**
+   * Publish the latest values of the items shown by visible rows. Items of hidden rows keep their
+   * latest value until they get visible.
+   */
+  public void flushVisibleRows() {
+    for (TableRow<T> row : rows) {
+      T item = row.getItem();
+      if (item != null && row.isVisible() && item.flush()) {
+        updateRowStyle(row);
+      }
+    }
+  }
+
   private void updateRowStyle(TableRow<T> row) {
     if (row.getItem() == null) {
       return;
     }
     row.pseudoClassStateChanged(BAD_CLASS, row.getItem().getLastError() != null);
-    row.getItem().lasterrorProperty().addListener(l -> row.pseudoClassStateChanged(BAD_CLASS, row.getItem().getLastError() != null));
   }
 
 }
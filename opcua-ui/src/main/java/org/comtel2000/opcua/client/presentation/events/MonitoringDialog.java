@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.presentation.events;
+
+import java.util.ResourceBundle;
+
+import org.comtel2000.opcua.client.service.MonitoredItemSpec;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+
+import javafx.event.ActionEvent;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+
+/**
+ * Edit the {@link MonitoredItemSpec} of a monitored item.
+ *
+ * @author comtel
+ *
+ */
+public class MonitoringDialog extends Dialog<MonitoredItemSpec> {
+
+  private final TextField samplingInterval = new TextField();
+
+  private final Spinner<Integer> queueSize = new Spinner<>(1, Integer.MAX_VALUE, 1);
+
+  private final CheckBox discardOldest = new CheckBox();
+
+  private final ComboBox<DataChangeTrigger> trigger = new ComboBox<>();
+
+  private final ComboBox<DeadbandType> deadbandType = new ComboBox<>();
+
+  private final TextField deadbandValue = new TextField();
+
+  private final Label error = new Label();
+
+  public MonitoringDialog(ResourceBundle rb, String name, MonitoredItemSpec spec) {
+    setTitle(rb.getString("events.monitoring.title"));
+    setHeaderText(name);
+
+    samplingInterval.setPromptText(rb.getString("events.monitoring.publish"));
+    if (spec.getSamplingInterval() >= 0) {
+      samplingInterval.setText(Double.toString(spec.getSamplingInterval()));
+    }
+    queueSize.setEditable(true);
+    queueSize.getValueFactory().setValue(spec.getQueueSize());
+    discardOldest.setSelected(spec.isDiscardOldest());
+    trigger.getItems().addAll(DataChangeTrigger.values());
+    trigger.setValue(spec.getTrigger());
+    deadbandType.getItems().addAll(DeadbandType.values());
+    deadbandType.setValue(spec.getDeadbandType());
+    deadbandValue.setText(Double.toString(spec.getDeadbandValue()));
+    deadbandValue.disableProperty().bind(deadbandType.valueProperty().isEqualTo(DeadbandType.None));
+    error.setStyle("-fx-text-fill: red;");
+
+    GridPane grid = new GridPane();
+    grid.setHgap(10);
+    grid.setVgap(5);
+    int row = 0;
+    grid.addRow(row++, new Label(rb.getString("events.monitoring.sampling")), samplingInterval);
+    grid.addRow(row++, new Label(rb.getString("events.monitoring.queue")), queueSize);
+    grid.addRow(row++, new Label(rb.getString("events.monitoring.discard")), discardOldest);
+    grid.addRow(row++, new Label(rb.getString("events.monitoring.trigger")), trigger);
+    grid.addRow(row++, new Label(rb.getString("events.monitoring.deadband")), deadbandType);
+    grid.addRow(row++, new Label(rb.getString("events.monitoring.deadband.value")), deadbandValue);
+    grid.add(error, 0, row, 2, 1);
+    getDialogPane().setContent(grid);
+    getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+    // keep the dialog open on invalid input
+    getDialogPane().lookupButton(ButtonType.OK).addEventFilter(ActionEvent.ACTION, event -> {
+      try {
+        build();
+        error.setText(null);
+      } catch (IllegalArgumentException e) {
+        error.setText(e.getMessage());
+        event.consume();
+      }
+    });
+    setResultConverter(button -> button == ButtonType.OK ? build() : null);
+  }
+
+  private MonitoredItemSpec build() {
+    MonitoredItemSpec.Builder builder = MonitoredItemSpec.builder();
+    String interval = samplingInterval.getText();
+    builder.setSamplingInterval(interval == null || interval.trim().isEmpty() ? MonitoredItemSpec.PUBLISHING_INTERVAL : parse(interval));
+    builder.setQueueSize(queueSize.getValue());
+    builder.setDiscardOldest(discardOldest.isSelected());
+    builder.setTrigger(trigger.getValue());
+    DeadbandType type = deadbandType.getValue();
+    builder.setDeadband(type, type == DeadbandType.None ? 0.0 : parse(deadbandValue.getText()));
+    return builder.build();
+  }
+
+  private static double parse(String text) {
+    try {
+      return Double.parseDouble(text.trim());
+    } catch (NullPointerException | NumberFormatException e) {
+      throw new IllegalArgumentException("invalid number: " + text);
+    }
+  }
+}
@@ -0,0 +1,732 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local address space cache of one server, identified by the endpoint url and the namespace array.
+ * Browse results and static node attributes are kept in memory and appended to a binary file, a
+ * new connection to the same server serves the tree and the attributes from disk. Entries loaded
+ * from disk are unverified, the first lookup of an unverified entry requests its revalidation by
+ * {@link #revalidate(OpcUaClientConnector, Consumer)}, so only the shown parts of the address space
+ * are browsed and read again.
+ * <p>
+ * File layout: header (magic, version, endpoint url, namespace array) followed by length prefixed
+ * records. A later record of the same node supersedes an earlier one.
+ *
+ * @author comtel
+ *
+ */
+public class AddressSpaceCache implements Closeable {
+
+  protected final static Logger logger = LoggerFactory.getLogger(AddressSpaceCache.class);
+
+  private final static int MAGIC = 0x4F554143;
+  private final static short VERSION = 2;
+
+  private final static byte RECORD_REFERENCES = 1;
+  private final static byte RECORD_ATTRIBUTES = 2;
+  private final static byte RECORD_REMOVE = 3;
+
+  private final static int COMPACT_THRESHOLD = 1024;
+
+  private final Path file;
+
+  private final String endpointUrl;
+
+  private final String[] namespaces;
+
+  private final Map<BrowseKey, ReferenceDescription[]> references = new ConcurrentHashMap<>();
+
+  private final Map<NodeId, Map<UInteger, DataValue>> attributes = new ConcurrentHashMap<>();
+
+  /** loaded from disk and not looked up yet */
+  private final Set<BrowseKey> unverifiedReferences = ConcurrentHashMap.newKeySet();
+
+  private final Set<NodeId> unverifiedAttributes = ConcurrentHashMap.newKeySet();
+
+  /** looked up and waiting for the revalidation */
+  private final Set<BrowseKey> requestedReferences = ConcurrentHashMap.newKeySet();
+
+  private final Set<NodeId> requestedAttributes = ConcurrentHashMap.newKeySet();
+
+  private final ExecutorService writer;
+
+  /** guarded by this, no writer task is submitted after close */
+  private boolean closed;
+
+  private DataOutputStream out;
+
+  private int records;
+
+  private AddressSpaceCache(Path file, String endpointUrl, String[] namespaces) {
+    this.file = file;
+    this.endpointUrl = endpointUrl;
+    this.namespaces = namespaces;
+    this.writer = Executors.newSingleThreadExecutor(r -> {
+      Thread th = new Thread(r);
+      th.setName("address-space-cache-" + th.getId());
+      th.setDaemon(true);
+      return th;
+    });
+  }
+
+  /**
+   * Cache directory configured by the system property {@code opcua.cache.dir} (default:
+   * {@code ~/.opcua-client/cache}).
+   *
+   * @return cache directory
+   */
+  public static Path getDefaultDirectory() {
+    String dir = System.getProperty("opcua.cache.dir");
+    return dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".opcua-client", "cache");
+  }
+
+  /**
+   * Open (or create) the cache file of the server.
+   *
+   * @param dir cache directory
+   * @param endpointUrl endpoint url of the server
+   * @param namespaces namespace array of the server
+   * @return opened cache
+   * @throws IOException if the file can not be created
+   */
+  public static AddressSpaceCache open(Path dir, String endpointUrl, String[] namespaces) throws IOException {
+    Files.createDirectories(dir);
+    AddressSpaceCache cache = new AddressSpaceCache(dir.resolve(toFileName(endpointUrl, namespaces)), endpointUrl, namespaces);
+    cache.load();
+    return cache;
+  }
+
+  private static String toFileName(String endpointUrl, String[] namespaces) {
+    return fileKey(endpointUrl, namespaces) + ".cache";
+  }
+
+  /**
+   * @param endpointUrl endpoint url of the server
+   * @param namespaces namespace array of the server
+   * @return hex encoded SHA-1 of the url and the namespaces
+   */
+  static String fileKey(String endpointUrl, String[] namespaces) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      md.update(endpointUrl.getBytes(StandardCharsets.UTF_8));
+      for (String ns : namespaces) {
+        md.update((byte) 0);
+        md.update(String.valueOf(ns).getBytes(StandardCharsets.UTF_8));
+      }
+      StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest()) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void load() throws IOException {
+    long valid = 0;
+    if (Files.exists(file)) {
+      long size = Files.size(file);
+      try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+        DataInputStream in = new DataInputStream(is);
+        if (readHeader(in)) {
+          valid = headerSize();
+          while (true) {
+            int length;
+            try {
+              length = in.readInt();
+            } catch (EOFException e) {
+              break;
+            }
+            if (length < 0 || valid + 4 + length > size) {
+              throw new EOFException();
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            apply(new DataInputStream(new ByteArrayInputStream(record)));
+            valid += 4 + length;
+            records++;
+          }
+        } else {
+          logger.info("reset address space cache: {}", file);
+        }
+      } catch (EOFException e) {
+        logger.warn("truncated address space cache record: {}", file);
+      } catch (IOException e) {
+        logger.warn("corrupt address space cache {}: {}", file, e.getMessage());
+      }
+    }
+    if (valid == 0) {
+      references.clear();
+      attributes.clear();
+      records = 0;
+      writeNewFile(file);
+    } else {
+      try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+        if (raf.length() > valid) {
+          raf.setLength(valid);
+        }
+      }
+    }
+    unverifiedReferences.addAll(references.keySet());
+    unverifiedAttributes.addAll(attributes.keySet());
+    logger.info("address space cache {} loaded: {} browse results, {} attribute sets", file.getFileName(), references.size(), attributes.size());
+    if (records > COMPACT_THRESHOLD && records > 2 * (references.size() + attributes.size())) {
+      compact();
+    }
+    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+  }
+
+  private boolean readHeader(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC || in.readShort() != VERSION || !endpointUrl.equals(BinaryCodec.readString(in))) {
+      return false;
+    }
+    String[] ns = new String[in.readInt()];
+    for (int i = 0; i < ns.length; i++) {
+      ns[i] = BinaryCodec.readString(in);
+    }
+    return Arrays.equals(ns, namespaces);
+  }
+
+  private byte[] header() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    dos.writeInt(MAGIC);
+    dos.writeShort(VERSION);
+    BinaryCodec.writeString(dos, endpointUrl);
+    dos.writeInt(namespaces.length);
+    for (String ns : namespaces) {
+      BinaryCodec.writeString(dos, ns);
+    }
+    dos.flush();
+    return bos.toByteArray();
+  }
+
+  private long headerSize() throws IOException {
+    return header().length;
+  }
+
+  private void apply(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    NodeId node = BinaryCodec.readNodeId(in);
+    switch (type) {
+      case RECORD_REFERENCES:
+        int mask = in.readInt();
+        ReferenceDescription[] refs = new ReferenceDescription[in.readInt()];
+        for (int i = 0; i < refs.length; i++) {
+          refs[i] = BinaryCodec.readReference(in);
+        }
+        references.put(new BrowseKey(node, mask), refs);
+        break;
+      case RECORD_ATTRIBUTES:
+        Map<UInteger, DataValue> values = new HashMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          values.put(uint(in.readInt() & 0xFFFFFFFFL), BinaryCodec.readDataValue(in));
+        }
+        attributes.put(node, values);
+        break;
+      case RECORD_REMOVE:
+        references.keySet().removeIf(k -> k.node.equals(node));
+        attributes.remove(node);
+        break;
+      default:
+        throw new IOException("unknown record type: " + type);
+    }
+  }
+
+  private void writeNewFile(Path target) throws IOException {
+    try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(target))) {
+      os.write(header());
+    }
+  }
+
+  /**
+   * Rewrite the file with the live entries only.
+   */
+  private void compact() throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    writeNewFile(tmp);
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp, StandardOpenOption.APPEND)))) {
+      for (Map.Entry<BrowseKey, ReferenceDescription[]> e : references.entrySet()) {
+        writeRecord(dos, encodeReferences(e.getKey().node, e.getKey().mask, e.getValue()));
+      }
+      for (Map.Entry<NodeId, Map<UInteger, DataValue>> e : attributes.entrySet()) {
+        writeRecord(dos, encodeAttributes(e.getKey(), e.getValue()));
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    records = references.size() + attributes.size();
+    logger.debug("address space cache compacted: {}", file);
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public String getEndpointUrl() {
+    return endpointUrl;
+  }
+
+  /**
+   * @param node browsed node
+   * @param nodeClassMask node class filter of the browse
+   * @return cached references or {@code null}
+   */
+  public ReferenceDescription[] getReferences(NodeId node, UInteger nodeClassMask) {
+    BrowseKey key = new BrowseKey(node, nodeClassMask.intValue());
+    ReferenceDescription[] refs = references.get(key);
+    if (refs != null && unverifiedReferences.remove(key)) {
+      requestedReferences.add(key);
+    }
+    return refs;
+  }
+
+  /**
+   * Store the complete browse result of the node. Results with non local references are ignored.
+   *
+   * @param node browsed node
+   * @param nodeClassMask node class filter of the browse
+   * @param refs all references of the node
+   */
+  public void putReferences(NodeId node, UInteger nodeClassMask, ReferenceDescription[] refs) {
+    if (!Arrays.stream(refs).allMatch(BinaryCodec::isSupported)) {
+      return;
+    }
+    int mask = nodeClassMask.intValue();
+    ReferenceDescription[] copy = refs.clone();
+    BrowseKey key = new BrowseKey(node, mask);
+    references.put(key, copy);
+    unverifiedReferences.remove(key);
+    requestedReferences.remove(key);
+    append(() -> encodeReferences(node, mask, copy));
+  }
+
+  /**
+   * @param attributeId attribute id
+   * @return {@code true} if the attribute is cacheable (not the value or user specific)
+   */
+  public static boolean isStatic(UInteger attributeId) {
+    int id = attributeId.intValue();
+    return id != AttributeId.Value.id() && id != AttributeId.UserAccessLevel.id() && id != AttributeId.UserWriteMask.id()
+        && id != AttributeId.UserExecutable.id();
+  }
+
+  /**
+   * @param node node
+   * @param attributeId static attribute id
+   * @return cached value or {@code null}
+   */
+  public DataValue getAttribute(NodeId node, UInteger attributeId) {
+    Map<UInteger, DataValue> values = attributes.get(node);
+    DataValue value = values != null ? values.get(attributeId) : null;
+    if (value != null && unverifiedAttributes.remove(node)) {
+      requestedAttributes.add(node);
+    }
+    return value;
+  }
+
+  /**
+   * Merge the static attributes with a good status of the read result into the cache.
+   *
+   * @param node node
+   * @param attributeIds read attributes
+   * @param values read result
+   */
+  public void putAttributes(NodeId node, List<UInteger> attributeIds, List<DataValue> values) {
+    boolean[] changed = new boolean[1];
+    // copy on write, readers never see a map in change
+    attributes.compute(node, (n, current) -> {
+      Map<UInteger, DataValue> merged = current != null ? new HashMap<>(current) : new HashMap<>();
+      for (int i = 0; i < attributeIds.size() && i < values.size(); i++) {
+        UInteger id = attributeIds.get(i);
+        DataValue value = values.get(i);
+        if (isStatic(id) && value != null && isGood(value) && BinaryCodec.isSupported(value)) {
+          DataValue old = merged.put(id, new DataValue(value.getValue(), value.getStatusCode()));
+          changed[0] |= old == null || !Objects.equals(old.getValue().getValue(), value.getValue().getValue());
+        }
+      }
+      return changed[0] ? merged : current;
+    });
+    if (changed[0]) {
+      // encode the latest merge at write time, a concurrent put of the node is not lost on disk
+      append(() -> {
+        Map<UInteger, DataValue> latest = attributes.get(node);
+        return latest != null ? encodeAttributes(node, latest) : null;
+      });
+    }
+  }
+
+  private static boolean isGood(DataValue value) {
+    return value.getStatusCode() == null || value.getStatusCode().isGood();
+  }
+
+  /**
+   * Remove all entries of the node.
+   *
+   * @param node node
+   */
+  public void remove(NodeId node) {
+    boolean removed = references.keySet().removeIf(k -> k.node.equals(node));
+    removed |= attributes.remove(node) != null;
+    unverifiedAttributes.remove(node);
+    requestedAttributes.remove(node);
+    if (removed) {
+      append(() -> {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(RECORD_REMOVE);
+        BinaryCodec.writeNodeId(dos, node);
+        return bos.toByteArray();
+      });
+    }
+  }
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    references.clear();
+    attributes.clear();
+    unverifiedReferences.clear();
+    unverifiedAttributes.clear();
+    requestedReferences.clear();
+    requestedAttributes.clear();
+    submit(() -> {
+      try {
+        out.close();
+        writeNewFile(file);
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+        records = 0;
+      } catch (IOException e) {
+        logger.error(e.getMessage(), e);
+      }
+    });
+  }
+
+  public int size() {
+    return references.size() + attributes.size();
+  }
+
+  /**
+   * @return {@code true} if looked up entries wait for {@link #revalidate(OpcUaClientConnector, Consumer)}
+   */
+  public boolean isRevalidationRequested() {
+    return !requestedReferences.isEmpty() || !requestedAttributes.isEmpty();
+  }
+
+  /**
+   * Browse and read the requested entries (unverified entries which were looked up) again and
+   * replace stale entries. Runs with one outstanding service call at a time to keep the load on
+   * the server low. An entry of an unknown node is removed, an entry which can not be validated
+   * (i.e. timeout) is requested again on its next lookup.
+   *
+   * @param connector connected client
+   * @param onChanged notified with every node whose cached entry was replaced or removed
+   * @return completed after the requested entries are validated
+   */
+  public CompletableFuture<Void> revalidate(OpcUaClientConnector connector, Consumer<NodeId> onChanged) {
+    List<BrowseKey> keys = drain(requestedReferences);
+    List<NodeId> nodes = drain(requestedAttributes);
+    if (keys.isEmpty() && nodes.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    long start = System.currentTimeMillis();
+    return connector.getOperationLimits().thenCompose(limits -> revalidateReferences(connector, keys, limits.getMaxNodesPerBrowse(), onChanged)
+        .thenCompose(v -> revalidateAttributes(connector, nodes, limits.getMaxNodesPerRead(), onChanged))).thenRun(() -> {
+          logger.debug("{} browse results, {} attribute sets revalidated in {} ms", keys.size(), nodes.size(), System.currentTimeMillis() - start);
+        });
+  }
+
+  private static <T> List<T> drain(Set<T> set) {
+    List<T> list = new ArrayList<>(set);
+    set.removeAll(list);
+    return list;
+  }
+
+  private static boolean isUnknownNode(StatusCode status) {
+    long code = status.getValue() & 0xFFFF0000L;
+    return code == StatusCodes.Bad_NodeIdUnknown || code == StatusCodes.Bad_NodeIdInvalid;
+  }
+
+  private CompletableFuture<Void> revalidateReferences(OpcUaClientConnector connector, List<BrowseKey> keys, int chunkSize, Consumer<NodeId> onChanged) {
+    return RequestChunker.<BrowseKey, BrowseResult>forEach(keys, chunkSize, 1,
+        chunk -> connector.browseAll(chunk.stream().map(k -> connector.getHierarchicalBrowseDescription(k.node, uint(k.mask))).collect(Collectors.toList())),
+        (from, results, t) -> {
+          if (t != null) {
+            logger.warn("revalidate browse failed: {}", t.getMessage());
+            keys.subList(from, Math.min(from + Math.max(1, chunkSize), keys.size())).forEach(this::unverified);
+            return;
+          }
+          for (int i = 0; i < results.size(); i++) {
+            BrowseKey key = keys.get(from + i);
+            BrowseResult r = results.get(i);
+            if (isUnknownNode(r.getStatusCode())) {
+              remove(key.node);
+              onChanged.accept(key.node);
+            } else if (r.getStatusCode().isBad()) {
+              unverified(key);
+            } else {
+              ReferenceDescription[] refs = r.getReferences() != null ? r.getReferences() : new ReferenceDescription[0];
+              if (!equals(references.get(key), refs)) {
+                putReferences(key.node, uint(key.mask), refs);
+                onChanged.accept(key.node);
+              }
+            }
+          }
+        });
+  }
+
+  private CompletableFuture<Void> revalidateAttributes(OpcUaClientConnector connector, List<NodeId> nodes, int chunkSize, Consumer<NodeId> onChanged) {
+    List<ReadValueId> ids = new ArrayList<>();
+    for (NodeId node : nodes) {
+      attributes.getOrDefault(node, Collections.emptyMap()).keySet().forEach(a -> ids.add(new ReadValueId(node, a, null, QualifiedName.NULL_VALUE)));
+    }
+    return RequestChunker.<ReadValueId, DataValue>forEach(ids, chunkSize, 1, chunk -> connector.getReadBatcher().submit(chunk), (from, results, t) -> {
+      if (t != null) {
+        logger.warn("revalidate attributes failed: {}", t.getMessage());
+        ids.subList(from, Math.min(from + Math.max(1, chunkSize), ids.size())).forEach(id -> unverified(id.getNodeId()));
+        return;
+      }
+      Map<NodeId, List<UInteger>> changedIds = new HashMap<>();
+      Map<NodeId, List<DataValue>> changedValues = new HashMap<>();
+      Set<NodeId> removed = new HashSet<>();
+      for (int i = 0; i < results.size(); i++) {
+        ReadValueId id = ids.get(from + i);
+        DataValue value = results.get(i);
+        if (isUnknownNode(value.getStatusCode())) {
+          removed.add(id.getNodeId());
+          continue;
+        }
+        if (!isGood(value)) {
+          unverified(id.getNodeId());
+          continue;
+        }
+        Map<UInteger, DataValue> values = attributes.get(id.getNodeId());
+        DataValue cached = values != null ? values.get(id.getAttributeId()) : null;
+        if (cached == null || !Objects.equals(cached.getValue().getValue(), value.getValue().getValue())) {
+          changedIds.computeIfAbsent(id.getNodeId(), n -> new ArrayList<>()).add(id.getAttributeId());
+          changedValues.computeIfAbsent(id.getNodeId(), n -> new ArrayList<>()).add(value);
+        }
+      }
+      removed.forEach(node -> {
+        remove(node);
+        onChanged.accept(node);
+      });
+      changedIds.forEach((node, attrs) -> {
+        if (!removed.contains(node)) {
+          putAttributes(node, attrs, changedValues.get(node));
+          onChanged.accept(node);
+        }
+      });
+    });
+  }
+
+  /**
+   * Request the revalidation of the entry again on its next lookup.
+   */
+  private void unverified(BrowseKey key) {
+    if (references.containsKey(key)) {
+      unverifiedReferences.add(key);
+    }
+  }
+
+  private void unverified(NodeId node) {
+    if (attributes.containsKey(node)) {
+      unverifiedAttributes.add(node);
+    }
+  }
+
+  private static boolean equals(ReferenceDescription[] a, ReferenceDescription[] b) {
+    if (a == null || b == null || a.length != b.length) {
+      return false;
+    }
+    try {
+      return Arrays.equals(encodeReferences(NodeId.NULL_VALUE, 0, a), encodeReferences(NodeId.NULL_VALUE, 0, b));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static byte[] encodeReferences(NodeId node, int mask, ReferenceDescription[] refs) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + refs.length * 64);
+    DataOutputStream dos = new DataOutputStream(bos);
+    dos.writeByte(RECORD_REFERENCES);
+    BinaryCodec.writeNodeId(dos, node);
+    dos.writeInt(mask);
+    dos.writeInt(refs.length);
+    for (ReferenceDescription ref : refs) {
+      BinaryCodec.writeReference(dos, ref);
+    }
+    return bos.toByteArray();
+  }
+
+  private static byte[] encodeAttributes(NodeId node, Map<UInteger, DataValue> values) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    dos.writeByte(RECORD_ATTRIBUTES);
+    BinaryCodec.writeNodeId(dos, node);
+    dos.writeInt(values.size());
+    for (Map.Entry<UInteger, DataValue> e : values.entrySet()) {
+      dos.writeInt(e.getKey().intValue());
+      BinaryCodec.writeDataValue(dos, e.getValue());
+    }
+    return bos.toByteArray();
+  }
+
+  private static void writeRecord(DataOutputStream dos, byte[] record) throws IOException {
+    dos.writeInt(record.length);
+    dos.write(record);
+  }
+
+  @FunctionalInterface
+  private interface RecordEncoder {
+    byte[] encode() throws IOException;
+  }
+
+  /**
+   * @param encoder encoder of the record, a {@code null} record is skipped
+   */
+  private void append(RecordEncoder encoder) {
+    submit(() -> {
+      try {
+        byte[] record = encoder.encode();
+        if (record != null) {
+          writeRecord(out, record);
+          records++;
+          out.flush();
+        }
+      } catch (IOException e) {
+        logger.error("write address space cache failed: {}", e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Run the task on the writer thread, ignored after {@link #close()}.
+   */
+  private synchronized void submit(Runnable task) {
+    if (!closed) {
+      writer.execute(task);
+    }
+  }
+
+  /**
+   * Close the file after the pending records are written.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      writer.execute(() -> {
+        try {
+          out.close();
+        } catch (IOException e) {
+          logger.error(e.getMessage(), e);
+        }
+      });
+      writer.shutdown();
+    }
+    try {
+      if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+        logger.warn("address space cache not closed in time: {}", file);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private final static class BrowseKey {
+    final NodeId node;
+    final int mask;
+
+    BrowseKey(NodeId node, int mask) {
+      this.node = node;
+      this.mask = mask;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * node.hashCode() + mask;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof BrowseKey)) {
+        return false;
+      }
+      BrowseKey other = (BrowseKey) obj;
+      return mask == other.mask && node.equals(other.node);
+    }
+  }
+}
@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Headless breadth-first crawler of the server address space. Many nodes are browsed with one
+ * Browse request (same browse description as
+ * {@link OpcUaClientConnector#getHierarchicalReferences(NodeId, UInteger)}), a configurable
+ * number of requests is outstanding and continuation points are followed with BrowseNext.
+ * Discovered nodes are passed to the {@link Sink} and not kept, only a compact visited set and the
+ * current frontier are held in memory.
+ * <p>
+ * Every browsed node may leave a continuation point open on the server. The nodes of outstanding
+ * requests and the open continuation points are limited by
+ * {@link #setMaxContinuationPoints(int)}. Nodes rejected with {@code Bad_NoContinuationPoints} are
+ * browsed again and the limit is lowered to the continuation points held at the time.
+ *
+ * @author comtel
+ *
+ */
+public class AddressSpaceCrawler {
+
+  protected final static Logger logger = LoggerFactory.getLogger(AddressSpaceCrawler.class);
+
+  public final static int DEFAULT_MAX_OUTSTANDING = 4;
+
+  public final static int DEFAULT_MAX_REFERENCES_PER_NODE = 1000;
+
+  public final static int DEFAULT_MAX_CONTINUATION_POINTS = 50;
+
+  /** max browse attempts of a node rejected with Bad_NoContinuationPoints */
+  private final static int MAX_RETRIES = 3;
+
+  /**
+   * Receives every discovered node once. Calls are serialized.
+   */
+  @FunctionalInterface
+  public interface Sink {
+
+    /**
+     * @param parent browsed node
+     * @param ref reference to the discovered node
+     */
+    void onNode(NodeId parent, ReferenceDescription ref);
+  }
+
+  private final OpcUaClientConnector connector;
+
+  private final Sink sink;
+
+  private int maxOutstanding = DEFAULT_MAX_OUTSTANDING;
+
+  private int nodesPerRequest;
+
+  private int maxReferencesPerNode = DEFAULT_MAX_REFERENCES_PER_NODE;
+
+  private int maxContinuationPoints = DEFAULT_MAX_CONTINUATION_POINTS;
+
+  private UInteger nodeClassMask = uint(NodeClass.Object.getValue() | NodeClass.Variable.getValue() | NodeClass.Method.getValue()
+      | NodeClass.ObjectType.getValue() | NodeClass.VariableType.getValue() | NodeClass.ReferenceType.getValue() | NodeClass.DataType.getValue()
+      | NodeClass.View.getValue());
+
+  private final ArrayDeque<NodeId> frontier = new ArrayDeque<>();
+
+  private final ArrayDeque<Tuple2<NodeId, ByteString>> continuations = new ArrayDeque<>();
+
+  /** numeric node ids: namespace index (high) and identifier (low) */
+  private final LongHashSet visitedNumeric = new LongHashSet(1 << 16);
+
+  private final Set<NodeId> visitedOther = new HashSet<>();
+
+  private final Map<NodeId, Integer> retries = new HashMap<>();
+
+  private final CompletableFuture<Long> done = new CompletableFuture<>();
+
+  private int outstanding;
+
+  /** nodes of the outstanding requests, each may return a continuation point */
+  private int outstandingNodes;
+
+  private long discovered;
+
+  private long failed;
+
+  private long retried;
+
+  /**
+   * @param connector connected client
+   * @param sink receiver of the discovered nodes
+   */
+  public AddressSpaceCrawler(OpcUaClientConnector connector, Sink sink) {
+    this.connector = connector;
+    this.sink = sink;
+  }
+
+  /**
+   * Sink writing one line per node: parent;nodeId;nodeClass;browseName;displayName. Values with a
+   * ';', a quote or a line break are quoted like the CSV {@link ItemListFormat}.
+   *
+   * @param writer output
+   * @return file sink
+   */
+  public static Sink toWriter(Writer writer) {
+    StringBuilder sb = new StringBuilder(256);
+    return (parent, ref) -> {
+      sb.setLength(0);
+      ItemListFormat.appendCsvField(sb, parent.toParseableString());
+      ItemListFormat.appendCsvField(sb.append(';'), ref.getNodeId().toParseableString());
+      ItemListFormat.appendCsvField(sb.append(';'), String.valueOf(ref.getNodeClass()));
+      ItemListFormat.appendCsvField(sb.append(';'), ref.getBrowseName().toParseableString());
+      ItemListFormat.appendCsvField(sb.append(';'), String.valueOf(OpcUaConverter.toString(ref.getDisplayName())));
+      try {
+        writer.append(sb).append('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+  }
+
+  /**
+   * @param maxOutstanding max outstanding Browse/BrowseNext requests
+   * @return this
+   */
+  public AddressSpaceCrawler setMaxOutstanding(int maxOutstanding) {
+    this.maxOutstanding = Math.max(1, maxOutstanding);
+    return this;
+  }
+
+  /**
+   * @param nodesPerRequest nodes per Browse request (0: servers MaxNodesPerBrowse)
+   * @return this
+   */
+  public AddressSpaceCrawler setNodesPerRequest(int nodesPerRequest) {
+    this.nodesPerRequest = Math.max(0, nodesPerRequest);
+    return this;
+  }
+
+  /**
+   * @param maxReferencesPerNode requested max references per node and request
+   * @return this
+   */
+  public AddressSpaceCrawler setMaxReferencesPerNode(int maxReferencesPerNode) {
+    this.maxReferencesPerNode = Math.max(0, maxReferencesPerNode);
+    return this;
+  }
+
+  /**
+   * @param maxContinuationPoints max open continuation points, i.e. the servers
+   *        {@code MaxBrowseContinuationPoints}
+   * @return this
+   */
+  public AddressSpaceCrawler setMaxContinuationPoints(int maxContinuationPoints) {
+    this.maxContinuationPoints = Math.max(1, maxContinuationPoints);
+    return this;
+  }
+
+  /**
+   * @param nodeClassMask node classes to follow
+   * @return this
+   */
+  public AddressSpaceCrawler setNodeClassMask(UInteger nodeClassMask) {
+    this.nodeClassMask = nodeClassMask;
+    return this;
+  }
+
+  /**
+   * Start crawling. Cancel the returned future to stop.
+   *
+   * @param start start node, i.e. {@code Identifiers.RootFolder}
+   * @return number of discovered nodes
+   */
+  public CompletableFuture<Long> crawl(NodeId start) {
+    long begin = System.currentTimeMillis();
+    connector.getOperationLimits().whenComplete((limits, t) -> {
+      if (t != null) {
+        done.completeExceptionally(t);
+        return;
+      }
+      if (nodesPerRequest == 0) {
+        nodesPerRequest = limits.getMaxNodesPerBrowse();
+      }
+      synchronized (this) {
+        visit(start);
+        frontier.add(start);
+        pump();
+      }
+    });
+    done.whenComplete((count, t) -> logger.info("crawled {} nodes ({} failed) in {} ms", getDiscoveredCount(), getFailedCount(),
+        System.currentTimeMillis() - begin));
+    return done;
+  }
+
+  public synchronized long getDiscoveredCount() {
+    return discovered;
+  }
+
+  public synchronized long getFailedCount() {
+    return failed;
+  }
+
+  public synchronized int getFrontierSize() {
+    return frontier.size();
+  }
+
+  /**
+   * @return number of browse attempts repeated after {@code Bad_NoContinuationPoints}
+   */
+  public synchronized long getRetriedCount() {
+    return retried;
+  }
+
+  private boolean visit(NodeId node) {
+    Object id = node.getIdentifier();
+    if (id instanceof UInteger) {
+      return visitedNumeric.add(((long) node.getNamespaceIndex().intValue() << 32) | ((UInteger) id).longValue());
+    }
+    return visitedOther.add(node);
+  }
+
+  /**
+   * Send requests until the outstanding limit is reached. Continuation points first to release
+   * them on the server as soon as possible, new nodes only as many as continuation points are left.
+   */
+  private void pump() {
+    while (!done.isDone() && outstanding < maxOutstanding && (!continuations.isEmpty() || !frontier.isEmpty())) {
+      if (!continuations.isEmpty()) {
+        List<Tuple2<NodeId, ByteString>> batch = take(continuations, nodesPerRequest);
+        send(batch.size());
+        connector.browseNext(batch.stream().map(t -> t.v2).collect(Collectors.toList()))
+            .whenComplete((results, t) -> completed(batch.stream().map(b -> b.v1).collect(Collectors.toList()), results, t));
+      } else {
+        int free = maxContinuationPoints - outstandingNodes;
+        if (free <= 0) {
+          break;
+        }
+        List<NodeId> batch = take(frontier, Math.min(nodesPerRequest, free));
+        send(batch.size());
+        connector.browse(batch.stream().map(n -> connector.getHierarchicalBrowseDescription(n, nodeClassMask)).collect(Collectors.toList()),
+            uint(maxReferencesPerNode)).whenComplete((results, t) -> completed(batch, results, t));
+      }
+    }
+    if (outstanding == 0 && continuations.isEmpty() && frontier.isEmpty()) {
+      done.complete(discovered);
+    }
+  }
+
+  private void send(int nodes) {
+    outstanding++;
+    outstandingNodes += nodes;
+  }
+
+  private static <T> List<T> take(ArrayDeque<T> queue, int max) {
+    List<T> batch = new ArrayList<>(Math.min(queue.size(), max));
+    while (batch.size() < max && !queue.isEmpty()) {
+      batch.add(queue.poll());
+    }
+    return batch;
+  }
+
+  private synchronized void completed(List<NodeId> parents, List<BrowseResult> results, Throwable t) {
+    outstanding--;
+    outstandingNodes -= parents.size();
+    if (done.isCancelled()) {
+      // release the continuation points of this and of all earlier results
+      if (results != null) {
+        results.stream().map(BrowseResult::getContinuationPoint).filter(cp -> cp != null && !cp.isNull())
+            .forEach(connector::releaseContinuationPoint);
+      }
+      continuations.forEach(c -> connector.releaseContinuationPoint(c.v2));
+      continuations.clear();
+      frontier.clear();
+      return;
+    }
+    if (t != null) {
+      logger.warn("browse of {} nodes failed: {}", parents.size(), t.getMessage());
+      failed += parents.size();
+    } else {
+      try {
+        for (int i = 0; i < results.size(); i++) {
+          accept(parents.get(i), results.get(i));
+        }
+      } catch (RuntimeException e) {
+        done.completeExceptionally(e);
+      }
+    }
+    pump();
+  }
+
+  private void accept(NodeId parent, BrowseResult result) {
+    if (result.getStatusCode().getValue() == StatusCodes.Bad_NoContinuationPoints) {
+      int attempts = retries.merge(parent, 1, Integer::sum);
+      if (attempts <= MAX_RETRIES) {
+        // too many open continuation points, browse again with a lower limit
+        maxContinuationPoints = Math.max(1, Math.min(maxContinuationPoints, outstandingNodes + continuations.size()));
+        logger.debug("browse {} again: {}, max continuation points: {}", parent, result.getStatusCode(), maxContinuationPoints);
+        retried++;
+        frontier.add(parent);
+        return;
+      }
+    }
+    if (!retries.isEmpty()) {
+      retries.remove(parent);
+    }
+    if (result.getStatusCode().isBad()) {
+      logger.debug("browse {} failed: {}", parent, result.getStatusCode());
+      failed++;
+      return;
+    }
+    ByteString cp = result.getContinuationPoint();
+    if (cp != null && !cp.isNull()) {
+      continuations.add(new Tuple2<>(parent, cp));
+    }
+    if (result.getReferences() == null) {
+      return;
+    }
+    for (ReferenceDescription ref : result.getReferences()) {
+      if (ref.getNodeId() == null || !ref.getNodeId().isLocal()) {
+        continue;
+      }
+      NodeId node = ref.getNodeId().local().get();
+      if (visit(node)) {
+        discovered++;
+        sink.onNode(parent, ref);
+        frontier.add(node);
+      }
+    }
+  }
+}
@@ -0,0 +1,638 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager.SubscriptionListener;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemModifyRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects subscribe and unsubscribe requests for a short time window and sends them to the server
+ * with as few service calls as possible. One {@link UaSubscription} is kept per publishing interval
+ * and the monitored item requests are split by the servers {@code MaxMonitoredItemsPerCall} limit.
+ * <p>
+ * With sharding enabled ({@link #setSharding(int, int)}) the items of a publishing interval are
+ * spread by NodeId hash across several subscriptions and optionally several sessions, every shard
+ * has its own Publish pipeline and {@link SubscriptionSettings}.
+ *
+ * @author comtel
+ *
+ */
+public class BatchSubscriptionManager {
+
+  protected final static Logger logger = LoggerFactory.getLogger(BatchSubscriptionManager.class);
+
+  /** default collect window in milliseconds */
+  public final static long DEFAULT_WINDOW = 20;
+
+  private final OpcUaClientConnector connector;
+
+  private final ScheduledExecutorService scheduler;
+
+  /** publishing interval and shard */
+  private final Map<Tuple2<Double, Integer>, CompletableFuture<UaSubscription>> subscriptions = new ConcurrentHashMap<>();
+
+  /** session client of every created subscription */
+  private final Map<UaSubscription, UaClient> owners = new ConcurrentHashMap<>();
+
+  private final Map<UaSubscription, SubscriptionMetrics> metrics = new ConcurrentHashMap<>();
+
+  /** monitoring parameters of items created with a non default spec by client handle */
+  private final Map<UInteger, MonitoredItemSpec> specs = new ConcurrentHashMap<>();
+
+  private final LongAdder publishFailures = new LongAdder();
+
+  private final SubscriptionListener publishListener = new SubscriptionListener() {
+
+    @Override
+    public void onNotificationDataLost(UaSubscription subscription) {
+      SubscriptionMetrics m = metrics.get(subscription);
+      if (m != null) {
+        m.onDataLost();
+      }
+      logger.warn("notification data lost on subscriptionId: {}", subscription.getSubscriptionId());
+    }
+
+    @Override
+    public void onPublishFailure(UaException exception) {
+      publishFailures.increment();
+      logger.debug("publish failed: {}", exception.getMessage());
+    }
+  };
+
+  private final AtomicLong clientHandles = new AtomicLong();
+
+  private final Object lock = new Object();
+
+  private final List<PendingSubscribe> subscribeQueue = new ArrayList<>();
+
+  private final List<PendingUnsubscribe> unsubscribeQueue = new ArrayList<>();
+
+  private boolean flushScheduled;
+
+  private volatile long window = DEFAULT_WINDOW;
+
+  private volatile int shards = Math.max(1, Integer.getInteger("opcua.subscription.shards", 1));
+
+  private volatile int sessions = Math.max(1, Integer.getInteger("opcua.subscription.sessions", 1));
+
+  private volatile BiFunction<Double, Integer, SubscriptionSettings> shardSettings = (interval, shard) -> SubscriptionSettings.forInterval(interval);
+
+  public BatchSubscriptionManager(OpcUaClientConnector connector) {
+    this.connector = connector;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread th = new Thread(r);
+      th.setName("subscription-batch-" + th.getId());
+      th.setDaemon(true);
+      return th;
+    });
+  }
+
+  /**
+   * Set the time window to collect requests before they are send to the server
+   *
+   * @param window collect window in milliseconds
+   */
+  public void setWindow(long window) {
+    this.window = Math.max(0, window);
+  }
+
+  public long getWindow() {
+    return window;
+  }
+
+  /**
+   * Spread the items of every publishing interval across {@code shards x sessions} subscriptions
+   * by NodeId hash (default: system properties {@code opcua.subscription.shards} and
+   * {@code opcua.subscription.sessions} or 1). Session 0 is the client of the connector, the other
+   * sessions are opened on demand. Takes effect for new items.
+   *
+   * @param shards subscriptions per publishing interval and session
+   * @param sessions sessions
+   */
+  public void setSharding(int shards, int sessions) {
+    this.shards = Math.max(1, shards);
+    this.sessions = Math.max(1, sessions);
+  }
+
+  public int getShards() {
+    return shards;
+  }
+
+  public int getSessions() {
+    return sessions;
+  }
+
+  /**
+   * @param shardSettings settings of a new subscription by publishing interval and shard index
+   */
+  public void setShardSettings(BiFunction<Double, Integer, SubscriptionSettings> shardSettings) {
+    this.shardSettings = Objects.requireNonNull(shardSettings);
+  }
+
+  /**
+   * @param node monitored node
+   * @return shard index of the node
+   */
+  public int getShard(NodeId node) {
+    int total = shards * sessions;
+    if (total == 1) {
+      return 0;
+    }
+    int h = node.hashCode() * 0x9E3779B9;
+    return Math.floorMod(h ^ (h >>> 16), total);
+  }
+
+  /**
+   * Queue a subscribe request. All requests of the current window with the same publishing
+   * interval share one {@link UaSubscription}.
+   *
+   * @param nodes nodes to monitor
+   * @param publishInterval requested publishing interval
+   * @return the subscription and the created items in order of the given nodes
+   */
+  public CompletableFuture<Tuple2<UaSubscription, List<UaMonitoredItem>>> subscribe(List<NodeId> nodes, double publishInterval) {
+    return subscribe(nodes, publishInterval, MonitoredItemSpec.DEFAULT);
+  }
+
+  /**
+   * Queue a subscribe request. All requests of the current window with the same publishing
+   * interval share one {@link UaSubscription}, the monitoring parameters may differ per request.
+   * All items of the request are created in the shard of the first node, use
+   * {@link #subscribeEach(List, double, MonitoredItemSpec)} to shard by item.
+   *
+   * @param nodes nodes to monitor
+   * @param publishInterval requested publishing interval
+   * @param spec monitoring parameters of the created items
+   * @return the subscription and the created items in order of the given nodes
+   */
+  public CompletableFuture<Tuple2<UaSubscription, List<UaMonitoredItem>>> subscribe(List<NodeId> nodes, double publishInterval,
+      MonitoredItemSpec spec) {
+    if (nodes.isEmpty()) {
+      return getSubscription(new Tuple2<>(publishInterval, 0)).thenApply(s -> new Tuple2<>(s, Collections.<UaMonitoredItem>emptyList()));
+    }
+    return enqueue(new PendingSubscribe(nodes, publishInterval, Objects.requireNonNull(spec), false)).thenApply(items -> {
+      List<UaMonitoredItem> list = new ArrayList<>(items.size());
+      items.forEach(t -> list.add(t.v2));
+      return new Tuple2<>(items.get(0).v1, list);
+    });
+  }
+
+  /**
+   * Queue a subscribe request. Every item is created in the subscription of its shard.
+   *
+   * @param nodes nodes to monitor
+   * @param publishInterval requested publishing interval
+   * @param spec monitoring parameters of the created items
+   * @return subscription and created item in order of the given nodes
+   */
+  public CompletableFuture<List<Tuple2<UaSubscription, UaMonitoredItem>>> subscribeEach(List<NodeId> nodes, double publishInterval,
+      MonitoredItemSpec spec) {
+    if (nodes.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyList());
+    }
+    return enqueue(new PendingSubscribe(nodes, publishInterval, Objects.requireNonNull(spec), true));
+  }
+
+  private CompletableFuture<List<Tuple2<UaSubscription, UaMonitoredItem>>> enqueue(PendingSubscribe pending) {
+    synchronized (lock) {
+      subscribeQueue.add(pending);
+      scheduleFlush();
+    }
+    return pending.future;
+  }
+
+  /**
+   * Queue a remove request of the monitored item.
+   *
+   * @param subscription owner of the item
+   * @param item monitored item to remove
+   * @return delete status
+   */
+  public CompletableFuture<StatusCode> unsubscribe(UaSubscription subscription, UaMonitoredItem item) {
+    PendingUnsubscribe pending = new PendingUnsubscribe(subscription, item);
+    synchronized (lock) {
+      unsubscribeQueue.add(pending);
+      scheduleFlush();
+    }
+    return pending.future;
+  }
+
+  /**
+   * Change the monitoring parameters of existing items. The client handles are kept.
+   *
+   * @param subscription owner of the items
+   * @param items monitored items to modify
+   * @param spec new monitoring parameters
+   * @return modify status in order of the given items
+   */
+  public CompletableFuture<List<StatusCode>> modify(UaSubscription subscription, List<UaMonitoredItem> items, MonitoredItemSpec spec) {
+    List<MonitoredItemModifyRequest> requests = new ArrayList<>(items.size());
+    double publishInterval = subscription.getRevisedPublishingInterval();
+    items.forEach(item -> requests
+        .add(new MonitoredItemModifyRequest(item.getMonitoredItemId(), spec.toMonitoringParameters(item.getClientHandle(), publishInterval))));
+    return getMaxItemsPerCall().thenCompose(max -> RequestChunker.call(requests, max, connector.getMaxConcurrentRequests(),
+        chunk -> subscription.modifyMonitoredItems(TimestampsToReturn.Both, chunk))).thenApply(codes -> {
+          for (int i = 0; i < codes.size(); i++) {
+            if (codes.get(i).isGood()) {
+              putSpec(items.get(i).getClientHandle(), spec);
+            }
+          }
+          return codes;
+        });
+  }
+
+  /**
+   * @param item monitored item created by this manager
+   * @return current monitoring parameters of the item
+   */
+  public MonitoredItemSpec getSpec(UaMonitoredItem item) {
+    return specs.getOrDefault(item.getClientHandle(), MonitoredItemSpec.DEFAULT);
+  }
+
+  private void putSpec(UInteger clientHandle, MonitoredItemSpec spec) {
+    if (MonitoredItemSpec.DEFAULT.equals(spec)) {
+      specs.remove(clientHandle);
+    } else {
+      specs.put(clientHandle, spec);
+    }
+  }
+
+  /**
+   * @param subscription subscription
+   * @return {@code true} if the subscription was created by this manager and is not deleted
+   */
+  public boolean isActive(UaSubscription subscription) {
+    return owners.containsKey(subscription);
+  }
+
+  /**
+   * Delete the subscription with the session it was created in.
+   *
+   * @param subscription subscription to delete
+   * @return deleted subscription
+   */
+  public CompletableFuture<UaSubscription> delete(UaSubscription subscription) {
+    return getClient(subscription).thenCompose(c -> {
+      remove(subscription);
+      return c.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId());
+    });
+  }
+
+  /**
+   * @param subscription subscription
+   * @return session client of the subscription (the connector client if unknown)
+   */
+  public CompletableFuture<UaClient> getClient(UaSubscription subscription) {
+    UaClient c = owners.get(subscription);
+    return c != null ? CompletableFuture.completedFuture(c) : connector.getClient();
+  }
+
+  /**
+   * Collect the lost notifications and publish failures of the client sessions.
+   *
+   * @param client session client
+   */
+  public void register(UaClient client) {
+    client.getSubscriptionManager().addSubscriptionListener(publishListener);
+  }
+
+  /**
+   * @param subscription subscription created by this manager
+   * @return publish statistics of the subscription
+   */
+  public Optional<SubscriptionMetrics> getMetrics(UaSubscription subscription) {
+    return Optional.ofNullable(metrics.get(subscription));
+  }
+
+  /**
+   * @return publish statistics of all subscriptions
+   */
+  public List<SubscriptionMetrics> getMetrics() {
+    return new ArrayList<>(metrics.values());
+  }
+
+  /**
+   * @return failed Publish requests of all sessions
+   */
+  public long getPublishFailureCount() {
+    return publishFailures.sum();
+  }
+
+  /**
+   * @return all created subscriptions of all shards
+   */
+  public List<UaSubscription> getSubscriptions() {
+    return new ArrayList<>(owners.keySet());
+  }
+
+  /**
+   * Forget the subscription, i.e. after it was deleted on the server.
+   *
+   * @param subscription deleted subscription
+   */
+  public void remove(UaSubscription subscription) {
+    subscriptions.entrySet().removeIf(e -> e.getValue().isDone() && !e.getValue().isCompletedExceptionally() && e.getValue().join() == subscription);
+    owners.remove(subscription);
+    SubscriptionMetrics m = metrics.remove(subscription);
+    if (m != null) {
+      subscription.removeNotificationListener(m);
+    }
+    subscription.getMonitoredItems().forEach(item -> specs.remove(item.getClientHandle()));
+    connector.updatePendingPublishRequests();
+  }
+
+  /**
+   * Forget all subscriptions, i.e. after a new client was created.
+   */
+  public void reset() {
+    subscriptions.clear();
+    owners.clear();
+    metrics.clear();
+    specs.clear();
+    clientHandles.set(0);
+  }
+
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void flush() {
+    List<PendingSubscribe> subscribes;
+    List<PendingUnsubscribe> unsubscribes;
+    synchronized (lock) {
+      flushScheduled = false;
+      subscribes = new ArrayList<>(subscribeQueue);
+      unsubscribes = new ArrayList<>(unsubscribeQueue);
+      subscribeQueue.clear();
+      unsubscribeQueue.clear();
+    }
+    if (!unsubscribes.isEmpty()) {
+      flushUnsubscribes(unsubscribes);
+    }
+    if (!subscribes.isEmpty()) {
+      flushSubscribes(subscribes);
+    }
+  }
+
+  private void flushSubscribes(List<PendingSubscribe> pendings) {
+    Map<Tuple2<Double, Integer>, List<Slot>> byShard = new LinkedHashMap<>();
+    for (PendingSubscribe p : pendings) {
+      int requestShard = p.perNode ? -1 : getShard(p.nodes.get(0));
+      for (int i = 0; i < p.nodes.size(); i++) {
+        int shard = requestShard >= 0 ? requestShard : getShard(p.nodes.get(i));
+        byShard.computeIfAbsent(new Tuple2<>(p.publishInterval, shard), k -> new ArrayList<>()).add(new Slot(p, i));
+      }
+    }
+
+    byShard.forEach((key, slots) -> {
+      List<MonitoredItemCreateRequest> requests = new ArrayList<>(slots.size());
+      slots.forEach(slot -> requests.add(createRequest(slot.pending.nodes.get(slot.index), key.v1, slot.pending.spec)));
+      logger.debug("create {} monitored items with interval: {} (shard {})", requests.size(), key.v1, key.v2);
+
+      getSubscription(key).thenCombine(getMaxItemsPerCall(), (s, max) -> createMonitoredItems(s, requests, max).thenApply(items -> new Tuple2<>(s, items)))
+          .thenCompose(f -> f).whenComplete((result, t) -> {
+            long missing = t == null ? result.v2.stream().filter(Objects::isNull).count() : 0;
+            if (missing > 0) {
+              logger.warn("no result for {} of {} monitored items", missing, slots.size());
+            }
+            for (int i = 0; i < slots.size(); i++) {
+              Slot slot = slots.get(i);
+              if (t != null) {
+                fail(slot.pending, t);
+              } else if (result.v2.get(i) == null) {
+                fail(slot.pending, new IllegalStateException(String.format("no result for item %d of %d", i, slots.size())));
+              } else {
+                UaMonitoredItem item = result.v2.get(i);
+                // only items which exist on the server are tracked, a failed create leaves no spec behind
+                if (item.getStatusCode().isGood()) {
+                  putSpec(item.getClientHandle(), slot.pending.spec);
+                }
+                if (!slot.pending.set(slot.index, result.v1, item) && item.getStatusCode().isGood()) {
+                  // the request failed in another shard, the caller can not delete the item
+                  unsubscribe(result.v1, item);
+                }
+              }
+            }
+          });
+    });
+  }
+
+  private void flushUnsubscribes(List<PendingUnsubscribe> pendings) {
+    Map<UaSubscription, List<PendingUnsubscribe>> bySubscription = new IdentityHashMap<>();
+    pendings.forEach(p -> bySubscription.computeIfAbsent(p.subscription, s -> new ArrayList<>()).add(p));
+
+    bySubscription.forEach((subscription, group) -> getMaxItemsPerCall().thenCompose(max -> {
+      List<UaMonitoredItem> items = new ArrayList<>(group.size());
+      group.forEach(p -> items.add(p.item));
+      return RequestChunker.call(items, max, connector.getMaxConcurrentRequests(), subscription::deleteMonitoredItems);
+    }).whenComplete((codes, t) -> {
+      for (int i = 0; i < group.size(); i++) {
+        if (t != null) {
+          group.get(i).future.completeExceptionally(t);
+        } else if (i >= codes.size()) {
+          group.get(i).future.completeExceptionally(new IllegalStateException(String.format("no result for item %d of %d", i, codes.size())));
+        } else {
+          specs.remove(group.get(i).item.getClientHandle());
+          group.get(i).future.complete(codes.get(i));
+        }
+      }
+    }));
+  }
+
+  /**
+   * Fail the request and delete its items already created in other shards.
+   */
+  private void fail(PendingSubscribe pending, Throwable t) {
+    for (Tuple2<UaSubscription, UaMonitoredItem> created : pending.fail(t)) {
+      unsubscribe(created.v1, created.v2);
+    }
+  }
+
+  /**
+   * @return created items in order of the requests, {@code null} for a request without result
+   */
+  private CompletableFuture<List<UaMonitoredItem>> createMonitoredItems(UaSubscription subscription, List<MonitoredItemCreateRequest> requests, int max) {
+    return RequestChunker.call(requests, max, connector.getMaxConcurrentRequests(),
+        chunk -> subscription.createMonitoredItems(TimestampsToReturn.Both, chunk).thenApply(items -> byClientHandle(chunk, items)));
+  }
+
+  /**
+   * Match the created items to the requests by client handle, a short result may miss any item.
+   *
+   * @param requests create requests
+   * @param items created items
+   * @return items in order of the requests, {@code null} for a request without item
+   */
+  static List<UaMonitoredItem> byClientHandle(List<MonitoredItemCreateRequest> requests, List<UaMonitoredItem> items) {
+    Map<UInteger, UaMonitoredItem> created = new HashMap<>();
+    items.forEach(item -> created.put(item.getClientHandle(), item));
+    List<UaMonitoredItem> list = new ArrayList<>(requests.size());
+    requests.forEach(r -> list.add(created.get(r.getRequestedParameters().getClientHandle())));
+    return list;
+  }
+
+  private CompletableFuture<UaSubscription> getSubscription(Tuple2<Double, Integer> key) {
+    CompletableFuture<UaSubscription> subscription = subscriptions.computeIfAbsent(key, k -> {
+      SubscriptionSettings settings = shardSettings.apply(k.v1, k.v2);
+      int session = k.v2 % sessions;
+      logger.debug("create subscription with interval: {} (shard {}, session {}) {}", k.v1, k.v2, session, settings);
+      return connector.getSessionClient(session).thenCompose(c -> c.getSubscriptionManager()
+          .createSubscription(k.v1, uint(settings.getLifetimeCount()), uint(settings.getMaxKeepAliveCount()), uint(settings.getMaxNotificationsPerPublish()),
+              true, ubyte(settings.getPriority()))
+          .thenApply(s -> {
+            owners.put(s, c);
+            SubscriptionMetrics m = new SubscriptionMetrics(s, connector::getClockOffset);
+            s.addNotificationListener(m);
+            metrics.put(s, m);
+            connector.updatePendingPublishRequests();
+            return s;
+          }));
+    });
+    return subscription.whenComplete((s, t) -> {
+      if (t != null) {
+        subscriptions.remove(key, subscription);
+      }
+    });
+  }
+
+  private CompletableFuture<Integer> getMaxItemsPerCall() {
+    return connector.getOperationLimits().thenApply(OperationLimits::getMaxMonitoredItemsPerCall);
+  }
+
+  private MonitoredItemCreateRequest createRequest(NodeId node, double publishInterval, MonitoredItemSpec spec) {
+    ReadValueId readValueId = new ReadValueId(node, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE);
+    UInteger clientHandle = uint(clientHandles.getAndIncrement());
+    MonitoringParameters parameters = spec.toMonitoringParameters(clientHandle, publishInterval);
+    return new MonitoredItemCreateRequest(readValueId, MonitoringMode.Reporting, parameters);
+  }
+
+  private static class PendingSubscribe {
+    final List<NodeId> nodes;
+    final double publishInterval;
+    final MonitoredItemSpec spec;
+    final boolean perNode;
+    final List<Tuple2<UaSubscription, UaMonitoredItem>> items;
+    final CompletableFuture<List<Tuple2<UaSubscription, UaMonitoredItem>>> future = new CompletableFuture<>();
+    int remaining;
+    boolean failed;
+
+    PendingSubscribe(List<NodeId> nodes, double publishInterval, MonitoredItemSpec spec, boolean perNode) {
+      this.nodes = nodes;
+      this.publishInterval = publishInterval;
+      this.spec = spec;
+      this.perNode = perNode;
+      this.items = new ArrayList<>(Collections.nCopies(nodes.size(), null));
+      this.remaining = nodes.size();
+    }
+
+    /**
+     * @return {@code false} if the request has already failed
+     */
+    synchronized boolean set(int index, UaSubscription subscription, UaMonitoredItem item) {
+      if (failed) {
+        return false;
+      }
+      items.set(index, new Tuple2<>(subscription, item));
+      if (--remaining == 0) {
+        future.complete(items);
+      }
+      return true;
+    }
+
+    /**
+     * @return created items of the request (other shards) to delete
+     */
+    synchronized List<Tuple2<UaSubscription, UaMonitoredItem>> fail(Throwable t) {
+      if (failed) {
+        return Collections.emptyList();
+      }
+      failed = true;
+      future.completeExceptionally(t);
+      List<Tuple2<UaSubscription, UaMonitoredItem>> created = new ArrayList<>();
+      for (Tuple2<UaSubscription, UaMonitoredItem> item : items) {
+        if (item != null && item.v2.getStatusCode().isGood()) {
+          created.add(item);
+        }
+      }
+      return created;
+    }
+  }
+
+  /** position of one node in a pending request */
+  private static class Slot {
+    final PendingSubscribe pending;
+    final int index;
+
+    Slot(PendingSubscribe pending, int index) {
+      this.pending = pending;
+      this.index = index;
+    }
+  }
+
+  private static class PendingUnsubscribe {
+    final UaSubscription subscription;
+    final UaMonitoredItem item;
+    final CompletableFuture<StatusCode> future = new CompletableFuture<>();
+
+    PendingUnsubscribe(UaSubscription subscription, UaMonitoredItem item) {
+      this.subscription = subscription;
+      this.item = item;
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+/**
+ * Compact binary encoding of the address space types stored on disk. Only server local node ids
+ * and the scalar attribute value types of the static node attributes are supported.
+ *
+ * @author comtel
+ *
+ */
+public final class BinaryCodec {
+
+  private final static byte ID_NUMERIC = 0;
+  private final static byte ID_STRING = 1;
+  private final static byte ID_GUID = 2;
+  private final static byte ID_OPAQUE = 3;
+
+  private final static byte V_NULL = 0;
+  private final static byte V_BOOLEAN = 1;
+  private final static byte V_INTEGER = 2;
+  private final static byte V_UINTEGER = 3;
+  private final static byte V_UBYTE = 4;
+  private final static byte V_DOUBLE = 5;
+  private final static byte V_STRING = 6;
+  private final static byte V_NODEID = 7;
+  private final static byte V_QUALIFIEDNAME = 8;
+  private final static byte V_LOCALIZEDTEXT = 9;
+
+  private BinaryCodec() {}
+
+  /**
+   * @param value attribute value
+   * @return {@code true} if the value can be written by {@link #writeDataValue(DataOutput, DataValue)}
+   */
+  public static boolean isSupported(DataValue value) {
+    Object v = value.getValue().getValue();
+    return v == null || v instanceof Boolean || v instanceof Integer || v instanceof UInteger || v instanceof UByte || v instanceof Double
+        || v instanceof String || v instanceof NodeId || v instanceof QualifiedName || v instanceof LocalizedText;
+  }
+
+  /**
+   * @param ref reference
+   * @return {@code true} if all node ids of the reference are server local
+   */
+  public static boolean isSupported(ReferenceDescription ref) {
+    return isLocal(ref.getNodeId()) && isLocal(ref.getTypeDefinition());
+  }
+
+  private static boolean isLocal(ExpandedNodeId id) {
+    return id == null || id.isNull() || id.local().isPresent();
+  }
+
+  public static void writeNodeId(DataOutput out, NodeId id) throws IOException {
+    out.writeShort(id.getNamespaceIndex().intValue());
+    Object identifier = id.getIdentifier();
+    if (identifier instanceof UInteger) {
+      out.writeByte(ID_NUMERIC);
+      out.writeInt(((UInteger) identifier).intValue());
+    } else if (identifier instanceof String) {
+      out.writeByte(ID_STRING);
+      writeUtf8(out, (String) identifier);
+    } else if (identifier instanceof UUID) {
+      out.writeByte(ID_GUID);
+      out.writeLong(((UUID) identifier).getMostSignificantBits());
+      out.writeLong(((UUID) identifier).getLeastSignificantBits());
+    } else if (identifier instanceof ByteString) {
+      out.writeByte(ID_OPAQUE);
+      byte[] bytes = ((ByteString) identifier).bytes();
+      out.writeInt(bytes != null ? bytes.length : -1);
+      if (bytes != null) {
+        out.write(bytes);
+      }
+    } else {
+      throw new IOException("unsupported identifier: " + identifier);
+    }
+  }
+
+  public static NodeId readNodeId(DataInput in) throws IOException {
+    int ns = in.readUnsignedShort();
+    byte type = in.readByte();
+    switch (type) {
+      case ID_NUMERIC:
+        return new NodeId(ns, uint(in.readInt() & 0xFFFFFFFFL));
+      case ID_STRING:
+        return new NodeId(ns, readUtf8(in));
+      case ID_GUID:
+        return new NodeId(ns, new UUID(in.readLong(), in.readLong()));
+      case ID_OPAQUE:
+        int length = in.readInt();
+        byte[] bytes = null;
+        if (length >= 0) {
+          bytes = new byte[length];
+          in.readFully(bytes);
+        }
+        return new NodeId(ns, new ByteString(bytes));
+      default:
+        throw new IOException("unknown identifier type: " + type);
+    }
+  }
+
+  public static void writeExpandedNodeId(DataOutput out, ExpandedNodeId id) throws IOException {
+    boolean present = id != null && !id.isNull();
+    out.writeBoolean(present);
+    if (present) {
+      writeNodeId(out, id.local().orElseThrow(() -> new IOException("not a local node id: " + id)));
+    }
+  }
+
+  public static ExpandedNodeId readExpandedNodeId(DataInput in) throws IOException {
+    return in.readBoolean() ? readNodeId(in).expanded() : ExpandedNodeId.NULL_VALUE;
+  }
+
+  public static void writeQualifiedName(DataOutput out, QualifiedName name) throws IOException {
+    out.writeShort(name.getNamespaceIndex().intValue());
+    writeString(out, name.getName());
+  }
+
+  public static QualifiedName readQualifiedName(DataInput in) throws IOException {
+    return new QualifiedName(in.readUnsignedShort(), readString(in));
+  }
+
+  public static void writeLocalizedText(DataOutput out, LocalizedText text) throws IOException {
+    writeString(out, text.getLocale());
+    writeString(out, text.getText());
+  }
+
+  public static LocalizedText readLocalizedText(DataInput in) throws IOException {
+    return new LocalizedText(readString(in), readString(in));
+  }
+
+  public static void writeReference(DataOutput out, ReferenceDescription ref) throws IOException {
+    writeNodeId(out, ref.getReferenceTypeId() != null ? ref.getReferenceTypeId() : NodeId.NULL_VALUE);
+    out.writeBoolean(Boolean.TRUE.equals(ref.getIsForward()));
+    writeExpandedNodeId(out, ref.getNodeId());
+    writeQualifiedName(out, ref.getBrowseName() != null ? ref.getBrowseName() : QualifiedName.NULL_VALUE);
+    writeLocalizedText(out, ref.getDisplayName() != null ? ref.getDisplayName() : LocalizedText.NULL_VALUE);
+    out.writeInt(ref.getNodeClass() != null ? ref.getNodeClass().getValue() : NodeClass.Unspecified.getValue());
+    writeExpandedNodeId(out, ref.getTypeDefinition());
+  }
+
+  public static ReferenceDescription readReference(DataInput in) throws IOException {
+    NodeId referenceTypeId = readNodeId(in);
+    boolean forward = in.readBoolean();
+    ExpandedNodeId nodeId = readExpandedNodeId(in);
+    QualifiedName browseName = readQualifiedName(in);
+    LocalizedText displayName = readLocalizedText(in);
+    NodeClass nodeClass = NodeClass.from(in.readInt());
+    ExpandedNodeId typeDefinition = readExpandedNodeId(in);
+    return new ReferenceDescription(referenceTypeId, forward, nodeId, browseName, displayName, nodeClass, typeDefinition);
+  }
+
+  /**
+   * Write the value and status code of the data value, timestamps are not stored.
+   *
+   * @param out output
+   * @param value supported value, see {@link #isSupported(DataValue)}
+   * @throws IOException on write failure or unsupported value type
+   */
+  public static void writeDataValue(DataOutput out, DataValue value) throws IOException {
+    out.writeInt((int) value.getStatusCode().getValue());
+    Object v = value.getValue().getValue();
+    if (v == null) {
+      out.writeByte(V_NULL);
+    } else if (v instanceof Boolean) {
+      out.writeByte(V_BOOLEAN);
+      out.writeBoolean((Boolean) v);
+    } else if (v instanceof Integer) {
+      out.writeByte(V_INTEGER);
+      out.writeInt((Integer) v);
+    } else if (v instanceof UInteger) {
+      out.writeByte(V_UINTEGER);
+      out.writeInt(((UInteger) v).intValue());
+    } else if (v instanceof UByte) {
+      out.writeByte(V_UBYTE);
+      out.writeByte(((UByte) v).intValue());
+    } else if (v instanceof Double) {
+      out.writeByte(V_DOUBLE);
+      out.writeDouble((Double) v);
+    } else if (v instanceof String) {
+      out.writeByte(V_STRING);
+      writeUtf8(out, (String) v);
+    } else if (v instanceof NodeId) {
+      out.writeByte(V_NODEID);
+      writeNodeId(out, (NodeId) v);
+    } else if (v instanceof QualifiedName) {
+      out.writeByte(V_QUALIFIEDNAME);
+      writeQualifiedName(out, (QualifiedName) v);
+    } else if (v instanceof LocalizedText) {
+      out.writeByte(V_LOCALIZEDTEXT);
+      writeLocalizedText(out, (LocalizedText) v);
+    } else {
+      throw new IOException("unsupported value type: " + v.getClass());
+    }
+  }
+
+  public static DataValue readDataValue(DataInput in) throws IOException {
+    long status = in.readInt() & 0xFFFFFFFFL;
+    byte type = in.readByte();
+    Object v;
+    switch (type) {
+      case V_NULL:
+        v = null;
+        break;
+      case V_BOOLEAN:
+        v = in.readBoolean();
+        break;
+      case V_INTEGER:
+        v = in.readInt();
+        break;
+      case V_UINTEGER:
+        v = uint(in.readInt() & 0xFFFFFFFFL);
+        break;
+      case V_UBYTE:
+        v = UByte.valueOf(in.readUnsignedByte());
+        break;
+      case V_DOUBLE:
+        v = in.readDouble();
+        break;
+      case V_STRING:
+        v = readUtf8(in);
+        break;
+      case V_NODEID:
+        v = readNodeId(in);
+        break;
+      case V_QUALIFIEDNAME:
+        v = readQualifiedName(in);
+        break;
+      case V_LOCALIZEDTEXT:
+        v = readLocalizedText(in);
+        break;
+      default:
+        throw new IOException("unknown value type: " + type);
+    }
+    return new DataValue(new Variant(v), new StatusCode(status));
+  }
+
+  public static void writeString(DataOutput out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      writeUtf8(out, s);
+    }
+  }
+
+  public static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? readUtf8(in) : null;
+  }
+
+  /**
+   * Length prefixed UTF-8 string, {@link DataOutput#writeUTF(String)} is limited to 64 KB.
+   */
+  private static void writeUtf8(DataOutput out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readUtf8(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowsePath;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowsePathResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.RelativePath;
+import org.eclipse.milo.opcua.stack.core.types.structured.RelativePathElement;
+
+/**
+ * Resolves browse paths like {@code Objects/2:Line1/Motor3/Speed} relative to the RootFolder. The
+ * segments are browse names {@code [ns:]name} separated by '/', a segment without namespace index
+ * uses the index of the previous segment (0 for the first). Concurrent and large requests are
+ * merged and split into TranslateBrowsePathsToNodeIds calls by the MaxNodesPerTranslate limit of
+ * the server, resolved paths are kept in a LRU cache (system property
+ * {@code opcua.cache.paths.maxEntries}, default 100000) which is cleared on model changes. Results
+ * of translations started before a model change are returned but not cached.
+ *
+ * @author comtel
+ *
+ */
+public class BrowsePathResolver {
+
+  private final RequestBatcher<BrowsePath, BrowsePathResult> batcher;
+
+  private final LruCache<String, NodeId> cache = new LruCache<>("paths", Long.getLong("opcua.cache.paths.maxEntries", 100_000L), v -> 1);
+
+  /** incremented by {@link #invalidate()}, guarded by this */
+  private int generation;
+
+  /**
+   * @param connector connector
+   * @param scheduler scheduler of the request collect window
+   */
+  public BrowsePathResolver(OpcUaClientConnector connector, ScheduledExecutorService scheduler) {
+    this.batcher = new RequestBatcher<>("translate",
+        paths -> connector.getClient().thenCompose(c -> c.translateBrowsePaths(paths)).thenApply(r -> Arrays.asList(r.getResults())),
+        () -> connector.getOperationLimits().thenApply(OperationLimits::getMaxNodesPerTranslate), connector::getMaxConcurrentRequests, scheduler);
+  }
+
+  /**
+   * Parse a browse path.
+   *
+   * @param path browse path
+   * @return browse names of the segments
+   * @throws IllegalArgumentException on a namespace index out of range
+   */
+  public static List<QualifiedName> parse(String path) {
+    List<QualifiedName> names = new ArrayList<>();
+    int ns = 0;
+    for (String segment : path.split("/")) {
+      if (segment.isEmpty()) {
+        continue;
+      }
+      int colon = segment.indexOf(':');
+      if (colon > 0 && segment.substring(0, colon).chars().allMatch(Character::isDigit)) {
+        try {
+          ns = Integer.parseInt(segment.substring(0, colon));
+        } catch (NumberFormatException e) {
+          ns = -1;
+        }
+        if (ns < 0 || ns > 0xFFFF) {
+          throw new IllegalArgumentException("invalid namespace index of segment: " + segment);
+        }
+        segment = segment.substring(colon + 1);
+      }
+      names.add(new QualifiedName(ns, segment));
+    }
+    return names;
+  }
+
+  private static String toKey(List<QualifiedName> names) {
+    StringBuilder sb = new StringBuilder();
+    for (QualifiedName n : names) {
+      sb.append('/').append(n.getNamespaceIndex()).append(':').append(n.getName());
+    }
+    return sb.toString();
+  }
+
+  private static BrowsePath toBrowsePath(List<QualifiedName> names) {
+    RelativePathElement[] elements =
+        names.stream().map(n -> new RelativePathElement(Identifiers.HierarchicalReferences, false, true, n)).toArray(RelativePathElement[]::new);
+    return new BrowsePath(Identifiers.RootFolder, new RelativePath(elements));
+  }
+
+  public CompletableFuture<Optional<NodeId>> resolve(String path) {
+    return resolve(Collections.singletonList(path)).thenApply(r -> r.get(0));
+  }
+
+  /**
+   * @param paths browse paths
+   * @return target node of every path in the given order (empty if not resolved), failed on an
+   *         invalid path
+   */
+  public CompletableFuture<List<Optional<NodeId>>> resolve(List<String> paths) {
+    List<List<QualifiedName>> parsed = new ArrayList<>(paths.size());
+    try {
+      paths.forEach(p -> parsed.add(parse(p)));
+    } catch (IllegalArgumentException e) {
+      return failed(e);
+    }
+    return resolveNames(parsed);
+  }
+
+  /**
+   * Resolve every prefix of the path, i.e. to expand a tree along the path.
+   *
+   * @param path browse path
+   * @return node ids of the resolved segments (shorter than the path if not completely resolved),
+   *         failed on an invalid path
+   */
+  public CompletableFuture<List<NodeId>> resolvePrefixes(String path) {
+    List<QualifiedName> names;
+    try {
+      names = parse(path);
+    } catch (IllegalArgumentException e) {
+      return failed(e);
+    }
+    List<List<QualifiedName>> prefixes = new ArrayList<>(names.size());
+    for (int i = 1; i <= names.size(); i++) {
+      prefixes.add(names.subList(0, i));
+    }
+    return resolveNames(prefixes).thenApply(targets -> {
+      List<NodeId> resolved = new ArrayList<>();
+      for (Optional<NodeId> target : targets) {
+        if (!target.isPresent()) {
+          break;
+        }
+        resolved.add(target.get());
+      }
+      return resolved;
+    });
+  }
+
+  private static <T> CompletableFuture<T> failed(Throwable t) {
+    CompletableFuture<T> f = new CompletableFuture<>();
+    f.completeExceptionally(t);
+    return f;
+  }
+
+  private CompletableFuture<List<Optional<NodeId>>> resolveNames(List<List<QualifiedName>> paths) {
+    int gen;
+    synchronized (this) {
+      gen = generation;
+    }
+    List<Optional<NodeId>> results = new ArrayList<>(paths.size());
+    // result index -> request index, equal paths are translated once
+    List<Integer> missing = new ArrayList<>();
+    List<Integer> missingRequests = new ArrayList<>();
+    Map<String, Integer> requested = new HashMap<>();
+    List<String> requestKeys = new ArrayList<>();
+    List<BrowsePath> requests = new ArrayList<>();
+    for (int i = 0; i < paths.size(); i++) {
+      List<QualifiedName> names = paths.get(i);
+      if (names.isEmpty()) {
+        results.add(Optional.of(Identifiers.RootFolder));
+        continue;
+      }
+      String key = toKey(names);
+      NodeId cached = cache.get(key);
+      results.add(Optional.ofNullable(cached));
+      if (cached == null) {
+        Integer request = requested.get(key);
+        if (request == null) {
+          request = requests.size();
+          requested.put(key, request);
+          requestKeys.add(key);
+          requests.add(toBrowsePath(names));
+        }
+        missing.add(i);
+        missingRequests.add(request);
+      }
+    }
+    if (requests.isEmpty()) {
+      return CompletableFuture.completedFuture(results);
+    }
+    return batcher.submit(requests).thenApply(list -> {
+      List<Optional<NodeId>> targets = new ArrayList<>(list.size());
+      for (BrowsePathResult r : list) {
+        targets.add(r.getStatusCode().isGood() && r.getTargets() != null && r.getTargets().length > 0
+            ? r.getTargets()[0].getTargetId().local() : Optional.empty());
+      }
+      synchronized (this) {
+        if (gen == generation) {
+          for (int i = 0; i < targets.size(); i++) {
+            if (targets.get(i).isPresent()) {
+              cache.put(requestKeys.get(i), targets.get(i).get());
+            }
+          }
+        }
+      }
+      for (int i = 0; i < missing.size(); i++) {
+        results.set(missing.get(i), targets.get(missingRequests.get(i)));
+      }
+      return results;
+    });
+  }
+
+  /**
+   * Drop all resolved paths, a changed node may be part of any cached path.
+   */
+  public synchronized void invalidate() {
+    generation++;
+    cache.clear();
+  }
+
+  public LruCache<String, NodeId> getCache() {
+    return cache;
+  }
+
+  public RequestBatcher<BrowsePath, BrowsePathResult> getBatcher() {
+    return batcher;
+  }
+}
@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseDirection;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseResultMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DataType metadata (name, browse name, super type) of the connected server. The DataType
+ * hierarchy below BaseDataType is prefetched after connect with one batched Browse per hierarchy
+ * level and stored per server next to the {@link AddressSpaceCache}, a reconnect loads it from
+ * disk and revalidates it in the background. Lookups never block, unknown DataTypes are read on
+ * demand.
+ *
+ * @author comtel
+ *
+ */
+public class DataTypeCache {
+
+  protected final static Logger logger = LoggerFactory.getLogger(DataTypeCache.class);
+
+  private final static int MAGIC = 0x4F554454;
+  private final static short VERSION = 2;
+
+  /**
+   * Metadata of one DataType node.
+   */
+  public static class DataType {
+
+    private final NodeId nodeId;
+    private final NodeId superType;
+    private final QualifiedName browseName;
+    private final String name;
+
+    public DataType(NodeId nodeId, NodeId superType, QualifiedName browseName, String name) {
+      this.nodeId = nodeId;
+      this.superType = superType != null ? superType : NodeId.NULL_VALUE;
+      this.browseName = browseName != null ? browseName : QualifiedName.NULL_VALUE;
+      this.name = name;
+    }
+
+    public NodeId getNodeId() {
+      return nodeId;
+    }
+
+    /**
+     * @return super type or {@code NodeId.NULL_VALUE} if unknown
+     */
+    public NodeId getSuperType() {
+      return superType;
+    }
+
+    public QualifiedName getBrowseName() {
+      return browseName;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(nodeId, superType, browseName, name);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof DataType)) {
+        return false;
+      }
+      DataType other = (DataType) obj;
+      return nodeId.equals(other.nodeId) && superType.equals(other.superType) && browseName.equals(other.browseName)
+          && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public String toString() {
+      return "DataType [" + nodeId + ", " + name + "]";
+    }
+  }
+
+  private final OpcUaClientConnector connector;
+
+  private final Map<NodeId, DataType> types = new ConcurrentHashMap<>();
+
+  private final Map<NodeId, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+  private volatile Path file;
+
+  private volatile boolean dirty;
+
+  /** incremented by {@link #clear()}, a prefetch or revalidation of a previous session is dropped */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  public DataTypeCache(OpcUaClientConnector connector) {
+    this.connector = connector;
+  }
+
+  /**
+   * Load the stored DataTypes of the server or prefetch them. Loaded DataTypes are revalidated in
+   * the background, see {@link #revalidate()}.
+   *
+   * @param dir cache directory or {@code null} to skip the file
+   * @param endpointUrl endpoint url of the server
+   * @param namespaces namespace array of the server
+   * @return number of DataTypes
+   */
+  public CompletableFuture<Integer> open(Path dir, String endpointUrl, String[] namespaces) {
+    clear();
+    int gen = generation.get();
+    if (dir != null) {
+      file = dir.resolve(AddressSpaceCache.fileKey(endpointUrl, namespaces) + ".types");
+      if (load(file, endpointUrl)) {
+        int size = types.size();
+        revalidate().whenComplete((changed, t) -> {
+          if (t != null) {
+            logger.warn("revalidate data types failed: {}", t.getMessage());
+          }
+        });
+        return CompletableFuture.completedFuture(size);
+      }
+    }
+    return prefetch().thenApply(size -> {
+      if (gen == generation.get()) {
+        save();
+      }
+      return size;
+    });
+  }
+
+  /**
+   * Browse the DataType hierarchy below BaseDataType, one batched Browse per level. The result is
+   * dropped if the cache was cleared meanwhile.
+   *
+   * @return number of DataTypes
+   */
+  public CompletableFuture<Integer> prefetch() {
+    long begin = System.currentTimeMillis();
+    int gen = generation.get();
+    return browseHierarchy().thenApply(found -> {
+      if (gen != generation.get()) {
+        logger.debug("prefetched data types of a previous session dropped");
+        return types.size();
+      }
+      put(found.values());
+      dirty = true;
+      logger.info("{} data types prefetched in {} ms", found.size(), System.currentTimeMillis() - begin);
+      return types.size();
+    });
+  }
+
+  /**
+   * Browse the DataType hierarchy again and replace the cached DataTypes if the server changed
+   * them since the cache file was written. DataTypes read on demand are kept.
+   *
+   * @return {@code true} if the cached DataTypes were replaced
+   */
+  public CompletableFuture<Boolean> revalidate() {
+    long begin = System.currentTimeMillis();
+    int gen = generation.get();
+    Map<NodeId, DataType> cached = new HashMap<>(types);
+    return browseHierarchy().thenApply(found -> {
+      if (gen != generation.get() || !changed(cached, found)) {
+        return false;
+      }
+      types.values().removeIf(t -> !isOnDemand(t) && !found.containsKey(t.getNodeId()));
+      put(found.values());
+      dirty = true;
+      save();
+      logger.info("{} data types revalidated in {} ms", found.size(), System.currentTimeMillis() - begin);
+      return true;
+    });
+  }
+
+  private static boolean changed(Map<NodeId, DataType> cached, Map<NodeId, DataType> found) {
+    for (DataType t : found.values()) {
+      if (!t.equals(cached.get(t.getNodeId()))) {
+        return true;
+      }
+    }
+    return cached.values().stream().anyMatch(t -> !isOnDemand(t) && !found.containsKey(t.getNodeId()));
+  }
+
+  /**
+   * @return {@code true} if the DataType was read by {@link #lookup(NodeId)} instead of browsed
+   */
+  private static boolean isOnDemand(DataType t) {
+    return NodeId.NULL_VALUE.equals(t.getSuperType()) && !Identifiers.BaseDataType.equals(t.getNodeId());
+  }
+
+  private CompletableFuture<Map<NodeId, DataType>> browseHierarchy() {
+    Map<NodeId, DataType> found = new HashMap<>();
+    found.put(Identifiers.BaseDataType, new DataType(Identifiers.BaseDataType, null, new QualifiedName(0, "BaseDataType"), "BaseDataType"));
+    return browseLevel(Collections.singletonList(Identifiers.BaseDataType), found).thenApply(v -> found);
+  }
+
+  private CompletableFuture<Void> browseLevel(List<NodeId> level, Map<NodeId, DataType> found) {
+    if (level.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<BrowseDescription> subtypes = level.stream().map(n -> new BrowseDescription(n, BrowseDirection.Forward, Identifiers.HasSubtype, false,
+        uint(NodeClass.DataType.getValue()), uint(BrowseResultMask.All.getValue()))).collect(Collectors.toList());
+    return connector.browseAll(subtypes).thenCompose(results -> {
+      List<NodeId> next = new ArrayList<>();
+      for (int i = 0; i < results.size(); i++) {
+        BrowseResult result = results.get(i);
+        if (result.getStatusCode().isBad() || result.getReferences() == null) {
+          continue;
+        }
+        for (ReferenceDescription ref : result.getReferences()) {
+          if (ref.getNodeId() == null || !ref.getNodeId().isLocal()) {
+            continue;
+          }
+          NodeId node = ref.getNodeId().local().get();
+          if (!found.containsKey(node)) {
+            found.put(node, new DataType(node, level.get(i), ref.getBrowseName(), OpcUaConverter.toString(ref.getDisplayName())));
+            next.add(node);
+          }
+        }
+      }
+      return browseLevel(next, found);
+    });
+  }
+
+  private void put(Iterable<DataType> dataTypes) {
+    Map<NodeId, String> names = new HashMap<>();
+    for (DataType t : dataTypes) {
+      types.put(t.getNodeId(), t);
+      if (t.getNodeId().getNamespaceIndex().intValue() != 0 && t.getName() != null) {
+        names.put(t.getNodeId(), t.getName());
+      }
+    }
+    if (!names.isEmpty()) {
+      NodeIdNames.putAll(names);
+    }
+  }
+
+  /**
+   * @param dataType DataType node
+   * @return cached metadata or {@code null}
+   */
+  public DataType get(NodeId dataType) {
+    return types.get(dataType);
+  }
+
+  /**
+   * @param dataType DataType node
+   * @return cached name or {@code null}
+   */
+  public String getName(NodeId dataType) {
+    DataType t = types.get(dataType);
+    return t != null ? t.getName() : null;
+  }
+
+  /**
+   * Name of the DataType, unknown DataTypes are read once (concurrent lookups share the read).
+   *
+   * @param dataType DataType node
+   * @return name (DisplayName)
+   */
+  public CompletableFuture<String> lookup(NodeId dataType) {
+    DataType t = types.get(dataType);
+    if (t != null) {
+      return CompletableFuture.completedFuture(t.getName());
+    }
+    int gen = generation.get();
+    CompletableFuture<String> read = pending.computeIfAbsent(dataType,
+        n -> connector.read(n, AttributeId.DisplayName).thenApply(list -> !list.isEmpty() ? OpcUaConverter.toString(list.get(0).getValue()) : null));
+    return read.whenComplete((name, e) -> {
+      pending.remove(dataType, read);
+      if (e == null && name != null && gen == generation.get()) {
+        put(Collections.singletonList(new DataType(dataType, null, null, name)));
+        dirty = true;
+      }
+    });
+  }
+
+  public int size() {
+    return types.size();
+  }
+
+  public void remove(NodeId dataType) {
+    if (types.remove(dataType) != null) {
+      dirty = true;
+    }
+  }
+
+  public void clear() {
+    generation.incrementAndGet();
+    types.clear();
+    pending.clear();
+    dirty = false;
+  }
+
+  /**
+   * Write the DataTypes to the cache file if changed since the last save.
+   */
+  public void save() {
+    Path target = file;
+    if (target == null || (!dirty && Files.exists(target))) {
+      return;
+    }
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(target.getParent());
+      List<DataType> snapshot = new ArrayList<>(types.values());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(snapshot.size());
+        for (DataType t : snapshot) {
+          BinaryCodec.writeNodeId(out, t.getNodeId());
+          BinaryCodec.writeNodeId(out, t.getSuperType());
+          BinaryCodec.writeQualifiedName(out, t.getBrowseName());
+          BinaryCodec.writeString(out, t.getName());
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      dirty = false;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("save data types {} failed: {}", target, e.getMessage());
+    }
+  }
+
+  private boolean load(Path source, String endpointUrl) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+      if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+        return false;
+      }
+      int count = in.readInt();
+      List<DataType> loaded = new ArrayList<>(Math.max(0, Math.min(count, 1 << 16)));
+      for (int i = 0; i < count; i++) {
+        loaded.add(new DataType(BinaryCodec.readNodeId(in), BinaryCodec.readNodeId(in), BinaryCodec.readQualifiedName(in), BinaryCodec.readString(in)));
+      }
+      put(loaded);
+      logger.info("{} data types of {} loaded", loaded.size(), endpointUrl);
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("data type cache {} not readable: {}", source, e.getMessage());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.eclipse.milo.opcua.stack.core.serialization.binary.BinaryDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * OPC binary schema (opc:TypeDictionary) of a server DataTypeDictionary variable. Structured
+ * types are compiled into {@link StructureCodec}s.
+ *
+ * @author comtel
+ *
+ */
+public class DataTypeDictionary {
+
+  protected final static Logger logger = LoggerFactory.getLogger(DataTypeDictionary.class);
+
+  final static String OPC_BINARY_NS = "http://opcfoundation.org/BinarySchema/";
+
+  final static String UA_NS = "http://opcfoundation.org/UA/";
+
+  private final static Map<String, StructureCodec.FieldReader> BUILTIN = new HashMap<>();
+
+  static {
+    BUILTIN.put("Boolean", d -> d.readBoolean(null));
+    BUILTIN.put("SByte", d -> d.readSByte(null));
+    BUILTIN.put("Byte", d -> d.readByte(null));
+    BUILTIN.put("Char", d -> (char) d.readByte(null).intValue());
+    BUILTIN.put("Int16", d -> d.readInt16(null));
+    BUILTIN.put("UInt16", d -> d.readUInt16(null));
+    BUILTIN.put("Int32", d -> d.readInt32(null));
+    BUILTIN.put("UInt32", d -> d.readUInt32(null));
+    BUILTIN.put("Int64", d -> d.readInt64(null));
+    BUILTIN.put("UInt64", d -> d.readUInt64(null));
+    BUILTIN.put("Float", d -> d.readFloat(null));
+    BUILTIN.put("Double", d -> d.readDouble(null));
+    BUILTIN.put("String", d -> d.readString(null));
+    BUILTIN.put("CharArray", d -> d.readString(null));
+    BUILTIN.put("DateTime", d -> d.readDateTime(null));
+    BUILTIN.put("Guid", d -> d.readGuid(null));
+    BUILTIN.put("ByteString", d -> d.readByteString(null));
+    BUILTIN.put("XmlElement", d -> d.readXmlElement(null));
+    BUILTIN.put("NodeId", d -> d.readNodeId(null));
+    BUILTIN.put("ExpandedNodeId", d -> d.readExpandedNodeId(null));
+    BUILTIN.put("StatusCode", d -> d.readStatusCode(null));
+    BUILTIN.put("QualifiedName", d -> d.readQualifiedName(null));
+    BUILTIN.put("LocalizedText", d -> d.readLocalizedText(null));
+    BUILTIN.put("ExtensionObject", d -> d.readExtensionObject(null));
+    BUILTIN.put("DataValue", d -> d.readDataValue(null));
+    BUILTIN.put("Variant", d -> d.readVariant(null));
+    BUILTIN.put("DiagnosticInfo", d -> d.readDiagnosticInfo(null));
+  }
+
+  static class Field {
+    String name;
+    String typeNamespace;
+    String typeName;
+    String lengthField;
+    String switchField;
+    int switchValue = -1;
+    int length = 1;
+  }
+
+  static class StructuredType {
+    String name;
+    String baseTypeNamespace;
+    String baseType;
+    final List<Field> fields = new ArrayList<>();
+  }
+
+  private final String targetNamespace;
+
+  private final Map<String, StructuredType> structures = new LinkedHashMap<>();
+
+  private final Map<String, Map<Integer, String>> enumerations = new HashMap<>();
+
+  private DataTypeDictionary(String targetNamespace) {
+    this.targetNamespace = targetNamespace;
+  }
+
+  /**
+   * @param xml content of a DataTypeDictionary variable
+   * @return parsed dictionary
+   * @throws IOException on invalid content
+   */
+  public static DataTypeDictionary parse(byte[] xml) throws IOException {
+    Element root;
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      factory.setExpandEntityReferences(false);
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      root = builder.parse(new ByteArrayInputStream(xml)).getDocumentElement();
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("invalid type dictionary: " + e.getMessage(), e);
+    }
+    Map<String, String> prefixes = new HashMap<>();
+    NamedNodeMap attributes = root.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Node a = attributes.item(i);
+      if (a.getNodeName().startsWith("xmlns:")) {
+        prefixes.put(a.getNodeName().substring(6), a.getNodeValue());
+      }
+    }
+    DataTypeDictionary dictionary = new DataTypeDictionary(root.getAttribute("TargetNamespace"));
+
+    NodeList children = root.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      if (!(children.item(i) instanceof Element)) {
+        continue;
+      }
+      Element e = (Element) children.item(i);
+      String local = localName(e.getNodeName());
+      if ("StructuredType".equals(local)) {
+        StructuredType type = new StructuredType();
+        type.name = e.getAttribute("Name");
+        if (e.hasAttribute("BaseType")) {
+          type.baseTypeNamespace = namespace(prefixes, e.getAttribute("BaseType"));
+          type.baseType = localName(e.getAttribute("BaseType"));
+        }
+        NodeList fields = e.getChildNodes();
+        for (int f = 0; f < fields.getLength(); f++) {
+          if (fields.item(f) instanceof Element && "Field".equals(localName(fields.item(f).getNodeName()))) {
+            type.fields.add(field(prefixes, (Element) fields.item(f)));
+          }
+        }
+        dictionary.structures.put(type.name, type);
+      } else if ("EnumeratedType".equals(local)) {
+        Map<Integer, String> values = new HashMap<>();
+        NodeList items = e.getChildNodes();
+        for (int v = 0; v < items.getLength(); v++) {
+          if (items.item(v) instanceof Element && "EnumeratedValue".equals(localName(items.item(v).getNodeName()))) {
+            Element item = (Element) items.item(v);
+            values.put(Integer.valueOf(item.getAttribute("Value")), item.getAttribute("Name"));
+          }
+        }
+        dictionary.enumerations.put(e.getAttribute("Name"), values);
+      }
+    }
+    return dictionary;
+  }
+
+  private static Field field(Map<String, String> prefixes, Element e) {
+    Field f = new Field();
+    f.name = e.getAttribute("Name");
+    f.typeNamespace = namespace(prefixes, e.getAttribute("TypeName"));
+    f.typeName = localName(e.getAttribute("TypeName"));
+    if (e.hasAttribute("LengthField")) {
+      f.lengthField = e.getAttribute("LengthField");
+    }
+    if (e.hasAttribute("SwitchField")) {
+      f.switchField = e.getAttribute("SwitchField");
+    }
+    if (e.hasAttribute("SwitchValue")) {
+      f.switchValue = Integer.parseInt(e.getAttribute("SwitchValue"));
+    }
+    if (e.hasAttribute("Length")) {
+      f.length = Integer.parseInt(e.getAttribute("Length"));
+    }
+    return f;
+  }
+
+  private static String localName(String qname) {
+    int i = qname.indexOf(':');
+    return i < 0 ? qname : qname.substring(i + 1);
+  }
+
+  private static String namespace(Map<String, String> prefixes, String qname) {
+    int i = qname.indexOf(':');
+    return i < 0 ? null : prefixes.get(qname.substring(0, i));
+  }
+
+  public String getTargetNamespace() {
+    return targetNamespace;
+  }
+
+  /**
+   * @return names of all structured types
+   */
+  public Set<String> getStructureNames() {
+    return structures.keySet();
+  }
+
+  /**
+   * Compile all structured types. Types with unsupported fields (i.e. structures of other
+   * dictionaries) are skipped.
+   *
+   * @return codecs by type name
+   */
+  public Map<String, StructureCodec> compile() {
+    Map<String, StructureCodec> codecs = new HashMap<>();
+    structures.keySet().forEach(name -> codecs.put(name, new StructureCodec(name)));
+
+    Map<String, Set<String>> dependencies = new HashMap<>();
+    Set<String> failed = new HashSet<>();
+    for (StructuredType type : structures.values()) {
+      Set<String> uses = new HashSet<>();
+      try {
+        List<Field> fields = new ArrayList<>();
+        collectFields(type, fields, new HashSet<>());
+        String[] names = new String[fields.size()];
+        boolean[] hidden = new boolean[fields.size()];
+        StructureCodec.Step[] steps = new StructureCodec.Step[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+          Field f = fields.get(i);
+          names[i] = f.name;
+          hidden[i] = f.name.startsWith("Reserved");
+          StructureCodec.Step s = new StructureCodec.Step();
+          if ("Bit".equals(f.typeName) && OPC_BINARY_NS.equals(f.typeNamespace)) {
+            s.bits = f.length;
+          } else {
+            s.reader = reader(f, codecs, uses);
+          }
+          if (f.lengthField != null) {
+            s.lengthIndex = indexOf(names, i, f.lengthField);
+            hidden[s.lengthIndex] = true;
+          }
+          if (f.switchField != null) {
+            s.switchIndex = indexOf(names, i, f.switchField);
+            s.switchValue = f.switchValue;
+            hidden[s.switchIndex] = true;
+          }
+          steps[i] = s;
+        }
+        codecs.get(type.name).init(names, hidden, steps);
+        dependencies.put(type.name, uses);
+      } catch (IllegalArgumentException e) {
+        logger.debug("{}: skip structure {}: {}", targetNamespace, type.name, e.getMessage());
+        failed.add(type.name);
+      }
+    }
+    // drop structures with nested unsupported structures
+    boolean changed = !failed.isEmpty();
+    while (changed) {
+      changed = false;
+      for (Map.Entry<String, Set<String>> e : dependencies.entrySet()) {
+        if (!failed.contains(e.getKey()) && e.getValue().stream().anyMatch(failed::contains)) {
+          failed.add(e.getKey());
+          changed = true;
+        }
+      }
+    }
+    failed.forEach(codecs::remove);
+    return codecs;
+  }
+
+  private void collectFields(StructuredType type, List<Field> fields, Set<String> visited) {
+    if (!visited.add(type.name)) {
+      throw new IllegalArgumentException("cyclic base type: " + type.name);
+    }
+    if (type.baseType != null && targetNamespace.equals(type.baseTypeNamespace)) {
+      StructuredType base = structures.get(type.baseType);
+      if (base == null) {
+        throw new IllegalArgumentException("unknown base type: " + type.baseType);
+      }
+      collectFields(base, fields, visited);
+    }
+    fields.addAll(type.fields);
+  }
+
+  private StructureCodec.FieldReader reader(Field f, Map<String, StructureCodec> codecs, Set<String> uses) {
+    if (OPC_BINARY_NS.equals(f.typeNamespace) || UA_NS.equals(f.typeNamespace)) {
+      StructureCodec.FieldReader reader = BUILTIN.get(f.typeName);
+      if (reader != null) {
+        return reader;
+      }
+    } else if (targetNamespace.equals(f.typeNamespace)) {
+      StructureCodec nested = codecs.get(f.typeName);
+      if (nested != null) {
+        uses.add(f.typeName);
+        return nested::decode;
+      }
+      Map<Integer, String> values = enumerations.get(f.typeName);
+      if (values != null) {
+        return (BinaryDecoder d) -> {
+          Integer value = d.readInt32(null);
+          String name = values.get(value);
+          return name != null ? name : value;
+        };
+      }
+    }
+    throw new IllegalArgumentException("unsupported field type: " + f.typeNamespace + ":" + f.typeName);
+  }
+
+  private static int indexOf(String[] names, int before, String name) {
+    for (int i = 0; i < before; i++) {
+      if (name.equals(names[i])) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("unknown field: " + name);
+  }
+}
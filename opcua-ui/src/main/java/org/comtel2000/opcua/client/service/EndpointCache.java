@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.milo.opcua.stack.core.serialization.binary.BinaryDecoder;
+import org.eclipse.milo.opcua.stack.core.serialization.binary.BinaryEncoder;
+import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Endpoint descriptions (including the server certificates) by discovery url. Entries expire after
+ * a TTL (system property {@code opcua.endpoints.ttl} in milliseconds, default 24h) and are stored
+ * next to the {@link AddressSpaceCache} to skip the GetEndpoints round trip on a reconnect.
+ *
+ * @author comtel
+ *
+ */
+public class EndpointCache {
+
+  protected final static Logger logger = LoggerFactory.getLogger(EndpointCache.class);
+
+  public final static long DEFAULT_TTL = 24 * 60 * 60 * 1000L;
+
+  private final static int MAGIC = 0x4F554550;
+  private final static short VERSION = 1;
+
+  private final static class Entry {
+    final EndpointDescription[] endpoints;
+    final long time;
+
+    Entry(EndpointDescription[] endpoints, long time) {
+      this.endpoints = endpoints;
+      this.time = time;
+    }
+  }
+
+  private final Path file;
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  private volatile long ttl = Long.getLong("opcua.endpoints.ttl", DEFAULT_TTL);
+
+  private volatile boolean dirty;
+
+  private EndpointCache(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * @param dir cache directory or {@code null} for a memory only cache
+   * @return cache with the stored entries
+   */
+  public static EndpointCache open(Path dir) {
+    EndpointCache cache = new EndpointCache(dir != null ? dir.resolve("endpoints.bin") : null);
+    if (cache.file != null) {
+      cache.load();
+    }
+    return cache;
+  }
+
+  /**
+   * @param ttl time to live of an entry in milliseconds
+   */
+  public void setTtl(long ttl) {
+    this.ttl = Math.max(0, ttl);
+  }
+
+  public long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * @param url discovery url
+   * @return not expired endpoints of the url
+   */
+  public Optional<EndpointDescription[]> get(String url) {
+    Entry e = entries.get(url);
+    if (e == null) {
+      return Optional.empty();
+    }
+    if (System.currentTimeMillis() - e.time > ttl) {
+      entries.remove(url, e);
+      dirty = true;
+      return Optional.empty();
+    }
+    return Optional.of(e.endpoints.clone());
+  }
+
+  public void put(String url, EndpointDescription[] endpoints) {
+    if (endpoints == null || endpoints.length == 0) {
+      return;
+    }
+    entries.put(url, new Entry(endpoints.clone(), System.currentTimeMillis()));
+    dirty = true;
+  }
+
+  /**
+   * Invalidate the endpoints of the url, i.e. after the cached endpoint was rejected.
+   *
+   * @param url discovery url
+   */
+  public void remove(String url) {
+    if (entries.remove(url) != null) {
+      dirty = true;
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Write the entries to the cache file if changed since the last save.
+   */
+  public void save() {
+    Path target = file;
+    if (target == null || !dirty) {
+      return;
+    }
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    ByteBuf buffer = Unpooled.buffer().order(Unpooled.LITTLE_ENDIAN);
+    try {
+      Files.createDirectories(target.getParent());
+      BinaryEncoder encoder = new BinaryEncoder().setBuffer(buffer);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+          out.writeUTF(e.getKey());
+          out.writeLong(e.getValue().time);
+          out.writeInt(e.getValue().endpoints.length);
+          for (EndpointDescription endpoint : e.getValue().endpoints) {
+            buffer.clear();
+            EndpointDescription.encode(endpoint, encoder);
+            out.writeInt(buffer.readableBytes());
+            buffer.readBytes(out, buffer.readableBytes());
+          }
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      dirty = false;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("save endpoints {} failed: {}", target, e.getMessage());
+    } finally {
+      buffer.release();
+    }
+  }
+
+  private void load() {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+        return;
+      }
+      BinaryDecoder decoder = new BinaryDecoder();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String url = in.readUTF();
+        long time = in.readLong();
+        EndpointDescription[] endpoints = new EndpointDescription[in.readInt()];
+        for (int j = 0; j < endpoints.length; j++) {
+          byte[] encoded = new byte[in.readInt()];
+          in.readFully(encoded);
+          decoder.setBuffer(Unpooled.wrappedBuffer(encoded).order(Unpooled.LITTLE_ENDIAN));
+          endpoints[j] = EndpointDescription.decode(decoder);
+        }
+        if (System.currentTimeMillis() - time <= ttl) {
+          entries.put(url, new Entry(endpoints, time));
+        }
+      }
+      logger.debug("{} cached endpoint urls loaded", entries.size());
+    } catch (NoSuchFileException e) {
+      // first start
+    } catch (IOException | RuntimeException e) {
+      logger.warn("endpoint cache {} not readable: {}", file, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
+
+/**
+ * File formats of a monitored item list (reference and monitoring parameters per item), written by
+ * {@link ItemListWriter} and read by {@link ItemListReader}.
+ *
+ * @author comtel
+ *
+ */
+public enum ItemListFormat {
+
+  /** OPC UA binary encoded records with a length prefix */
+  BINARY("uail", "Item List Files"),
+  /** one record per line separated by ';' with a header line */
+  CSV("csv", "CSV Files"),
+  /** one JSON object per line */
+  JSON("jsonl", "JSON Lines Files"),
+  /** legacy XML encoded references without monitoring parameters */
+  XML("xml", "XML Files");
+
+  /** columns of the text formats */
+  final static String[] COLUMNS = { "nodeId", "browseName", "displayName", "nodeClass", "typeDefinition", "referenceType", "forward",
+      "samplingInterval", "queueSize", "discardOldest", "trigger", "deadbandType", "deadbandValue" };
+
+  private final String extension;
+
+  private final String description;
+
+  private ItemListFormat(String extension, String description) {
+    this.extension = extension;
+    this.description = description;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * @param file item list file
+   * @return format by the file extension
+   * @throws IllegalArgumentException on an unknown extension
+   */
+  public static ItemListFormat of(Path file) {
+    String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+    for (ItemListFormat f : values()) {
+      if (name.endsWith("." + f.extension)) {
+        return f;
+      }
+    }
+    if (name.endsWith(".json")) {
+      return JSON;
+    }
+    throw new IllegalArgumentException("unknown item list format: " + file.getFileName());
+  }
+
+  static void toFields(ReferenceDescription ref, MonitoredItemSpec spec, String[] fields) {
+    fields[0] = ref.getNodeId().toParseableString();
+    fields[1] = ref.getBrowseName() != null ? ref.getBrowseName().toParseableString() : "";
+    fields[2] = ref.getDisplayName() != null && ref.getDisplayName().getText() != null ? ref.getDisplayName().getText() : "";
+    fields[3] = String.valueOf(ref.getNodeClass());
+    fields[4] = ref.getTypeDefinition() != null && !ref.getTypeDefinition().isNull() ? ref.getTypeDefinition().toParseableString() : "";
+    fields[5] = ref.getReferenceTypeId() != null ? ref.getReferenceTypeId().toParseableString() : "";
+    fields[6] = String.valueOf(!Boolean.FALSE.equals(ref.getIsForward()));
+    fields[7] = String.valueOf(spec.getSamplingInterval());
+    fields[8] = String.valueOf(spec.getQueueSize());
+    fields[9] = String.valueOf(spec.isDiscardOldest());
+    fields[10] = spec.getTrigger().name();
+    fields[11] = spec.getDeadbandType().name();
+    fields[12] = String.valueOf(spec.getDeadbandValue());
+  }
+
+  /**
+   * @param fields values by {@link #COLUMNS}, {@code null} or empty for missing optional values
+   * @return reference and monitoring parameters
+   * @throws RuntimeException on a missing node id or malformed values
+   */
+  static Tuple2<ReferenceDescription, MonitoredItemSpec> fromFields(String[] fields) {
+    if (isEmpty(fields[0])) {
+      throw new IllegalArgumentException("nodeId missing");
+    }
+    ExpandedNodeId nodeId = ExpandedNodeId.parse(fields[0]);
+    QualifiedName browseName = isEmpty(fields[1]) ? QualifiedName.NULL_VALUE : QualifiedName.parse(fields[1]);
+    LocalizedText displayName = LocalizedText.english(isEmpty(fields[2]) ? browseName.getName() : fields[2]);
+    NodeClass nodeClass = isEmpty(fields[3]) ? NodeClass.Variable : NodeClass.valueOf(fields[3]);
+    ExpandedNodeId typeDefinition = isEmpty(fields[4]) ? ExpandedNodeId.NULL_VALUE : ExpandedNodeId.parse(fields[4]);
+    NodeId referenceType = isEmpty(fields[5]) ? null : NodeId.parse(fields[5]);
+    boolean forward = isEmpty(fields[6]) || Boolean.parseBoolean(fields[6]);
+
+    MonitoredItemSpec.Builder spec = MonitoredItemSpec.builder();
+    if (!isEmpty(fields[7])) {
+      spec.setSamplingInterval(Double.parseDouble(fields[7]));
+    }
+    if (!isEmpty(fields[8])) {
+      spec.setQueueSize(Integer.parseInt(fields[8]));
+    }
+    if (!isEmpty(fields[9])) {
+      spec.setDiscardOldest(Boolean.parseBoolean(fields[9]));
+    }
+    if (!isEmpty(fields[10])) {
+      spec.setTrigger(DataChangeTrigger.valueOf(fields[10]));
+    }
+    if (!isEmpty(fields[11])) {
+      spec.setDeadband(DeadbandType.valueOf(fields[11]), isEmpty(fields[12]) ? 0.0 : Double.parseDouble(fields[12]));
+    }
+    return new Tuple2<>(new ReferenceDescription(referenceType, forward, nodeId, browseName, displayName, nodeClass, typeDefinition),
+        spec.build());
+  }
+
+  private static boolean isEmpty(String s) {
+    return s == null || s.isEmpty();
+  }
+
+  /**
+   * Append a ';' separated value, quoted if it contains a separator, a quote or a line break.
+   *
+   * @param sb output
+   * @param value value
+   */
+  static void appendCsvField(StringBuilder sb, String value) {
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ';' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      sb.append(value);
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        sb.append('"');
+      }
+      sb.append(c);
+    }
+    sb.append('"');
+  }
+}
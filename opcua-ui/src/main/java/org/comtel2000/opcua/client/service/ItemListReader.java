@@ -0,0 +1,560 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.milo.opcua.stack.core.serialization.binary.BinaryDecoder;
+import org.eclipse.milo.opcua.stack.core.serialization.xml.XmlDecoder;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.Unpooled;
+
+/**
+ * Streaming reader of a monitored item list written by {@link ItemListWriter}. Malformed records
+ * are passed to the error handler and skipped, the following records are still read.
+ *
+ * <pre>
+ * try (ItemListReader r = ItemListReader.open(file)) {
+ *   Tuple2&lt;ReferenceDescription, MonitoredItemSpec&gt; item;
+ *   while ((item = r.next()) != null) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * @author comtel
+ *
+ */
+public abstract class ItemListReader implements Closeable {
+
+  protected final static Logger logger = LoggerFactory.getLogger(ItemListReader.class);
+
+  /** max length of a binary record */
+  final static int MAX_RECORD_LENGTH = 1024 * 1024;
+
+  private BiConsumer<Long, Exception> errorHandler = (record, e) -> logger.warn("item list record {} skipped: {}", record, e.getMessage());
+
+  private long position;
+
+  /** written by the reading thread only, read by others for progress */
+  private volatile long count;
+
+  private volatile long errors;
+
+  /**
+   * @param file item list file
+   * @return reader of the format by the file extension
+   * @throws IOException if the file can not be opened
+   */
+  public static ItemListReader open(Path file) throws IOException {
+    return open(file, ItemListFormat.of(file));
+  }
+
+  public static ItemListReader open(Path file, ItemListFormat format) throws IOException {
+    switch (format) {
+      case BINARY:
+        return new BinaryReader(new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024)));
+      case CSV:
+        return new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+      case JSON:
+        return new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+      case XML:
+        return new XmlReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+      default:
+        throw new IllegalArgumentException("unsupported format: " + format);
+    }
+  }
+
+  /**
+   * @param errorHandler consumer of the record number (1-based) and the error of a skipped record
+   * @return this
+   */
+  public ItemListReader setErrorHandler(BiConsumer<Long, Exception> errorHandler) {
+    this.errorHandler = errorHandler;
+    return this;
+  }
+
+  /**
+   * Read the next valid item.
+   *
+   * @return reference and monitoring parameters or {@code null} at the end of the list
+   * @throws IOException on read errors
+   */
+  public Tuple2<ReferenceDescription, MonitoredItemSpec> next() throws IOException {
+    while (true) {
+      position++;
+      Tuple2<ReferenceDescription, MonitoredItemSpec> item;
+      try {
+        item = read();
+      } catch (RuntimeException e) {
+        error(e);
+        continue;
+      }
+      if (item == null) {
+        position--;
+        return null;
+      }
+      count++;
+      return item;
+    }
+  }
+
+  /**
+   * @return next item or {@code null} at the end
+   * @throws IOException on read errors
+   * @throws RuntimeException on a malformed record, the record must be consumed before
+   */
+  protected abstract Tuple2<ReferenceDescription, MonitoredItemSpec> read() throws IOException;
+
+  protected void error(Exception e) {
+    errors++;
+    errorHandler.accept(position, e);
+  }
+
+  /**
+   * Read the list in chunks and pass them to the consumer. The next chunk is read after the stage of
+   * the previous chunk is completed, so only one chunk is held in memory. The reader is closed at
+   * the end, cancel the returned future to stop.
+   *
+   * @param chunkSize max items per chunk
+   * @param consumer consumer of a chunk, i.e. a batched subscribe
+   * @param executor executor of the read
+   * @return number of read items
+   */
+  public CompletableFuture<Long> forEachChunk(int chunkSize,
+      Function<List<Tuple2<ReferenceDescription, MonitoredItemSpec>>, ? extends CompletionStage<?>> consumer, Executor executor) {
+    CompletableFuture<Long> done = new CompletableFuture<>();
+    done.whenComplete((n, t) -> {
+      try {
+        close();
+      } catch (IOException e) {
+        logger.debug("close failed: {}", e.getMessage());
+      }
+    });
+    executor.execute(() -> nextChunk(Math.max(1, chunkSize), consumer, executor, done));
+    return done;
+  }
+
+  private void nextChunk(int chunkSize, Function<List<Tuple2<ReferenceDescription, MonitoredItemSpec>>, ? extends CompletionStage<?>> consumer,
+      Executor executor, CompletableFuture<Long> done) {
+    if (done.isDone()) {
+      return;
+    }
+    List<Tuple2<ReferenceDescription, MonitoredItemSpec>> chunk = new ArrayList<>(chunkSize);
+    try {
+      Tuple2<ReferenceDescription, MonitoredItemSpec> item;
+      while (chunk.size() < chunkSize && (item = next()) != null) {
+        chunk.add(item);
+      }
+    } catch (IOException | RuntimeException e) {
+      done.completeExceptionally(e);
+      return;
+    }
+    if (chunk.isEmpty()) {
+      done.complete(count);
+      return;
+    }
+    consumer.apply(chunk).whenCompleteAsync((r, t) -> {
+      if (t != null) {
+        done.completeExceptionally(t);
+      } else {
+        nextChunk(chunkSize, consumer, executor, done);
+      }
+    }, executor);
+  }
+
+  /**
+   * @return number of read items
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return number of skipped records
+   */
+  public long getErrorCount() {
+    return errors;
+  }
+
+  private final static class BinaryReader extends ItemListReader {
+
+    private final DataInputStream in;
+
+    private final BinaryDecoder decoder = new BinaryDecoder();
+
+    private byte[] record = new byte[1024];
+
+    BinaryReader(DataInputStream in) throws IOException {
+      this.in = in;
+      try {
+        if (in.readInt() != ItemListWriter.MAGIC) {
+          throw new IOException("not an item list file");
+        }
+        short version = in.readShort();
+        if (version != ItemListWriter.VERSION) {
+          throw new IOException("unsupported item list version: " + version);
+        }
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    @Override
+    protected Tuple2<ReferenceDescription, MonitoredItemSpec> read() throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        return null;
+      }
+      int length;
+      try {
+        length = b << 24 | in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+          throw new IOException("invalid record length: " + length);
+        }
+        if (length > record.length) {
+          record = new byte[Math.max(length, 2 * record.length)];
+        }
+        in.readFully(record, 0, length);
+      } catch (EOFException e) {
+        // truncated file: end of list
+        error(e);
+        return null;
+      }
+      decoder.setBuffer(Unpooled.wrappedBuffer(record, 0, length).order(Unpooled.LITTLE_ENDIAN));
+      ReferenceDescription ref = ReferenceDescription.decode(decoder);
+      MonitoredItemSpec spec = MonitoredItemSpec.builder().setSamplingInterval(decoder.decodeDouble(null))
+          .setQueueSize(decoder.decodeUInt32(null).intValue()).setDiscardOldest(decoder.decodeBoolean(null))
+          .setTrigger(DataChangeTrigger.from(decoder.decodeInt32(null)))
+          .setDeadband(DeadbandType.from(decoder.decodeInt32(null)), decoder.decodeDouble(null)).build();
+      return new Tuple2<>(ref, spec);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private final static class CsvReader extends ItemListReader {
+
+    private final BufferedReader in;
+
+    private final List<String> values = new ArrayList<>(ItemListFormat.COLUMNS.length);
+
+    private final String[] fields = new String[ItemListFormat.COLUMNS.length];
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    /** column of the file to index of {@link ItemListFormat#COLUMNS} or -1 */
+    private final int[] columns;
+
+    CsvReader(BufferedReader in) throws IOException {
+      this.in = in;
+      try {
+        if (!readRecord()) {
+          throw new IOException("header missing");
+        }
+        columns = new int[values.size()];
+        for (int i = 0; i < columns.length; i++) {
+          columns[i] = Arrays.asList(ItemListFormat.COLUMNS).indexOf(values.get(i).trim());
+        }
+        if (columns.length == 0 || Arrays.stream(columns).noneMatch(c -> c == 0)) {
+          throw new IOException("column " + ItemListFormat.COLUMNS[0] + " missing");
+        }
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    @Override
+    protected Tuple2<ReferenceDescription, MonitoredItemSpec> read() throws IOException {
+      do {
+        if (!readRecord()) {
+          return null;
+        }
+      } while (values.size() == 1 && values.get(0).isEmpty());
+      Arrays.fill(fields, null);
+      for (int i = 0; i < values.size() && i < columns.length; i++) {
+        if (columns[i] >= 0) {
+          fields[columns[i]] = values.get(i);
+        }
+      }
+      return ItemListFormat.fromFields(fields);
+    }
+
+    /**
+     * Read one record, quoted values may contain separators, quotes ("") and line breaks.
+     */
+    private boolean readRecord() throws IOException {
+      values.clear();
+      sb.setLength(0);
+      int c = in.read();
+      if (c < 0) {
+        return false;
+      }
+      boolean quoted = false;
+      while (true) {
+        if (quoted) {
+          if (c < 0) {
+            quoted = false;
+            continue;
+          }
+          if (c == '"') {
+            c = in.read();
+            if (c != '"') {
+              quoted = false;
+              continue;
+            }
+          }
+          sb.append((char) c);
+        } else if (c < 0 || c == '\n') {
+          values.add(sb.toString());
+          return true;
+        } else if (c == ';') {
+          values.add(sb.toString());
+          sb.setLength(0);
+        } else if (c == '"') {
+          quoted = true;
+        } else if (c != '\r') {
+          sb.append((char) c);
+        }
+        c = in.read();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private final static class JsonReader extends ItemListReader {
+
+    private final BufferedReader in;
+
+    private final String[] fields = new String[ItemListFormat.COLUMNS.length];
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    private String line;
+
+    private int pos;
+
+    JsonReader(BufferedReader in) {
+      this.in = in;
+    }
+
+    @Override
+    protected Tuple2<ReferenceDescription, MonitoredItemSpec> read() throws IOException {
+      do {
+        line = in.readLine();
+        if (line == null) {
+          return null;
+        }
+        line = line.trim();
+      } while (line.isEmpty());
+      Arrays.fill(fields, null);
+      parseObject();
+      return ItemListFormat.fromFields(fields);
+    }
+
+    /**
+     * Parse a flat object of string, number, boolean and null values.
+     */
+    private void parseObject() {
+      pos = 0;
+      expect('{');
+      if (peek() == '}') {
+        return;
+      }
+      while (true) {
+        String key = parseString();
+        expect(':');
+        String value = peek() == '"' ? parseString() : parseLiteral();
+        int column = Arrays.asList(ItemListFormat.COLUMNS).indexOf(key);
+        if (column >= 0) {
+          fields[column] = value;
+        }
+        if (peek() == ',') {
+          pos++;
+          continue;
+        }
+        expect('}');
+        return;
+      }
+    }
+
+    private char peek() {
+      while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+        pos++;
+      }
+      if (pos == line.length()) {
+        throw new IllegalArgumentException("unexpected end of line");
+      }
+      return line.charAt(pos);
+    }
+
+    private void expect(char c) {
+      if (peek() != c) {
+        throw new IllegalArgumentException("'" + c + "' expected at " + pos);
+      }
+      pos++;
+    }
+
+    private String parseString() {
+      expect('"');
+      sb.setLength(0);
+      while (pos < line.length()) {
+        char c = line.charAt(pos++);
+        if (c == '"') {
+          return sb.toString();
+        }
+        if (c != '\\') {
+          sb.append(c);
+          continue;
+        }
+        if (pos == line.length()) {
+          break;
+        }
+        c = line.charAt(pos++);
+        switch (c) {
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'u':
+            if (pos + 4 > line.length()) {
+              throw new IllegalArgumentException("invalid escape at " + pos);
+            }
+            sb.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+            pos += 4;
+            break;
+          default:
+            sb.append(c);
+        }
+      }
+      throw new IllegalArgumentException("unterminated string");
+    }
+
+    private String parseLiteral() {
+      int start = pos;
+      while (pos < line.length() && ",}".indexOf(line.charAt(pos)) < 0 && !Character.isWhitespace(line.charAt(pos))) {
+        pos++;
+      }
+      String value = line.substring(start, pos);
+      if (value.isEmpty() || value.charAt(0) == '{' || value.charAt(0) == '[') {
+        throw new IllegalArgumentException("unsupported value at " + start);
+      }
+      return value.equals("null") ? null : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Legacy format. The Milo XmlDecoder is bound to its reader, therefore a decoder is created per
+   * record.
+   */
+  private final static class XmlReader extends ItemListReader {
+
+    private final static String START = "<ReferenceDescription>";
+    private final static String END = "</ReferenceDescription>";
+
+    private final BufferedReader in;
+
+    private final StringBuilder sb = new StringBuilder(1024);
+
+    XmlReader(BufferedReader in) {
+      this.in = in;
+    }
+
+    @Override
+    protected Tuple2<ReferenceDescription, MonitoredItemSpec> read() throws IOException {
+      sb.setLength(0);
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (sb.length() == 0) {
+          int start = line.indexOf(START);
+          if (start < 0) {
+            continue;
+          }
+          line = line.substring(start);
+        }
+        sb.append(line).append('\n');
+        int end = line.indexOf(END);
+        if (end >= 0) {
+          sb.setLength(sb.length() - line.length() - 1 + end + END.length());
+          try {
+            XmlDecoder decoder = new XmlDecoder(new StringReader(sb.toString()));
+            decoder.skipElement();
+            return new Tuple2<>(ReferenceDescription.decode(decoder), MonitoredItemSpec.DEFAULT);
+          } catch (XMLStreamException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+          }
+        }
+      }
+      if (sb.length() > 0) {
+        error(new EOFException(END + " missing"));
+      }
+      return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
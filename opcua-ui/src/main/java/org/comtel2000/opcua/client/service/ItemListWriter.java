@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.milo.opcua.stack.core.serialization.binary.BinaryEncoder;
+import org.eclipse.milo.opcua.stack.core.serialization.xml.XmlEncoder;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Streaming writer of a monitored item list. Items are written one by one with a reused encoder,
+ * i.e.
+ *
+ * <pre>
+ * try (ItemListWriter w = ItemListWriter.create(file)) {
+ *   items.forEach(i -&gt; w.write(i.getReferenceDescription(), i.getSpec()));
+ * }
+ * </pre>
+ *
+ * @author comtel
+ *
+ */
+public abstract class ItemListWriter implements Closeable {
+
+  final static int MAGIC = 0x4F55494C;
+  final static short VERSION = 1;
+
+  private long count;
+
+  /**
+   * @param file target file, an existing file is replaced
+   * @return writer of the format by the file extension
+   * @throws IOException if the file can not be created
+   */
+  public static ItemListWriter create(Path file) throws IOException {
+    return create(file, ItemListFormat.of(file));
+  }
+
+  public static ItemListWriter create(Path file, ItemListFormat format) throws IOException {
+    switch (format) {
+      case BINARY:
+        return new BinaryWriter(new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)));
+      case CSV:
+        return new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+      case JSON:
+        return new JsonWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+      case XML:
+        return new XmlWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+      default:
+        throw new IllegalArgumentException("unsupported format: " + format);
+    }
+  }
+
+  /**
+   * @param ref reference of the item
+   * @param spec monitoring parameters (not written by {@link ItemListFormat#XML})
+   * @throws IOException on write errors
+   */
+  public void write(ReferenceDescription ref, MonitoredItemSpec spec) throws IOException {
+    doWrite(ref, spec);
+    count++;
+  }
+
+  protected abstract void doWrite(ReferenceDescription ref, MonitoredItemSpec spec) throws IOException;
+
+  /**
+   * @return number of written items
+   */
+  public long getCount() {
+    return count;
+  }
+
+  private final static class BinaryWriter extends ItemListWriter {
+
+    private final DataOutputStream out;
+
+    private final ByteBuf buffer = Unpooled.buffer().order(Unpooled.LITTLE_ENDIAN);
+
+    private final BinaryEncoder encoder = new BinaryEncoder().setBuffer(buffer);
+
+    BinaryWriter(DataOutputStream out) throws IOException {
+      this.out = out;
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+    }
+
+    @Override
+    protected void doWrite(ReferenceDescription ref, MonitoredItemSpec spec) throws IOException {
+      buffer.clear();
+      ReferenceDescription.encode(ref, encoder);
+      encoder.encodeDouble(null, spec.getSamplingInterval());
+      encoder.encodeUInt32(null, uint(spec.getQueueSize()));
+      encoder.encodeBoolean(null, spec.isDiscardOldest());
+      encoder.encodeInt32(null, spec.getTrigger().getValue());
+      encoder.encodeInt32(null, spec.getDeadbandType().getValue());
+      encoder.encodeDouble(null, spec.getDeadbandValue());
+      out.writeInt(buffer.readableBytes());
+      buffer.readBytes(out, buffer.readableBytes());
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.close();
+      } finally {
+        buffer.release();
+      }
+    }
+  }
+
+  private final static class CsvWriter extends ItemListWriter {
+
+    private final Writer out;
+
+    private final String[] fields = new String[ItemListFormat.COLUMNS.length];
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    CsvWriter(BufferedWriter out) throws IOException {
+      this.out = out;
+      out.write(String.join(";", ItemListFormat.COLUMNS));
+      out.write('\n');
+    }
+
+    @Override
+    protected void doWrite(ReferenceDescription ref, MonitoredItemSpec spec) throws IOException {
+      ItemListFormat.toFields(ref, spec, fields);
+      sb.setLength(0);
+      for (int i = 0; i < fields.length; i++) {
+        if (i > 0) {
+          sb.append(';');
+        }
+        ItemListFormat.appendCsvField(sb, fields[i]);
+      }
+      out.append(sb).write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  private final static class JsonWriter extends ItemListWriter {
+
+    /** columns written as JSON number or boolean */
+    private final static boolean[] RAW = new boolean[ItemListFormat.COLUMNS.length];
+
+    static {
+      RAW[6] = RAW[7] = RAW[8] = RAW[9] = RAW[12] = true;
+    }
+
+    private final Writer out;
+
+    private final String[] fields = new String[ItemListFormat.COLUMNS.length];
+
+    private final StringBuilder sb = new StringBuilder(256);
+
+    JsonWriter(BufferedWriter out) {
+      this.out = out;
+    }
+
+    @Override
+    protected void doWrite(ReferenceDescription ref, MonitoredItemSpec spec) throws IOException {
+      ItemListFormat.toFields(ref, spec, fields);
+      sb.setLength(0);
+      sb.append('{');
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i].isEmpty()) {
+          continue;
+        }
+        if (sb.length() > 1) {
+          sb.append(',');
+        }
+        sb.append('"').append(ItemListFormat.COLUMNS[i]).append("\":");
+        if (RAW[i] && !fields[i].equals("NaN") && !fields[i].endsWith("Infinity")) {
+          sb.append(fields[i]);
+        } else {
+          appendString(fields[i]);
+        }
+      }
+      out.append(sb.append('}')).write('\n');
+    }
+
+    private void appendString(String value) {
+      sb.append('"');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        switch (c) {
+          case '"':
+          case '\\':
+            sb.append('\\').append(c);
+            break;
+          case '\n':
+            sb.append("\\n");
+            break;
+          case '\r':
+            sb.append("\\r");
+            break;
+          case '\t':
+            sb.append("\\t");
+            break;
+          default:
+            if (c < 0x20) {
+              sb.append(String.format("\\u%04x", (int) c));
+            } else {
+              sb.append(c);
+            }
+        }
+      }
+      sb.append('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  private final static class XmlWriter extends ItemListWriter {
+
+    private final Writer out;
+
+    private final XmlEncoder encoder = new XmlEncoder();
+
+    XmlWriter(BufferedWriter out) throws IOException {
+      this.out = out;
+      try {
+        encoder.setOutput(out);
+      } catch (XMLStreamException e) {
+        out.close();
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+
+    @Override
+    protected void doWrite(ReferenceDescription ref, MonitoredItemSpec spec) throws IOException {
+      out.write("<ReferenceDescription>");
+      ReferenceDescription.encode(ref, encoder);
+      out.write("</ReferenceDescription>");
+      out.write(System.lineSeparator());
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing set of primitive long values (8 bytes per slot instead of a boxed entry). Not
+ * thread safe.
+ *
+ * @author comtel
+ *
+ */
+public class LongHashSet {
+
+  private final static float LOAD_FACTOR = 0.6f;
+
+  private long[] table;
+
+  private int size;
+
+  private boolean containsZero;
+
+  private int threshold;
+
+  public LongHashSet() {
+    this(1024);
+  }
+
+  public LongHashSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    table = new long[capacity];
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * @param value value to add
+   * @return {@code true} if the value was not already contained
+   */
+  public boolean add(long value) {
+    if (value == 0) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      size++;
+      return true;
+    }
+    int mask = table.length - 1;
+    int i = mix(value) & mask;
+    while (table[i] != 0) {
+      if (table[i] == value) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    table[i] = value;
+    if (++size > threshold) {
+      rehash();
+    }
+    return true;
+  }
+
+  public boolean contains(long value) {
+    if (value == 0) {
+      return containsZero;
+    }
+    int mask = table.length - 1;
+    int i = mix(value) & mask;
+    while (table[i] != 0) {
+      if (table[i] == value) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    Arrays.fill(table, 0);
+    containsZero = false;
+    size = 0;
+  }
+
+  private void rehash() {
+    long[] old = table;
+    table = new long[old.length << 1];
+    threshold = (int) (table.length * LOAD_FACTOR);
+    int mask = table.length - 1;
+    for (long value : old) {
+      if (value != 0) {
+        int i = mix(value) & mask;
+        while (table[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        table[i] = value;
+      }
+    }
+  }
+
+  private static int mix(long value) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
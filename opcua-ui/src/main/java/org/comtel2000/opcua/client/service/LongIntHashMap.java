@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map of primitive long keys to int values (12 bytes per slot instead of boxed
+ * entries). Not thread safe.
+ *
+ * @author comtel
+ *
+ */
+public class LongIntHashMap {
+
+  private final static float LOAD_FACTOR = 0.6f;
+
+  private long[] keys;
+
+  private int[] values;
+
+  private int size;
+
+  private boolean containsZero;
+
+  private int zeroValue;
+
+  private int threshold;
+
+  public LongIntHashMap() {
+    this(1024);
+  }
+
+  public LongIntHashMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    keys = new long[capacity];
+    values = new int[capacity];
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  /**
+   * @param key key
+   * @param value value
+   * @return {@code true} if the key was not already contained (an existing value is kept)
+   */
+  public boolean putIfAbsent(long key, int value) {
+    if (key == 0) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      zeroValue = value;
+      size++;
+      return true;
+    }
+    int mask = keys.length - 1;
+    int i = mix(key) & mask;
+    while (keys[i] != 0) {
+      if (keys[i] == key) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size > threshold) {
+      rehash();
+    }
+    return true;
+  }
+
+  /**
+   * @param key key
+   * @param missing value returned if the key is not contained
+   * @return value of the key
+   */
+  public int get(long key, int missing) {
+    if (key == 0) {
+      return containsZero ? zeroValue : missing;
+    }
+    int mask = keys.length - 1;
+    int i = mix(key) & mask;
+    while (keys[i] != 0) {
+      if (keys[i] == key) {
+        return values[i];
+      }
+      i = (i + 1) & mask;
+    }
+    return missing;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, 0);
+    containsZero = false;
+    size = 0;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new long[oldKeys.length << 1];
+    values = new int[oldKeys.length << 1];
+    threshold = (int) (keys.length * LOAD_FACTOR);
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != 0) {
+        int i = mix(oldKeys[j]) & mask;
+        while (keys[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  private static int mix(long value) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Least recently used cache bounded by the sum of the entry weights, i.e. the number of references
+ * of a browse result. Counts hits, misses and evictions. Keys can be indexed by a group, i.e. the
+ * node of a node/attribute key, to remove all entries of a group without a scan.
+ *
+ * @author comtel
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+
+  private final String name;
+
+  private final long maxWeight;
+
+  private final ToIntFunction<V> weigher;
+
+  private final Function<? super K, ?> grouper;
+
+  private final LinkedHashMap<K, V> map = new LinkedHashMap<>(256, 0.75f, true);
+
+  private final Map<Object, Set<K>> groups = new HashMap<>();
+
+  private long weight;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param name cache name used by {@link #toString()}
+   * @param maxWeight max sum of all entry weights
+   * @param weigher weight of one entry (at least 1)
+   */
+  public LruCache(String name, long maxWeight, ToIntFunction<V> weigher) {
+    this(name, maxWeight, weigher, null);
+  }
+
+  /**
+   * @param name cache name used by {@link #toString()}
+   * @param maxWeight max sum of all entry weights
+   * @param weigher weight of one entry (at least 1)
+   * @param grouper group of a key used by {@link #removeGroup(Object)} or {@code null}
+   */
+  public LruCache(String name, long maxWeight, ToIntFunction<V> weigher, Function<? super K, ?> grouper) {
+    this.name = name;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.grouper = grouper;
+  }
+
+  /**
+   * @param key key
+   * @return cached value or {@code null}
+   */
+  public V get(K key) {
+    V value;
+    synchronized (map) {
+      value = map.get(key);
+    }
+    if (value != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return value;
+  }
+
+  /**
+   * Like {@link #get(Object)} without counting a hit or miss and without changing the LRU order.
+   *
+   * @param key key
+   * @return {@code true} if a value is cached
+   */
+  public boolean contains(K key) {
+    synchronized (map) {
+      return map.containsKey(key);
+    }
+  }
+
+  public void put(K key, V value) {
+    int w = weigher.applyAsInt(value);
+    synchronized (map) {
+      V old = map.put(key, value);
+      if (old != null) {
+        weight -= weigher.applyAsInt(old);
+      } else {
+        index(key);
+      }
+      weight += w;
+      Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+      while (weight > maxWeight && it.hasNext()) {
+        Map.Entry<K, V> eldest = it.next();
+        if (eldest.getValue() == value && map.size() == 1) {
+          break;
+        }
+        weight -= weigher.applyAsInt(eldest.getValue());
+        unindex(eldest.getKey());
+        it.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  public void remove(K key) {
+    synchronized (map) {
+      V old = map.remove(key);
+      if (old != null) {
+        weight -= weigher.applyAsInt(old);
+        unindex(key);
+      }
+    }
+  }
+
+  /**
+   * Remove all entries of the group, see {@link #LruCache(String, long, ToIntFunction, Function)}.
+   * Without a grouper every key is its own group.
+   *
+   * @param group key group
+   */
+  public void removeGroup(Object group) {
+    if (grouper == null) {
+      removeIf(k -> group.equals(k));
+      return;
+    }
+    synchronized (map) {
+      Set<K> keys = groups.remove(group);
+      if (keys != null) {
+        for (K key : keys) {
+          V old = map.remove(key);
+          if (old != null) {
+            weight -= weigher.applyAsInt(old);
+          }
+        }
+      }
+    }
+  }
+
+  private void index(K key) {
+    if (grouper != null) {
+      groups.computeIfAbsent(grouper.apply(key), g -> new HashSet<>(4)).add(key);
+    }
+  }
+
+  private void unindex(K key) {
+    if (grouper != null) {
+      Object group = grouper.apply(key);
+      Set<K> keys = groups.get(group);
+      if (keys != null && keys.remove(key) && keys.isEmpty()) {
+        groups.remove(group);
+      }
+    }
+  }
+
+  /**
+   * Remove all entries with a matching key.
+   *
+   * @param filter key filter
+   */
+  public void removeIf(Predicate<K> filter) {
+    synchronized (map) {
+      Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<K, V> e = it.next();
+        if (filter.test(e.getKey())) {
+          weight -= weigher.applyAsInt(e.getValue());
+          unindex(e.getKey());
+          it.remove();
+        }
+      }
+    }
+  }
+
+  public void clear() {
+    synchronized (map) {
+      map.clear();
+      groups.clear();
+      weight = 0;
+    }
+  }
+
+  public int size() {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  public long getWeight() {
+    synchronized (map) {
+      return weight;
+    }
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return hits / requests or 0 without requests
+   */
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0.0 : (double) h / total;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return snapshot of the size and the counters
+   */
+  public Statistics getStatistics() {
+    long size;
+    long w;
+    synchronized (map) {
+      size = map.size();
+      w = weight;
+    }
+    return new Statistics(name, size, w, maxWeight, getHitCount(), getMissCount(), getEvictionCount());
+  }
+
+  @Override
+  public String toString() {
+    return getStatistics().toString();
+  }
+
+  /**
+   * Immutable snapshot of the cache counters.
+   */
+  public static final class Statistics {
+
+    private final String name;
+    private final long size;
+    private final long weight;
+    private final long maxWeight;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    Statistics(String name, long size, long weight, long maxWeight, long hits, long misses, long evictions) {
+      this.name = name;
+      this.size = size;
+      this.weight = weight;
+      this.maxWeight = maxWeight;
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getWeight() {
+      return weight;
+    }
+
+    public long getMaxWeight() {
+      return maxWeight;
+    }
+
+    public long getHitCount() {
+      return hits;
+    }
+
+    public long getMissCount() {
+      return misses;
+    }
+
+    public long getEvictionCount() {
+      return evictions;
+    }
+
+    /**
+     * @return hits / requests or 0 without requests
+     */
+    public double getHitRate() {
+      long total = hits + misses;
+      return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("LruCache [%s: size=%d, weight=%d/%d, hits=%d, misses=%d, evictions=%d]", name, size, weight, maxWeight, hits, misses,
+          evictions);
+    }
+  }
+}
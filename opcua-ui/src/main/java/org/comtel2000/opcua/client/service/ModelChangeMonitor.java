@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.UaException;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.FilterOperator;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+import org.eclipse.milo.opcua.stack.core.types.structured.ContentFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.ContentFilterElement;
+import org.eclipse.milo.opcua.stack.core.types.structured.ElementOperand;
+import org.eclipse.milo.opcua.stack.core.types.structured.EventFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.LiteralOperand;
+import org.eclipse.milo.opcua.stack.core.types.structured.ModelChangeStructureDataType;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.SemanticChangeStructureDataType;
+import org.eclipse.milo.opcua.stack.core.types.structured.SimpleAttributeOperand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Monitors the GeneralModelChangeEvents and SemanticChangeEvents of the server object and reports
+ * the affected nodes. Other events (alarms, audit events, ...) are filtered by the server and
+ * ignored if the server does not support the where clause.
+ *
+ * @author comtel
+ *
+ */
+public final class ModelChangeMonitor {
+
+  protected final static Logger logger = LoggerFactory.getLogger(ModelChangeMonitor.class);
+
+  private final static double PUBLISH_INTERVAL = 1000.0;
+
+  private ModelChangeMonitor() {}
+
+  /**
+   * Create a subscription with one event item on the server object.
+   *
+   * @param connector connected client
+   * @param onChanged called with every affected node
+   * @param onUnknownChange called on model change events without change details
+   * @return the created subscription
+   */
+  public static CompletableFuture<UaSubscription> subscribe(OpcUaClientConnector connector, Consumer<NodeId> onChanged, Runnable onUnknownChange) {
+    EventFilter filter = new EventFilter(new SimpleAttributeOperand[] { operand(Identifiers.BaseEventType, "EventType"),
+        operand(Identifiers.GeneralModelChangeEventType, "Changes"), operand(Identifiers.SemanticChangeEventType, "Changes") }, where());
+    ReadValueId readValueId = new ReadValueId(Identifiers.Server, AttributeId.EventNotifier.uid(), null, QualifiedName.NULL_VALUE);
+    MonitoringParameters parameters = new MonitoringParameters(uint(0), 0.0, ExtensionObject.encode(filter), uint(100), true);
+    MonitoredItemCreateRequest request = new MonitoredItemCreateRequest(readValueId, MonitoringMode.Reporting, parameters);
+
+    return connector.getClient().thenCompose(c -> c.getSubscriptionManager().createSubscription(PUBLISH_INTERVAL))
+        .thenCompose(s -> s.createMonitoredItems(TimestampsToReturn.Neither, Collections.singletonList(request)).thenCompose(items -> {
+          UaMonitoredItem item = items.get(0);
+          if (item.getStatusCode().isBad()) {
+            CompletableFuture<UaSubscription> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new UaException(item.getStatusCode(), "event item not created"));
+            return connector.unsubscribe(s).handle((v, t) -> null).thenCompose(v -> failed);
+          }
+          item.setEventConsumer(values -> onEvent(values, onChanged, onUnknownChange));
+          logger.debug("monitor model changes with subscriptionId: {}", s.getSubscriptionId());
+          return CompletableFuture.completedFuture(s);
+        }));
+  }
+
+  /**
+   * @return OfType(BaseModelChangeEventType) or OfType(SemanticChangeEventType), includes subtypes
+   */
+  private static ContentFilter where() {
+    return new ContentFilter(new ContentFilterElement[] {
+        new ContentFilterElement(FilterOperator.Or,
+            new ExtensionObject[] { ExtensionObject.encode(new ElementOperand(uint(1))), ExtensionObject.encode(new ElementOperand(uint(2))) }),
+        ofType(Identifiers.BaseModelChangeEventType), ofType(Identifiers.SemanticChangeEventType) });
+  }
+
+  private static ContentFilterElement ofType(NodeId type) {
+    return new ContentFilterElement(FilterOperator.OfType, new ExtensionObject[] { ExtensionObject.encode(new LiteralOperand(new Variant(type))) });
+  }
+
+  /**
+   * Standard event types are all in namespace 0, only the model change types of them are
+   * accepted. Server specific types passed the where clause.
+   */
+  static boolean isModelChangeType(Object type) {
+    if (!(type instanceof NodeId)) {
+      return false;
+    }
+    NodeId id = (NodeId) type;
+    return id.getNamespaceIndex().intValue() != 0 || Identifiers.BaseModelChangeEventType.equals(id)
+        || Identifiers.GeneralModelChangeEventType.equals(id) || Identifiers.SemanticChangeEventType.equals(id);
+  }
+
+  private static SimpleAttributeOperand operand(NodeId type, String field) {
+    return new SimpleAttributeOperand(type, new QualifiedName[] { new QualifiedName(0, field) }, AttributeId.Value.uid(), null);
+  }
+
+  static void onEvent(Variant[] values, Consumer<NodeId> onChanged, Runnable onUnknownChange) {
+    Object type = values[0].getValue();
+    if (!isModelChangeType(type)) {
+      logger.trace("ignore event of type: {}", type);
+      return;
+    }
+    boolean modelChange = !Identifiers.SemanticChangeEventType.equals(type);
+    boolean found = false;
+    for (int i = 1; i < values.length; i++) {
+      Object changes = values[i].getValue();
+      if (!(changes instanceof ExtensionObject[])) {
+        continue;
+      }
+      for (ExtensionObject eo : (ExtensionObject[]) changes) {
+        try {
+          Object change = eo.decode();
+          if (change instanceof ModelChangeStructureDataType) {
+            onChanged.accept(((ModelChangeStructureDataType) change).getAffected());
+            found = true;
+          } else if (change instanceof SemanticChangeStructureDataType) {
+            onChanged.accept(((SemanticChangeStructureDataType) change).getAffected());
+            found = true;
+          }
+        } catch (RuntimeException e) {
+          logger.warn("decode model change failed: {}", e.getMessage());
+        }
+      }
+    }
+    if (!found && modelChange) {
+      logger.debug("model change without details: {}", type);
+      onUnknownChange.run();
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.util.Objects;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.structured.DataChangeFilter;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+
+/**
+ * Immutable monitoring parameters of a value monitored item: sampling interval (independent of
+ * the publishing interval), queue size, discard policy and data change filter (trigger and
+ * absolute or percent deadband), i.e.
+ *
+ * <pre>
+ * MonitoredItemSpec.builder().setSamplingInterval(100).setQueueSize(10).setDeadband(DeadbandType.Absolute, 0.5).build();
+ * </pre>
+ *
+ * @author comtel
+ *
+ */
+public final class MonitoredItemSpec {
+
+  /** sampling interval of -1 requests the publishing interval of the subscription */
+  public final static double PUBLISHING_INTERVAL = -1.0;
+
+  /** sampling at publishing interval, queue size 1, no filter */
+  public final static MonitoredItemSpec DEFAULT = builder().build();
+
+  private final double samplingInterval;
+
+  private final int queueSize;
+
+  private final boolean discardOldest;
+
+  private final DataChangeTrigger trigger;
+
+  private final DeadbandType deadbandType;
+
+  private final double deadbandValue;
+
+  private MonitoredItemSpec(Builder builder) {
+    this.samplingInterval = builder.samplingInterval;
+    this.queueSize = builder.queueSize;
+    this.discardOldest = builder.discardOldest;
+    this.trigger = builder.trigger;
+    this.deadbandType = builder.deadbandType;
+    this.deadbandValue = builder.deadbandType == DeadbandType.None ? 0.0 : builder.deadbandValue;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return builder initialized with the values of this spec
+   */
+  public Builder toBuilder() {
+    return new Builder().setSamplingInterval(samplingInterval).setQueueSize(queueSize).setDiscardOldest(discardOldest).setTrigger(trigger)
+        .setDeadband(deadbandType, deadbandValue);
+  }
+
+  public double getSamplingInterval() {
+    return samplingInterval;
+  }
+
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  public boolean isDiscardOldest() {
+    return discardOldest;
+  }
+
+  public DataChangeTrigger getTrigger() {
+    return trigger;
+  }
+
+  public DeadbandType getDeadbandType() {
+    return deadbandType;
+  }
+
+  public double getDeadbandValue() {
+    return deadbandValue;
+  }
+
+  /**
+   * @return {@code true} if the server default filter (StatusValue, no deadband) is sufficient
+   */
+  public boolean isDefaultFilter() {
+    return trigger == DataChangeTrigger.StatusValue && deadbandType == DeadbandType.None;
+  }
+
+  /**
+   * @param publishInterval publishing interval of the subscription
+   * @return requested sampling interval
+   */
+  public double getSamplingInterval(double publishInterval) {
+    return samplingInterval < 0 ? publishInterval : samplingInterval;
+  }
+
+  /**
+   * @return encoded {@link DataChangeFilter} or {@code null} for the server default filter
+   */
+  public ExtensionObject getFilter() {
+    if (isDefaultFilter()) {
+      return null;
+    }
+    return ExtensionObject.encode(new DataChangeFilter(trigger, uint(deadbandType.getValue()), deadbandValue));
+  }
+
+  /**
+   * @param clientHandle client handle of the item
+   * @param publishInterval publishing interval of the subscription
+   * @return create/modify request parameters
+   */
+  public MonitoringParameters toMonitoringParameters(UInteger clientHandle, double publishInterval) {
+    return new MonitoringParameters(clientHandle, getSamplingInterval(publishInterval), getFilter(), uint(queueSize), discardOldest);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(samplingInterval, queueSize, discardOldest, trigger, deadbandType, deadbandValue);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof MonitoredItemSpec)) {
+      return false;
+    }
+    MonitoredItemSpec other = (MonitoredItemSpec) obj;
+    return Double.compare(samplingInterval, other.samplingInterval) == 0 && queueSize == other.queueSize && discardOldest == other.discardOldest
+        && trigger == other.trigger && deadbandType == other.deadbandType && Double.compare(deadbandValue, other.deadbandValue) == 0;
+  }
+
+  /**
+   * Short form for the monitored item table, i.e. {@code 100ms q=10 Absolute=0.5}
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(32);
+    if (samplingInterval < 0) {
+      sb.append("publish");
+    } else {
+      ValueFormatter.appendDouble(sb, samplingInterval).append("ms");
+    }
+    sb.append(" q=").append(queueSize);
+    if (!discardOldest) {
+      sb.append(" keep");
+    }
+    if (trigger != DataChangeTrigger.StatusValue) {
+      sb.append(' ').append(trigger);
+    }
+    if (deadbandType != DeadbandType.None) {
+      sb.append(' ').append(deadbandType).append('=');
+      ValueFormatter.appendDouble(sb, deadbandValue);
+    }
+    return sb.toString();
+  }
+
+  public static class Builder {
+
+    private double samplingInterval = PUBLISHING_INTERVAL;
+
+    private int queueSize = 1;
+
+    private boolean discardOldest = true;
+
+    private DataChangeTrigger trigger = DataChangeTrigger.StatusValue;
+
+    private DeadbandType deadbandType = DeadbandType.None;
+
+    private double deadbandValue;
+
+    private Builder() {
+    }
+
+    /**
+     * @param samplingInterval sampling interval in milliseconds, 0 for the fastest rate or
+     *        {@link MonitoredItemSpec#PUBLISHING_INTERVAL}
+     * @return this
+     */
+    public Builder setSamplingInterval(double samplingInterval) {
+      if (Double.isNaN(samplingInterval)) {
+        throw new IllegalArgumentException("sampling interval is NaN");
+      }
+      this.samplingInterval = samplingInterval < 0 ? PUBLISHING_INTERVAL : samplingInterval;
+      return this;
+    }
+
+    /**
+     * @param queueSize server side queue size of the item (min 1)
+     * @return this
+     */
+    public Builder setQueueSize(int queueSize) {
+      if (queueSize < 1) {
+        throw new IllegalArgumentException("queue size < 1: " + queueSize);
+      }
+      this.queueSize = queueSize;
+      return this;
+    }
+
+    /**
+     * @param discardOldest discard the oldest (true) or the newest (false) value on queue overflow
+     * @return this
+     */
+    public Builder setDiscardOldest(boolean discardOldest) {
+      this.discardOldest = discardOldest;
+      return this;
+    }
+
+    public Builder setTrigger(DataChangeTrigger trigger) {
+      this.trigger = Objects.requireNonNull(trigger);
+      return this;
+    }
+
+    /**
+     * @param type deadband type, {@link DeadbandType#Percent} requires an EURange of the variable
+     * @param value absolute deadband or percent of the EURange (0..100)
+     * @return this
+     */
+    public Builder setDeadband(DeadbandType type, double value) {
+      Objects.requireNonNull(type);
+      if (type != DeadbandType.None && (Double.isNaN(value) || value < 0)) {
+        throw new IllegalArgumentException("invalid deadband: " + value);
+      }
+      if (type == DeadbandType.Percent && value > 100) {
+        throw new IllegalArgumentException("percent deadband > 100: " + value);
+      }
+      this.deadbandType = type;
+      this.deadbandValue = value;
+      return this;
+    }
+
+    public Builder setAbsoluteDeadband(double value) {
+      return setDeadband(DeadbandType.Absolute, value);
+    }
+
+    public Builder setPercentDeadband(double percent) {
+      return setDeadband(DeadbandType.Percent, percent);
+    }
+
+    public MonitoredItemSpec build() {
+      return new MonitoredItemSpec(this);
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+
+/**
+ * Names of numeric NodeIds. The index is filled once with all NodeIds of {@link Identifiers} and
+ * can be extended with names discovered on the connected server ({@link #put(NodeId, String)}),
+ * which are dropped again by {@link #reset()} when the client changes. Lookups are
+ * lock free on a primitive long keyed open addressing table (namespace index in the high, numeric
+ * identifier in the low 32 bit) and return interned strings.
+ *
+ * @author comtel
+ *
+ */
+public final class NodeIdNames {
+
+  private final static float LOAD_FACTOR = 0.5f;
+
+  /** names of {@link Identifiers}, never modified */
+  private final static Table STANDARD = fromIdentifiers();
+
+  private static volatile Table table = STANDARD;
+
+  private NodeIdNames() {}
+
+  /**
+   * @param node NodeId
+   * @return name, i.e. "Double" for i=11, or {@code null}
+   */
+  public static String getName(NodeId node) {
+    long key = key(node);
+    return key < 0 ? null : table.get(key, false);
+  }
+
+  /**
+   * @param node NodeId
+   * @return numeric identifier and name, i.e. "11 (Double)", or {@code null}
+   */
+  public static String getLabel(NodeId node) {
+    long key = key(node);
+    return key < 0 ? null : table.get(key, true);
+  }
+
+  /**
+   * @param namespaceIndex namespace index
+   * @param identifier numeric identifier
+   * @return name or {@code null}
+   */
+  public static String getName(int namespaceIndex, long identifier) {
+    return table.get(((long) namespaceIndex << 32) | identifier, false);
+  }
+
+  /**
+   * Add or replace the name of a numeric NodeId, i.e. the DisplayName of a server specific data
+   * type. Other NodeIds are ignored.
+   *
+   * @param node NodeId
+   * @param name name
+   */
+  public static synchronized void put(NodeId node, String name) {
+    long key = key(node);
+    if (key < 0 || name == null) {
+      return;
+    }
+    Table copy = table.copy(table.size + 1);
+    copy.put(key, name);
+    table = copy;
+  }
+
+  /**
+   * Add or replace the names of numeric NodeIds with one copy of the index.
+   *
+   * @param names names by NodeId
+   */
+  public static synchronized void putAll(Map<NodeId, String> names) {
+    Table copy = table.copy(table.size + names.size());
+    names.forEach((node, name) -> {
+      long key = key(node);
+      if (key >= 0 && name != null) {
+        copy.put(key, name);
+      }
+    });
+    table = copy;
+  }
+
+  /**
+   * Drop all names added by {@link #put(NodeId, String)} and {@link #putAll(Map)}, i.e. on a new
+   * connection.
+   */
+  public static synchronized void reset() {
+    table = STANDARD;
+  }
+
+  /**
+   * @return number of known names
+   */
+  public static int size() {
+    return table.size;
+  }
+
+  private static long key(NodeId node) {
+    if (node == null || !(node.getIdentifier() instanceof UInteger)) {
+      return -1;
+    }
+    return ((long) node.getNamespaceIndex().intValue() << 32) | ((UInteger) node.getIdentifier()).longValue();
+  }
+
+  private static Table fromIdentifiers() {
+    Field[] fields = Identifiers.class.getFields();
+    Table t = new Table(fields.length);
+    for (Field f : fields) {
+      if (f.getType() != NodeId.class || !Modifier.isStatic(f.getModifiers())) {
+        continue;
+      }
+      try {
+        long key = key((NodeId) f.get(null));
+        if (key >= 0 && t.get(key, false) == null) {
+          t.put(key, f.getName());
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return t;
+  }
+
+  private final static class Table {
+
+    final long[] keys;
+    final String[] names;
+    final String[] labels;
+    int size;
+
+    Table(int expectedSize) {
+      int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+      keys = new long[capacity];
+      names = new String[capacity];
+      labels = new String[capacity];
+    }
+
+    String get(long key, boolean label) {
+      int mask = keys.length - 1;
+      int i = mix(key) & mask;
+      while (names[i] != null) {
+        if (keys[i] == key) {
+          return label ? labels[i] : names[i];
+        }
+        i = (i + 1) & mask;
+      }
+      return null;
+    }
+
+    void put(long key, String name) {
+      int mask = keys.length - 1;
+      int i = mix(key) & mask;
+      while (names[i] != null && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      if (names[i] == null) {
+        size++;
+      }
+      keys[i] = key;
+      names[i] = name.intern();
+      labels[i] = ((key & 0xFFFFFFFFL) + " (" + name + ")").intern();
+    }
+
+    Table copy(int expectedSize) {
+      Table t = new Table(expectedSize);
+      for (int i = 0; i < keys.length; i++) {
+        if (names[i] != null) {
+          t.put(keys[i], names[i]);
+        }
+      }
+      return t;
+    }
+
+    private static int mix(long key) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+  }
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental in-memory full-text index of browsed nodes. The display name, browse name and node
+ * id of every node is split into lower case trigrams, a query of at least three characters is
+ * answered by the intersection of the posting lists of its trigrams and the candidates are
+ * verified. Shorter queries scan the names of the first indexed nodes (system property
+ * {@code opcua.search.maxScan}, default 200k). The candidates are verified in slices, the browse
+ * threads feeding the index are not blocked for a whole query. Nodes are fed from browse results as
+ * they arrive ({@link #add(NodeId, ReferenceDescription[])} or {@link #asSink()}), the first parent
+ * of a node is kept to build the path to the node. The number of nodes is limited by the system
+ * property {@code opcua.search.maxNodes} (default 1M).
+ *
+ * @author comtel
+ *
+ */
+public class NodeSearchIndex {
+
+  protected final static Logger logger = LoggerFactory.getLogger(NodeSearchIndex.class);
+
+  public final static int DEFAULT_MAX_NODES = Math.max(1, Integer.getInteger("opcua.search.maxNodes", 1_000_000));
+
+  /** max rows scanned by a query shorter than a trigram */
+  public final static int MAX_SCAN = Math.max(1, Integer.getInteger("opcua.search.maxScan", 200_000));
+
+  /** rows verified per lock */
+  private final static int SLICE = 4096;
+
+  /** rows of one trigram in ascending order */
+  private final static class Postings {
+    int[] rows = new int[4];
+    int size;
+
+    void add(int row) {
+      if (size > 0 && rows[size - 1] == row) {
+        return;
+      }
+      if (size == rows.length) {
+        rows = Arrays.copyOf(rows, size << 1);
+      }
+      rows[size++] = row;
+    }
+  }
+
+  private final int maxNodes;
+
+  private ReferenceStore nodes = new ReferenceStore(1024);
+
+  /** nodeId.toParseableString() per row */
+  private String[] ids = new String[1024];
+
+  /** row of the parent or -1 */
+  private int[] parents = new int[1024];
+
+  private final Map<Long, Postings> grams = new HashMap<>();
+
+  /** rows of removed nodes */
+  private final BitSet removed = new BitSet();
+
+  /** incremented by {@link #clear()} */
+  private int generation;
+
+  private boolean full;
+
+  public NodeSearchIndex() {
+    this(DEFAULT_MAX_NODES);
+  }
+
+  public NodeSearchIndex(int maxNodes) {
+    this.maxNodes = Math.max(1, maxNodes);
+  }
+
+  /**
+   * @return sink to index the nodes of an {@link AddressSpaceCrawler}
+   */
+  public AddressSpaceCrawler.Sink asSink() {
+    return (parent, ref) -> add(parent, new ReferenceDescription[] { ref });
+  }
+
+  /**
+   * Index the browsed references of a node. Known nodes are ignored.
+   *
+   * @param parent browsed node
+   * @param refs references
+   */
+  public synchronized void add(NodeId parent, ReferenceDescription[] refs) {
+    int parentRow = nodes.indexOf(parent);
+    for (ReferenceDescription ref : refs) {
+      if (nodes.size() >= maxNodes) {
+        if (!full) {
+          full = true;
+          logger.warn("search index limit reached: {} nodes", maxNodes);
+        }
+        return;
+      }
+      int row = nodes.add(ref);
+      if (row < 0) {
+        if (!removed.isEmpty()) {
+          // browsed again after a model change
+          int known = ref.getNodeId() != null ? ref.getNodeId().local().map(nodes::indexOf).orElse(-1) : -1;
+          if (known >= 0 && removed.get(known)) {
+            removed.clear(known);
+            parents[known] = parentRow;
+          }
+        }
+        continue;
+      }
+      if (row == parents.length) {
+        parents = Arrays.copyOf(parents, row << 1);
+        ids = Arrays.copyOf(ids, row << 1);
+      }
+      parents[row] = parentRow;
+      ids[row] = nodes.getNodeId(row).toParseableString();
+      index(row, nodes.getName(row));
+      index(row, nodes.getBrowseName(row).getName());
+      index(row, ids[row]);
+    }
+  }
+
+  private void index(int row, String text) {
+    if (text == null) {
+      return;
+    }
+    for (int i = 0; i + 3 <= text.length(); i++) {
+      grams.computeIfAbsent(gram(text, i), g -> new Postings()).add(row);
+    }
+  }
+
+  private static long gram(String text, int i) {
+    return ((long) Character.toLowerCase(text.charAt(i)) << 32) | ((long) Character.toLowerCase(text.charAt(i + 1)) << 16)
+        | Character.toLowerCase(text.charAt(i + 2));
+  }
+
+  public synchronized int size() {
+    return nodes.size();
+  }
+
+  public synchronized void clear() {
+    nodes = new ReferenceStore(1024);
+    ids = new String[1024];
+    parents = new int[1024];
+    grams.clear();
+    removed.clear();
+    generation++;
+    full = false;
+  }
+
+  /**
+   * Remove the node and its indexed children from the results, i.e. after a model change. They are
+   * indexed again by the next browse of their parent.
+   *
+   * @param node changed node
+   */
+  public synchronized void remove(NodeId node) {
+    int row = nodes.indexOf(node);
+    if (row < 0) {
+      return;
+    }
+    removed.set(row);
+    for (int r = 0; r < nodes.size(); r++) {
+      if (parents[r] == row) {
+        removed.set(r);
+      }
+    }
+  }
+
+  /**
+   * Case insensitive substring search over display name, browse name and node id. Nodes with a name
+   * starting with the query are returned first.
+   *
+   * @param query text
+   * @param max max results
+   * @return rows of the matching nodes
+   */
+  public int[] search(String query, int max) {
+    if (query == null || query.isEmpty() || max < 1) {
+      return new int[0];
+    }
+    int[] prefix = new int[max];
+    int[] other = new int[max];
+    int p = 0;
+    int o = 0;
+    int gen;
+    int[] rows;
+    int end;
+    synchronized (this) {
+      gen = generation;
+      // short query: scan the first rows (null), otherwise the candidates of the trigrams
+      rows = query.length() < 3 ? null : candidates(query);
+      end = rows == null ? Math.min(nodes.size(), MAX_SCAN) : rows.length;
+    }
+    // verify in slices, add() is not blocked for the whole search
+    for (int from = 0; from < end && p < max; from += SLICE) {
+      synchronized (this) {
+        if (gen != generation) {
+          return new int[0];
+        }
+        for (int i = from; i < Math.min(from + SLICE, end) && p < max; i++) {
+          int row = rows == null ? i : rows[i];
+          if (removed.get(row)) {
+            continue;
+          }
+          int m = match(row, query);
+          if (m == 2) {
+            prefix[p++] = row;
+          } else if (m == 1 && o < max) {
+            other[o++] = row;
+          }
+        }
+      }
+    }
+    int[] result = Arrays.copyOf(prefix, Math.min(max, p + o));
+    System.arraycopy(other, 0, result, p, result.length - p);
+    return result;
+  }
+
+  /**
+   * @return rows containing all trigrams of the query
+   */
+  private int[] candidates(String query) {
+    List<Postings> lists = new ArrayList<>();
+    for (int i = 0; i + 3 <= query.length(); i++) {
+      Postings list = grams.get(gram(query, i));
+      if (list == null) {
+        return new int[0];
+      }
+      lists.add(list);
+    }
+    lists.sort((a, b) -> Integer.compare(a.size, b.size));
+    int[] rows = Arrays.copyOf(lists.get(0).rows, lists.get(0).size);
+    int size = rows.length;
+    for (int l = 1; l < lists.size() && size > 0; l++) {
+      Postings list = lists.get(l);
+      int n = 0;
+      int j = 0;
+      for (int i = 0; i < size && j < list.size; i++) {
+        while (j < list.size && list.rows[j] < rows[i]) {
+          j++;
+        }
+        if (j < list.size && list.rows[j] == rows[i]) {
+          rows[n++] = rows[i];
+        }
+      }
+      size = n;
+    }
+    return Arrays.copyOf(rows, size);
+  }
+
+  /**
+   * @return 2: name starts with the query, 1: contains the query, 0: no match
+   */
+  private int match(int row, String query) {
+    String name = nodes.getName(row);
+    String browseName = nodes.getBrowseName(row).getName();
+    if (startsWith(name, query) || startsWith(browseName, query)) {
+      return 2;
+    }
+    return contains(name, query) || contains(browseName, query) || contains(ids[row], query) ? 1 : 0;
+  }
+
+  private static boolean startsWith(String text, String query) {
+    return text != null && text.regionMatches(true, 0, query, 0, query.length());
+  }
+
+  private static boolean contains(String text, String query) {
+    if (text == null) {
+      return false;
+    }
+    for (int i = 0; i + query.length() <= text.length(); i++) {
+      if (text.regionMatches(true, i, query, 0, query.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public synchronized ReferenceDescription getReference(int row) {
+    return nodes.get(row);
+  }
+
+  public synchronized NodeId getNodeId(int row) {
+    return nodes.getNodeId(row);
+  }
+
+  /**
+   * @param row row of a node
+   * @return node ids from the top most known ancestor (child of the browse root) to the node
+   */
+  public synchronized List<NodeId> getPath(int row) {
+    List<NodeId> path = new ArrayList<>();
+    for (int r = row; r >= 0 && path.size() <= nodes.size(); r = parents[r]) {
+      path.add(nodes.getNodeId(r));
+    }
+    Collections.reverse(path);
+    return path;
+  }
+}
@@ -20,18 +20,31 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.annotation.PreDestroy;
@@ -50,6 +63,8 @@ import org.eclipse.milo.opcua.stack.client.UaTcpStackClient;
 import org.eclipse.milo.opcua.stack.core.AttributeId;
 import org.eclipse.milo.opcua.stack.core.Identifiers;
 import org.eclipse.milo.opcua.stack.core.Stack;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
 import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
 import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
@@ -61,19 +76,15 @@ import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
 import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseDirection;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseResultMask;
-import org.eclipse.milo.opcua.stack.core.types.enumerated.MonitoringMode;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.ServerState;
 import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
 import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
 import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
-import org.eclipse.milo.opcua.stack.core.types.structured.DeleteMonitoredItemsResponse;
 import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
-import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
-import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
 import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
-import org.eclipse.milo.opcua.stack.core.types.structured.WriteResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.ViewDescription;
 import org.eclipse.milo.opcua.stack.core.types.structured.WriteValue;
 import org.jooq.lambda.tuple.Tuple2;
 import org.slf4j.Logger;
@@ -88,13 +99,29 @@ public class OpcUaClientConnector implements SessionActivityListener {
 
   private final double DEFAULT_PUBLISH_INTERVAL = 500.0;
 
+  /** default max outstanding calls of one chunked request */
+  public final static int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+  /** default requested max references per browse page */
+  public final static int DEFAULT_MAX_REFERENCES_PER_NODE = 1000;
+
+  /** upper bound of the estimated outstanding Publish requests per session */
+  public final static int MAX_PENDING_PUBLISH_REQUESTS = 16;
+
+  /** interval of the round trip time measurement in milliseconds */
+  private final static long RTT_INTERVAL = Long.getLong("opcua.publish.rttInterval", 10_000L);
+
+  /** delay of the address space cache revalidation after a lookup in milliseconds */
+  private final static long REVALIDATE_DELAY = Long.getLong("opcua.cache.revalidateDelay", 500L);
+
   private final AtomicReference<EndpointDescription> endpointDescription = new AtomicReference<>();
 
   private final AtomicReference<IdentityProvider> identityProvider = new AtomicReference<>();
 
-  private final AtomicReference<OpcUaClient> client = new AtomicReference<>();
+  private final AtomicReference<UaClient> client = new AtomicReference<>();
 
-  private final AtomicLong clientHandles = new AtomicLong();
+  /** additional sessions of subscription shards by session index (1..n) */
+  private final Map<Integer, CompletableFuture<UaClient>> sessionClients = new ConcurrentHashMap<>();
 
   private final AtomicReference<BiConsumer<Boolean, Throwable>> listener = new AtomicReference<>();
 
@@ -102,38 +129,218 @@ public class OpcUaClientConnector implements SessionActivityListener {
 
   private final Executor pool;
 
+  private final boolean sharedPool;
+
+  private final BatchSubscriptionManager subscriptions;
+
+  private final SessionRecovery recovery;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final RequestBatcher<ReadValueId, DataValue> readBatcher;
+
+  private final RequestBatcher<WriteValue, StatusCode> writeBatcher;
+
+  private final BrowsePathResolver pathResolver;
+
+  private final AtomicReference<CompletableFuture<OperationLimits>> operationLimits = new AtomicReference<>();
+
+  private volatile int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+  private volatile int maxReferencesPerNode = DEFAULT_MAX_REFERENCES_PER_NODE;
+
+  private volatile int maxPendingPublishRequests = Math.max(0, Integer.getInteger("opcua.publish.maxPending", 0));
+
+  private volatile long roundTripTime = -1;
+
+  /** outstanding Publish requests, recomputed when the subscriptions or the round trip time change */
+  private volatile int pendingPublishRequests;
+
+  private volatile long clockOffset;
+
+  private final AtomicReference<AddressSpaceCache> addressSpaceCache = new AtomicReference<>();
+
+  private final AtomicBoolean revalidationScheduled = new AtomicBoolean();
+
+  private final LruCache<Tuple2<NodeId, UInteger>, ReferenceDescription[]> browseCache = new LruCache<>("browse",
+      Long.getLong("opcua.cache.browse.maxReferences", 200_000L), refs -> refs.length + 1, k -> k.v1);
+
+  private final LruCache<Tuple2<NodeId, UInteger>, DataValue> attributeCache = new LruCache<>("attributes",
+      Long.getLong("opcua.cache.attributes.maxEntries", 100_000L), v -> 1, k -> k.v1);
+
+  private final AtomicReference<UaSubscription> modelChangeSubscription = new AtomicReference<>();
+
+  private final AtomicReference<Consumer<NodeId>> addressSpaceListener = new AtomicReference<>();
+
+  private final DataTypeCache dataTypes = new DataTypeCache(this);
+
+  private final NodeSearchIndex searchIndex = new NodeSearchIndex();
+
+  private volatile boolean addressSpaceCacheEnabled = Boolean.parseBoolean(System.getProperty("opcua.cache.enabled", "true"));
+
+  private final EndpointCache endpoints = EndpointCache.open(addressSpaceCacheEnabled ? AddressSpaceCache.getDefaultDirectory() : null);
+
   public OpcUaClientConnector() {
     this("OPC-UA Client");
   }
 
   public OpcUaClientConnector(String name) {
+    this(name, newDefaultExecutor(), false);
+  }
+
+  /**
+   * Create a connector with a custom executor used for client creation and completion stages which
+   * must not run on the Milo stack threads. The executor is not shut down by the connector.
+   *
+   * @param name application name
+   * @param executor custom executor
+   */
+  public OpcUaClientConnector(String name, Executor executor) {
+    this(name, executor, true);
+  }
+
+  private OpcUaClientConnector(String name, Executor executor, boolean sharedPool) {
     this.name = name;
-    this.pool = Executors.newCachedThreadPool(r -> {
+    this.pool = executor;
+    this.sharedPool = sharedPool;
+    this.subscriptions = new BatchSubscriptionManager(this);
+    this.recovery = new SessionRecovery(subscriptions, s -> {
+      if (modelChangeSubscription.compareAndSet(s, null)) {
+        monitorModelChanges();
+      }
+    });
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread th = new Thread(r);
+      th.setName("client-batch-" + th.getId());
+      th.setDaemon(true);
+      return th;
+    });
+    this.readBatcher = new RequestBatcher<>("read",
+        ids -> getClient().thenCompose(c -> c.read(0.0, TimestampsToReturn.Both, ids)).thenApply(r -> Arrays.asList(r.getResults())),
+        () -> getOperationLimits().thenApply(OperationLimits::getMaxNodesPerRead), this::getMaxConcurrentRequests, scheduler);
+    this.writeBatcher = new RequestBatcher<>("write", ids -> getClient().thenCompose(c -> c.write(ids)).thenApply(r -> Arrays.asList(r.getResults())),
+        () -> getOperationLimits().thenApply(OperationLimits::getMaxNodesPerWrite), this::getMaxConcurrentRequests, scheduler);
+    this.pathResolver = new BrowsePathResolver(this, scheduler);
+    this.scheduler.scheduleWithFixedDelay(this::sampleRoundTrip, RTT_INTERVAL, RTT_INTERVAL, TimeUnit.MILLISECONDS);
+    updatePendingPublishRequests();
+  }
+
+  /**
+   * Creates the bounded default executor. The pool size is configured by the system property
+   * {@code opcua.connector.threads} (default: available processors). With
+   * {@code opcua.connector.virtualThreads=true} a virtual thread per task executor is used on JREs
+   * supporting it.
+   *
+   * @return new executor
+   */
+  public static ExecutorService newDefaultExecutor() {
+    if (Boolean.getBoolean("opcua.connector.virtualThreads")) {
+      try {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        logger.warn("virtual threads not supported by JRE: {}", System.getProperty("java.version"));
+      }
+    }
+    int threads = Math.max(1, Integer.getInteger("opcua.connector.threads", Math.max(2, Runtime.getRuntime().availableProcessors())));
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
       Thread th = new Thread(r);
       th.setName("client-connector-" + th.getId());
       th.setDaemon(true);
       return th;
     });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
-  private CompletableFuture<OpcUaClient> newClient(OpcUaClientConfig config) {
+  private CompletableFuture<UaClient> newClient(OpcUaClientConfig config) {
     return CompletableFuture.supplyAsync(() -> {
       OpcUaClient c = new OpcUaClient(config);
       c.addFaultListener(fault -> logger.error("fault on {}", fault.getResponseHeader().getServiceResult()));
       c.addSessionActivityListener(this);
-      client.set(c);
+      subscriptions.register(c);
+      recovery.register(c);
+      setClient(c);
       return c;
     }, pool);
   }
 
-  public CompletableFuture<OpcUaClient> getClient() {
-    return CompletableFuture.supplyAsync(() -> {
-      OpcUaClient c = client.get();
-      if (c == null) {
-        throw new CompletionException(new IOException("not connected"));
-      }
+  /**
+   * Set the active client
+   *
+   * @param c client (visible for testing)
+   */
+  void setClient(UaClient c) {
+    operationLimits.set(null);
+    closeSessionClients();
+    subscriptions.reset();
+    recovery.reset();
+    closeAddressSpaceCache();
+    StructureCodecs.clear();
+    NodeIdNames.reset();
+    dataTypes.clear();
+    browseCache.clear();
+    attributeCache.clear();
+    searchIndex.clear();
+    pathResolver.invalidate();
+    modelChangeSubscription.set(null);
+    client.set(c);
+  }
+
+  /**
+   * Returns the active client without leaving the callers thread.
+   *
+   * @return completed future of the client or failed if not connected
+   */
+  public CompletableFuture<UaClient> getClient() {
+    UaClient c = client.get();
+    if (c == null) {
+      return buildCompleteExceptionally(UaClient.class, new IOException("not connected"));
+    }
+    return CompletableFuture.completedFuture(c);
+  }
+
+  /**
+   * Returns the client of a subscription shard session. Session 0 is the active client, other
+   * sessions are opened on demand with the configuration of the active client.
+   *
+   * @param session session index
+   * @return connected client
+   */
+  public CompletableFuture<UaClient> getSessionClient(int session) {
+    if (session == 0) {
+      return getClient();
+    }
+    if (endpointDescription.get() == null || client.get() == null) {
+      return buildCompleteExceptionally(UaClient.class, new IOException("not connected"));
+    }
+    CompletableFuture<UaClient> future = sessionClients.computeIfAbsent(session, i -> CompletableFuture.supplyAsync(() -> {
+      logger.debug("open subscription session: {}", i);
+      OpcUaClient c = new OpcUaClient(buildConfig());
+      c.addFaultListener(fault -> logger.error("fault on session {}: {}", i, fault.getResponseHeader().getServiceResult()));
+      subscriptions.register(c);
+      recovery.register(c);
       return c;
-    }, pool);
+    }, pool).thenCompose(c -> c.connect()));
+    return future.whenComplete((c, t) -> {
+      if (t != null) {
+        logger.warn("subscription session {} not available: {}", session, t.getMessage());
+        sessionClients.remove(session, future);
+      }
+    });
+  }
+
+  private void closeSessionClients() {
+    List<CompletableFuture<UaClient>> clients = new ArrayList<>(sessionClients.values());
+    sessionClients.clear();
+    clients.forEach(f -> f.thenCompose(UaClient::disconnect).whenComplete((c, t) -> {
+      if (t != null) {
+        logger.debug("close subscription session failed: {}", t.getMessage());
+      }
+    }));
+  }
+
+  public Executor getExecutor() {
+    return pool;
   }
 
   public void onConnectionChanged(BiConsumer<Boolean, Throwable> c) {
@@ -141,31 +348,408 @@ public class OpcUaClientConnector implements SessionActivityListener {
   }
 
   public CompletableFuture<EndpointDescription[]> getEndpoints(String url) {
-    return CompletableFuture.supplyAsync(() -> {
-      logger.debug("search for endpoints of url: {}", url);
-      return null;
-    }, pool).thenCompose(t -> UaTcpStackClient.getEndpoints(url));
+    logger.debug("search for endpoints of url: {}", url);
+    long start = System.nanoTime();
+    return UaTcpStackClient.getEndpoints(url).whenComplete((e, t) -> {
+      if (t == null) {
+        endpoints.put(url, e);
+        if (roundTripTime < 0) {
+          // first estimate (includes the connect handshake) until a session is active
+          roundTripTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+      }
+    });
+  }
+
+  /**
+   * @param url discovery url
+   * @param useCache return the cached endpoints of the url if not expired
+   * @return endpoints of the url
+   */
+  public CompletableFuture<EndpointDescription[]> getEndpoints(String url, boolean useCache) {
+    if (useCache) {
+      Optional<EndpointDescription[]> cached = endpoints.get(url);
+      if (cached.isPresent()) {
+        logger.debug("use cached endpoints of url: {}", url);
+        return CompletableFuture.completedFuture(cached.get());
+      }
+    }
+    return getEndpoints(url);
+  }
+
+  public EndpointCache getEndpointCache() {
+    return endpoints;
+  }
+
+  private OpcUaClientConfig buildConfig() {
+    return buildConfig(endpointDescription.get());
+  }
+
+  private OpcUaClientConfig buildConfig(EndpointDescription endpoint) {
+    List<IdentityProvider> idProv = new ArrayList<>();
+    getIdentityProvider().ifPresent(idProv::add);
+    idProv.add(new AnonymousProvider());
+
+    updatePendingPublishRequests();
+    int pendingPublishes = pendingPublishRequests;
+    logger.debug("max pending publish requests: {} (rtt: {} ms)", pendingPublishes, roundTripTime);
+    return OpcUaClientConfig.builder().setApplicationName(LocalizedText.english(name)).setApplicationUri("urn:comtel:opcua:client")
+        .setEndpoint(endpoint).setIdentityProvider(new CompositeProvider(idProv)).setRequestTimeout(uint(5000))
+        .setMaxPendingPublishRequests(uint(pendingPublishes)).build();
+  }
+
+  /**
+   * Set the number of outstanding Publish requests per session. Takes effect for new sessions
+   * (default: system property {@code opcua.publish.maxPending} or 0).
+   *
+   * @param maxPendingPublishRequests outstanding Publish requests or 0 to size them by
+   *        {@link #getRoundTripTime()} and the number of subscriptions
+   */
+  public void setMaxPendingPublishRequests(int maxPendingPublishRequests) {
+    this.maxPendingPublishRequests = Math.max(0, maxPendingPublishRequests);
+    updatePendingPublishRequests();
+  }
+
+  /**
+   * Returns the configured or the estimated number of outstanding Publish requests which keep every
+   * subscription of a session busy: one per subscription plus the responses of the fastest
+   * publishing interval in transit during one round trip. The estimate follows the created
+   * subscriptions and the measured round trip time.
+   *
+   * @return outstanding Publish requests per session
+   */
+  public int getPendingPublishRequests() {
+    return pendingPublishRequests;
+  }
+
+  /**
+   * Recompute {@link #getPendingPublishRequests()}, i.e. after a subscription was created or
+   * deleted. The client configuration of an open session is fixed, the new value is used by the
+   * sessions opened afterwards (subscription shard sessions, reconnect).
+   */
+  void updatePendingPublishRequests() {
+    int pending = estimatePendingPublishRequests();
+    int previous = pendingPublishRequests;
+    if (pending != previous) {
+      pendingPublishRequests = pending;
+      logger.debug("max pending publish requests: {} -> {} (rtt: {} ms)", previous, pending, roundTripTime);
+    }
+  }
+
+  private int estimatePendingPublishRequests() {
+    int max = maxPendingPublishRequests;
+    if (max > 0) {
+      return max;
+    }
+    List<UaSubscription> created = subscriptions.getSubscriptions();
+    double interval = created.stream().mapToDouble(UaSubscription::getRevisedPublishingInterval).filter(i -> i > 0).min().orElse(DEFAULT_PUBLISH_INTERVAL);
+    int sessions = subscriptions.getSessions();
+    int perSession = Math.max(subscriptions.getShards(), (created.size() + sessions - 1) / sessions);
+    long inTransit = (long) Math.ceil(Math.max(0, roundTripTime) / interval);
+    return (int) Math.min(MAX_PENDING_PUBLISH_REQUESTS, Math.max(2, perSession + inTransit));
+  }
+
+  /**
+   * @return last measured round trip time of a Read request in milliseconds or -1
+   */
+  public long getRoundTripTime() {
+    return roundTripTime;
+  }
+
+  /**
+   * @return server minus client clock in milliseconds measured with the round trip time
+   */
+  public long getClockOffset() {
+    return clockOffset;
+  }
+
+  /**
+   * Measure the round trip time and clock offset with a Read of the server time.
+   *
+   * @return round trip time in milliseconds
+   */
+  public CompletableFuture<Long> measureRoundTrip() {
+    return getClient().thenCompose(c -> {
+      long sent = System.currentTimeMillis();
+      long start = System.nanoTime();
+      return c.readValues(0.0, TimestampsToReturn.Neither, Collections.singletonList(Identifiers.Server_ServerStatus_CurrentTime)).thenApply(values -> {
+        long rtt = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Object time = values.get(0).getValue().getValue();
+        if (time instanceof DateTime) {
+          clockOffset = ((DateTime) time).getJavaTime() - (sent + rtt / 2);
+        }
+        roundTripTime = rtt;
+        updatePendingPublishRequests();
+        return rtt;
+      });
+    });
+  }
+
+  private void sampleRoundTrip() {
+    if (client.get() == null) {
+      return;
+    }
+    measureRoundTrip().whenComplete((rtt, t) -> {
+      if (t != null) {
+        logger.debug("round trip measurement failed: {}", t.getMessage());
+      }
+    });
   }
 
   public CompletableFuture<UaClient> connect(String url, EndpointDescription endpoint) {
-    clientHandles.set(0);
     endpointDescription.set(endpoint);
 
     logger.debug("use endpoint: {} [{}]", endpointDescription.get().getEndpointUrl(), endpointDescription.get().getSecurityMode());
 
-    if (!url.equals(endpointDescription.get().getEndpointUrl())) {
-      logger.warn("fix search (returned) endpoint url missmatch: {} ({})", url, endpointDescription.get().getEndpointUrl());
-      endpointDescription.set(changeEndpointUrl(endpointDescription.get(), url));
+    endpointDescription.set(fixEndpointUrl(endpointDescription.get(), url));
+    return newClient(buildConfig()).thenCompose(c -> c.connect()).thenCompose(c -> afterConnect(url, c));
+  }
+
+  /**
+   * Connect to the first reachable server of the given urls. The cached endpoints of a url are
+   * used without a GetEndpoints request, all candidates are connected in parallel and the first
+   * established session is kept, the others are closed. A failed candidate with cached endpoints
+   * is retried once with a fresh discovery.
+   *
+   * @param urls candidate discovery urls, i.e. redundant servers or alternative host names
+   * @param selector selects the endpoint of a url
+   * @return connected client
+   */
+  public CompletableFuture<UaClient> fastConnect(List<String> urls, Function<EndpointDescription[], Optional<EndpointDescription>> selector) {
+    if (urls.isEmpty()) {
+      return buildCompleteExceptionally(UaClient.class, new IOException("no url"));
     }
-    List<IdentityProvider> idProv = new ArrayList<>();
-    getIdentityProvider().ifPresent(idProv::add);
-    idProv.add(new AnonymousProvider());
+    CompletableFuture<Tuple2<EndpointDescription, OpcUaClient>> first = new CompletableFuture<>();
+    AtomicInteger remaining = new AtomicInteger(urls.size());
+    for (String url : urls) {
+      connectCandidate(url, selector, true).whenComplete((candidate, t) -> {
+        if (t == null && !first.complete(candidate)) {
+          logger.debug("close slower candidate: {}", url);
+          candidate.v2.disconnect();
+        }
+        if (remaining.decrementAndGet() == 0 && t != null) {
+          first.completeExceptionally(t);
+        }
+      });
+    }
+    return first.thenComposeAsync(candidate -> {
+      String url = candidate.v1.getEndpointUrl();
+      logger.info("fast connected to: {} [{}]", url, candidate.v1.getSecurityMode());
+      endpointDescription.set(candidate.v1);
+      OpcUaClient c = candidate.v2;
+      c.addFaultListener(fault -> logger.error("fault on {}", fault.getResponseHeader().getServiceResult()));
+      subscriptions.register(c);
+      recovery.register(c);
+      setClient(c);
+      // the first activation was not forwarded by the ActiveClientListener
+      c.getSession().thenAccept(this::onSessionActive);
+      return afterConnect(url, c);
+    }, pool);
+  }
+
+  private CompletableFuture<Tuple2<EndpointDescription, OpcUaClient>> connectCandidate(String url,
+      Function<EndpointDescription[], Optional<EndpointDescription>> selector, boolean useCache) {
+    boolean cached = useCache && endpoints.get(url).isPresent();
+    CompletableFuture<Tuple2<EndpointDescription, OpcUaClient>> future = getEndpoints(url, useCache).thenComposeAsync(e -> {
+      EndpointDescription endpoint =
+          fixEndpointUrl(selector.apply(e).orElseThrow(() -> new CompletionException(new IOException("no endpoint found: " + url))), url);
+      OpcUaClient c = new OpcUaClient(buildConfig(endpoint));
+      c.addSessionActivityListener(new ActiveClientListener(c));
+      return c.connect().thenApply(connected -> new Tuple2<>(endpoint, c)).whenComplete((r, t) -> {
+        if (t != null) {
+          c.disconnect();
+        }
+      });
+    }, pool);
+    if (!cached) {
+      return future;
+    }
+    return future.handle((r, t) -> {
+      if (t == null) {
+        return CompletableFuture.completedFuture(r);
+      }
+      logger.debug("cached endpoint of {} rejected: {}", url, t.getMessage());
+      endpoints.remove(url);
+      return connectCandidate(url, selector, false);
+    }).thenCompose(Function.identity());
+  }
+
+  /**
+   * Forwards the session activity of a fast connect candidate as soon as it is the active client.
+   */
+  private class ActiveClientListener implements SessionActivityListener {
+
+    private final UaClient candidate;
+
+    ActiveClientListener(UaClient candidate) {
+      this.candidate = candidate;
+    }
+
+    @Override
+    public void onSessionActive(UaSession session) {
+      if (client.get() == candidate) {
+        OpcUaClientConnector.this.onSessionActive(session);
+      }
+    }
+
+    @Override
+    public void onSessionInactive(UaSession session) {
+      if (client.get() == candidate) {
+        OpcUaClientConnector.this.onSessionInactive(session);
+      }
+    }
+  }
+
+  private CompletableFuture<UaClient> afterConnect(String url, UaClient c) {
+    return openAddressSpaceCache(url).handle((cache, t) -> {
+      if (t != null) {
+        logger.warn("address space cache not available: {}", t.getMessage());
+      }
+      monitorModelChanges();
+      loadStructureCodecs();
+      loadDataTypes(url);
+      return c;
+    });
+  }
+
+  /**
+   * Subscribe to the GeneralModelChangeEvents and SemanticChangeEvents of the server object and
+   * invalidate the cached entries of the affected nodes.
+   */
+  private void monitorModelChanges() {
+    ModelChangeMonitor.subscribe(this, this::invalidate, this::invalidateAll).whenComplete((s, t) -> {
+      if (t != null) {
+        logger.warn("model change events not available: {}", t.getMessage());
+      } else {
+        modelChangeSubscription.set(s);
+      }
+    });
+  }
+
+  /**
+   * Build the decoders of the server specific structured types, see {@link StructureCodecs}.
+   */
+  private void loadStructureCodecs() {
+    StructureCodecs.load(this).whenComplete((size, t) -> {
+      if (t != null) {
+        logger.warn("data type dictionaries not available: {}", t.getMessage());
+      }
+    });
+  }
 
-    OpcUaClientConfig config = OpcUaClientConfig.builder().setApplicationName(LocalizedText.english(name)).setApplicationUri("urn:comtel:opcua:client")
-        .setEndpoint(endpointDescription.get()).setIdentityProvider(new CompositeProvider(idProv)).setRequestTimeout(uint(5000))
-        .build();
+  /**
+   * Load the stored or prefetch the DataType hierarchy, see {@link DataTypeCache}.
+   */
+  private void loadDataTypes(String url) {
+    readValues(Collections.singletonList(Identifiers.Server_NamespaceArray))
+        .thenCompose(values -> dataTypes.open(addressSpaceCacheEnabled ? AddressSpaceCache.getDefaultDirectory() : null, url,
+            (String[]) values.get(0).getValue().getValue()))
+        .whenComplete((size, t) -> {
+          if (t != null) {
+            logger.warn("data types not available: {}", t.getMessage());
+          }
+        });
+  }
 
-    return newClient(config).thenCompose(c -> c.connect());
+  private CompletableFuture<AddressSpaceCache> openAddressSpaceCache(String url) {
+    if (!addressSpaceCacheEnabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return getClient().thenCompose(c -> c.readValues(0.0, TimestampsToReturn.Neither, Collections.singletonList(Identifiers.Server_NamespaceArray)))
+        .thenApplyAsync(values -> {
+          try {
+            AddressSpaceCache cache = AddressSpaceCache.open(AddressSpaceCache.getDefaultDirectory(), url, (String[]) values.get(0).getValue().getValue());
+            AddressSpaceCache old = addressSpaceCache.getAndSet(cache);
+            if (old != null) {
+              old.close();
+            }
+            return cache;
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, pool);
+  }
+
+  /**
+   * Revalidate the looked up entries of the address space cache after a short delay, the entries
+   * of one expanded tree level are validated together.
+   */
+  private void requestRevalidation(AddressSpaceCache cache) {
+    if (!cache.isRevalidationRequested() || !revalidationScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      scheduler.schedule(() -> revalidate(cache), REVALIDATE_DELAY, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // shut down
+      revalidationScheduled.set(false);
+    }
+  }
+
+  private void revalidate(AddressSpaceCache cache) {
+    AddressSpaceCache current = addressSpaceCache.get();
+    if (current != cache) {
+      // replaced by the cache of a new connection
+      revalidationScheduled.set(false);
+      if (current != null) {
+        requestRevalidation(current);
+      }
+      return;
+    }
+    cache.revalidate(this, node -> {
+      evict(node);
+      fireAddressSpaceChanged(node);
+    }).whenComplete((v, t) -> {
+      if (t != null) {
+        logger.warn("revalidate address space cache failed: {}", t.getMessage());
+      }
+      revalidationScheduled.set(false);
+      if (addressSpaceCache.get() == cache) {
+        requestRevalidation(cache);
+      }
+    });
+  }
+
+  private void closeAddressSpaceCache() {
+    AddressSpaceCache cache = addressSpaceCache.getAndSet(null);
+    if (cache != null) {
+      cache.close();
+    }
+  }
+
+  private void fireAddressSpaceChanged(NodeId node) {
+    Consumer<NodeId> consumer = addressSpaceListener.get();
+    if (consumer != null) {
+      consumer.accept(node);
+    }
+  }
+
+  /**
+   * Enable the on disk address space cache, see {@link AddressSpaceCache}. Takes effect on the next
+   * connect (default: system property {@code opcua.cache.enabled} or {@code true}).
+   *
+   * @param enabled cache enabled
+   */
+  public void setAddressSpaceCacheEnabled(boolean enabled) {
+    this.addressSpaceCacheEnabled = enabled;
+  }
+
+  public boolean isAddressSpaceCacheEnabled() {
+    return addressSpaceCacheEnabled;
+  }
+
+  public Optional<AddressSpaceCache> getAddressSpaceCache() {
+    return Optional.ofNullable(addressSpaceCache.get());
+  }
+
+  /**
+   * Notified (not on the FX thread) with nodes whose cached references or attributes changed on
+   * the server.
+   *
+   * @param c change consumer
+   */
+  public void onAddressSpaceChanged(Consumer<NodeId> c) {
+    this.addressSpaceListener.set(c);
   }
 
   public Optional<EndpointDescription> findLowestEndpoint(EndpointDescription[] endpoints) {
@@ -184,10 +768,14 @@ public class OpcUaClientConnector implements SessionActivityListener {
     return Optional.ofNullable(endpointDescription.get());
   }
 
+  public BatchSubscriptionManager getBatchSubscriptionManager() {
+    return subscriptions;
+  }
+
   public CompletableFuture<UaSubscription> modify(UaSubscription subscription, double publishingInterval, int lifetimeCount, int maxKeepAliveCount,
-      int maxNotifications, byte prio) throws InterruptedException, ExecutionException {
-    return getClient().thenCompose(c -> c.getSubscriptionManager().modifySubscription(subscription.getSubscriptionId(), publishingInterval, uint(lifetimeCount),
-        uint(maxKeepAliveCount), uint(maxNotifications), UByte.valueOf(prio)));
+      int maxNotifications, byte prio) {
+    return subscriptions.getClient(subscription).thenCompose(c -> c.getSubscriptionManager().modifySubscription(subscription.getSubscriptionId(),
+        publishingInterval, uint(lifetimeCount), uint(maxKeepAliveCount), uint(maxNotifications), UByte.valueOf(prio)));
   }
 
   public CompletableFuture<Tuple2<UaSubscription, UaMonitoredItem>> subscribe(NodeId node) {
@@ -203,67 +791,123 @@ public class OpcUaClientConnector implements SessionActivityListener {
   }
 
   public CompletableFuture<Tuple2<UaSubscription, List<UaMonitoredItem>>> subscribe(List<NodeId> nodes, double publishInterval) {
+    return subscriptions.subscribe(nodes, publishInterval);
+  }
 
-    return getClient().thenApply(c -> {
-      UaSubscription subscription =
-          c.getSubscriptionManager().getSubscriptions().stream().filter(s -> s.getRevisedPublishingInterval() == publishInterval).findFirst().orElseGet(() -> {
-            try {
-              return c.getSubscriptionManager().createSubscription(publishInterval).get();
-            } catch (InterruptedException | ExecutionException e) {
-              logger.error(e.getMessage(), e);
-              disconnect();
-            }
-            return null;
-          });
-
-      List<MonitoredItemCreateRequest> list = nodes.stream()
-          .map(node -> new ReadValueId(node, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE)).map(v -> new MonitoredItemCreateRequest(v,
-              MonitoringMode.Reporting, new MonitoringParameters(uint(clientHandles.getAndIncrement()), publishInterval, null, uint(1), true)))
-          .collect(Collectors.toList());
-      List<UaMonitoredItem> items;
-      try {
-        items = subscription.createMonitoredItems(TimestampsToReturn.Both, list).get();
-      } catch (InterruptedException | ExecutionException e) {
-        throw new CompletionException(e);
-      }
-      return new Tuple2<>(subscription, items);
-    });
+  public CompletableFuture<Tuple2<UaSubscription, List<UaMonitoredItem>>> subscribe(List<NodeId> nodes, MonitoredItemSpec spec) {
+    return subscribe(nodes, DEFAULT_PUBLISH_INTERVAL, spec);
   }
 
-  public CompletableFuture<UaSubscription> unsubscribe(UaSubscription subscription) {
+  public CompletableFuture<Tuple2<UaSubscription, List<UaMonitoredItem>>> subscribe(List<NodeId> nodes, double publishInterval, MonitoredItemSpec spec) {
+    return subscriptions.subscribe(nodes, publishInterval, spec);
+  }
 
-    return getClient().thenCompose(c -> {
-      logger.debug("remove add MonitoredItem from subscriptionId: {}", subscription.getSubscriptionId());
-      // c.deleteMonitoredItems(subscription.getSubscriptionId(),
-      // subscription.getMonitoredItems().stream().map(UaMonitoredItem::getMonitoredItemId).collect(Collectors.toList()));
-      return c.getSubscriptionManager().deleteSubscription(subscription.getSubscriptionId());
+  /**
+   * Subscribe every node in the subscription of its shard, see
+   * {@link BatchSubscriptionManager#setSharding(int, int)}.
+   *
+   * @param nodes nodes to monitor
+   * @param publishInterval requested publishing interval
+   * @param spec monitoring parameters
+   * @return subscription and item in order of the given nodes
+   */
+  public CompletableFuture<List<Tuple2<UaSubscription, UaMonitoredItem>>> subscribeEach(List<NodeId> nodes, double publishInterval,
+      MonitoredItemSpec spec) {
+    return subscriptions.subscribeEach(nodes, publishInterval, spec);
+  }
 
-    });
+  public CompletableFuture<List<Tuple2<UaSubscription, UaMonitoredItem>>> subscribeEach(List<NodeId> nodes, MonitoredItemSpec spec) {
+    return subscribeEach(nodes, DEFAULT_PUBLISH_INTERVAL, spec);
+  }
+
+  /**
+   * Returns {@code false} if the subscription was lost, i.e. after a new client was connected. A
+   * subscription survives a session loss if it could be transferred to the new session.
+   *
+   * @param subscription subscription created by subscribe
+   * @return {@code true} if the subscription is still in use
+   */
+  public boolean isActive(UaSubscription subscription) {
+    return subscriptions.isActive(subscription);
   }
 
-  public CompletableFuture<DeleteMonitoredItemsResponse> unsubscribe(UInteger subscriptionId, UaMonitoredItem item) {
+  /**
+   * @param subscription lost subscription
+   * @return {@code true} if the items of the subscription are recreated by the
+   *         {@link SessionRecovery}
+   */
+  public boolean isRecreated(UaSubscription subscription) {
+    return recovery.isRecreated(subscription);
+  }
+
+  public SessionRecovery getSessionRecovery() {
+    return recovery;
+  }
+
+  /**
+   * Notified (not on the FX thread) with the replacements of items whose subscription could not be
+   * transferred after a session loss and which were subscribed again.
+   *
+   * @param c consumer of old item to new subscription and item
+   */
+  public void onSubscriptionsRecreated(Consumer<Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>>> c) {
+    recovery.onRecreated(c);
+  }
+
+  /**
+   * @param subscription subscription created by subscribe
+   * @return publish statistics of the subscription
+   */
+  public Optional<SubscriptionMetrics> getSubscriptionMetrics(UaSubscription subscription) {
+    return subscriptions.getMetrics(subscription);
+  }
+
+  public CompletableFuture<StatusCode> modify(UaSubscription subscription, UaMonitoredItem item, MonitoredItemSpec spec) {
+    logger.debug("modify MonitoredItemId: {} ({})", item.getMonitoredItemId(), spec);
+    return subscriptions.modify(subscription, Collections.singletonList(item), spec).thenApply(codes -> codes.get(0));
+  }
+
+  public CompletableFuture<UaSubscription> unsubscribe(UaSubscription subscription) {
+    logger.debug("remove subscriptionId: {}", subscription.getSubscriptionId());
+    return subscriptions.delete(subscription);
+  }
+
+  public CompletableFuture<StatusCode> unsubscribe(UaSubscription subscription, UaMonitoredItem item) {
     logger.debug("remove MonitoredItemId: {}", item.getMonitoredItemId());
-    return getClient().thenCompose(c -> c.deleteMonitoredItems(subscriptionId, Collections.singletonList(item.getMonitoredItemId())));
+    return subscriptions.unsubscribe(subscription, item);
   }
 
   public CompletableFuture<Void> unsubscribeAll() {
-    OpcUaClient c = client.get();
+    UaClient c = client.get();
     if (c == null) {
       return buildCompleteExceptionally(Void.class, new IOException("not connected"));
     }
 
     UnmodifiableIterator<UaSubscription> it = c.getSubscriptionManager().getSubscriptions().iterator();
     List<CompletableFuture<UaSubscription>> futures = new ArrayList<>();
+    Set<UaSubscription> shards = Collections.newSetFromMap(new IdentityHashMap<>());
+    shards.addAll(subscriptions.getSubscriptions());
     while (it.hasNext()) {
-      futures.add(unsubscribe(it.next()));
+      UaSubscription s = it.next();
+      if (s != modelChangeSubscription.get() && !shards.contains(s)) {
+        futures.add(unsubscribe(s));
+      }
     }
+    shards.forEach(s -> futures.add(unsubscribe(s)));
 
     return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
 
   }
 
   public CompletableFuture<UaClient> disconnect() {
-    return getClient().thenCompose(c -> c.disconnect());
+    closeSessionClients();
+    return getClient().thenCompose(c -> c.disconnect()).whenComplete((c, t) -> {
+      getCacheStatistics().forEach(s -> logger.info("{}", s));
+      closeAddressSpaceCache();
+      dataTypes.save();
+      endpoints.save();
+      StructureCodecs.clear();
+    });
   }
 
   public CompletableFuture<Tuple2<ServerState, ZonedDateTime>> readServerStateAndTime() {
@@ -282,6 +926,9 @@ public class OpcUaClientConnector implements SessionActivityListener {
   @Override
   public void onSessionActive(UaSession session) {
     logger.info("active session id: {}", session.getSessionId());
+    // limits may differ after a reconnect (i.e. server restart), read once per session
+    operationLimits.set(null);
+    sampleRoundTrip();
     BiConsumer<Boolean, Throwable> consumer = listener.get();
     if (consumer != null) {
       consumer.accept(Boolean.TRUE, null);
@@ -310,11 +957,64 @@ public class OpcUaClientConnector implements SessionActivityListener {
   }
 
   public CompletableFuture<BrowseResult> getHierarchicalReferences(NodeId node, UInteger nodeClassMask) {
+    return browse(getHierarchicalBrowseDescription(node, nodeClassMask));
+  }
+
+  /**
+   * @param node node to browse
+   * @param nodeClassMask node class filter
+   * @return browse description of the forward references used by all getHierarchicalReferences
+   *         calls
+   */
+  public BrowseDescription getHierarchicalBrowseDescription(NodeId node, UInteger nodeClassMask) {
     UInteger resultMask = uint(BrowseResultMask.All.getValue());
-    BrowseDescription bd = new BrowseDescription(node, BrowseDirection.Forward, Identifiers.References, true, nodeClassMask, resultMask);
-    return browse(bd);
+    return new BrowseDescription(node, BrowseDirection.Forward, Identifiers.References, true, nodeClassMask, resultMask);
   }
   
+  /**
+   * Browse the hierarchical references page by page, see
+   * {@link #browse(BrowseDescription, UInteger, ReferencePageConsumer)}.
+   *
+   * @param node node to browse
+   * @param nodeClassMask node class filter
+   * @param consumer page consumer
+   * @return status of the browse
+   */
+  public CompletableFuture<StatusCode> getHierarchicalReferences(NodeId node, UInteger nodeClassMask, ReferencePageConsumer consumer) {
+    BrowseDescription bd = getHierarchicalBrowseDescription(node, nodeClassMask);
+    Tuple2<NodeId, UInteger> key = new Tuple2<>(node, nodeClassMask);
+    ReferenceDescription[] cached = browseCache.get(key);
+    AddressSpaceCache cache = addressSpaceCache.get();
+    if (cached == null && cache != null) {
+      cached = cache.getReferences(node, nodeClassMask);
+      if (cached != null) {
+        browseCache.put(key, cached);
+        requestRevalidation(cache);
+      }
+    }
+    if (cached != null) {
+      searchIndex.add(node, cached);
+      return consumer.onPage(cached, true).toCompletableFuture().thenApply(v -> StatusCode.GOOD);
+    }
+    List<ReferenceDescription> all = new ArrayList<>();
+    CompletableFuture<StatusCode> paging = browse(bd, uint(maxReferencesPerNode), (refs, last) -> {
+      all.addAll(Arrays.asList(refs));
+      searchIndex.add(node, refs);
+      return consumer.onPage(refs, last);
+    });
+    // return the paging future itself, a cancel must reach the BrowseNext loop
+    paging.whenComplete((status, t) -> {
+      if (t == null && status.isGood()) {
+        ReferenceDescription[] refs = all.toArray(new ReferenceDescription[all.size()]);
+        browseCache.put(key, refs);
+        if (cache != null) {
+          cache.putReferences(node, nodeClassMask, refs);
+        }
+      }
+    });
+    return paging;
+  }
+
   public ReferenceDescription getRootNode(String displayName) {
     return new ReferenceDescription(Identifiers.RootFolder, Boolean.TRUE, Identifiers.RootFolder.expanded(), QualifiedName.parse("Root"),
         LocalizedText.english(displayName), NodeClass.Unspecified, ExpandedNodeId.NULL_VALUE);
@@ -324,25 +1024,413 @@ public class OpcUaClientConnector implements SessionActivityListener {
     return getClient().thenCompose(c -> c.browse(nodeToBrowse));
   }
 
+  /**
+   * Browse the node and follow the continuation points with BrowseNext until all references are
+   * passed to the consumer. Cancel the returned future to stop the browse, an outstanding
+   * continuation point is released on the server.
+   *
+   * @param nodeToBrowse browse description
+   * @param maxReferencesPerNode requested max references per page (0: server decides)
+   * @param consumer page consumer
+   * @return status of the browse, completed after the last page is consumed
+   */
+  public CompletableFuture<StatusCode> browse(BrowseDescription nodeToBrowse, UInteger maxReferencesPerNode, ReferencePageConsumer consumer) {
+    ViewDescription view = new ViewDescription(NodeId.NULL_VALUE, DateTime.MIN_VALUE, uint(0));
+    CompletableFuture<StatusCode> done = new CompletableFuture<>();
+    getClient().thenCompose(c -> c.browse(view, maxReferencesPerNode, Collections.singletonList(nodeToBrowse)))
+        .whenComplete((r, t) -> onBrowsePage(r != null ? r.getResults()[0] : null, t, consumer, done));
+    return done;
+  }
+
+  /**
+   * Pass the references of the browse result to the consumer and follow its continuation point page
+   * by page, see {@link #browse(BrowseDescription, UInteger, ReferencePageConsumer)}.
+   *
+   * @param result first page, i.e. a result of {@link #browse(List)}
+   * @param consumer page consumer
+   * @return status of the browse, completed after the last page is consumed
+   */
+  public CompletableFuture<StatusCode> browseNext(BrowseResult result, ReferencePageConsumer consumer) {
+    CompletableFuture<StatusCode> done = new CompletableFuture<>();
+    onBrowsePage(result, null, consumer, done);
+    return done;
+  }
+
+  /**
+   * @param result browse result
+   * @return {@code true} if the result has no continuation point
+   */
+  static boolean isLastPage(BrowseResult result) {
+    ByteString cp = result.getContinuationPoint();
+    return cp == null || cp.isNull() || cp.length() == 0 || result.getStatusCode().isBad();
+  }
+
+  private void onBrowsePage(BrowseResult result, Throwable t, ReferencePageConsumer consumer, CompletableFuture<StatusCode> done) {
+    if (t != null) {
+      done.completeExceptionally(t);
+      return;
+    }
+    ByteString cp = result.getContinuationPoint();
+    boolean last = isLastPage(result);
+    if (done.isDone()) {
+      // cancelled by the caller
+      releaseContinuationPoint(cp, last);
+      return;
+    }
+    if (result.getStatusCode().isBad()) {
+      done.complete(result.getStatusCode());
+      return;
+    }
+    ReferenceDescription[] refs = result.getReferences() != null ? result.getReferences() : new ReferenceDescription[0];
+    CompletionStage<?> consumed;
+    try {
+      consumed = consumer.onPage(refs, last);
+    } catch (RuntimeException e) {
+      consumed = buildCompleteExceptionally(Object.class, e);
+    }
+    consumed.whenComplete((v, th) -> {
+      if (th != null) {
+        releaseContinuationPoint(cp, last);
+        done.completeExceptionally(th);
+      } else if (last) {
+        done.complete(result.getStatusCode());
+      } else if (done.isDone()) {
+        releaseContinuationPoint(cp, false);
+      } else {
+        getClient().thenCompose(c -> c.browseNext(false, Collections.singletonList(cp)))
+            .whenComplete((r, th2) -> onBrowsePage(r != null ? r.getResults()[0] : null, th2, consumer, done));
+      }
+    });
+  }
+
+  private void releaseContinuationPoint(ByteString cp, boolean last) {
+    if (!last) {
+      releaseContinuationPoint(cp);
+    }
+  }
+
+  void releaseContinuationPoint(ByteString cp) {
+    getClient().thenCompose(c -> c.browseNext(true, Collections.singletonList(cp)))
+        .whenComplete((r, t) -> logger.trace("release continuation point: {}", t != null ? t.getMessage() : "ok"));
+  }
+
+  /**
+   * Set the requested max references per browse page.
+   *
+   * @param maxReferencesPerNode max references per page (0: server decides)
+   */
+  public void setMaxReferencesPerNode(int maxReferencesPerNode) {
+    this.maxReferencesPerNode = Math.max(0, maxReferencesPerNode);
+  }
+
+  public int getMaxReferencesPerNode() {
+    return maxReferencesPerNode;
+  }
+
+  /**
+   * Continue browsing of the given continuation points.
+   *
+   * @param continuationPoints continuation points of previous browse results
+   * @return results in order of the given continuation points
+   */
+  public CompletableFuture<List<BrowseResult>> browseNext(List<ByteString> continuationPoints) {
+    return getClient().thenCompose(c -> c.browseNext(false, continuationPoints)).thenApply(r -> Arrays.asList(r.getResults()));
+  }
+
+  /**
+   * Browse all nodes. The list is split by the servers {@code MaxNodesPerBrowse} limit.
+   *
+   * @param nodesToBrowse browse descriptions
+   * @return results in order of the given descriptions
+   */
+  public CompletableFuture<List<BrowseResult>> browse(List<BrowseDescription> nodesToBrowse) {
+    return browse(nodesToBrowse, uint(0));
+  }
+
+  /**
+   * @see #browse(List)
+   *
+   * @param nodesToBrowse browse descriptions
+   * @param maxReferencesPerNode requested max references per result (0: server decides)
+   * @return results in order of the given descriptions
+   */
+  public CompletableFuture<List<BrowseResult>> browse(List<BrowseDescription> nodesToBrowse, UInteger maxReferencesPerNode) {
+    ViewDescription view = new ViewDescription(NodeId.NULL_VALUE, DateTime.MIN_VALUE, uint(0));
+    return getOperationLimits().thenCompose(limits -> RequestChunker.call(nodesToBrowse, limits.getMaxNodesPerBrowse(), maxConcurrentRequests,
+        chunk -> getClient().thenCompose(c -> c.browse(view, maxReferencesPerNode, chunk)).thenApply(r -> Arrays.asList(r.getResults()))));
+  }
+
+  /**
+   * Browse all nodes like {@link #browse(List)} and follow the continuation points of the results
+   * with {@link #browseNext(BrowseResult, ReferencePageConsumer)}. The results are completed one
+   * after another, servers allow only a few continuation points per session. A result whose
+   * BrowseNext fails is returned with a bad status.
+   *
+   * @param nodesToBrowse browse descriptions
+   * @return complete results without continuation point in order of the given descriptions
+   */
+  public CompletableFuture<List<BrowseResult>> browseAll(List<BrowseDescription> nodesToBrowse) {
+    return browse(nodesToBrowse).thenCompose(results -> {
+      List<BrowseResult> all = new ArrayList<>(results);
+      CompletableFuture<?> pages = CompletableFuture.completedFuture(null);
+      for (int i = 0; i < all.size(); i++) {
+        BrowseResult first = all.get(i);
+        if (isLastPage(first)) {
+          continue;
+        }
+        int index = i;
+        List<ReferenceDescription> refs = new ArrayList<>();
+        pages = pages.thenCompose(v -> browseNext(first, (page, last) -> {
+          refs.addAll(Arrays.asList(page));
+          return CompletableFuture.completedFuture(null);
+        }).handle((status, t) -> {
+          if (t != null) {
+            logger.warn("browse next of {} failed: {}", nodesToBrowse.get(index).getNodeId(), t.getMessage());
+            status = new StatusCode(StatusCodes.Bad_UnexpectedError);
+          }
+          all.set(index, new BrowseResult(status, ByteString.NULL_VALUE, refs.toArray(new ReferenceDescription[refs.size()])));
+          return null;
+        }));
+      }
+      return pages.thenApply(v -> all);
+    });
+  }
+
   public CompletableFuture<List<DataValue>> read(NodeId node, AttributeId attr) {
-    return getClient().thenCompose(c -> c.read(0.0, TimestampsToReturn.Both, Collections.singletonList(node), Collections.singletonList(attr.uid())));
+    return readBatcher.submit(Collections.singletonList(new ReadValueId(node, attr.uid(), null, QualifiedName.NULL_VALUE)));
   }
 
+  /**
+   * Read the attributes of the node. Static attributes are served by the attribute cache and the
+   * address space cache if available.
+   *
+   * @param node node to read
+   * @param attr attribute ids
+   * @return values in order of the given attribute ids
+   */
   public CompletableFuture<List<DataValue>> read(NodeId node, List<UInteger> attr) {
-    List<NodeId> nodes = attr.stream().map(a -> node).collect(Collectors.toList());
-    return getClient().thenCompose(c -> c.read(0.0, TimestampsToReturn.Both, nodes, attr));
+    AddressSpaceCache cache = addressSpaceCache.get();
+    DataValue[] values = new DataValue[attr.size()];
+    List<Integer> missing = new ArrayList<>();
+    for (int i = 0; i < values.length; i++) {
+      if (AddressSpaceCache.isStatic(attr.get(i))) {
+        Tuple2<NodeId, UInteger> key = new Tuple2<>(node, attr.get(i));
+        values[i] = attributeCache.get(key);
+        if (values[i] == null && cache != null) {
+          values[i] = cache.getAttribute(node, attr.get(i));
+          if (values[i] != null) {
+            attributeCache.put(key, values[i]);
+            requestRevalidation(cache);
+          }
+        }
+      }
+      if (values[i] == null) {
+        missing.add(i);
+      }
+    }
+    if (missing.isEmpty()) {
+      return CompletableFuture.completedFuture(Arrays.asList(values));
+    }
+    List<UInteger> read = missing.stream().map(attr::get).collect(Collectors.toList());
+    return readBatcher.submit(read.stream().map(a -> new ReadValueId(node, a, null, QualifiedName.NULL_VALUE)).collect(Collectors.toList()))
+        .thenApply(result -> {
+          // only good values, a timeout or too many operations must not be served later on
+          List<UInteger> goodIds = new ArrayList<>(result.size());
+          List<DataValue> good = new ArrayList<>(result.size());
+          for (int i = 0; i < result.size(); i++) {
+            DataValue value = result.get(i);
+            values[missing.get(i)] = value;
+            if (AddressSpaceCache.isStatic(read.get(i)) && value != null && value.getStatusCode() != null && value.getStatusCode().isGood()) {
+              attributeCache.put(new Tuple2<>(node, read.get(i)), value);
+              goodIds.add(read.get(i));
+              good.add(value);
+            }
+          }
+          if (cache != null && !good.isEmpty()) {
+            cache.putAttributes(node, goodIds, good);
+          }
+          return Arrays.asList(values);
+        });
+  }
+
+  /**
+   * Drop the cached references and attributes of the node, i.e. after a model change.
+   *
+   * @param node changed node
+   */
+  public void invalidate(NodeId node) {
+    evict(node);
+    searchIndex.remove(node);
+    pathResolver.invalidate();
+    dataTypes.remove(node);
+    AddressSpaceCache cache = addressSpaceCache.get();
+    if (cache != null) {
+      cache.remove(node);
+    }
+    fireAddressSpaceChanged(node);
+  }
+
+  private void evict(NodeId node) {
+    browseCache.removeGroup(node);
+    attributeCache.removeGroup(node);
+  }
+
+  /**
+   * Drop all cached references and attributes.
+   */
+  public void invalidateAll() {
+    browseCache.clear();
+    attributeCache.clear();
+    searchIndex.clear();
+    pathResolver.invalidate();
+    dataTypes.clear();
+    AddressSpaceCache cache = addressSpaceCache.get();
+    if (cache != null) {
+      cache.clear();
+    }
+    fireAddressSpaceChanged(Identifiers.RootFolder);
+  }
+
+  /**
+   * Full-text index of all nodes browsed with {@link #getHierarchicalReferences(NodeId, UInteger, ReferencePageConsumer)}.
+   *
+   * @return search index
+   */
+  public NodeSearchIndex getSearchIndex() {
+    return searchIndex;
+  }
+
+  /**
+   * Resolve the browse paths, see {@link BrowsePathResolver}.
+   *
+   * @param paths browse paths relative to the RootFolder, i.e. {@code Objects/2:Line1/Motor3}
+   * @return target node of every path in the given order (empty if not resolved)
+   */
+  public CompletableFuture<List<Optional<NodeId>>> resolveBrowsePaths(List<String> paths) {
+    return pathResolver.resolve(paths);
+  }
+
+  public CompletableFuture<Optional<NodeId>> resolveBrowsePath(String path) {
+    return pathResolver.resolve(path);
+  }
+
+  /**
+   * Resolve every prefix of a browse path, see {@link BrowsePathResolver#resolvePrefixes(String)}.
+   *
+   * @param path browse path relative to the RootFolder
+   * @return node ids of the resolved segments (shorter than the path if not completely resolved)
+   */
+  public CompletableFuture<List<NodeId>> translateBrowsePath(String path) {
+    return pathResolver.resolvePrefixes(path);
+  }
+
+  public BrowsePathResolver getBrowsePathResolver() {
+    return pathResolver;
+  }
+
+  /**
+   * In memory LRU cache of complete browse results keyed by node and node class mask.
+   *
+   * @return browse cache
+   */
+  public LruCache<Tuple2<NodeId, UInteger>, ReferenceDescription[]> getBrowseCache() {
+    return browseCache;
+  }
+
+  /**
+   * In memory LRU cache of static attribute values keyed by node and attribute id.
+   *
+   * @return attribute cache
+   */
+  public LruCache<Tuple2<NodeId, UInteger>, DataValue> getAttributeCache() {
+    return attributeCache;
+  }
+
+  /**
+   * @return statistics of the browse, attribute and browse path caches
+   */
+  public List<LruCache.Statistics> getCacheStatistics() {
+    return Arrays.asList(browseCache.getStatistics(), attributeCache.getStatistics(), pathResolver.getCache().getStatistics());
+  }
+
+  /**
+   * DataType metadata of the connected server.
+   *
+   * @return DataType cache
+   */
+  public DataTypeCache getDataTypeCache() {
+    return dataTypes;
   }
 
   public CompletableFuture<List<DataValue>> readValues(List<NodeId> nodeIds) {
-    return getClient().thenCompose(c -> c.readValues(0.0, TimestampsToReturn.Both, nodeIds));
+    return readBatcher.submit(nodeIds.stream().map(n -> new ReadValueId(n, AttributeId.Value.uid(), null, QualifiedName.NULL_VALUE)).collect(Collectors.toList()));
   }
 
   public CompletableFuture<StatusCode> write(WriteValue value) {
-    return getClient().thenCompose(c -> c.write(Collections.singletonList(value)).thenApply(WriteResponse::getResults).thenApply(d -> d[0]));
+    return writeBatcher.submit(Collections.singletonList(value)).thenApply(d -> d.get(0));
   }
 
   public CompletableFuture<StatusCode> writeValue(NodeId node, DataValue value) {
-    return getClient().thenCompose(c -> c.writeValues(Collections.singletonList(node), Collections.singletonList(value)).thenApply(d -> d.get(0)));
+    return write(new WriteValue(node, AttributeId.Value.uid(), null, value));
+  }
+
+  /**
+   * Batcher merging concurrent {@link #read(NodeId, AttributeId)}, {@link #read(NodeId, List)} and
+   * {@link #readValues(List)} calls into single Read service calls.
+   *
+   * @return read batcher
+   */
+  public RequestBatcher<ReadValueId, DataValue> getReadBatcher() {
+    return readBatcher;
+  }
+
+  /**
+   * Batcher merging concurrent {@link #write(WriteValue)} and {@link #writeValue(NodeId, DataValue)}
+   * calls into single Write service calls.
+   *
+   * @return write batcher
+   */
+  public RequestBatcher<WriteValue, StatusCode> getWriteBatcher() {
+    return writeBatcher;
+  }
+
+  /**
+   * Operation limits of the active session. The limits are read once per session, on failure the
+   * client side defaults are used.
+   *
+   * @return limits of the server
+   */
+  public CompletableFuture<OperationLimits> getOperationLimits() {
+    CompletableFuture<OperationLimits> limits = operationLimits.get();
+    if (limits != null) {
+      return limits;
+    }
+    UaClient c = client.get();
+    if (c == null) {
+      return CompletableFuture.completedFuture(OperationLimits.defaults());
+    }
+    CompletableFuture<OperationLimits> read = OperationLimits.read(c).exceptionally(t -> {
+      logger.warn("read operation limits failed: {}", t.getMessage());
+      return OperationLimits.defaults();
+    });
+    if (operationLimits.compareAndSet(null, read)) {
+      read.thenAccept(l -> logger.debug("{}", l));
+      return read;
+    }
+    return getOperationLimits();
+  }
+
+  /**
+   * Set the max number of outstanding service calls of one chunked request.
+   *
+   * @param maxConcurrentRequests max outstanding calls
+   */
+  public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+    this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+  }
+
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
   }
 
   @PreDestroy
@@ -354,9 +1442,26 @@ public class OpcUaClientConnector implements SessionActivityListener {
         logger.error(e.getMessage(), e);
       }
     }
+    closeSessionClients();
+    closeAddressSpaceCache();
+    dataTypes.save();
+    endpoints.save();
+    subscriptions.shutdown();
+    scheduler.shutdownNow();
+    if (!sharedPool && pool instanceof ExecutorService) {
+      ((ExecutorService) pool).shutdown();
+    }
     Stack.releaseSharedResources(500, TimeUnit.MILLISECONDS);
   }
 
+  private EndpointDescription fixEndpointUrl(EndpointDescription e, String url) {
+    if (url.equals(e.getEndpointUrl())) {
+      return e;
+    }
+    logger.warn("fix search (returned) endpoint url missmatch: {} ({})", url, e.getEndpointUrl());
+    return changeEndpointUrl(e, url);
+  }
+
   private EndpointDescription changeEndpointUrl(EndpointDescription e, String url) {
     return new EndpointDescription(url, e.getServer(), e.getServerCertificate(), e.getSecurityMode(), e.getSecurityPolicyUri(), e.getUserIdentityTokens(),
         e.getTransportProfileUri(), e.getSecurityLevel());
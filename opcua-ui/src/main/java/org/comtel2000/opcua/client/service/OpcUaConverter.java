@@ -20,7 +20,6 @@ import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Optional;
-import java.util.ResourceBundle;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -48,8 +47,6 @@ import io.netty.buffer.Unpooled;
 
 public class OpcUaConverter {
 
-  public static ResourceBundle datatypes = ResourceBundle.getBundle("org.comtel2000.opcua.client.service.datatype");
-  
   public enum AccessLevel {
 
     CurrentRead(0x01),
@@ -91,71 +88,26 @@ public class OpcUaConverter {
   }
 
   public static String toString(Variant variant) {
-    if (variant == null || variant.isNull()) {
-      return null;
-    }
-    final Object value = variant.getValue();
-
-    if (value instanceof byte[]) {
-      return toString((byte[]) variant.getValue());
-    }
-    if (variant.getValue() instanceof String) {
-      return (String) variant.getValue();
-    }
-    if (variant.getValue() instanceof NodeId) {
-      return toString((NodeId) variant.getValue());
-    }
-    if (variant.getValue() instanceof String[]) {
-      return toString((String[]) variant.getValue());
-    }
-    if (variant.getValue() instanceof DateTime) {
-      return toString((DateTime) variant.getValue());
-    }
-    if (variant.getValue() instanceof ByteString) {
-      return toString((ByteString) variant.getValue());
-    }
-    if (variant.getValue() instanceof XmlElement) {
-      return toString((XmlElement) variant.getValue());
-    }
-    if (variant.getValue() instanceof QualifiedName) {
-      return toString((QualifiedName) variant.getValue());
-    }
-    if (variant.getValue() instanceof ExtensionObject) {
-      return toString((ExtensionObject) variant.getValue());
-    }
-    if (variant.getValue() instanceof Object[]) {
-      return toString((Object[]) variant.getValue());
-    }
-    if (variant.getValue() instanceof LocalizedText) {
-      return toString((LocalizedText) variant.getValue());
-    }
-    return String.valueOf(variant.getValue());
+    return ValueFormatter.toString(variant);
   }
 
   /**
    * NodeType/id to String
    * 
    * @param node NodeId type/Id
-   * @return String representation
+   * @return String representation or {@code null} for numeric ids without known name
    * 
    * @see: {@link Identifiers}
-   * @see: {@link NodeIdLookup}
+   * @see: {@link NodeIdNames}
    */
   public static String toString(NodeId node) {
     if (node == null || node.isNull()) {
       return null;
     }
-    if (node.getIdentifier() == null || !(node.getIdentifier() instanceof UInteger)) {
-      return String.format("%s (%s)", node.getIdentifier(), node.toParseableString());
-    }
-    int id = ((UInteger) node.getIdentifier()).intValue();
-    String nodeName;
-    try {
-      nodeName = datatypes.getString(Integer.toString(id));
-    } catch (Exception e) {
-      return null;
+    if (!(node.getIdentifier() instanceof UInteger)) {
+      return node.getIdentifier() + " (" + node.toParseableString() + ")";
     }
-    return String.format("%d (%s)", id, nodeName);
+    return NodeIdNames.getLabel(node);
   }
 
   public static String toString(ExpandedNodeId node) {
@@ -165,18 +117,12 @@ public class OpcUaConverter {
     if (node.isLocal()){
       return toString(node.local().get());
     }
-    if (node.getIdentifier() == null && !(node.getIdentifier() instanceof UInteger)) {
-      return String.format("%s (%s)", node.getIdentifier(), node.toParseableString());
-    }
-    int id = ((UInteger) node.getIdentifier()).intValue();
-    String nodeName;
-    try {
-      nodeName = datatypes.getString(Integer.toString(id));
-    } catch (Exception e) {
-      nodeName = "Unknown";
+    if (!(node.getIdentifier() instanceof UInteger)) {
+      return node.getIdentifier() + " (" + node.toParseableString() + ")";
     }
-    return String.format("%d (%s)", id, nodeName);
-
+    long id = ((UInteger) node.getIdentifier()).longValue();
+    String nodeName = NodeIdNames.getName(node.getNamespaceIndex().intValue(), id);
+    return id + " (" + (nodeName != null ? nodeName : "Unknown") + ")";
   }
 
   public static Object toWritableDataTypeObject(NodeId node, String value) throws Exception {
@@ -265,11 +211,11 @@ public class OpcUaConverter {
   }
 
   public static String toString(DateTime time) {
-    return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(toZonedDateTime(time));
+    return ValueFormatter.appendDateTime(new StringBuilder(32), time).toString();
   }
 
   public static String toString(ByteString bs) {
-    return bs.bytes() != null ? Arrays.toString(bs.bytes()) : bs.toString();
+    return ValueFormatter.appendValue(new StringBuilder(), bs).toString();
   }
 
   public static String toRangeString(ByteString bs) {
@@ -294,7 +240,7 @@ public class OpcUaConverter {
   
   
   public static String toString(double d) {
-    return d % 1.0 != 0 ? String.format("%s", d) : String.format("%.0f",d);
+    return ValueFormatter.appendDouble(new StringBuilder(24), d).toString();
   }
   
   public static String toString(QualifiedName qname) {
@@ -306,11 +252,11 @@ public class OpcUaConverter {
   }
 
   public static String toString(Object[] data) {
-    return Arrays.toString(data.length > 100 ? Arrays.copyOf(data, 100) : data) + (data.length > 100 ? "+" : "");
+    return ValueFormatter.appendValue(new StringBuilder(), data).toString();
   }
 
   public static String toString(byte[] data) {
-    return Arrays.toString(data.length > 100 ? Arrays.copyOf(data, 100) : data) + (data.length > 100 ? "+" : "");
+    return ValueFormatter.appendValue(new StringBuilder(), data).toString();
   }
   
   public static String toString(ExtensionObject ext) {
@@ -322,6 +268,10 @@ public class OpcUaConverter {
         return toEUInformationString((ByteString) ext.getEncoded());
       }
     }
+    Structure structure = StructureCodecs.decode(ext);
+    if (structure != null) {
+      return structure.toString();
+    }
     if (ext.getEncoded() != null && ext.getEncoded() instanceof ByteString) {
       return toString((ByteString) ext.getEncoded());
     }
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.TimestampsToReturn;
+
+/**
+ * Snapshot of the servers {@code Server_ServerCapabilities_OperationLimits}. Limits not reported
+ * by the server (missing node or 0) are replaced by client side defaults which keep a request
+ * below the request timeout.
+ *
+ * @author comtel
+ *
+ */
+public class OperationLimits {
+
+  public final static int DEFAULT_MAX_NODES_PER_READ = 1000;
+  public final static int DEFAULT_MAX_NODES_PER_WRITE = 1000;
+  public final static int DEFAULT_MAX_NODES_PER_BROWSE = 500;
+  public final static int DEFAULT_MAX_MONITORED_ITEMS_PER_CALL = 1000;
+  public final static int DEFAULT_MAX_NODES_PER_TRANSLATE = 500;
+
+  private final static List<NodeId> LIMIT_NODES = Arrays.asList(Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerRead,
+      Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerWrite, Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerBrowse,
+      Identifiers.Server_ServerCapabilities_OperationLimits_MaxMonitoredItemsPerCall,
+      Identifiers.Server_ServerCapabilities_OperationLimits_MaxNodesPerTranslateBrowsePathsToNodeIds);
+
+  private final int maxNodesPerRead;
+  private final int maxNodesPerWrite;
+  private final int maxNodesPerBrowse;
+  private final int maxMonitoredItemsPerCall;
+  private final int maxNodesPerTranslate;
+
+  public OperationLimits(int maxNodesPerRead, int maxNodesPerWrite, int maxNodesPerBrowse, int maxMonitoredItemsPerCall, int maxNodesPerTranslate) {
+    this.maxNodesPerRead = maxNodesPerRead;
+    this.maxNodesPerWrite = maxNodesPerWrite;
+    this.maxNodesPerBrowse = maxNodesPerBrowse;
+    this.maxMonitoredItemsPerCall = maxMonitoredItemsPerCall;
+    this.maxNodesPerTranslate = maxNodesPerTranslate;
+  }
+
+  public static OperationLimits defaults() {
+    return new OperationLimits(DEFAULT_MAX_NODES_PER_READ, DEFAULT_MAX_NODES_PER_WRITE, DEFAULT_MAX_NODES_PER_BROWSE, DEFAULT_MAX_MONITORED_ITEMS_PER_CALL,
+        DEFAULT_MAX_NODES_PER_TRANSLATE);
+  }
+
+  /**
+   * Read all operation limits with one Read service call.
+   *
+   * @param client connected client
+   * @return limits of the server
+   */
+  public static CompletableFuture<OperationLimits> read(UaClient client) {
+    return client.readValues(0.0, TimestampsToReturn.Neither, LIMIT_NODES)
+        .thenApply(values -> new OperationLimits(toLimit(values.get(0), DEFAULT_MAX_NODES_PER_READ), toLimit(values.get(1), DEFAULT_MAX_NODES_PER_WRITE),
+            toLimit(values.get(2), DEFAULT_MAX_NODES_PER_BROWSE), toLimit(values.get(3), DEFAULT_MAX_MONITORED_ITEMS_PER_CALL),
+            toLimit(values.get(4), DEFAULT_MAX_NODES_PER_TRANSLATE)));
+  }
+
+  private static int toLimit(DataValue value, int defaultValue) {
+    if (value != null && value.getStatusCode().isGood() && value.getValue().getValue() instanceof UInteger) {
+      long limit = ((UInteger) value.getValue().getValue()).longValue();
+      if (limit > 0) {
+        return (int) Math.min(limit, Integer.MAX_VALUE);
+      }
+    }
+    return defaultValue;
+  }
+
+  public int getMaxNodesPerRead() {
+    return maxNodesPerRead;
+  }
+
+  public int getMaxNodesPerWrite() {
+    return maxNodesPerWrite;
+  }
+
+  public int getMaxNodesPerBrowse() {
+    return maxNodesPerBrowse;
+  }
+
+  public int getMaxMonitoredItemsPerCall() {
+    return maxMonitoredItemsPerCall;
+  }
+
+  public int getMaxNodesPerTranslate() {
+    return maxNodesPerTranslate;
+  }
+
+  @Override
+  public String toString() {
+    return "OperationLimits [read=" + maxNodesPerRead + ", write=" + maxNodesPerWrite + ", browse=" + maxNodesPerBrowse + ", monitoredItems="
+        + maxMonitoredItemsPerCall + ", translate=" + maxNodesPerTranslate + "]";
+  }
+}
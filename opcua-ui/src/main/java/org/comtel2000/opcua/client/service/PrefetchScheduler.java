@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Browses nodes ahead of the user in the background to fill the browse cache of the
+ * {@link OpcUaClientConnector}. The requested nodes are passed by priority with
+ * {@link #update(List)}, every update replaces the queue and cancels the outstanding browses of
+ * nodes not requested anymore. A request with a depth &gt; 1 also prefetches the child objects of
+ * the node with the same priority. The queue is bounded, the entries with the lowest priority are
+ * dropped.
+ *
+ * @author comtel
+ *
+ */
+public class PrefetchScheduler {
+
+  protected final static Logger logger = LoggerFactory.getLogger(PrefetchScheduler.class);
+
+  public final static int DEFAULT_MAX_OUTSTANDING = Math.max(1, Integer.getInteger("opcua.prefetch.maxOutstanding", 2));
+
+  public final static int DEFAULT_MAX_QUEUED = Math.max(1, Integer.getInteger("opcua.prefetch.maxQueued", 256));
+
+  private final static class Entry {
+    final NodeId node;
+    final NodeId origin;
+    final int priority;
+    final int depth;
+    final long seq;
+
+    Entry(NodeId node, NodeId origin, int priority, int depth, long seq) {
+      this.node = node;
+      this.origin = origin;
+      this.priority = priority;
+      this.depth = depth;
+      this.seq = seq;
+    }
+  }
+
+  private final static Comparator<Entry> ORDER = Comparator.<Entry> comparingInt(e -> e.priority).thenComparingLong(e -> e.seq);
+
+  private final OpcUaClientConnector connector;
+
+  private final UInteger nodeClassMask;
+
+  private final TreeSet<Entry> queue = new TreeSet<>(ORDER);
+
+  private final Map<NodeId, Entry> queued = new HashMap<>();
+
+  private final Map<NodeId, Tuple2<Entry, CompletableFuture<StatusCode>>> running = new HashMap<>();
+
+  /** requested nodes of the last update */
+  private Set<NodeId> origins = new HashSet<>();
+
+  private final Set<NodeId> failed = new HashSet<>();
+
+  private int maxOutstanding = DEFAULT_MAX_OUTSTANDING;
+
+  private int maxQueued = DEFAULT_MAX_QUEUED;
+
+  private long seq;
+
+  private long fetched;
+
+  private long cancelled;
+
+  /**
+   * @param connector connector with the browse cache to fill
+   * @param nodeClassMask node class mask of the browses (cache key)
+   */
+  public PrefetchScheduler(OpcUaClientConnector connector, UInteger nodeClassMask) {
+    this.connector = connector;
+    this.nodeClassMask = nodeClassMask;
+  }
+
+  public synchronized void setMaxOutstanding(int maxOutstanding) {
+    this.maxOutstanding = Math.max(1, maxOutstanding);
+  }
+
+  public synchronized void setMaxQueued(int maxQueued) {
+    this.maxQueued = Math.max(1, maxQueued);
+  }
+
+  /**
+   * Replace the requested nodes.
+   *
+   * @param requests nodes with the prefetch depth (1: the node, 2: also its child objects) ordered
+   *        by priority (first is most urgent)
+   */
+  public synchronized void update(List<Tuple2<NodeId, Integer>> requests) {
+    Set<NodeId> next = new HashSet<>();
+    requests.forEach(r -> next.add(r.v1));
+    origins = next;
+
+    queue.clear();
+    queued.clear();
+    for (Tuple2<Entry, CompletableFuture<StatusCode>> r : new ArrayList<>(running.values())) {
+      if (!next.contains(r.v1.origin)) {
+        running.remove(r.v1.node);
+        r.v2.cancel(false);
+        cancelled++;
+      }
+    }
+    int priority = 0;
+    for (Tuple2<NodeId, Integer> r : requests) {
+      offer(new Entry(r.v1, r.v1, priority++, Math.max(1, r.v2), seq++));
+    }
+    pump();
+  }
+
+  /**
+   * Cancel all requests and forget failed nodes, i.e. after a reconnect.
+   */
+  public synchronized void clear() {
+    update(new ArrayList<>());
+    failed.clear();
+  }
+
+  public synchronized int getQueueSize() {
+    return queue.size();
+  }
+
+  public synchronized int getOutstanding() {
+    return running.size();
+  }
+
+  /**
+   * @return number of prefetched nodes
+   */
+  public synchronized long getFetchedCount() {
+    return fetched;
+  }
+
+  public synchronized long getCancelledCount() {
+    return cancelled;
+  }
+
+  private boolean isCached(NodeId node) {
+    return connector.getBrowseCache().contains(new Tuple2<>(node, nodeClassMask));
+  }
+
+  private void offer(Entry e) {
+    if (running.containsKey(e.node) || failed.contains(e.node)) {
+      return;
+    }
+    Entry old = queued.get(e.node);
+    if (old != null) {
+      if (ORDER.compare(old, e) <= 0) {
+        return;
+      }
+      queue.remove(old);
+    }
+    queue.add(e);
+    queued.put(e.node, e);
+    if (queue.size() > maxQueued) {
+      Entry dropped = queue.pollLast();
+      queued.remove(dropped.node);
+    }
+  }
+
+  private void pump() {
+    while (running.size() < maxOutstanding && !queue.isEmpty()) {
+      Entry e = queue.pollFirst();
+      queued.remove(e.node);
+      if (e.depth <= 1 && isCached(e.node)) {
+        continue;
+      }
+      List<NodeId> children = new ArrayList<>();
+      CompletableFuture<StatusCode> browse = connector.getHierarchicalReferences(e.node, nodeClassMask, (refs, last) -> {
+        if (e.depth > 1) {
+          for (ReferenceDescription ref : refs) {
+            if (ref.getNodeClass() == NodeClass.Object && ref.getNodeId() != null && ref.getNodeId().isLocal()) {
+              children.add(ref.getNodeId().local().get());
+            }
+          }
+        }
+        return CompletableFuture.completedFuture(null);
+      });
+      running.put(e.node, new Tuple2<>(e, browse));
+      browse.whenComplete((status, t) -> completed(e, children, t));
+    }
+  }
+
+  private synchronized void completed(Entry e, List<NodeId> children, Throwable t) {
+    Tuple2<Entry, CompletableFuture<StatusCode>> r = running.get(e.node);
+    if (r == null || r.v1 != e) {
+      // cancelled
+      return;
+    }
+    running.remove(e.node);
+    if (t != null) {
+      logger.debug("prefetch of {} failed: {}", e.node, t.getMessage());
+      failed.add(e.node);
+    } else {
+      fetched++;
+      if (origins.contains(e.origin)) {
+        children.forEach(c -> offer(new Entry(c, e.origin, e.priority, e.depth - 1, seq++)));
+      }
+    }
+    pump();
+  }
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.concurrent.CompletionStage;
+
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+/**
+ * Receives the references of a paged browse. The next page is not requested before the returned
+ * stage completes, a failed stage stops the browse and releases the continuation point.
+ *
+ * @author comtel
+ *
+ */
+@FunctionalInterface
+public interface ReferencePageConsumer {
+
+  /**
+   * @param references references of one page (may be empty)
+   * @param last {@code true} if no further page follows
+   * @return completed after the page is consumed
+   */
+  CompletionStage<?> onPage(ReferenceDescription[] references, boolean last);
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+
+/**
+ * Compact column store of browsed references (node id, names, node class, reference and type
+ * definition) addressed by a row index. Numeric node ids are kept as primitives, reference types
+ * and type definitions as indexes of a shared symbol table and a browse name equal to the display
+ * name is not stored twice. The display name locale is not kept. Rows are unique by node id,
+ * {@link #get(int)} creates the {@link ReferenceDescription} on demand. Not thread safe.
+ *
+ * @author comtel
+ *
+ */
+public class ReferenceStore {
+
+  private final static NodeClass[] NODE_CLASSES = { NodeClass.Unspecified, NodeClass.Object, NodeClass.Variable, NodeClass.Method,
+      NodeClass.ObjectType, NodeClass.VariableType, NodeClass.ReferenceType, NodeClass.DataType, NodeClass.View };
+
+  private int size;
+
+  private short[] namespace;
+
+  private long[] numeric;
+
+  /** non numeric identifiers, {@code null} for numeric node ids */
+  private Object[] identifier;
+
+  private String[] name;
+
+  /** browse name if different from the display name */
+  private String[] browseName;
+
+  private short[] browseNamespace;
+
+  private byte[] nodeClass;
+
+  private int[] referenceType;
+
+  private int[] typeDefinition;
+
+  private final BitSet inverse = new BitSet();
+
+  private final List<Object> symbols = new ArrayList<>();
+
+  private final Map<Object, Integer> symbolIndex = new HashMap<>();
+
+  private final LongIntHashMap numericIds;
+
+  private final Map<NodeId, Integer> otherIds = new HashMap<>();
+
+  public ReferenceStore() {
+    this(64);
+  }
+
+  public ReferenceStore(int expectedSize) {
+    int capacity = Math.max(16, expectedSize);
+    namespace = new short[capacity];
+    numeric = new long[capacity];
+    identifier = new Object[capacity];
+    name = new String[capacity];
+    browseName = new String[capacity];
+    browseNamespace = new short[capacity];
+    nodeClass = new byte[capacity];
+    referenceType = new int[capacity];
+    typeDefinition = new int[capacity];
+    numericIds = new LongIntHashMap(capacity);
+  }
+
+  /**
+   * @param ref browsed reference
+   * @return row index or -1 if the node is already stored or not local
+   */
+  public int add(ReferenceDescription ref) {
+    if (ref == null || ref.getNodeId() == null || !ref.getNodeId().isLocal()) {
+      return -1;
+    }
+    NodeId node = ref.getNodeId().local().get();
+    Object id = node.getIdentifier();
+    int i = size;
+    if (id instanceof UInteger ? !numericIds.putIfAbsent(toLong(node), i) : otherIds.putIfAbsent(node, i) != null) {
+      return -1;
+    }
+    if (size == name.length) {
+      grow();
+    }
+    size++;
+    namespace[i] = (short) node.getNamespaceIndex().intValue();
+    if (id instanceof UInteger) {
+      numeric[i] = ((UInteger) id).longValue();
+    } else {
+      identifier[i] = id;
+    }
+    String text = ref.getDisplayName() != null ? ref.getDisplayName().getText() : null;
+    QualifiedName qn = ref.getBrowseName();
+    name[i] = text;
+    if (qn != null) {
+      browseNamespace[i] = (short) qn.getNamespaceIndex().intValue();
+      browseName[i] = qn.getName() != null && qn.getName().equals(text) ? null : qn.getName();
+      if (text == null) {
+        name[i] = qn.getName();
+      }
+    }
+    nodeClass[i] = toByte(ref.getNodeClass());
+    referenceType[i] = symbol(ref.getReferenceTypeId());
+    typeDefinition[i] = symbol(ref.getTypeDefinition());
+    if (Boolean.FALSE.equals(ref.getIsForward())) {
+      inverse.set(i);
+    }
+    return i;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(NodeId node) {
+    return indexOf(node) >= 0;
+  }
+
+  /**
+   * @param node node id
+   * @return row of the node or -1
+   */
+  public int indexOf(NodeId node) {
+    if (node.getIdentifier() instanceof UInteger) {
+      return numericIds.get(toLong(node), -1);
+    }
+    Integer i = otherIds.get(node);
+    return i != null ? i : -1;
+  }
+
+  public NodeId getNodeId(int i) {
+    check(i);
+    Object id = identifier[i];
+    if (id == null) {
+      return new NodeId(namespace[i] & 0xFFFF, uint(numeric[i]));
+    }
+    if (id instanceof String) {
+      return new NodeId(namespace[i] & 0xFFFF, (String) id);
+    }
+    if (id instanceof UUID) {
+      return new NodeId(namespace[i] & 0xFFFF, (UUID) id);
+    }
+    return new NodeId(namespace[i] & 0xFFFF, (ByteString) id);
+  }
+
+  /**
+   * @param i row
+   * @return display name or browse name text
+   */
+  public String getName(int i) {
+    check(i);
+    return name[i];
+  }
+
+  public QualifiedName getBrowseName(int i) {
+    check(i);
+    return new QualifiedName(browseNamespace[i] & 0xFFFF, browseName[i] != null ? browseName[i] : name[i]);
+  }
+
+  public NodeClass getNodeClass(int i) {
+    check(i);
+    return NODE_CLASSES[nodeClass[i]];
+  }
+
+  public ExpandedNodeId getTypeDefinition(int i) {
+    check(i);
+    return (ExpandedNodeId) symbol(typeDefinition[i]);
+  }
+
+  /**
+   * @param i row
+   * @return new reference description of the row
+   */
+  public ReferenceDescription get(int i) {
+    check(i);
+    return new ReferenceDescription((NodeId) symbol(referenceType[i]), !inverse.get(i), new ExpandedNodeId(getNodeId(i)), getBrowseName(i),
+        new LocalizedText(null, name[i]), getNodeClass(i), getTypeDefinition(i));
+  }
+
+  public void clear() {
+    Arrays.fill(identifier, 0, size, null);
+    Arrays.fill(name, 0, size, null);
+    Arrays.fill(browseName, 0, size, null);
+    inverse.clear();
+    numericIds.clear();
+    otherIds.clear();
+    size = 0;
+  }
+
+  private void check(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("row: " + i + ", size: " + size);
+    }
+  }
+
+  private void grow() {
+    int capacity = name.length << 1;
+    namespace = Arrays.copyOf(namespace, capacity);
+    numeric = Arrays.copyOf(numeric, capacity);
+    identifier = Arrays.copyOf(identifier, capacity);
+    name = Arrays.copyOf(name, capacity);
+    browseName = Arrays.copyOf(browseName, capacity);
+    browseNamespace = Arrays.copyOf(browseNamespace, capacity);
+    nodeClass = Arrays.copyOf(nodeClass, capacity);
+    referenceType = Arrays.copyOf(referenceType, capacity);
+    typeDefinition = Arrays.copyOf(typeDefinition, capacity);
+  }
+
+  private int symbol(Object value) {
+    if (value == null) {
+      return -1;
+    }
+    return symbolIndex.computeIfAbsent(value, v -> {
+      symbols.add(v);
+      return symbols.size() - 1;
+    });
+  }
+
+  private Object symbol(int index) {
+    return index < 0 ? null : symbols.get(index);
+  }
+
+  private static long toLong(NodeId node) {
+    return ((long) node.getNamespaceIndex().intValue() << 32) | ((UInteger) node.getIdentifier()).longValue();
+  }
+
+  private static byte toByte(NodeClass nc) {
+    int value = nc != null ? nc.getValue() : 0;
+    return (byte) (value == 0 ? 0 : Integer.numberOfTrailingZeros(value) + 1);
+  }
+}
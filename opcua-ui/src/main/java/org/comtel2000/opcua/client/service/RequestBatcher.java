@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges the items of concurrent requests arriving within a short time window into single service
+ * calls. The merged list is split by the given operation limit, sent with a bounded number of
+ * outstanding calls and every caller gets the results of its own items back in order.
+ *
+ * @author comtel
+ *
+ * @param <I> request item type, i.e. ReadValueId
+ * @param <O> result item type, i.e. DataValue
+ */
+public class RequestBatcher<I, O> {
+
+  protected final static Logger logger = LoggerFactory.getLogger(RequestBatcher.class);
+
+  /** default collect window in milliseconds */
+  public final static long DEFAULT_WINDOW = 2;
+
+  private final String name;
+
+  private final Function<List<I>, CompletableFuture<List<O>>> service;
+
+  private final Supplier<CompletableFuture<Integer>> limit;
+
+  private final IntSupplier parallelism;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final Object lock = new Object();
+
+  private List<Pending<I, O>> queue = new ArrayList<>();
+
+  private boolean flushScheduled;
+
+  private volatile long window = DEFAULT_WINDOW;
+
+  /**
+   * @param name batch name used for logging
+   * @param service service call of one (limited) list of items
+   * @param limit max items per service call
+   * @param parallelism max outstanding service calls
+   * @param scheduler scheduler of the collect window
+   */
+  public RequestBatcher(String name, Function<List<I>, CompletableFuture<List<O>>> service, Supplier<CompletableFuture<Integer>> limit,
+      IntSupplier parallelism, ScheduledExecutorService scheduler) {
+    this.name = name;
+    this.service = service;
+    this.limit = limit;
+    this.parallelism = parallelism;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Set the time window to collect requests. A window of 0 sends every request immediately.
+   *
+   * @param window collect window in milliseconds
+   */
+  public void setWindow(long window) {
+    this.window = Math.max(0, window);
+  }
+
+  public long getWindow() {
+    return window;
+  }
+
+  /**
+   * Queue the items for the next service call.
+   *
+   * @param items request items
+   * @return results in order of the given items
+   */
+  public CompletableFuture<List<O>> submit(List<I> items) {
+    Pending<I, O> pending = new Pending<>(items);
+    if (window == 0) {
+      send(Collections.singletonList(pending));
+      return pending.future;
+    }
+    synchronized (lock) {
+      queue.add(pending);
+      if (!flushScheduled) {
+        flushScheduled = true;
+        scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+      }
+    }
+    return pending.future;
+  }
+
+  private void flush() {
+    List<Pending<I, O>> pendings;
+    synchronized (lock) {
+      flushScheduled = false;
+      pendings = queue;
+      queue = new ArrayList<>();
+    }
+    if (!pendings.isEmpty()) {
+      send(pendings);
+    }
+  }
+
+  private void send(List<Pending<I, O>> pendings) {
+    List<I> items = new ArrayList<>();
+    pendings.forEach(p -> items.addAll(p.items));
+    if (items.isEmpty()) {
+      pendings.forEach(p -> p.future.complete(new ArrayList<>()));
+      return;
+    }
+    limit.get().whenComplete((max, t) -> {
+      if (t != null) {
+        pendings.forEach(p -> p.future.completeExceptionally(t));
+        return;
+      }
+      int chunkSize = max > 0 ? max : items.size();
+      int chunks = (items.size() + chunkSize - 1) / chunkSize;
+      logger.trace("{}: {} requests with {} items in {} calls", name, pendings.size(), items.size(), chunks);
+
+      Object[] results = new Object[items.size()];
+      Throwable[] failures = new Throwable[chunks];
+      RequestChunker.<I, O>forEach(items, chunkSize, parallelism.getAsInt(), service, (from, list, th) -> {
+        if (th != null) {
+          failures[from / chunkSize] = th;
+        } else {
+          for (int i = 0; i < list.size(); i++) {
+            results[from + i] = list.get(i);
+          }
+        }
+      }).thenRun(() -> complete(pendings, results, failures, chunkSize));
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private void complete(List<Pending<I, O>> pendings, Object[] results, Throwable[] failures, int chunkSize) {
+    int offset = 0;
+    for (Pending<I, O> p : pendings) {
+      int end = offset + p.items.size();
+      if (p.items.isEmpty()) {
+        p.future.complete(new ArrayList<>());
+        continue;
+      }
+      Throwable failure = null;
+      for (int c = offset / chunkSize; c <= (end - 1) / chunkSize; c++) {
+        if (failures[c] != null) {
+          failure = failures[c];
+          break;
+        }
+      }
+      if (failure != null) {
+        p.future.completeExceptionally(failure);
+      } else {
+        List<O> list = new ArrayList<>(p.items.size());
+        for (int i = offset; i < end; i++) {
+          list.add((O) results[i]);
+        }
+        p.future.complete(list);
+      }
+      offset = end;
+    }
+  }
+
+  private static class Pending<I, O> {
+    final List<I> items;
+    final CompletableFuture<List<O>> future = new CompletableFuture<>();
+
+    Pending(List<I> items) {
+      this.items = items;
+    }
+  }
+}
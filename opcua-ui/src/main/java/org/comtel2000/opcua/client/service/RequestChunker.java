@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Splits oversized service requests into chunks and sends them with a bounded number of
+ * outstanding calls. Nothing blocks, the next chunk is sent on completion of a previous one.
+ *
+ * @author comtel
+ *
+ */
+public final class RequestChunker {
+
+  private RequestChunker() {}
+
+  @FunctionalInterface
+  public interface ChunkConsumer<O> {
+
+    /**
+     * Called once per chunk.
+     *
+     * @param from index of the first chunk item in the request list
+     * @param results results of the chunk or {@code null} on failure
+     * @param failure failure of the chunk or {@code null}
+     */
+    void accept(int from, List<O> results, Throwable failure);
+  }
+
+  /**
+   * Send the items in chunks and merge the results in order of the given items. A chunk result
+   * with a different size than the chunk is reported as failure.
+   *
+   * @param items request items
+   * @param chunkSize max items per call
+   * @param parallelism max outstanding calls
+   * @param service service call of one chunk
+   * @return merged results or the first chunk failure
+   */
+  public static <I, O> CompletableFuture<List<O>> call(List<I> items, int chunkSize, int parallelism, Function<List<I>, CompletableFuture<List<O>>> service) {
+    if (items.size() <= chunkSize) {
+      return apply(service, items).thenApply(list -> {
+        if (list.size() != items.size()) {
+          throw sizeMismatch(list.size(), items.size());
+        }
+        return list;
+      });
+    }
+    Object[] results = new Object[items.size()];
+    Throwable[] failure = new Throwable[1];
+    return forEach(items, chunkSize, parallelism, service, (from, list, t) -> {
+      if (t != null) {
+        failure[0] = t;
+      } else {
+        for (int i = 0; i < list.size(); i++) {
+          results[from + i] = list.get(i);
+        }
+      }
+    }).thenApply(v -> {
+      if (failure[0] != null) {
+        throw new CompletionException(failure[0]);
+      }
+      return toList(results);
+    });
+  }
+
+  /**
+   * Send the items in chunks and pass the outcome of every chunk to the consumer. A chunk result
+   * with a different size than the chunk is reported as failure.
+   *
+   * @param items request items
+   * @param chunkSize max items per call
+   * @param parallelism max outstanding calls
+   * @param service service call of one chunk
+   * @param consumer chunk outcome consumer
+   * @return completed after all chunks are consumed
+   */
+  public static <I, O> CompletableFuture<Void> forEach(List<I> items, int chunkSize, int parallelism, Function<List<I>, CompletableFuture<List<O>>> service,
+      ChunkConsumer<O> consumer) {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    if (items.isEmpty()) {
+      done.complete(null);
+      return done;
+    }
+    int size = Math.max(1, chunkSize);
+    int chunks = (items.size() + size - 1) / size;
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger open = new AtomicInteger(chunks);
+    // number of requested sends, only the first requester sends in a loop: a chunk which completes
+    // synchronously requests the next send instead of recursing into it
+    AtomicInteger sends = new AtomicInteger();
+    Runnable[] sendNext = new Runnable[1];
+    sendNext[0] = () -> {
+      if (sends.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        int chunk = next.getAndIncrement();
+        if (chunk >= chunks) {
+          continue;
+        }
+        int from = chunk * size;
+        int to = Math.min(from + size, items.size());
+        apply(service, new ArrayList<>(items.subList(from, to))).whenComplete((list, t) -> {
+          if (t == null && list.size() != to - from) {
+            t = sizeMismatch(list.size(), to - from);
+          }
+          try {
+            consumer.accept(from, t == null ? list : null, t);
+          } finally {
+            if (open.decrementAndGet() == 0) {
+              done.complete(null);
+            } else {
+              sendNext[0].run();
+            }
+          }
+        });
+      } while (sends.decrementAndGet() != 0);
+    };
+    for (int i = 0; i < Math.max(1, Math.min(parallelism, chunks)); i++) {
+      sendNext[0].run();
+    }
+    return done;
+  }
+
+  private static IllegalStateException sizeMismatch(int results, int items) {
+    return new IllegalStateException(String.format("%d results for %d items", results, items));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <O> List<O> toList(Object[] results) {
+    List<O> list = new ArrayList<>(results.length);
+    for (Object o : results) {
+      list.add((O) o);
+    }
+    return list;
+  }
+
+  private static <I, O> CompletableFuture<List<O>> apply(Function<List<I>, CompletableFuture<List<O>>> service, List<I> items) {
+    try {
+      return service.apply(items);
+    } catch (RuntimeException e) {
+      CompletableFuture<List<O>> cf = new CompletableFuture<>();
+      cf.completeExceptionally(e);
+      return cf;
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager.SubscriptionListener;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscription recovery after a session loss. The client reactivates the session (or creates a new
+ * one and transfers the subscriptions to it) and republishes the missed notification messages, all
+ * monitored items stay valid and nothing has to be done. Only subscriptions which could not be
+ * transferred are recreated: their items are subscribed again with one batched request per
+ * {@link MonitoredItemSpec} and the replaced items are passed to the listener. The recovery is the
+ * only owner of these items, views must not subscribe the items of a {@link #isRecreated(UaSubscription)
+ * recreated} subscription again.
+ *
+ * @author comtel
+ *
+ */
+public class SessionRecovery implements SubscriptionListener {
+
+  protected final static Logger logger = LoggerFactory.getLogger(SessionRecovery.class);
+
+  private final BatchSubscriptionManager subscriptions;
+
+  private final Consumer<UaSubscription> unmanaged;
+
+  private final AtomicReference<Consumer<Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>>>> listener = new AtomicReference<>();
+
+  private final LongAdder transferFailures = new LongAdder();
+
+  private final LongAdder recreatedItems = new LongAdder();
+
+  /** lost subscriptions whose items are recreated, until the next {@link #reset()} */
+  private final Set<UaSubscription> recreated = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+  /**
+   * @param subscriptions manager of the recreated subscriptions
+   * @param unmanaged called with lost subscriptions not created by the manager
+   */
+  public SessionRecovery(BatchSubscriptionManager subscriptions, Consumer<UaSubscription> unmanaged) {
+    this.subscriptions = subscriptions;
+    this.unmanaged = unmanaged;
+  }
+
+  /**
+   * @param client session client
+   */
+  public void register(UaClient client) {
+    client.getSubscriptionManager().addSubscriptionListener(this);
+  }
+
+  /**
+   * Notified (not on the FX thread) with the replacement (subscription and item) of every
+   * recreated item.
+   *
+   * @param c consumer of old item to new subscription and item
+   */
+  public void onRecreated(Consumer<Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>>> c) {
+    this.listener.set(c);
+  }
+
+  @Override
+  public void onSubscriptionTransferFailed(UaSubscription subscription, StatusCode statusCode) {
+    logger.warn("transfer of subscriptionId: {} failed: {}", subscription.getSubscriptionId(), statusCode);
+    transferFailures.increment();
+    if (!subscriptions.isActive(subscription)) {
+      unmanaged.accept(subscription);
+      return;
+    }
+    recreate(subscription).whenComplete((items, t) -> {
+      if (t != null) {
+        logger.error("recreate subscriptionId: {} failed: {}", subscription.getSubscriptionId(), t.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Subscribe the items of a lost subscription again with the same publishing interval and
+   * monitoring parameters.
+   *
+   * @param subscription lost subscription
+   * @return old item to new subscription and item
+   */
+  public CompletableFuture<Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>>> recreate(UaSubscription subscription) {
+    long start = System.nanoTime();
+    recreated.add(subscription);
+    Map<MonitoredItemSpec, List<UaMonitoredItem>> bySpec = new LinkedHashMap<>();
+    subscription.getMonitoredItems().forEach(item -> bySpec.computeIfAbsent(subscriptions.getSpec(item), s -> new ArrayList<>()).add(item));
+    double interval = subscription.getRequestedPublishingInterval();
+    subscriptions.remove(subscription);
+
+    Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>> replaced = Collections.synchronizedMap(new IdentityHashMap<>());
+    List<CompletableFuture<Void>> futures = new ArrayList<>(bySpec.size());
+    bySpec.forEach((spec, items) -> {
+      List<NodeId> nodes = items.stream().map(item -> item.getReadValueId().getNodeId()).collect(Collectors.toList());
+      futures.add(subscriptions.subscribeEach(nodes, interval, spec).thenAccept(created -> {
+        for (int i = 0; i < items.size(); i++) {
+          replaced.put(items.get(i), created.get(i));
+        }
+      }));
+    });
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+      logger.info("recreated {} items of subscriptionId: {} in {} ms", replaced.size(), subscription.getSubscriptionId(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      recreatedItems.add(replaced.size());
+      Consumer<Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>>> c = listener.get();
+      if (c != null && !replaced.isEmpty()) {
+        c.accept(replaced);
+      }
+      return replaced;
+    }).whenComplete((items, t) -> {
+      if (t != null) {
+        // give the items back to the views, i.e. for a resubscribe after the next reconnect
+        recreated.remove(subscription);
+      }
+    });
+  }
+
+  /**
+   * @param subscription lost subscription
+   * @return {@code true} if the items of the subscription are recreated by this recovery
+   */
+  public boolean isRecreated(UaSubscription subscription) {
+    return recreated.contains(subscription);
+  }
+
+  /**
+   * Forget the recreated subscriptions, i.e. after a new client was created.
+   */
+  public void reset() {
+    recreated.clear();
+  }
+
+  /**
+   * @return subscriptions which could not be transferred to a new session
+   */
+  public long getTransferFailureCount() {
+    return transferFailures.sum();
+  }
+
+  /**
+   * @return items recreated after a failed transfer
+   */
+  public long getRecreatedItemCount() {
+    return recreatedItems.sum();
+  }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.Arrays;
+
+/**
+ * Decoded value of a server specific structured data type, see {@link StructureCodec}.
+ *
+ * @author comtel
+ *
+ */
+public class Structure {
+
+  private final String typeName;
+
+  private final String[] fieldNames;
+
+  private final Object[] values;
+
+  private final boolean[] hidden;
+
+  Structure(String typeName, String[] fieldNames, Object[] values, boolean[] hidden) {
+    this.typeName = typeName;
+    this.fieldNames = fieldNames;
+    this.values = values;
+    this.hidden = hidden;
+  }
+
+  public String getTypeName() {
+    return typeName;
+  }
+
+  public int getFieldCount() {
+    return fieldNames.length;
+  }
+
+  public String getFieldName(int index) {
+    return fieldNames[index];
+  }
+
+  /**
+   * @param index field index
+   * @return decoded value (array, {@link Structure} or built-in type), {@code null} if an optional
+   *         field is not set
+   */
+  public Object getValue(int index) {
+    return values[index];
+  }
+
+  /**
+   * @param name field name
+   * @return decoded value or {@code null}
+   */
+  public Object getValue(String name) {
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (fieldNames[i].equals(name)) {
+        return values[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Append "TypeName {field=value, ...}" without length, switch and reserved fields.
+   *
+   * @param sb target
+   * @return the target
+   */
+  public StringBuilder appendTo(StringBuilder sb) {
+    sb.append(typeName).append(" {");
+    boolean first = true;
+    for (int i = 0; i < fieldNames.length; i++) {
+      if (hidden[i]) {
+        continue;
+      }
+      if (!first) {
+        sb.append(", ");
+      }
+      first = false;
+      sb.append(fieldNames[i]).append('=');
+      ValueFormatter.appendValue(sb, values[i]);
+    }
+    return sb.append('}');
+  }
+
+  @Override
+  public String toString() {
+    return appendTo(new StringBuilder()).toString();
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * typeName.hashCode() + Arrays.deepHashCode(values);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Structure)) {
+      return false;
+    }
+    Structure other = (Structure) obj;
+    return typeName.equals(other.typeName) && Arrays.equals(fieldNames, other.fieldNames) && Arrays.deepEquals(values, other.values);
+  }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import org.eclipse.milo.opcua.stack.core.serialization.binary.BinaryDecoder;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+
+import io.netty.buffer.Unpooled;
+
+/**
+ * Decoder of one structured type of a server DataTypeDictionary. The field types are resolved
+ * once by {@link DataTypeDictionary#compile()} into an array of field readers, decoding only walks
+ * this array.
+ *
+ * @author comtel
+ *
+ */
+public class StructureCodec {
+
+  /** reads one value of a field type */
+  @FunctionalInterface
+  interface FieldReader {
+    Object read(BinaryDecoder decoder);
+  }
+
+  /** decode step of one field */
+  final static class Step {
+    /** bit length of an opc:Bit field, 0 for byte aligned types */
+    int bits;
+    /** index of the length field of an array or -1 */
+    int lengthIndex = -1;
+    /** index of the switch field of an optional field or -1 */
+    int switchIndex = -1;
+    /** required switch field value or -1 for any non zero value */
+    int switchValue = -1;
+    FieldReader reader;
+  }
+
+  private final static ThreadLocal<BinaryDecoder> DECODER = ThreadLocal.withInitial(BinaryDecoder::new);
+
+  private final String typeName;
+
+  private String[] fieldNames;
+
+  private boolean[] hidden;
+
+  private Step[] steps;
+
+  StructureCodec(String typeName) {
+    this.typeName = typeName;
+  }
+
+  void init(String[] fieldNames, boolean[] hidden, Step[] steps) {
+    this.fieldNames = fieldNames;
+    this.hidden = hidden;
+    this.steps = steps;
+  }
+
+  public String getTypeName() {
+    return typeName;
+  }
+
+  /**
+   * @param encoded binary body of an ExtensionObject
+   * @return decoded structure
+   */
+  public Structure decode(ByteString encoded) {
+    BinaryDecoder decoder = DECODER.get();
+    decoder.setBuffer(Unpooled.wrappedBuffer(encoded.bytes()).order(Unpooled.LITTLE_ENDIAN));
+    return decode(decoder);
+  }
+
+  /**
+   * @param decoder positioned decoder
+   * @return decoded structure
+   */
+  public Structure decode(BinaryDecoder decoder) {
+    Object[] values = new Object[steps.length];
+    int bitBuffer = 0;
+    int bitCount = 0;
+    for (int i = 0; i < steps.length; i++) {
+      Step s = steps[i];
+      if (s.switchIndex >= 0 && !isSet(values[s.switchIndex], s.switchValue)) {
+        continue;
+      }
+      if (s.bits > 0) {
+        int value = 0;
+        for (int b = 0; b < s.bits; b++) {
+          if (bitCount == 0) {
+            bitBuffer = ((UByte) decoder.readByte(null)).intValue();
+            bitCount = 8;
+          }
+          value |= (bitBuffer & 1) << b;
+          bitBuffer >>>= 1;
+          bitCount--;
+        }
+        values[i] = s.bits == 1 ? (Object) Boolean.valueOf(value != 0) : (Object) Integer.valueOf(value);
+        continue;
+      }
+      // byte aligned field, skip the remaining bits
+      bitCount = 0;
+      if (s.lengthIndex >= 0) {
+        int length = toInt(values[s.lengthIndex]);
+        if (length < 0) {
+          continue;
+        }
+        Object[] array = new Object[length];
+        for (int n = 0; n < length; n++) {
+          array[n] = s.reader.read(decoder);
+        }
+        values[i] = array;
+      } else {
+        values[i] = s.reader.read(decoder);
+      }
+    }
+    return new Structure(typeName, fieldNames, values, hidden);
+  }
+
+  private static boolean isSet(Object switchValue, int required) {
+    if (required < 0) {
+      return switchValue instanceof Boolean ? (Boolean) switchValue : toInt(switchValue) != 0;
+    }
+    return toInt(switchValue) == required;
+  }
+
+  private static int toInt(Object value) {
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    }
+    if (value instanceof Boolean) {
+      return (Boolean) value ? 1 : 0;
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return "StructureCodec [" + typeName + "]";
+  }
+}
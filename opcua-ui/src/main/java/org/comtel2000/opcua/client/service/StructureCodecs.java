@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseDirection;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.BrowseResultMask;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Codecs of the server specific structured data types by binary encoding NodeId. The codecs are
+ * built once per connection from the OPC binary DataTypeDictionaries of the server:
+ * <ol>
+ * <li>dictionaries: components of OPCBinarySchema_TypeSystem (namespace 0 is decoded by the
+ * stack)</li>
+ * <li>type names: values of the DataTypeDescription components of a dictionary</li>
+ * <li>encoding NodeId: inverse HasDescription reference of a DataTypeDescription</li>
+ * </ol>
+ *
+ * @author comtel
+ *
+ */
+public final class StructureCodecs {
+
+  protected final static Logger logger = LoggerFactory.getLogger(StructureCodecs.class);
+
+  private static volatile Map<NodeId, StructureCodec> codecs = Collections.emptyMap();
+
+  private StructureCodecs() {}
+
+  /**
+   * @param encodingId binary encoding NodeId of an ExtensionObject
+   * @return codec or {@code null}
+   */
+  public static StructureCodec get(NodeId encodingId) {
+    return encodingId != null ? codecs.get(encodingId) : null;
+  }
+
+  /**
+   * @param ext ExtensionObject
+   * @return decoded structure or {@code null} if the type is unknown or the body is not decodable
+   */
+  public static Structure decode(ExtensionObject ext) {
+    StructureCodec codec = get(ext.getEncodingTypeId());
+    if (codec == null || !(ext.getEncoded() instanceof ByteString) || ((ByteString) ext.getEncoded()).bytes() == null) {
+      return null;
+    }
+    try {
+      return codec.decode((ByteString) ext.getEncoded());
+    } catch (RuntimeException e) {
+      logger.debug("decode {} failed: {}", codec.getTypeName(), e.getMessage());
+      return null;
+    }
+  }
+
+  public static int size() {
+    return codecs.size();
+  }
+
+  public static void clear() {
+    codecs = Collections.emptyMap();
+  }
+
+  /**
+   * Read the DataTypeDictionaries of the connected server and replace all codecs.
+   *
+   * @param connector connected client
+   * @return number of codecs
+   */
+  public static CompletableFuture<Integer> load(OpcUaClientConnector connector) {
+    long begin = System.currentTimeMillis();
+    return components(connector, Collections.singletonList(Identifiers.OPCBinarySchema_TypeSystem)).thenCompose(results -> {
+      List<NodeId> dictionaries = nodes(results.get(0)).stream().filter(n -> n.getNamespaceIndex().intValue() != 0).collect(Collectors.toList());
+      if (dictionaries.isEmpty()) {
+        return CompletableFuture.completedFuture(Collections.<NodeId, StructureCodec>emptyMap());
+      }
+      return connector.readValues(dictionaries).thenApplyAsync(values -> compile(dictionaries, values), connector.getExecutor())
+          .thenCompose(compiled -> components(connector, dictionaries).thenCompose(descriptions -> encodings(connector, dictionaries, compiled, descriptions)));
+    }).thenApply(result -> {
+      codecs = result;
+      logger.info("{} structure codecs loaded in {} ms", result.size(), System.currentTimeMillis() - begin);
+      return result.size();
+    });
+  }
+
+  private static List<Map<String, StructureCodec>> compile(List<NodeId> dictionaries, List<DataValue> values) {
+    List<Map<String, StructureCodec>> compiled = new ArrayList<>(dictionaries.size());
+    for (int i = 0; i < dictionaries.size(); i++) {
+      Object xml = values.get(i).getValue().getValue();
+      Map<String, StructureCodec> dictionaryCodecs = Collections.emptyMap();
+      if (xml instanceof ByteString && ((ByteString) xml).bytes() != null) {
+        try {
+          dictionaryCodecs = DataTypeDictionary.parse(((ByteString) xml).bytes()).compile();
+        } catch (IOException | RuntimeException e) {
+          logger.warn("dictionary {} not readable: {}", dictionaries.get(i), e.getMessage());
+        }
+      }
+      compiled.add(dictionaryCodecs);
+    }
+    return compiled;
+  }
+
+  private static CompletableFuture<Map<NodeId, StructureCodec>> encodings(OpcUaClientConnector connector, List<NodeId> dictionaries,
+      List<Map<String, StructureCodec>> compiled, List<BrowseResult> descriptions) {
+    List<NodeId> descriptionNodes = new ArrayList<>();
+    List<Map<String, StructureCodec>> descriptionCodecs = new ArrayList<>();
+    for (int i = 0; i < dictionaries.size(); i++) {
+      if (compiled.get(i).isEmpty()) {
+        continue;
+      }
+      for (NodeId node : nodes(descriptions.get(i))) {
+        descriptionNodes.add(node);
+        descriptionCodecs.add(compiled.get(i));
+      }
+    }
+    if (descriptionNodes.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+    List<BrowseDescription> inverse = descriptionNodes.stream().map(n -> new BrowseDescription(n, BrowseDirection.Inverse, Identifiers.HasDescription,
+        false, uint(NodeClass.Object.getValue()), uint(BrowseResultMask.All.getValue()))).collect(Collectors.toList());
+
+    return connector.readValues(descriptionNodes).thenCombine(connector.browseAll(inverse), (names, encodings) -> {
+      Map<NodeId, StructureCodec> result = new HashMap<>();
+      for (int i = 0; i < descriptionNodes.size(); i++) {
+        Object name = names.get(i).getValue().getValue();
+        StructureCodec codec = name instanceof String ? descriptionCodecs.get(i).get(name) : null;
+        if (codec != null) {
+          nodes(encodings.get(i)).forEach(encoding -> result.put(encoding, codec));
+        }
+      }
+      return result;
+    });
+  }
+
+  private static CompletableFuture<List<BrowseResult>> components(OpcUaClientConnector connector, List<NodeId> nodes) {
+    // large dictionaries have more DataTypeDescriptions than the server returns in one page
+    return connector.browseAll(nodes.stream().map(n -> new BrowseDescription(n, BrowseDirection.Forward, Identifiers.HasComponent, false,
+        uint(NodeClass.Variable.getValue()), uint(BrowseResultMask.All.getValue()))).collect(Collectors.toList()));
+  }
+
+  private static List<NodeId> nodes(BrowseResult result) {
+    if (result.getStatusCode().isBad() || result.getReferences() == null) {
+      return Collections.emptyList();
+    }
+    List<NodeId> nodes = new ArrayList<>(result.getReferences().length);
+    for (ReferenceDescription ref : result.getReferences()) {
+      if (ref.getNodeId() != null && ref.getNodeId().isLocal()) {
+        nodes.add(ref.getNodeId().local().get());
+      }
+    }
+    return nodes;
+  }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+
+/**
+ * Publish statistics of one subscription: notifications per second, publish latency (server
+ * publish time to client arrival, corrected by the measured clock offset), gaps between two
+ * publish responses (data or keep-alive) and lost notification messages.
+ *
+ * @author comtel
+ *
+ */
+public class SubscriptionMetrics implements UaSubscription.NotificationListener {
+
+  /** weight of a new latency sample */
+  private final static double ALPHA = 0.2;
+
+  private final UaSubscription subscription;
+
+  private final LongSupplier clockOffset;
+
+  private final LongAdder notifications = new LongAdder();
+
+  private final LongAdder dataLost = new LongAdder();
+
+  private long publishes;
+
+  private long keepAlives;
+
+  private long lastPublish;
+
+  private long lastGap;
+
+  private long maxGap;
+
+  private long lateResponses;
+
+  private double latency = Double.NaN;
+
+  private long rateTime = System.currentTimeMillis();
+
+  private long rateCount;
+
+  private double rate;
+
+  /**
+   * @param subscription observed subscription
+   * @param clockOffset server minus client clock in milliseconds
+   */
+  public SubscriptionMetrics(UaSubscription subscription, LongSupplier clockOffset) {
+    this.subscription = subscription;
+    this.clockOffset = clockOffset;
+  }
+
+  @Override
+  public void onDataChangeNotification(UaSubscription subscription, List<UaMonitoredItem> items, List<DataValue> values, DateTime publishTime) {
+    notifications.add(values.size());
+    onPublish(publishTime);
+  }
+
+  @Override
+  public void onEventNotification(UaSubscription subscription, List<UaMonitoredItem> items, List<Variant[]> fields, DateTime publishTime) {
+    notifications.add(items.size());
+    onPublish(publishTime);
+  }
+
+  @Override
+  public void onKeepAliveNotification(UaSubscription subscription, DateTime publishTime) {
+    synchronized (this) {
+      keepAlives++;
+    }
+    onPublish(publishTime);
+  }
+
+  /**
+   * Called if the server did not deliver (or republish) a notification message.
+   */
+  void onDataLost() {
+    dataLost.increment();
+  }
+
+  private synchronized void onPublish(DateTime publishTime) {
+    long now = System.currentTimeMillis();
+    publishes++;
+    if (lastPublish > 0) {
+      lastGap = now - lastPublish;
+      maxGap = Math.max(maxGap, lastGap);
+      if (lastGap > 1.5 * getKeepAliveTime()) {
+        lateResponses++;
+      }
+    }
+    lastPublish = now;
+    if (publishTime != null && publishTime.getUtcTime() > 0) {
+      long sample = Math.max(0, now + clockOffset.getAsLong() - publishTime.getJavaTime());
+      latency = Double.isNaN(latency) ? sample : latency + ALPHA * (sample - latency);
+    }
+  }
+
+  public UaSubscription getSubscription() {
+    return subscription;
+  }
+
+  /**
+   * @return expected max time between two publish responses in milliseconds
+   */
+  public double getKeepAliveTime() {
+    return subscription.getRevisedPublishingInterval() * subscription.getRevisedMaxKeepAliveCount().doubleValue();
+  }
+
+  public long getNotificationCount() {
+    return notifications.sum();
+  }
+
+  /**
+   * @return notifications per second, updated at most once per second
+   */
+  public synchronized double getNotificationRate() {
+    long now = System.currentTimeMillis();
+    long elapsed = now - rateTime;
+    if (elapsed >= 1000) {
+      long count = notifications.sum();
+      rate = (count - rateCount) * 1000.0 / elapsed;
+      rateCount = count;
+      rateTime = now;
+    }
+    return rate;
+  }
+
+  public synchronized long getPublishCount() {
+    return publishes;
+  }
+
+  public synchronized long getKeepAliveCount() {
+    return keepAlives;
+  }
+
+  /**
+   * @return smoothed publish latency in milliseconds or NaN before the first response
+   */
+  public synchronized double getPublishLatency() {
+    return latency;
+  }
+
+  /**
+   * @return time between the last two publish responses in milliseconds
+   */
+  public synchronized long getLastGap() {
+    return lastGap;
+  }
+
+  /**
+   * @return max time between two publish responses in milliseconds
+   */
+  public synchronized long getMaxGap() {
+    return maxGap;
+  }
+
+  /**
+   * @return publish responses which arrived later than 1.5 x the keep-alive time
+   */
+  public synchronized long getLateResponseCount() {
+    return lateResponses;
+  }
+
+  /**
+   * @return lost notification messages (missed sequence numbers which could not be republished)
+   */
+  public long getDataLostCount() {
+    return dataLost.sum();
+  }
+
+  /**
+   * Short form for the monitored item table, i.e. {@code 12.5/s 35ms gap 500ms lost 0}
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(48);
+    ValueFormatter.appendDouble(sb, Math.round(getNotificationRate() * 10) / 10.0).append("/s ");
+    double l = getPublishLatency();
+    if (Double.isNaN(l)) {
+      sb.append('-');
+    } else {
+      sb.append(Math.round(l)).append("ms");
+    }
+    sb.append(" gap ").append(getLastGap()).append("ms");
+    sb.append(" lost ").append(getDataLostCount());
+    return sb.toString();
+  }
+}
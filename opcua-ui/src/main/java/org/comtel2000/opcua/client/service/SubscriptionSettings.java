@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+/**
+ * Requested keep-alive, lifetime, notification limit and priority of one subscription (shard).
+ * Counts are in publishing intervals.
+ *
+ * @author comtel
+ *
+ */
+public final class SubscriptionSettings {
+
+  /** default keep-alive time in milliseconds */
+  public final static long DEFAULT_KEEP_ALIVE_TIME = 10_000;
+
+  /** default lifetime in keep-alive periods (OPC UA requires at least 3) */
+  public final static int DEFAULT_LIFETIME_FACTOR = 3;
+
+  private final static long KEEP_ALIVE_TIME = Long.getLong("opcua.subscription.keepAliveTime", DEFAULT_KEEP_ALIVE_TIME);
+
+  private final static int LIFETIME_FACTOR = Math.max(3, Integer.getInteger("opcua.subscription.lifetimeFactor", DEFAULT_LIFETIME_FACTOR));
+
+  private final static int MAX_NOTIFICATIONS = Math.max(0, Integer.getInteger("opcua.subscription.maxNotificationsPerPublish", 0));
+
+  private final int maxKeepAliveCount;
+
+  private final int lifetimeCount;
+
+  private final int maxNotificationsPerPublish;
+
+  private final int priority;
+
+  /**
+   * @param maxKeepAliveCount publishing intervals without notification until a keep-alive is sent
+   * @param lifetimeCount publishing intervals without Publish request until the subscription is
+   *        deleted (min 3 x maxKeepAliveCount)
+   * @param maxNotificationsPerPublish max notifications per Publish response (0: unlimited)
+   * @param priority relative priority of the subscription (0..255)
+   */
+  public SubscriptionSettings(int maxKeepAliveCount, int lifetimeCount, int maxNotificationsPerPublish, int priority) {
+    if (maxKeepAliveCount < 1) {
+      throw new IllegalArgumentException("maxKeepAliveCount < 1: " + maxKeepAliveCount);
+    }
+    if (priority < 0 || priority > 255) {
+      throw new IllegalArgumentException("priority out of range: " + priority);
+    }
+    this.maxKeepAliveCount = maxKeepAliveCount;
+    this.lifetimeCount = Math.max(lifetimeCount, 3 * maxKeepAliveCount);
+    this.maxNotificationsPerPublish = Math.max(0, maxNotificationsPerPublish);
+    this.priority = priority;
+  }
+
+  /**
+   * Default settings of a publishing interval: keep-alive time of
+   * {@code opcua.subscription.keepAliveTime} ms (10s), lifetime of
+   * {@code opcua.subscription.lifetimeFactor} (3) keep-alive periods and
+   * {@code opcua.subscription.maxNotificationsPerPublish} (unlimited).
+   *
+   * @param publishInterval publishing interval in milliseconds
+   * @return settings
+   */
+  public static SubscriptionSettings forInterval(double publishInterval) {
+    int keepAlive = (int) Math.max(1, Math.min(Integer.MAX_VALUE / LIFETIME_FACTOR, Math.ceil(KEEP_ALIVE_TIME / Math.max(1.0, publishInterval))));
+    return new SubscriptionSettings(keepAlive, keepAlive * LIFETIME_FACTOR, MAX_NOTIFICATIONS, 0);
+  }
+
+  public int getMaxKeepAliveCount() {
+    return maxKeepAliveCount;
+  }
+
+  public int getLifetimeCount() {
+    return lifetimeCount;
+  }
+
+  public int getMaxNotificationsPerPublish() {
+    return maxNotificationsPerPublish;
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  @Override
+  public String toString() {
+    return "SubscriptionSettings [keepAlive=" + maxKeepAliveCount + ", lifetime=" + lifetimeCount + ", maxNotifications=" + maxNotificationsPerPublish
+        + ", priority=" + priority + "]";
+  }
+}
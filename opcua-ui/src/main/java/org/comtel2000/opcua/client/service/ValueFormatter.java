@@ -0,0 +1,414 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.lang.reflect.Array;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DiagnosticInfo;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.XmlElement;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UShort;
+
+/**
+ * Formats Variant values into a {@link StringBuilder}. The value class is mapped once to its
+ * built-in type id and the formatter of that id is taken from a table. Numbers and DateTime values
+ * (ISO offset date time of the system time zone) are appended without temporary objects. Arrays
+ * are truncated after {@link #getMaxArrayLength()} elements and marked with a trailing '+', the
+ * elements are formatted like {@link java.util.Arrays#toString(Object[])}. ExtensionObjects of
+ * server specific types are decoded by {@link StructureCodecs}.
+ *
+ * @author comtel
+ *
+ */
+public final class ValueFormatter {
+
+  public final static int DEFAULT_MAX_ARRAY_LENGTH = 100;
+
+  @FunctionalInterface
+  private interface Appender {
+    void append(StringBuilder sb, Object value);
+  }
+
+  /** built-in type ids 1 (Boolean) to 25 (DiagnosticInfo) */
+  private final static Appender[] BY_TYPE_ID = new Appender[26];
+
+  private final static Map<Class<?>, Integer> TYPE_IDS = new IdentityHashMap<>();
+
+  private final static Appender DEFAULT = StringBuilder::append;
+
+  private final static Appender ARRAY = ValueFormatter::appendArray;
+
+  private final static Appender STRUCTURE = (sb, v) -> ((Structure) v).appendTo(sb);
+
+  private final static ClassValue<Appender> APPENDERS = new ClassValue<Appender>() {
+
+    @Override
+    protected Appender computeValue(Class<?> type) {
+      if (type.isArray()) {
+        return ARRAY;
+      }
+      if (type == Structure.class) {
+        return STRUCTURE;
+      }
+      Integer id = TYPE_IDS.get(type);
+      return id != null ? BY_TYPE_ID[id] : DEFAULT;
+    }
+  };
+
+  private final static ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private final static ZoneRules RULES = ZoneId.systemDefault().getRules();
+
+  private static volatile OffsetWindow offsetWindow = new OffsetWindow(0, 0, 0);
+
+  private static volatile int maxArrayLength = Integer.getInteger("opcua.format.maxArrayLength", DEFAULT_MAX_ARRAY_LENGTH);
+
+  static {
+    register(1, Boolean.class, (sb, v) -> sb.append(((Boolean) v).booleanValue()));
+    register(2, Byte.class, (sb, v) -> sb.append(((Byte) v).intValue()));
+    register(3, UByte.class, (sb, v) -> sb.append(((UByte) v).intValue()));
+    register(4, Short.class, (sb, v) -> sb.append(((Short) v).intValue()));
+    register(5, UShort.class, (sb, v) -> sb.append(((UShort) v).intValue()));
+    register(6, Integer.class, (sb, v) -> sb.append(((Integer) v).intValue()));
+    register(7, UInteger.class, (sb, v) -> sb.append(((UInteger) v).longValue()));
+    register(8, Long.class, (sb, v) -> sb.append(((Long) v).longValue()));
+    register(9, ULong.class, (sb, v) -> {
+      long l = ((ULong) v).longValue();
+      if (l >= 0) {
+        sb.append(l);
+      } else {
+        sb.append(v);
+      }
+    });
+    register(10, Float.class, (sb, v) -> sb.append(((Float) v).floatValue()));
+    register(11, Double.class, (sb, v) -> sb.append(((Double) v).doubleValue()));
+    register(12, String.class, (sb, v) -> sb.append((String) v));
+    register(13, DateTime.class, (sb, v) -> appendDateTime(sb, (DateTime) v));
+    register(14, UUID.class, DEFAULT);
+    register(15, ByteString.class, (sb, v) -> {
+      byte[] bytes = ((ByteString) v).bytes();
+      if (bytes != null) {
+        // not truncated
+        appendBytes(sb, bytes, bytes.length);
+      } else {
+        sb.append(v);
+      }
+    });
+    register(16, XmlElement.class, (sb, v) -> sb.append(((XmlElement) v).getFragment()));
+    register(17, NodeId.class, (sb, v) -> sb.append(OpcUaConverter.toString((NodeId) v)));
+    register(18, ExpandedNodeId.class, (sb, v) -> sb.append(OpcUaConverter.toString((ExpandedNodeId) v)));
+    register(19, StatusCode.class, DEFAULT);
+    register(20, QualifiedName.class, (sb, v) -> sb.append(((QualifiedName) v).toParseableString()));
+    register(21, LocalizedText.class, (sb, v) -> {
+      String text = ((LocalizedText) v).getText();
+      if (text != null) {
+        sb.append(text);
+      }
+    });
+    register(22, ExtensionObject.class, (sb, v) -> {
+      Structure structure = StructureCodecs.decode((ExtensionObject) v);
+      if (structure != null) {
+        structure.appendTo(sb);
+      } else {
+        sb.append(OpcUaConverter.toString((ExtensionObject) v));
+      }
+    });
+    register(23, DataValue.class, DEFAULT);
+    register(24, Variant.class, DEFAULT);
+    register(25, DiagnosticInfo.class, DEFAULT);
+  }
+
+  private ValueFormatter() {}
+
+  private static void register(int typeId, Class<?> type, Appender appender) {
+    TYPE_IDS.put(type, typeId);
+    BY_TYPE_ID[typeId] = appender;
+  }
+
+  /**
+   * @return max formatted elements of an array
+   */
+  public static int getMaxArrayLength() {
+    return maxArrayLength;
+  }
+
+  /**
+   * @param maxArrayLength max formatted elements of an array (default
+   *        {@value #DEFAULT_MAX_ARRAY_LENGTH}, system property
+   *        {@code opcua.format.maxArrayLength})
+   */
+  public static void setMaxArrayLength(int maxArrayLength) {
+    ValueFormatter.maxArrayLength = Math.max(0, maxArrayLength);
+  }
+
+  /**
+   * Format with a reused thread local buffer.
+   *
+   * @param variant value
+   * @return formatted value or {@code null} for a null variant
+   */
+  public static String toString(Variant variant) {
+    if (variant == null || variant.isNull()) {
+      return null;
+    }
+    StringBuilder sb = BUFFER.get();
+    sb.setLength(0);
+    return append(sb, variant).toString();
+  }
+
+  /**
+   * @param sb target
+   * @param variant value
+   * @return the target
+   */
+  public static StringBuilder append(StringBuilder sb, Variant variant) {
+    if (variant == null || variant.isNull()) {
+      return sb;
+    }
+    return appendValue(sb, variant.getValue());
+  }
+
+  /**
+   * @param sb target
+   * @param value scalar or array value of a Variant
+   * @return the target
+   */
+  public static StringBuilder appendValue(StringBuilder sb, Object value) {
+    if (value == null) {
+      sb.append("null");
+    } else {
+      APPENDERS.get(value.getClass()).append(sb, value);
+    }
+    return sb;
+  }
+
+  /**
+   * Elements by their {@code toString()} like {@link java.util.Arrays#toString(Object[])}, nested
+   * arrays element by element.
+   */
+  private static void appendArray(StringBuilder sb, Object array) {
+    int length = Array.getLength(array);
+    int max = Math.min(length, maxArrayLength);
+    if (array instanceof byte[]) {
+      appendBytes(sb, (byte[]) array, max);
+    } else if (array instanceof Object[]) {
+      Object[] values = (Object[]) array;
+      sb.append('[');
+      for (int i = 0; i < max; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        Object v = values[i];
+        if (v != null && v.getClass().isArray()) {
+          appendArray(sb, v);
+        } else {
+          sb.append(v);
+        }
+      }
+      sb.append(']');
+    } else {
+      sb.append('[');
+      for (int i = 0; i < max; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append(Array.get(array, i));
+      }
+      sb.append(']');
+    }
+    if (length > max) {
+      sb.append('+');
+    }
+  }
+
+  private static void appendBytes(StringBuilder sb, byte[] bytes, int max) {
+    sb.append('[');
+    for (int i = 0; i < max; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(bytes[i]);
+    }
+    sb.append(']');
+  }
+
+  /**
+   * Same as {@code String.format("%.0f", d)} for integral values and {@link Double#toString(double)}
+   * for other values. Integral values below 2^53 are appended without formatting, larger values
+   * are rounded to the shortest decimal representation by the formatter.
+   *
+   * @param sb target
+   * @param d value
+   * @return the target
+   */
+  public static StringBuilder appendDouble(StringBuilder sb, double d) {
+    if (d % 1.0 != 0 || Double.isNaN(d) || Double.isInfinite(d)) {
+      return sb.append(d);
+    }
+    if (d == 0.0) {
+      return sb.append(1 / d < 0 ? "-0" : "0");
+    }
+    if (Math.abs(d) < 0x1p53) {
+      return sb.append((long) d);
+    }
+    return sb.append(String.format("%.0f", d));
+  }
+
+  /**
+   * Same as {@code DateTimeFormatter.ISO_OFFSET_DATE_TIME} of the time in the system time zone.
+   *
+   * @param sb target
+   * @param time value
+   * @return the target
+   */
+  public static StringBuilder appendDateTime(StringBuilder sb, DateTime time) {
+    return appendDateTime(sb, time.getJavaTime());
+  }
+
+  /**
+   * @param sb target
+   * @param epochMilli java time
+   * @return the target
+   * @see #appendDateTime(StringBuilder, DateTime)
+   */
+  public static StringBuilder appendDateTime(StringBuilder sb, long epochMilli) {
+    long epochSecond = Math.floorDiv(epochMilli, 1000L);
+    int millis = (int) Math.floorMod(epochMilli, 1000L);
+    int offset = offsetSeconds(epochSecond);
+    long local = epochSecond + offset;
+    long epochDay = Math.floorDiv(local, 86400L);
+    int secondOfDay = (int) Math.floorMod(local, 86400L);
+
+    // civil date from days (proleptic gregorian)
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    long doe = z - era * 146097;
+    long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+    long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+    long mp = (5 * doy + 2) / 153;
+    int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+    int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+    long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+    if (year > 9999) {
+      sb.append('+');
+    } else if (year < 0) {
+      sb.append('-');
+      year = -year;
+    }
+    if (year < 1000) {
+      pad(sb, (int) year, 4);
+    } else {
+      sb.append(year);
+    }
+    sb.append('-');
+    pad(sb, month, 2);
+    sb.append('-');
+    pad(sb, day, 2);
+    sb.append('T');
+    pad(sb, secondOfDay / 3600, 2);
+    sb.append(':');
+    pad(sb, secondOfDay / 60 % 60, 2);
+    sb.append(':');
+    pad(sb, secondOfDay % 60, 2);
+    if (millis != 0) {
+      sb.append('.');
+      if (millis % 100 == 0) {
+        sb.append(millis / 100);
+      } else if (millis % 10 == 0) {
+        pad(sb, millis / 10, 2);
+      } else {
+        pad(sb, millis, 3);
+      }
+    }
+    if (offset == 0) {
+      return sb.append('Z');
+    }
+    int abs = Math.abs(offset);
+    sb.append(offset < 0 ? '-' : '+');
+    pad(sb, abs / 3600, 2);
+    sb.append(':');
+    pad(sb, abs / 60 % 60, 2);
+    if (abs % 60 != 0) {
+      sb.append(':');
+      pad(sb, abs % 60, 2);
+    }
+    return sb;
+  }
+
+  private static void pad(StringBuilder sb, int value, int width) {
+    for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+      if (value < limit) {
+        sb.append('0');
+      }
+    }
+    sb.append(value);
+  }
+
+  /**
+   * Offset of the system time zone, the offset between two transitions is cached.
+   */
+  private static int offsetSeconds(long epochSecond) {
+    OffsetWindow w = offsetWindow;
+    if (epochSecond >= w.from && epochSecond < w.to) {
+      return w.offset;
+    }
+    Instant instant = Instant.ofEpochSecond(epochSecond);
+    int offset = RULES.getOffset(instant).getTotalSeconds();
+    if (RULES.isFixedOffset()) {
+      offsetWindow = new OffsetWindow(Long.MIN_VALUE, Long.MAX_VALUE, offset);
+      return offset;
+    }
+    ZoneOffsetTransition previous = RULES.previousTransition(instant);
+    ZoneOffsetTransition next = RULES.nextTransition(instant);
+    long from = previous != null ? previous.toEpochSecond() : Long.MIN_VALUE;
+    if (previous != null && previous.getOffsetAfter().getTotalSeconds() != offset) {
+      // instant is a transition itself
+      from = epochSecond;
+    }
+    offsetWindow = new OffsetWindow(from, next != null ? next.toEpochSecond() : Long.MAX_VALUE, offset);
+    return offset;
+  }
+
+  private final static class OffsetWindow {
+    final long from;
+    final long to;
+    final int offset;
+
+    OffsetWindow(long from, long to, int offset) {
+      this.from = from;
+      this.to = to;
+      this.offset = offset;
+    }
+  }
+}
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UByte;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.ULong;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UShort;
+
+/**
+ * Records monitored item notifications (clientHandle, sourceTime, serverTime, status, value) into
+ * an append-only file. The file is a sequence of fixed size blocks, every block stores up to
+ * {@link #BLOCK_SAMPLES} samples column by column (one column per primitive type) and starts with
+ * an index header (sample count, source time and client handle range) which allows a reader to skip
+ * blocks. The current block is filled in one reused direct buffer and written when it is full, on
+ * {@link #flush()} and on {@link #close()}. The last block is cut after the used string area.
+ * Recording a scalar value does not allocate. A failed block write closes the recording.
+ * <p>
+ * Use {@link ValueRecordingReader} to read a recording.
+ *
+ * @author comtel
+ *
+ */
+public class ValueRecorder implements Closeable {
+
+  final static int MAGIC = 0x4F555652;
+  final static int VERSION = 1;
+
+  /** max samples per block */
+  public final static int BLOCK_SAMPLES = 8192;
+
+  /** bytes of the variable length (string) area per block */
+  final static int VAR_CAPACITY = 256 * 1024;
+
+  final static byte TYPE_NULL = 0;
+  final static byte TYPE_BOOLEAN = 1;
+  final static byte TYPE_LONG = 2;
+  final static byte TYPE_DOUBLE = 3;
+  final static byte TYPE_STRING = 4;
+  final static byte TYPE_DATETIME = 5;
+
+  // block header
+  final static int H_MAGIC = 0;
+  final static int H_VERSION = 4;
+  final static int H_COUNT = 8;
+  final static int H_VAR_USED = 12;
+  final static int H_MIN_SOURCE_TIME = 16;
+  final static int H_MAX_SOURCE_TIME = 24;
+  final static int H_MIN_HANDLE = 32;
+  final static int H_MAX_HANDLE = 36;
+  final static int HEADER_SIZE = 64;
+
+  // columns
+  final static int C_HANDLE = HEADER_SIZE;
+  final static int C_SOURCE_TIME = C_HANDLE + 4 * BLOCK_SAMPLES;
+  final static int C_SERVER_TIME = C_SOURCE_TIME + 8 * BLOCK_SAMPLES;
+  final static int C_STATUS = C_SERVER_TIME + 8 * BLOCK_SAMPLES;
+  final static int C_TYPE = C_STATUS + 4 * BLOCK_SAMPLES;
+  final static int C_LONG = C_TYPE + BLOCK_SAMPLES;
+  final static int C_DOUBLE = C_LONG + 8 * BLOCK_SAMPLES;
+  final static int C_VAR_OFFSET = C_DOUBLE + 8 * BLOCK_SAMPLES;
+  final static int C_VAR = C_VAR_OFFSET + 4 * BLOCK_SAMPLES;
+
+  /** size of one block in bytes */
+  public final static int BLOCK_SIZE = C_VAR + VAR_CAPACITY;
+
+  private final FileChannel channel;
+
+  private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+
+  private long blockPosition;
+
+  private int count;
+
+  private int varUsed;
+
+  private long samples;
+
+  private boolean closed;
+
+  private IOException failure;
+
+  private volatile Consumer<IOException> onFailure;
+
+  ValueRecorder(FileChannel channel, long blockPosition) throws IOException {
+    this.channel = channel;
+    this.blockPosition = blockPosition;
+    resetBlock();
+  }
+
+  /**
+   * Create a new recording. An existing file is replaced.
+   *
+   * @param file recording file
+   * @return recorder
+   * @throws IOException if the file can not be created
+   */
+  public static ValueRecorder create(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    return new ValueRecorder(channel, 0);
+  }
+
+  private void resetBlock() {
+    block.putInt(H_MAGIC, MAGIC);
+    block.putInt(H_VERSION, VERSION);
+    block.putInt(H_COUNT, 0);
+    block.putInt(H_VAR_USED, 0);
+    block.putLong(H_MIN_SOURCE_TIME, Long.MAX_VALUE);
+    block.putLong(H_MAX_SOURCE_TIME, Long.MIN_VALUE);
+    block.putInt(H_MIN_HANDLE, Integer.MAX_VALUE);
+    block.putInt(H_MAX_HANDLE, Integer.MIN_VALUE);
+    count = 0;
+    varUsed = 0;
+  }
+
+  private void nextBlock() {
+    try {
+      writeBlock(BLOCK_SIZE);
+    } catch (IOException e) {
+      fail(e);
+      throw new UncheckedIOException("write recording block failed", e);
+    }
+    blockPosition += BLOCK_SIZE;
+    resetBlock();
+  }
+
+  /**
+   * Close the recording after a write failure, the file keeps the blocks written before.
+   */
+  private void fail(IOException e) {
+    closed = true;
+    failure = e;
+    try {
+      channel.close();
+    } catch (IOException ce) {
+      e.addSuppressed(ce);
+    }
+    Consumer<IOException> listener = onFailure;
+    if (listener != null) {
+      listener.accept(e);
+    }
+  }
+
+  /**
+   * @param onFailure called once on the recording thread if a block write fails and the recording
+   *          was closed
+   */
+  public void setOnFailure(Consumer<IOException> onFailure) {
+    this.onFailure = onFailure;
+  }
+
+  /**
+   * @return write failure which closed the recording or {@code null}
+   */
+  public synchronized IOException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Write the first bytes of the current block at its file position.
+   */
+  private void writeBlock(int length) throws IOException {
+    ByteBuffer src = block.duplicate();
+    src.position(0).limit(length);
+    long position = blockPosition;
+    while (src.hasRemaining()) {
+      position += channel.write(src, position);
+    }
+  }
+
+  /**
+   * Append one sample. Ignored after {@link #close()} or a write failure.
+   *
+   * @param clientHandle client handle of the monitored item
+   * @param v notified value
+   * @throws UncheckedIOException if a full block can not be written, the recording is closed
+   */
+  public synchronized void record(int clientHandle, DataValue v) {
+    if (closed) {
+      return;
+    }
+    if (count == BLOCK_SAMPLES) {
+      nextBlock();
+    }
+    Object value = v.getValue() != null ? v.getValue().getValue() : null;
+    if (value != null && !isPrimitive(value) && varUsed + 4 + 2 * varLength(value) > VAR_CAPACITY) {
+      if (count > 0) {
+        nextBlock();
+      }
+    }
+    int i = count;
+    long sourceTime = toUtcTime(v.getSourceTime());
+    block.putInt(C_HANDLE + 4 * i, clientHandle);
+    block.putLong(C_SOURCE_TIME + 8 * i, sourceTime);
+    block.putLong(C_SERVER_TIME + 8 * i, toUtcTime(v.getServerTime()));
+    block.putInt(C_STATUS + 4 * i, v.getStatusCode() != null ? (int) v.getStatusCode().getValue() : 0);
+    block.put(C_TYPE + i, writeValue(i, value));
+
+    if (sourceTime < block.getLong(H_MIN_SOURCE_TIME)) {
+      block.putLong(H_MIN_SOURCE_TIME, sourceTime);
+    }
+    if (sourceTime > block.getLong(H_MAX_SOURCE_TIME)) {
+      block.putLong(H_MAX_SOURCE_TIME, sourceTime);
+    }
+    if (clientHandle < block.getInt(H_MIN_HANDLE)) {
+      block.putInt(H_MIN_HANDLE, clientHandle);
+    }
+    if (clientHandle > block.getInt(H_MAX_HANDLE)) {
+      block.putInt(H_MAX_HANDLE, clientHandle);
+    }
+    block.putInt(H_VAR_USED, varUsed);
+    // count last, a reader never sees a partial sample
+    block.putInt(H_COUNT, ++count);
+    samples++;
+  }
+
+  private byte writeValue(int i, Object value) {
+    if (value == null) {
+      return TYPE_NULL;
+    }
+    if (value instanceof Boolean) {
+      block.putLong(C_LONG + 8 * i, ((Boolean) value) ? 1 : 0);
+      return TYPE_BOOLEAN;
+    }
+    if (value instanceof Double || value instanceof Float) {
+      block.putDouble(C_DOUBLE + 8 * i, ((Number) value).doubleValue());
+      return TYPE_DOUBLE;
+    }
+    if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      block.putLong(C_LONG + 8 * i, ((Number) value).longValue());
+      return TYPE_LONG;
+    }
+    if (value instanceof UInteger || value instanceof UShort || value instanceof UByte || value instanceof ULong) {
+      block.putLong(C_LONG + 8 * i, ((Number) value).longValue());
+      return TYPE_LONG;
+    }
+    if (value instanceof DateTime) {
+      block.putLong(C_LONG + 8 * i, ((DateTime) value).getUtcTime());
+      return TYPE_DATETIME;
+    }
+    CharSequence text = toText(value);
+    int length = Math.min(text.length(), (VAR_CAPACITY - 4) / 2);
+    block.putInt(C_VAR_OFFSET + 4 * i, varUsed);
+    block.putInt(C_VAR + varUsed, length);
+    for (int c = 0; c < length; c++) {
+      block.putChar(C_VAR + varUsed + 4 + 2 * c, text.charAt(c));
+    }
+    varUsed += 4 + 2 * length;
+    return TYPE_STRING;
+  }
+
+  private static boolean isPrimitive(Object value) {
+    return value instanceof Number || value instanceof Boolean || value instanceof DateTime;
+  }
+
+  private static int varLength(Object value) {
+    return Math.min(toText(value).length(), (VAR_CAPACITY - 4) / 2);
+  }
+
+  private static CharSequence toText(Object value) {
+    if (value instanceof String) {
+      return (String) value;
+    }
+    if (value instanceof LocalizedText) {
+      String text = ((LocalizedText) value).getText();
+      return text != null ? text : "";
+    }
+    String text = OpcUaConverter.toString(new Variant(value));
+    return text != null ? text : "";
+  }
+
+  private static long toUtcTime(DateTime time) {
+    return time != null ? time.getUtcTime() : 0L;
+  }
+
+  /**
+   * @return number of recorded samples
+   */
+  public synchronized long getSampleCount() {
+    return samples;
+  }
+
+  /**
+   * Write the current block and force the file content to the storage device.
+   *
+   * @throws IOException on write failure
+   */
+  public synchronized void flush() throws IOException {
+    if (!closed) {
+      writeBlock(BLOCK_SIZE);
+      channel.force(false);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      // the last block ends after the used string area, an empty block is dropped
+      long end = blockPosition;
+      if (count > 0) {
+        writeBlock(C_VAR + varUsed);
+        end += C_VAR + varUsed;
+      }
+      channel.truncate(end);
+      channel.force(false);
+    } finally {
+      channel.close();
+    }
+  }
+}
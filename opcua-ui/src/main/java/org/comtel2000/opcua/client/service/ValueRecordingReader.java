@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2016 comtel2000
+ *
+ * Licensed under the Apache License, version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ *******************************************************************************/
+package org.comtel2000.opcua.client.service;
+
+import static org.comtel2000.opcua.client.service.ValueRecorder.*;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cursor over a recording written by {@link ValueRecorder}. Blocks are read one at a time into a
+ * reused buffer, the header first to skip blocks outside the time range, and samples are returned by
+ * primitive getters, i.e.
+ *
+ * <pre>
+ * try (ValueRecordingReader r = ValueRecordingReader.open(file)) {
+ *   while (r.next()) {
+ *     r.getClientHandle(); r.getSourceTime(); r.getDouble(); ...
+ *   }
+ * }
+ * </pre>
+ *
+ * A recording of a crashed process can be read up to the last written (full or flushed) block.
+ *
+ * @author comtel
+ *
+ */
+public class ValueRecordingReader implements Closeable {
+
+  /** sample value type */
+  public enum ValueType {
+    NULL, BOOLEAN, LONG, DOUBLE, STRING, DATETIME
+  }
+
+  private final static ValueType[] TYPES = ValueType.values();
+
+  private final FileChannel channel;
+
+  private final long size;
+
+  private long blockPosition = -BLOCK_SIZE;
+
+  private final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+  private int count;
+
+  private int index;
+
+  private long fromTime = Long.MIN_VALUE;
+
+  private long toTime = Long.MAX_VALUE;
+
+  private ValueRecordingReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    this.size = channel.size();
+  }
+
+  public static ValueRecordingReader open(Path file) throws IOException {
+    return new ValueRecordingReader(FileChannel.open(file, StandardOpenOption.READ));
+  }
+
+  /**
+   * Skip all blocks and samples outside the source time range.
+   *
+   * @param fromTime min source time (utc, inclusive)
+   * @param toTime max source time (utc, inclusive)
+   * @return this
+   */
+  public ValueRecordingReader setTimeRange(long fromTime, long toTime) {
+    this.fromTime = fromTime;
+    this.toTime = toTime;
+    return this;
+  }
+
+  /**
+   * Move to the next sample.
+   *
+   * @return {@code false} at the end of the recording
+   * @throws IOException if a block can not be mapped
+   */
+  public boolean next() throws IOException {
+    while (true) {
+      while (++index < count) {
+        long time = getSourceTime();
+        if (time >= fromTime && time <= toTime) {
+          return true;
+        }
+      }
+      if (!nextBlock()) {
+        return false;
+      }
+    }
+  }
+
+  private boolean nextBlock() throws IOException {
+    // the last block ends after its used string area
+    while (blockPosition + BLOCK_SIZE + C_VAR <= size) {
+      blockPosition += BLOCK_SIZE;
+      read(0, HEADER_SIZE);
+      if (block.getInt(H_MAGIC) != MAGIC) {
+        // unused (or foreign) block: end of recording
+        return false;
+      }
+      if (block.getInt(H_VERSION) != VERSION) {
+        throw new IOException("unsupported recording version: " + block.getInt(H_VERSION));
+      }
+      count = Math.min(block.getInt(H_COUNT), BLOCK_SAMPLES);
+      index = -1;
+      if (count > 0 && block.getLong(H_MAX_SOURCE_TIME) >= fromTime && block.getLong(H_MIN_SOURCE_TIME) <= toTime) {
+        read(HEADER_SIZE, (int) Math.min(BLOCK_SIZE, size - blockPosition));
+        return true;
+      }
+    }
+    count = 0;
+    return false;
+  }
+
+  private void read(int from, int to) throws IOException {
+    ByteBuffer dst = block.duplicate();
+    dst.position(from).limit(to);
+    while (dst.hasRemaining()) {
+      if (channel.read(dst, blockPosition + dst.position()) < 0) {
+        throw new EOFException("truncated recording block at " + blockPosition);
+      }
+    }
+  }
+
+  public int getClientHandle() {
+    return block.getInt(C_HANDLE + 4 * index);
+  }
+
+  /**
+   * @return source time in utc (DateTime ticks) or 0
+   */
+  public long getSourceTime() {
+    return block.getLong(C_SOURCE_TIME + 8 * index);
+  }
+
+  /**
+   * @return server time in utc (DateTime ticks) or 0
+   */
+  public long getServerTime() {
+    return block.getLong(C_SERVER_TIME + 8 * index);
+  }
+
+  /**
+   * @return status code value
+   */
+  public long getStatus() {
+    return block.getInt(C_STATUS + 4 * index) & 0xFFFFFFFFL;
+  }
+
+  public ValueType getType() {
+    int type = block.get(C_TYPE + index);
+    return type >= 0 && type < TYPES.length ? TYPES[type] : ValueType.NULL;
+  }
+
+  public boolean getBoolean() {
+    return block.getLong(C_LONG + 8 * index) != 0;
+  }
+
+  /**
+   * @return integral value, DateTime ticks or boolean as 0/1
+   */
+  public long getLong() {
+    return block.getLong(C_LONG + 8 * index);
+  }
+
+  /**
+   * @return value as double of any numeric type
+   */
+  public double getDouble() {
+    switch (block.get(C_TYPE + index)) {
+      case TYPE_DOUBLE:
+        return block.getDouble(C_DOUBLE + 8 * index);
+      case TYPE_LONG:
+      case TYPE_BOOLEAN:
+        return block.getLong(C_LONG + 8 * index);
+      default:
+        return Double.NaN;
+    }
+  }
+
+  /**
+   * Append the string value to the given builder.
+   *
+   * @param sb target
+   * @return the target
+   */
+  public StringBuilder getString(StringBuilder sb) {
+    if (block.get(C_TYPE + index) != TYPE_STRING) {
+      return sb;
+    }
+    int offset = C_VAR + block.getInt(C_VAR_OFFSET + 4 * index);
+    int length = block.getInt(offset);
+    for (int c = 0; c < length; c++) {
+      sb.append(block.getChar(offset + 4 + 2 * c));
+    }
+    return sb;
+  }
+
+  public String getString() {
+    return getType() == ValueType.STRING ? getString(new StringBuilder()).toString() : null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,201 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.comtel2000.opcua.client.service.OpcUaClientConnectorTest.page;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AddressSpaceCacheTest {
+
+  private final static String URL = "opc.tcp://localhost:4840";
+
+  private final static String[] NAMESPACES = { "http://opcfoundation.org/UA/", "urn:test" };
+
+  private final static UInteger MASK = uint(0);
+
+  private final static NodeId LINE = new NodeId(2, "Line");
+  private final static NodeId PUMP = new NodeId(2, "Pump");
+  private final static NodeId VALVE = new NodeId(2, "Valve");
+  private final static NodeId GONE = new NodeId(2, "Gone");
+
+  private final static List<UInteger> DISPLAY_NAME = Collections.singletonList(AttributeId.DisplayName.uid());
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private AddressSpaceCache open() throws Exception {
+    return AddressSpaceCache.open(folder.getRoot().toPath(), URL, NAMESPACES);
+  }
+
+  @Test
+  public void loadRemoveAndClear() throws Exception {
+    AddressSpaceCache cache = open();
+    cache.putReferences(LINE, MASK, page(null, "A", "B").getReferences());
+    cache.putReferences(PUMP, MASK, page(null, "C").getReferences());
+    cache.putAttributes(PUMP, Arrays.asList(AttributeId.DisplayName.uid(), AttributeId.DataType.uid()),
+        Arrays.asList(new DataValue(new Variant(LocalizedText.english("Pump"))), new DataValue(Variant.NULL_VALUE, new StatusCode(StatusCodes.Bad_Timeout))));
+    cache.remove(LINE);
+    cache.close();
+    // ignored after close
+    cache.putReferences(LINE, MASK, page(null, "D").getReferences());
+    cache.clear();
+
+    cache = open();
+    assertNull(cache.getReferences(LINE, MASK));
+    assertEquals(1, cache.getReferences(PUMP, MASK).length);
+    assertEquals(LocalizedText.english("Pump"), cache.getAttribute(PUMP, AttributeId.DisplayName.uid()).getValue().getValue());
+    assertNull("bad status cached", cache.getAttribute(PUMP, AttributeId.DataType.uid()));
+
+    cache.clear();
+    cache.close();
+    cache = open();
+    assertEquals(0, cache.size());
+    cache.close();
+  }
+
+  @Test
+  public void compactedOnLoad() throws Exception {
+    AddressSpaceCache cache = open();
+    for (int i = 0; i < 2000; i++) {
+      cache.putReferences(LINE, MASK, page(null, "A" + i).getReferences());
+    }
+    cache.close();
+    Path file = cache.getFile();
+    long size = Files.size(file);
+
+    cache = open();
+    cache.close();
+    long compacted = Files.size(file);
+    assertTrue("not compacted: " + size + " -> " + compacted, compacted < size / 100);
+
+    // truncated record
+    Files.write(file, new byte[] { 0, 0, 1, 0, 1, 2 }, StandardOpenOption.APPEND);
+    cache = open();
+    assertEquals(new NodeId(2, "A1999").expanded(), cache.getReferences(LINE, MASK)[0].getNodeId());
+    cache.close();
+    assertEquals(compacted, Files.size(file));
+  }
+
+  @Test
+  public void concurrentAttributesMerged() throws Exception {
+    List<UInteger> ids = new ArrayList<>();
+    for (int id = 1; id <= 12; id++) {
+      if (AddressSpaceCache.isStatic(uint(id))) {
+        ids.add(uint(id));
+      }
+    }
+    AddressSpaceCache cache = open();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    List<Future<?>> puts = new ArrayList<>();
+    for (int n = 0; n < 50; n++) {
+      NodeId node = new NodeId(2, n);
+      for (UInteger id : ids) {
+        puts.add(pool.submit(() -> cache.putAttributes(node, Collections.singletonList(id), Collections.singletonList(new DataValue(new Variant(id))))));
+      }
+    }
+    for (Future<?> f : puts) {
+      f.get(10, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+    cache.close();
+
+    AddressSpaceCache loaded = open();
+    for (int n = 0; n < 50; n++) {
+      for (UInteger id : ids) {
+        assertEquals(id, loaded.getAttribute(new NodeId(2, n), id).getValue().getValue());
+      }
+    }
+    loaded.close();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void revalidateLookedUpEntries() throws Exception {
+    AddressSpaceCache cache = open();
+    cache.putReferences(LINE, MASK, page(null, "A", "B").getReferences());
+    cache.putReferences(PUMP, MASK, page(null, "C").getReferences());
+    cache.putReferences(VALVE, MASK, page(null, "D").getReferences());
+    cache.putReferences(GONE, MASK, page(null, "E").getReferences());
+    cache.putAttributes(PUMP, DISPLAY_NAME, Collections.singletonList(new DataValue(new Variant(LocalizedText.english("Pump")))));
+    cache.close();
+
+    cache = open();
+    assertFalse("fresh entries", cache.isRevalidationRequested());
+    cache.getReferences(LINE, MASK);
+    cache.getReferences(VALVE, MASK);
+    cache.getReferences(GONE, MASK);
+    cache.getAttribute(PUMP, AttributeId.DisplayName.uid());
+    assertTrue(cache.isRevalidationRequested());
+
+    List<NodeId> browsed = new CopyOnWriteArrayList<>();
+    Stub<UaClient> client = Stub.client().on("browse", args -> {
+      BrowseResult[] results = ((List<BrowseDescription>) args[2]).stream().map(bd -> {
+        browsed.add(bd.getNodeId());
+        if (LINE.equals(bd.getNodeId())) {
+          return page(null, "A", "B", "X");
+        }
+        return new BrowseResult(new StatusCode(VALVE.equals(bd.getNodeId()) ? StatusCodes.Bad_Timeout : StatusCodes.Bad_NodeIdUnknown),
+            ByteString.NULL_VALUE, null);
+      }).toArray(BrowseResult[]::new);
+      return CompletableFuture.completedFuture(new BrowseResponse(null, results, null));
+    }).on("read", args -> CompletableFuture.completedFuture(new ReadResponse(null, ((List<ReadValueId>) args[2]).stream()
+        .map(id -> new DataValue(new Variant(LocalizedText.english("Pump 2")))).toArray(DataValue[]::new), null)));
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+
+    List<NodeId> changed = new CopyOnWriteArrayList<>();
+    cache.revalidate(connector, changed::add).get(10, TimeUnit.SECONDS);
+    assertEquals("only looked up entries", new HashSet<>(Arrays.asList(LINE, VALVE, GONE)), new HashSet<>(browsed));
+    assertEquals(new HashSet<>(Arrays.asList(LINE, GONE, PUMP)), new HashSet<>(changed));
+    assertFalse(cache.isRevalidationRequested());
+
+    assertEquals(3, cache.getReferences(LINE, MASK).length);
+    assertEquals(new ExpandedNodeId(new NodeId(2, "X")), cache.getReferences(LINE, MASK)[2].getNodeId());
+    assertNull(cache.getReferences(GONE, MASK));
+    assertEquals(LocalizedText.english("Pump 2"), cache.getAttribute(PUMP, AttributeId.DisplayName.uid()).getValue().getValue());
+    // transient error: kept and requested again on the next lookup
+    assertNotNull(cache.getReferences(VALVE, MASK));
+    assertTrue(cache.isRevalidationRequested());
+
+    cache.close();
+    connector.shutdown();
+  }
+}
@@ -0,0 +1,160 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.Test;
+
+public class AddressSpaceCrawlerTest {
+
+  /** numeric nodes 0..NODES-1, node n has the children 3n+1..3n+3 */
+  private final static int NODES = 40;
+
+  @Test
+  public void pagesAndRetriesRejectedNodes() throws Exception {
+    Server server = new Server(2);
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(server.client.get());
+
+    List<NodeId> nodes = new CopyOnWriteArrayList<>();
+    AddressSpaceCrawler crawler =
+        new AddressSpaceCrawler(connector, (parent, ref) -> nodes.add(ref.getNodeId().local().get())).setMaxReferencesPerNode(2).setNodesPerRequest(10);
+    assertEquals(Long.valueOf(NODES - 1), crawler.crawl(new NodeId(1, 0)).get(10, TimeUnit.SECONDS));
+
+    assertEquals(NODES - 1, new HashSet<>(nodes).size());
+    assertEquals(0, crawler.getFailedCount());
+    assertTrue("no node rejected", server.rejected > 0);
+    assertEquals(server.rejected, crawler.getRetriedCount());
+    assertTrue("continuation points left open: " + server.open, server.open.isEmpty());
+    connector.shutdown();
+  }
+
+  @Test
+  public void cancelReleasesContinuationPoints() throws Exception {
+    Server server = new Server(10);
+    List<CompletableFuture<BrowseResponse>> pending = new CopyOnWriteArrayList<>();
+    List<Object[]> requests = new CopyOnWriteArrayList<>();
+    // browse answered by the test
+    server.client.on("browse", args -> {
+      CompletableFuture<BrowseResponse> f = new CompletableFuture<>();
+      requests.add(args);
+      pending.add(f);
+      return f;
+    });
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(server.client.get());
+
+    AddressSpaceCrawler crawler = new AddressSpaceCrawler(connector, (parent, ref) -> {
+    }).setMaxReferencesPerNode(2);
+    CompletableFuture<Long> crawl = crawler.crawl(new NodeId(1, 0));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (pending.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, pending.size());
+    assertTrue(crawl.cancel(false));
+    pending.get(0).complete(server.browse(requests.get(0)));
+
+    assertEquals(1, server.client.getCalls("browse"));
+    assertEquals("no further BrowseNext after cancel", Collections.singletonList(Boolean.TRUE), server.browseNext);
+    assertTrue("continuation points left open: " + server.open, server.open.isEmpty());
+    assertEquals(0, crawler.getFrontierSize());
+    connector.shutdown();
+  }
+
+  @Test
+  public void writerQuotesValues() {
+    StringWriter out = new StringWriter();
+    ReferenceDescription ref = new ReferenceDescription(Identifiers.Organizes, true, new NodeId(2, "A").expanded(), new QualifiedName(2, "A"),
+        LocalizedText.english("x;y\nz \"q\""), NodeClass.Variable, ExpandedNodeId.NULL_VALUE);
+    AddressSpaceCrawler.toWriter(out).onNode(new NodeId(2, 7), ref);
+    assertEquals("\"ns=2;i=7\";\"ns=2;s=A\";Variable;2:A;\"x;y\nz \"\"q\"\"\"\n", out.toString());
+  }
+
+  /**
+   * Server with {@link #NODES} nodes and a limit of open continuation points.
+   */
+  private static class Server {
+
+    final Stub<UaClient> client = Stub.client();
+
+    final int maxContinuationPoints;
+
+    final Set<Integer> open = Collections.synchronizedSet(new HashSet<>());
+
+    final List<Boolean> browseNext = new CopyOnWriteArrayList<>();
+
+    volatile int rejected;
+
+    @SuppressWarnings("unchecked")
+    Server(int maxContinuationPoints) {
+      this.maxContinuationPoints = maxContinuationPoints;
+      client.on("browse", args -> CompletableFuture.completedFuture(browse(args)));
+      client.on("browseNext", args -> {
+        boolean release = (Boolean) args[0];
+        browseNext.add(release);
+        BrowseResult[] results = ((List<ByteString>) args[1]).stream().map(cp -> {
+          int node = cp.bytes()[0];
+          open.remove(node);
+          return new BrowseResult(StatusCode.GOOD, ByteString.NULL_VALUE, release ? new ReferenceDescription[0] : children(node, 2, 3));
+        }).toArray(BrowseResult[]::new);
+        return CompletableFuture.completedFuture(new BrowseNextResponse(null, results, null));
+      });
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized BrowseResponse browse(Object[] args) {
+      int max = ((UInteger) args[1]).intValue();
+      BrowseResult[] results = ((List<BrowseDescription>) args[2]).stream().map(bd -> {
+        int node = ((UInteger) bd.getNodeId().getIdentifier()).intValue();
+        ReferenceDescription[] refs = children(node, 0, 3);
+        if (refs.length <= max) {
+          return new BrowseResult(StatusCode.GOOD, ByteString.NULL_VALUE, refs);
+        }
+        if (open.size() >= maxContinuationPoints) {
+          rejected++;
+          return new BrowseResult(new StatusCode(StatusCodes.Bad_NoContinuationPoints), ByteString.NULL_VALUE, null);
+        }
+        open.add(node);
+        return new BrowseResult(StatusCode.GOOD, ByteString.of(new byte[] { (byte) node }), children(node, 0, max));
+      }).toArray(BrowseResult[]::new);
+      return new BrowseResponse(null, results, null);
+    }
+
+    private static ReferenceDescription[] children(int node, int from, int to) {
+      List<ReferenceDescription> refs = new ArrayList<>();
+      for (int i = 3 * node + 1 + from; i <= 3 * node + to && i < NODES; i++) {
+        refs.add(new ReferenceDescription(Identifiers.Organizes, true, new NodeId(1, i).expanded(), new QualifiedName(1, "N" + i),
+            LocalizedText.english("N" + i), NodeClass.Object, ExpandedNodeId.NULL_VALUE));
+      }
+      return refs.toArray(new ReferenceDescription[refs.size()]);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+public class BatchSubscriptionManagerTest {
+
+  private final static NodeId LOST = new NodeId(2, "Lost");
+
+  @Test
+  public void shortCreateResultFailsUnmatchedItems() throws Exception {
+    OpcUaClientConnector connector = newConnector(newSubscription(StatusCode.GOOD));
+    connector.getBatchSubscriptionManager().setWindow(100);
+
+    List<CompletableFuture<Tuple2<UaSubscription, UaMonitoredItem>>> futures = new ArrayList<>();
+    futures.add(connector.subscribe(new NodeId(2, "A")));
+    futures.add(connector.subscribe(LOST));
+    futures.add(connector.subscribe(new NodeId(2, "B")));
+
+    assertEquals(new NodeId(2, "A"), futures.get(0).get(10, TimeUnit.SECONDS).v2.getReadValueId().getNodeId());
+    assertEquals(new NodeId(2, "B"), futures.get(2).get(10, TimeUnit.SECONDS).v2.getReadValueId().getNodeId());
+    try {
+      futures.get(1).get(10, TimeUnit.SECONDS);
+      fail("item without result");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    connector.shutdown();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void failedShardDeletesCreatedItems() throws Exception {
+    List<UaMonitoredItem> deleted = new CopyOnWriteArrayList<>();
+    Stub<UaSubscription> created = newSubscription(StatusCode.GOOD).on("deleteMonitoredItems", args -> {
+      deleted.addAll((List<UaMonitoredItem>) args[0]);
+      return CompletableFuture.completedFuture(((List<?>) args[0]).stream().map(i -> StatusCode.GOOD).collect(Collectors.toList()));
+    });
+    Stub<UaSubscription> failing = Stub.of(UaSubscription.class);
+    AtomicInteger count = new AtomicInteger();
+    Stub<UaSubscriptionManager> manager = Stub.of(UaSubscriptionManager.class)
+        .on("createSubscription", args -> CompletableFuture.completedFuture(count.getAndIncrement() == 0 ? created.get() : failing.get()));
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(Stub.client().on("getSubscriptionManager", args -> manager.get()).get());
+    BatchSubscriptionManager subscriptions = connector.getBatchSubscriptionManager();
+    subscriptions.setSharding(2, 1);
+
+    NodeId first = new NodeId(2, "N0");
+    NodeId second = first;
+    for (int i = 1; subscriptions.getShard(second) == subscriptions.getShard(first); i++) {
+      second = new NodeId(2, "N" + i);
+    }
+    MonitoredItemSpec spec = MonitoredItemSpec.builder().setQueueSize(10).build();
+    try {
+      connector.subscribeEach(Arrays.asList(first, second), spec).get(10, TimeUnit.SECONDS);
+      fail("shard without subscription");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof UnsupportedOperationException);
+    }
+    long deadline = System.currentTimeMillis() + 10_000;
+    while ((deleted.isEmpty() || !MonitoredItemSpec.DEFAULT.equals(subscriptions.getSpec(deleted.get(0)))) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, deleted.size());
+    assertEquals("spec of deleted item", MonitoredItemSpec.DEFAULT, subscriptions.getSpec(deleted.get(0)));
+    connector.shutdown();
+  }
+
+  @Test
+  public void specOfCreatedItemsOnly() throws Exception {
+    MonitoredItemSpec spec = MonitoredItemSpec.builder().setQueueSize(10).build();
+    OpcUaClientConnector connector = newConnector(newSubscription(StatusCode.GOOD));
+    UaMonitoredItem created = connector.subscribe(Arrays.asList(new NodeId(2, "A")), spec).get(10, TimeUnit.SECONDS).v2.get(0);
+    assertEquals(spec, connector.getBatchSubscriptionManager().getSpec(created));
+    connector.shutdown();
+
+    connector = newConnector(newSubscription(StatusCode.BAD));
+    UaMonitoredItem failed = connector.subscribe(Arrays.asList(new NodeId(2, "A")), spec).get(10, TimeUnit.SECONDS).v2.get(0);
+    assertEquals(MonitoredItemSpec.DEFAULT, connector.getBatchSubscriptionManager().getSpec(failed));
+    connector.shutdown();
+  }
+
+  @Test
+  public void subscriptionShards() {
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    BatchSubscriptionManager manager = connector.getBatchSubscriptionManager();
+    assertEquals(0, manager.getShard(new NodeId(1, 42)));
+
+    manager.setSharding(4, 2);
+    int[] counts = new int[8];
+    for (int i = 0; i < 80_000; i++) {
+      counts[manager.getShard(new NodeId(1, i))]++;
+    }
+    for (int count : counts) {
+      assertTrue("uneven shards: " + Arrays.toString(counts), count > 8_000 && count < 12_000);
+    }
+    assertEquals(manager.getShard(new NodeId(2, "Demo.Tag")), manager.getShard(new NodeId(2, "Demo.Tag")));
+
+    SubscriptionSettings settings = SubscriptionSettings.forInterval(500.0);
+    assertEquals(20, settings.getMaxKeepAliveCount());
+    assertEquals(60, settings.getLifetimeCount());
+    assertEquals(30, new SubscriptionSettings(10, 1, 0, 1).getLifetimeCount());
+    connector.shutdown();
+  }
+
+  static Stub<UaSubscription> newSubscription(StatusCode status) {
+    return newSubscription(status, 500.0);
+  }
+
+  /**
+   * @param status status of the created items
+   * @param publishingInterval revised publishing interval
+   * @return subscription which creates all items except {@link #LOST}
+   */
+  @SuppressWarnings("unchecked")
+  static Stub<UaSubscription> newSubscription(StatusCode status, double publishingInterval) {
+    return Stub.of(UaSubscription.class).on("createMonitoredItems", args -> {
+      List<MonitoredItemCreateRequest> requests = (List<MonitoredItemCreateRequest>) args[1];
+      return CompletableFuture.completedFuture(requests.stream().filter(r -> !LOST.equals(r.getItemToMonitor().getNodeId()))
+          .map(r -> newItem(r, status)).collect(Collectors.toList()));
+    }).on("getRevisedPublishingInterval", args -> publishingInterval);
+  }
+
+  static UaMonitoredItem newItem(MonitoredItemCreateRequest request, StatusCode status) {
+    return Stub.of(UaMonitoredItem.class).on("getClientHandle", args -> request.getRequestedParameters().getClientHandle())
+        .on("getReadValueId", args -> request.getItemToMonitor()).on("getStatusCode", args -> status).get();
+  }
+
+  static OpcUaClientConnector newConnector(Stub<UaSubscription> subscription) {
+    Stub<UaSubscriptionManager> manager =
+        Stub.of(UaSubscriptionManager.class).on("createSubscription", args -> CompletableFuture.completedFuture(subscription.get()));
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(Stub.client().on("getSubscriptionManager", args -> manager.get()).get());
+    return connector;
+  }
+}
@@ -0,0 +1,38 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.junit.Test;
+
+public class BinaryCodecTest {
+
+  @Test
+  public void stringsAboveWriteUtfLimit() throws Exception {
+    char[] chars = new char[100_000];
+    Arrays.fill(chars, 'ä');
+    String large = new String(chars);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bos);
+    BinaryCodec.writeNodeId(out, new NodeId(2, large));
+    BinaryCodec.writeDataValue(out, new DataValue(new Variant(large)));
+    BinaryCodec.writeString(out, null);
+    BinaryCodec.writeString(out, "");
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    assertEquals(new NodeId(2, large), BinaryCodec.readNodeId(in));
+    assertEquals(large, BinaryCodec.readDataValue(in).getValue().getValue());
+    assertNull(BinaryCodec.readString(in));
+    assertEquals("", BinaryCodec.readString(in));
+  }
+}
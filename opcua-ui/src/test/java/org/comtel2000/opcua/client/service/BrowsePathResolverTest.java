@@ -0,0 +1,145 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowsePath;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowsePathResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowsePathTarget;
+import org.eclipse.milo.opcua.stack.core.types.structured.RelativePathElement;
+import org.eclipse.milo.opcua.stack.core.types.structured.TranslateBrowsePathsToNodeIdsResponse;
+import org.junit.Test;
+
+public class BrowsePathResolverTest {
+
+  @Test
+  public void browsePathsBatchedAndCached() throws Exception {
+    Queue<BrowsePath> translated = new ConcurrentLinkedQueue<>();
+    Stub<UaClient> client = newTranslatingClient(translated);
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      paths.add("Objects/2:Line" + (i % 10) + "/Motor" + i);
+    }
+    paths.add("Objects/2:Line1/Missing");
+    List<Optional<NodeId>> nodes = connector.resolveBrowsePaths(paths).get(10, TimeUnit.SECONDS);
+    assertEquals(paths.size(), nodes.size());
+    assertEquals(new NodeId(2, "Motor42"), nodes.get(42).get());
+    assertFalse(nodes.get(2500).isPresent());
+    int sent = client.getCalls("translateBrowsePaths");
+    assertTrue("not batched: " + sent, sent <= (paths.size() + Stub.MAX_NODES - 1) / Stub.MAX_NODES + 1);
+
+    // cached
+    assertEquals(new NodeId(2, "Motor7"), connector.resolveBrowsePath("/0:Objects/2:Line7/Motor7").get(10, TimeUnit.SECONDS).get());
+    assertEquals(sent, client.getCalls("translateBrowsePaths"));
+
+    // model change
+    connector.invalidate(new NodeId(2, "Line7"));
+    connector.resolveBrowsePath("Objects/2:Line7/Motor7").get(10, TimeUnit.SECONDS);
+    assertEquals(sent + 1, client.getCalls("translateBrowsePaths"));
+    connector.shutdown();
+  }
+
+  @Test
+  public void duplicatePathsTranslatedOnce() throws Exception {
+    Queue<BrowsePath> translated = new ConcurrentLinkedQueue<>();
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(newTranslatingClient(translated).get());
+
+    List<Optional<NodeId>> nodes =
+        connector.resolveBrowsePaths(Arrays.asList("Objects/2:Pump", "/0:Objects/2:Pump", "Objects/2:Valve", "Objects/2:Pump"))
+            .get(10, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList(Optional.of(new NodeId(2, "Pump")), Optional.of(new NodeId(2, "Pump")), Optional.of(new NodeId(2, "Valve")),
+        Optional.of(new NodeId(2, "Pump"))), nodes);
+    assertEquals(2, translated.size());
+    connector.shutdown();
+  }
+
+  @Test
+  public void invalidPathFails() throws Exception {
+    Stub<UaClient> client = newTranslatingClient(new ConcurrentLinkedQueue<>());
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+    try {
+      connector.resolveBrowsePath("Objects/99999999999:Pump").get(10, TimeUnit.SECONDS);
+      fail("namespace index out of range");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    try {
+      connector.translateBrowsePath("Objects/65536:Pump").get(10, TimeUnit.SECONDS);
+      fail("namespace index out of range");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    assertEquals(0, client.getCalls("translateBrowsePaths"));
+    connector.shutdown();
+  }
+
+  @Test
+  public void resultsOfInvalidatedTranslateNotCached() throws Exception {
+    Queue<CompletableFuture<TranslateBrowsePathsToNodeIdsResponse>> inFlight = new ConcurrentLinkedQueue<>();
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(Stub.client().on("translateBrowsePaths", args -> {
+      CompletableFuture<TranslateBrowsePathsToNodeIdsResponse> f = new CompletableFuture<>();
+      inFlight.add(f);
+      return f;
+    }).get());
+    BrowsePathResolver resolver = connector.getBrowsePathResolver();
+
+    CompletableFuture<Optional<NodeId>> node = resolver.resolve("Objects/2:Pump");
+    long timeout = System.currentTimeMillis() + 10_000;
+    while (inFlight.isEmpty() && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    // model change while the translate is in flight
+    resolver.invalidate();
+    inFlight.poll().complete(new TranslateBrowsePathsToNodeIdsResponse(null,
+        new BrowsePathResult[] { new BrowsePathResult(StatusCode.GOOD, new BrowsePathTarget[] { target("Pump") }) }, null));
+    assertEquals(new NodeId(2, "Pump"), node.get(10, TimeUnit.SECONDS).get());
+    assertEquals(0, resolver.getCache().size());
+    connector.shutdown();
+  }
+
+  private static BrowsePathTarget target(String name) {
+    return new BrowsePathTarget(new ExpandedNodeId(new NodeId(2, name)), uint(0));
+  }
+
+  /**
+   * Client stub which resolves every browse path to the name of its last element, "Missing" is not
+   * found.
+   *
+   * @param translated collects the translated paths
+   */
+  @SuppressWarnings("unchecked")
+  private static Stub<UaClient> newTranslatingClient(Queue<BrowsePath> translated) {
+    return Stub.client().on("translateBrowsePaths", args -> {
+      translated.addAll((List<BrowsePath>) args[0]);
+      BrowsePathResult[] results = ((List<BrowsePath>) args[0]).stream().map(p -> {
+        RelativePathElement[] elements = p.getRelativePath().getElements();
+        String name = elements[elements.length - 1].getTargetName().getName();
+        return "Missing".equals(name) ? new BrowsePathResult(StatusCode.BAD, null) : new BrowsePathResult(StatusCode.GOOD, new BrowsePathTarget[] { target(name) });
+      }).toArray(BrowsePathResult[]::new);
+      return CompletableFuture.completedFuture(new TranslateBrowsePathsToNodeIdsResponse(null, results, null));
+    });
+  }
+}
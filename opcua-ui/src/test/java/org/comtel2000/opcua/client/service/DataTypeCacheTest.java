@@ -0,0 +1,109 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.comtel2000.opcua.client.service.OpcUaClientConnectorTest.page;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DataTypeCacheTest {
+
+  private final static String URL = "opc.tcp://localhost:4840";
+
+  private final static String[] NAMESPACES = { "http://opcfoundation.org/UA/", "urn:demo" };
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void prefetchFollowsContinuationPoints() throws Exception {
+    Stub<UaClient> client = newHierarchyClient("Custom");
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+    DataTypeCache cache = new DataTypeCache(connector);
+
+    assertEquals(Integer.valueOf(3), cache.prefetch().get(10, TimeUnit.SECONDS));
+    assertEquals(Identifiers.BaseDataType, cache.get(new NodeId(2, "Number")).getSuperType());
+    assertEquals(Identifiers.BaseDataType, cache.get(new NodeId(2, "Custom")).getSuperType());
+    assertEquals(1, client.getCalls("browseNext"));
+    connector.shutdown();
+  }
+
+  @Test
+  public void storedTypesAreRevalidated() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(newHierarchyClient("Custom").get());
+    assertEquals(Integer.valueOf(3), new DataTypeCache(connector).open(dir, URL, NAMESPACES).get(10, TimeUnit.SECONDS));
+
+    // the server renamed a type while disconnected
+    connector.setClient(newHierarchyClient("Renamed").get());
+    DataTypeCache cache = new DataTypeCache(connector);
+    cache.open(dir, URL, NAMESPACES).get(10, TimeUnit.SECONDS);
+    cache.revalidate().get(10, TimeUnit.SECONDS);
+    assertNull(cache.get(new NodeId(2, "Custom")));
+    assertNotNull(cache.get(new NodeId(2, "Renamed")));
+    assertFalse(cache.revalidate().get(10, TimeUnit.SECONDS));
+
+    // the replaced types were saved, a server which does not answer gets them from the file
+    connector.setClient(Stub.client().on("browse", args -> new CompletableFuture<>()).get());
+    cache = new DataTypeCache(connector);
+    assertEquals(Integer.valueOf(3), cache.open(dir, URL, NAMESPACES).get(10, TimeUnit.SECONDS));
+    assertNotNull(cache.get(new NodeId(2, "Renamed")));
+    connector.shutdown();
+  }
+
+  @Test
+  public void stalePrefetchDropped() throws Exception {
+    Path dir = folder.getRoot().toPath();
+    CompletableFuture<BrowseResponse> stale = new CompletableFuture<>();
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(Stub.client().on("browse", args -> stale).get());
+    DataTypeCache cache = new DataTypeCache(connector);
+    CompletableFuture<Integer> previous = cache.open(dir, "opc.tcp://other:4840", NAMESPACES);
+
+    // reconnected to another server before the first prefetch completed
+    connector.setClient(newHierarchyClient("Custom").get());
+    assertEquals(Integer.valueOf(3), cache.open(dir, URL, NAMESPACES).get(10, TimeUnit.SECONDS));
+    stale.complete(new BrowseResponse(null, new BrowseResult[] { page(null, "Stale") }, null));
+    previous.get(10, TimeUnit.SECONDS);
+    assertNull(cache.get(new NodeId(2, "Stale")));
+    assertEquals(3, cache.size());
+
+    cache = new DataTypeCache(connector);
+    assertEquals(Integer.valueOf(3), cache.open(dir, URL, NAMESPACES).get(10, TimeUnit.SECONDS));
+    assertNull(cache.get(new NodeId(2, "Stale")));
+    connector.shutdown();
+  }
+
+  /**
+   * Client stub with the DataTypes Number and {@code custom} below BaseDataType, the second one is
+   * returned on a BrowseNext page.
+   */
+  @SuppressWarnings("unchecked")
+  private static Stub<UaClient> newHierarchyClient(String custom) {
+    ByteString cp = ByteString.of(new byte[] { 1 });
+    return Stub.client().on("browse", args -> {
+      BrowseResult[] results = ((List<BrowseDescription>) args[2]).stream()
+          .map(bd -> bd.getNodeId().equals(Identifiers.BaseDataType) ? page(cp, "Number") : page(null)).toArray(BrowseResult[]::new);
+      return CompletableFuture.completedFuture(new BrowseResponse(null, results, null));
+    }).on("browseNext", args -> CompletableFuture.completedFuture(new BrowseNextResponse(null, new BrowseResult[] { page(null, custom) }, null)));
+  }
+}
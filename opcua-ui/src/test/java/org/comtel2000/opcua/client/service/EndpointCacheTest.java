@@ -0,0 +1,49 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Path;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.ApplicationType;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.MessageSecurityMode;
+import org.eclipse.milo.opcua.stack.core.types.structured.ApplicationDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.EndpointDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.UserTokenPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EndpointCacheTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void endpointCache() throws Exception {
+    String url = "opc.tcp://localhost:4840";
+    ApplicationDescription server =
+        new ApplicationDescription("urn:test", "urn:test", LocalizedText.english("test"), ApplicationType.Server, null, null, new String[] { url });
+    EndpointDescription endpoint = new EndpointDescription(url, server, ByteString.of(new byte[] { 1, 2, 3 }), MessageSecurityMode.None,
+        "http://opcfoundation.org/UA/SecurityPolicy#None", new UserTokenPolicy[0], "http://opcfoundation.org/UA-Profile/Transport/uatcp-uasc-uabinary", ubyte(0));
+
+    Path dir = folder.getRoot().toPath();
+    EndpointCache cache = EndpointCache.open(dir);
+    assertFalse(cache.get(url).isPresent());
+    cache.put(url, new EndpointDescription[] { endpoint });
+    cache.save();
+
+    EndpointCache loaded = EndpointCache.open(dir);
+    assertEquals(1, loaded.size());
+    assertEquals(url, loaded.get(url).get()[0].getEndpointUrl());
+    assertEquals(ByteString.of(new byte[] { 1, 2, 3 }), loaded.get(url).get()[0].getServerCertificate());
+
+    loaded.setTtl(0);
+    Thread.sleep(5);
+    assertFalse(loaded.get(url).isPresent());
+    assertEquals(0, loaded.size());
+  }
+}
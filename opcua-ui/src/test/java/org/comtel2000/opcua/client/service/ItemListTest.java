@@ -0,0 +1,153 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DeadbandType;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ItemListTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void roundTrip() throws IOException {
+    ReferenceDescription[] refs = new ReferenceDescription[] {
+        new ReferenceDescription(Identifiers.HasComponent, true, new ExpandedNodeId(new NodeId(2, "Line1;Motor\"1\"")),
+            new QualifiedName(2, "Motor1"), LocalizedText.english("Speed;\n\"motor\" 1"), NodeClass.Variable,
+            Identifiers.BaseDataVariableType.expanded()),
+        new ReferenceDescription(Identifiers.Organizes, true, new ExpandedNodeId(new NodeId(3, uint(42))), new QualifiedName(3, "Pump"),
+            LocalizedText.english("Pump"), NodeClass.Object, ExpandedNodeId.NULL_VALUE) };
+    MonitoredItemSpec[] specs = new MonitoredItemSpec[] { MonitoredItemSpec.DEFAULT, MonitoredItemSpec.builder().setSamplingInterval(250)
+        .setQueueSize(10).setDiscardOldest(false).setTrigger(DataChangeTrigger.StatusValueTimestamp).setAbsoluteDeadband(0.5).build() };
+
+    Path dir = folder.getRoot().toPath();
+    for (ItemListFormat format : ItemListFormat.values()) {
+      Path file = dir.resolve("items." + format.getExtension());
+      try (ItemListWriter writer = ItemListWriter.create(file)) {
+        for (int i = 0; i < 1000; i++) {
+          writer.write(refs[i % 2], specs[i % 2]);
+        }
+        assertEquals(1000, writer.getCount());
+      }
+      List<Tuple2<ReferenceDescription, MonitoredItemSpec>> items = new ArrayList<>();
+      try (ItemListReader reader = ItemListReader.open(file)) {
+        reader.setErrorHandler((record, e) -> fail(format + " record " + record + ": " + e));
+        Tuple2<ReferenceDescription, MonitoredItemSpec> item;
+        while ((item = reader.next()) != null) {
+          items.add(item);
+        }
+      }
+      assertEquals(format.toString(), 1000, items.size());
+      for (int i = 0; i < 2; i++) {
+        ReferenceDescription ref = items.get(i).v1;
+        assertEquals(refs[i].getNodeId(), ref.getNodeId());
+        assertEquals(refs[i].getBrowseName(), ref.getBrowseName());
+        assertEquals(refs[i].getDisplayName().getText(), ref.getDisplayName().getText());
+        assertEquals(refs[i].getNodeClass(), ref.getNodeClass());
+        assertEquals(refs[i].getReferenceTypeId(), ref.getReferenceTypeId());
+        // the legacy xml format has no monitoring parameters
+        assertEquals(format == ItemListFormat.XML ? MonitoredItemSpec.DEFAULT : specs[i], items.get(i).v2);
+      }
+      assertEquals(Identifiers.BaseDataVariableType, items.get(0).v1.getTypeDefinition().local().get());
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void malformedRecords() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    Path csv = dir.resolve("items.csv");
+    Files.write(csv, ("displayName;nodeId;samplingInterval;unknown\n" + "\"a\nb\";\"ns=2;s=A\";100;x\n" + "b;;100;x\n" + "\n"
+        + "c;\"ns=2;s=C\";fast;x\n" + "d;\"ns=2;s=D\"\n").getBytes(StandardCharsets.UTF_8));
+    List<Long> errors = new ArrayList<>();
+    List<Tuple2<ReferenceDescription, MonitoredItemSpec>> items = new ArrayList<>();
+    try (ItemListReader reader = ItemListReader.open(csv)) {
+      reader.setErrorHandler((record, e) -> errors.add(record));
+      Tuple2<ReferenceDescription, MonitoredItemSpec> item;
+      while ((item = reader.next()) != null) {
+        items.add(item);
+      }
+      assertEquals(2, reader.getCount());
+      assertEquals(2, reader.getErrorCount());
+    }
+    assertEquals(Arrays.asList(2L, 3L), errors);
+    assertEquals(new ExpandedNodeId(new NodeId(2, "A")), items.get(0).v1.getNodeId());
+    assertEquals("a\nb", items.get(0).v1.getDisplayName().getText());
+    assertEquals(100.0, items.get(0).v2.getSamplingInterval(), 0.0);
+    assertEquals(MonitoredItemSpec.DEFAULT, items.get(1).v2);
+
+    Path json = dir.resolve("items.jsonl");
+    Files.write(json, ("{\"nodeId\":\"ns=2;s=A\",\"deadbandType\":\"Absolute\",\"deadbandValue\":1.5,\"extra\":null}\n" + "{\"nodeId\":\n"
+        + "{\"nodeId\":\"ns=2;s=B\",\"deadbandType\":\"Percent\",\"deadbandValue\":200}\n" + "{ \"nodeId\" : \"ns=2;s=\\u0043\" }\n")
+            .getBytes(StandardCharsets.UTF_8));
+    errors.clear();
+    items.clear();
+    ItemListReader reader = ItemListReader.open(json).setErrorHandler((record, e) -> errors.add(record));
+    // closed at the end
+    long count = reader.forEachChunk(1, chunk -> {
+      items.addAll(chunk);
+      return CompletableFuture.completedFuture(null);
+    }, Runnable::run).join();
+    assertEquals(2, count);
+    assertEquals(Arrays.asList(2L, 3L), errors);
+    assertEquals(DeadbandType.Absolute, items.get(0).v2.getDeadbandType());
+    assertEquals(1.5, items.get(0).v2.getDeadbandValue(), 0.0);
+    assertEquals(new ExpandedNodeId(new NodeId(2, "C")), items.get(1).v1.getNodeId());
+
+    // truncated binary file
+    Path bin = dir.resolve("items.uail");
+    try (ItemListWriter writer = ItemListWriter.create(bin)) {
+      writer.write(new ReferenceDescription(Identifiers.Organizes, true, new ExpandedNodeId(new NodeId(2, "A")), new QualifiedName(2, "A"),
+          LocalizedText.english("A"), NodeClass.Variable, ExpandedNodeId.NULL_VALUE), MonitoredItemSpec.DEFAULT);
+      writer.write(new ReferenceDescription(Identifiers.Organizes, true, new ExpandedNodeId(new NodeId(2, "B")), new QualifiedName(2, "B"),
+          LocalizedText.english("B"), NodeClass.Variable, ExpandedNodeId.NULL_VALUE), MonitoredItemSpec.DEFAULT);
+    }
+    byte[] content = Files.readAllBytes(bin);
+    Files.write(bin, Arrays.copyOf(content, content.length - 3));
+    errors.clear();
+    try (ItemListReader reader = ItemListReader.open(bin)) {
+      reader.setErrorHandler((record, e) -> errors.add(record));
+      assertEquals(new ExpandedNodeId(new NodeId(2, "A")), reader.next().v1.getNodeId());
+      assertNull(reader.next());
+    }
+    assertEquals(Arrays.asList(2L), errors);
+  }
+
+  @Test
+  public void formatByExtension() {
+    assertEquals(ItemListFormat.CSV, ItemListFormat.of(Paths.get("Items.CSV")));
+    assertEquals(ItemListFormat.JSON, ItemListFormat.of(Paths.get("items.json")));
+    assertEquals(ItemListFormat.BINARY, ItemListFormat.of(Paths.get("items.UAIL")));
+    try {
+      ItemListFormat.of(Paths.get("items.txt"));
+      fail("unknown extension");
+    } catch (IllegalArgumentException e) {
+      // export falls back to the selected format
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+public class LruCacheTest {
+
+  @Test
+  public void removeGroup() {
+    LruCache<Tuple2<String, Integer>, String> cache = new LruCache<>("test", 3, v -> 1, k -> k.v1);
+    cache.put(new Tuple2<>("a", 1), "a1");
+    cache.put(new Tuple2<>("a", 2), "a2");
+    cache.put(new Tuple2<>("b", 1), "b1");
+    // evicts the eldest entry of group a
+    cache.put(new Tuple2<>("c", 1), "c1");
+    assertFalse(cache.contains(new Tuple2<>("a", 1)));
+
+    cache.removeGroup("a");
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getWeight());
+    assertNull(cache.get(new Tuple2<>("a", 2)));
+    assertEquals("b1", cache.get(new Tuple2<>("b", 1)));
+
+    // re-added after the group removal
+    cache.put(new Tuple2<>("a", 1), "a1");
+    cache.removeGroup("a");
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void statistics() {
+    LruCache<String, String> cache = new LruCache<>("test", 10, v -> v.length());
+    cache.put("k", "value");
+    cache.get("k");
+    cache.get("x");
+    assertTrue(cache.contains("k"));
+
+    LruCache.Statistics stats = cache.getStatistics();
+    assertEquals("test", stats.getName());
+    assertEquals(1, stats.getSize());
+    assertEquals(5, stats.getWeight());
+    assertEquals(1, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(0.5, stats.getHitRate(), 0.0);
+
+    cache.put("l", "values");
+    assertEquals(1, cache.getStatistics().getEvictionCount());
+    cache.removeGroup("l");
+    assertEquals(0, cache.size());
+  }
+}
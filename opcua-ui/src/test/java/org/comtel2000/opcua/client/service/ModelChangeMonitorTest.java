@@ -0,0 +1,48 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.ubyte;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExtensionObject;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.structured.ModelChangeStructureDataType;
+import org.junit.Test;
+
+public class ModelChangeMonitorTest {
+
+  @Test
+  public void onlyModelChangeEvents() {
+    List<NodeId> changed = new ArrayList<>();
+    AtomicInteger unknown = new AtomicInteger();
+
+    // alarms and audit events have no changes
+    ModelChangeMonitor.onEvent(event(Identifiers.AlarmConditionType, null), changed::add, unknown::incrementAndGet);
+    ModelChangeMonitor.onEvent(event(Identifiers.AuditEventType, null), changed::add, unknown::incrementAndGet);
+    ModelChangeMonitor.onEvent(event(Identifiers.SystemStatusChangeEventType, null), changed::add, unknown::incrementAndGet);
+    assertEquals(0, changed.size());
+    assertEquals(0, unknown.get());
+
+    NodeId pump = new NodeId(2, "Pump");
+    ExtensionObject[] changes =
+        new ExtensionObject[] { ExtensionObject.encode(new ModelChangeStructureDataType(pump, Identifiers.BaseObjectType, ubyte(1))) };
+    ModelChangeMonitor.onEvent(event(Identifiers.GeneralModelChangeEventType, changes), changed::add, unknown::incrementAndGet);
+    assertEquals(Arrays.asList(pump), changed);
+    assertEquals(0, unknown.get());
+
+    ModelChangeMonitor.onEvent(event(Identifiers.GeneralModelChangeEventType, null), changed::add, unknown::incrementAndGet);
+    ModelChangeMonitor.onEvent(event(Identifiers.BaseModelChangeEventType, null), changed::add, unknown::incrementAndGet);
+    assertEquals(1, changed.size());
+    assertEquals(2, unknown.get());
+  }
+
+  private static Variant[] event(NodeId type, ExtensionObject[] changes) {
+    return new Variant[] { new Variant(type), changes != null ? new Variant(changes) : Variant.NULL_VALUE, Variant.NULL_VALUE };
+  }
+}
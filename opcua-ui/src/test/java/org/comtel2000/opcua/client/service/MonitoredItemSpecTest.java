@@ -0,0 +1,43 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.eclipse.milo.opcua.stack.core.types.enumerated.DataChangeTrigger;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoringParameters;
+import org.junit.Test;
+
+public class MonitoredItemSpecTest {
+
+  @Test
+  public void monitoredItemSpec() {
+    MonitoringParameters defaults = MonitoredItemSpec.DEFAULT.toMonitoringParameters(uint(7), 500.0);
+    assertEquals(uint(7), defaults.getClientHandle());
+    assertEquals(500.0, defaults.getSamplingInterval(), 0.0);
+    assertEquals(uint(1), defaults.getQueueSize());
+    assertNull(defaults.getFilter());
+
+    MonitoredItemSpec spec = MonitoredItemSpec.builder().setSamplingInterval(100).setQueueSize(10).setDiscardOldest(false)
+        .setAbsoluteDeadband(0.5).build();
+    MonitoringParameters parameters = spec.toMonitoringParameters(uint(8), 500.0);
+    assertEquals(100.0, parameters.getSamplingInterval(), 0.0);
+    assertEquals(uint(10), parameters.getQueueSize());
+    assertFalse(parameters.getDiscardOldest());
+    assertNotNull(parameters.getFilter());
+    assertEquals("100ms q=10 keep Absolute=0.5", spec.toString());
+    assertEquals(spec, spec.toBuilder().build());
+    assertTrue(MonitoredItemSpec.builder().setTrigger(DataChangeTrigger.StatusValueTimestamp).build().getFilter() != null);
+
+    try {
+      MonitoredItemSpec.builder().setPercentDeadband(101);
+      fail("percent deadband > 100");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
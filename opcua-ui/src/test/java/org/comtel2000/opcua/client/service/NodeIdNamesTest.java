@@ -0,0 +1,43 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.junit.After;
+import org.junit.Test;
+
+public class NodeIdNamesTest {
+
+  @After
+  public void reset() {
+    NodeIdNames.reset();
+  }
+
+  @Test
+  public void nodeIdNames() {
+    assertEquals("11 (Double)", OpcUaConverter.toString(new NodeId(0, 11)));
+    assertEquals("Double", NodeIdNames.getName(new NodeId(0, 11)));
+    assertNull(OpcUaConverter.toString(new NodeId(0, 999999)));
+    assertNull(OpcUaConverter.toString(new NodeId(2, 11)));
+    assertEquals("Demo (ns=2;s=Demo)", OpcUaConverter.toString(new NodeId(2, "Demo")));
+
+    int size = NodeIdNames.size();
+    NodeIdNames.put(new NodeId(2, 3001), "CustomType");
+    assertEquals("3001 (CustomType)", OpcUaConverter.toString(new NodeId(2, 3001)));
+    assertEquals(size + 1, NodeIdNames.size());
+  }
+
+  @Test
+  public void newClientDropsServerNames() {
+    int size = NodeIdNames.size();
+    NodeIdNames.put(new NodeId(2, 3001), "CustomType");
+
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(Stub.client().get());
+    assertNull(NodeIdNames.getName(new NodeId(2, 3001)));
+    assertEquals("Double", NodeIdNames.getName(new NodeId(0, 11)));
+    assertEquals(size, NodeIdNames.size());
+    connector.shutdown();
+  }
+}
@@ -0,0 +1,93 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.Test;
+
+public class NodeSearchIndexTest {
+
+  @Test
+  public void nodeSearchIndex() {
+    NodeSearchIndex index = new NodeSearchIndex();
+    NodeId line = new NodeId(2, "Line1");
+    index.add(Identifiers.ObjectsFolder, new ReferenceDescription[] { new ReferenceDescription(Identifiers.Organizes, true,
+        new ExpandedNodeId(line), new QualifiedName(2, "Line1"), LocalizedText.english("Line1"), NodeClass.Object, null) });
+    ReferenceDescription[] tags = new ReferenceDescription[1000];
+    for (int i = 0; i < tags.length; i++) {
+      tags[i] = new ReferenceDescription(Identifiers.HasComponent, true, new ExpandedNodeId(new NodeId(2, "Line1.Motor" + i)),
+          new QualifiedName(2, "Motor" + i), LocalizedText.english("Speed of motor " + i), NodeClass.Variable, null);
+    }
+    index.add(line, tags);
+    // duplicate page
+    index.add(line, tags);
+    assertEquals(1001, index.size());
+
+    // browse name prefix first, substring of the display name and node id
+    int[] rows = index.search("motor42", 20);
+    assertEquals(11, rows.length);
+    assertEquals(new NodeId(2, "Line1.Motor42"), index.getNodeId(rows[0]));
+    List<NodeId> path = index.getPath(rows[0]);
+    assertEquals(Arrays.asList(line, new NodeId(2, "Line1.Motor42")), path);
+
+    assertEquals(11, index.search("OF MOTOR 99", 20).length);
+    assertEquals(5, index.search("line1.motor", 5).length);
+    assertEquals(0, index.search("pump", 20).length);
+    // short query scan, node ids contain "Li"
+    rows = index.search("Li", 20);
+    assertEquals(20, rows.length);
+    assertEquals(line, index.getNodeId(rows[0]));
+
+    index.clear();
+    assertEquals(0, index.size());
+    assertEquals(0, index.search("motor", 20).length);
+  }
+
+  @Test
+  public void namesWithPathSeparator() {
+    NodeSearchIndex index = new NodeSearchIndex();
+    NodeId pump = new NodeId(2, "Line1/Pump");
+    index.add(Identifiers.ObjectsFolder, new ReferenceDescription[] { new ReferenceDescription(Identifiers.Organizes, true,
+        new ExpandedNodeId(pump), new QualifiedName(2, "Line1/Pump"), LocalizedText.english("Line1/Pump"), NodeClass.Object, null) });
+
+    // only queries with a leading separator are browse paths, other names with '/' are searched
+    int[] rows = index.search("1/pu", 20);
+    assertEquals(1, rows.length);
+    assertEquals(pump, index.getNodeId(rows[0]));
+  }
+
+  @Test
+  public void removedNodes() {
+    NodeSearchIndex index = new NodeSearchIndex();
+    NodeId line = new NodeId(2, "Line1");
+    ReferenceDescription[] lines = new ReferenceDescription[] { new ReferenceDescription(Identifiers.Organizes, true, new ExpandedNodeId(line),
+        new QualifiedName(2, "Line1"), LocalizedText.english("Line1"), NodeClass.Object, null) };
+    ReferenceDescription[] pumps = new ReferenceDescription[] { new ReferenceDescription(Identifiers.HasComponent, true,
+        new ExpandedNodeId(new NodeId(2, "Line1.Pump")), new QualifiedName(2, "Pump"), LocalizedText.english("Pump"), NodeClass.Object, null) };
+    index.add(Identifiers.ObjectsFolder, lines);
+    index.add(line, pumps);
+    assertEquals(1, index.search("pump", 20).length);
+
+    // model change of the line: the line and its children are not found anymore
+    index.remove(line);
+    assertEquals(0, index.search("pump", 20).length);
+    assertEquals(0, index.search("Line1", 20).length);
+    assertEquals(0, index.search("Pu", 20).length);
+
+    // browsed again
+    index.add(Identifiers.ObjectsFolder, lines);
+    index.add(line, pumps);
+    int[] rows = index.search("pump", 20);
+    assertEquals(1, rows.length);
+    assertEquals(Arrays.asList(line, new NodeId(2, "Line1.Pump")), index.getPath(rows[0]));
+  }
+}
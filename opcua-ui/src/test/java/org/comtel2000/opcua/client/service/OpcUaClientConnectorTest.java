@@ -0,0 +1,217 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager;
+import org.eclipse.milo.opcua.stack.core.AttributeId;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.StatusCodes;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.UInteger;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+public class OpcUaClientConnectorTest {
+
+  private final static int CONCURRENT_READS = 10_000;
+
+  private final static int MAX_CONCURRENT_REQUESTS = 3;
+
+  private final static long ROUND_TRIP = 300;
+
+  @Test
+  public void concurrentReadsKeepThreadCountFlat() throws Exception {
+    Queue<Tuple2<List<ReadValueId>, CompletableFuture<ReadResponse>>> inFlight = new ConcurrentLinkedQueue<>();
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(newClient(inFlight).get());
+    connector.setMaxConcurrentRequests(MAX_CONCURRENT_REQUESTS);
+    connector.getReadBatcher().setWindow(50);
+
+    int threadsBefore = Thread.activeCount();
+
+    List<CompletableFuture<List<DataValue>>> reads = new ArrayList<>();
+    for (int i = 0; i < CONCURRENT_READS; i++) {
+      reads.add(connector.readValues(Collections.singletonList(new NodeId(1, i))));
+    }
+
+    int threadsInFlight = threadsBefore;
+    int calls = 0;
+    int items = 0;
+    long deadline = System.currentTimeMillis() + 10000;
+    while (items < CONCURRENT_READS && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      assertTrue("too many outstanding calls: " + inFlight.size(), inFlight.size() <= MAX_CONCURRENT_REQUESTS);
+      threadsInFlight = Math.max(threadsInFlight, Thread.activeCount());
+      Tuple2<List<ReadValueId>, CompletableFuture<ReadResponse>> r;
+      while ((r = inFlight.poll()) != null) {
+        assertTrue(r.v1.size() <= Stub.MAX_NODES);
+        calls++;
+        items += r.v1.size();
+        r.v2.complete(new ReadResponse(null, r.v1.stream().map(id -> new DataValue(new Variant(id.getNodeId().getIdentifier()))).toArray(DataValue[]::new), null));
+      }
+    }
+    assertEquals(CONCURRENT_READS, items);
+    assertTrue("reads not batched: " + calls, calls <= 2 * CONCURRENT_READS / Stub.MAX_NODES);
+    assertTrue("thread count grows with in flight reads: " + threadsBefore + " -> " + threadsInFlight, threadsInFlight - threadsBefore <= 2);
+
+    CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    for (int i = 0; i < CONCURRENT_READS; i++) {
+      assertEquals(uint(i), reads.get(i).join().get(0).getValue().getValue());
+    }
+
+    connector.shutdown();
+  }
+
+  @Test
+  public void cancelledBrowseReleasesContinuationPoint() throws Exception {
+    ByteString cp = ByteString.of(new byte[] { 1, 2, 3 });
+    List<Boolean> browseNext = new CopyOnWriteArrayList<>();
+    Stub<UaClient> client = Stub.client()
+        .on("browse", args -> CompletableFuture.completedFuture(new BrowseResponse(null, new BrowseResult[] { page(cp, "A", "B") }, null)))
+        .on("browseNext", args -> {
+          browseNext.add((Boolean) args[0]);
+          return CompletableFuture.completedFuture(new BrowseNextResponse(null, new BrowseResult[] { page(null, "C") }, null));
+        });
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+
+    NodeId folder = new NodeId(2, "Folder");
+    List<ReferenceDescription> pages = new ArrayList<>();
+    CompletableFuture<Void> consumed = new CompletableFuture<>();
+    CompletableFuture<StatusCode> browse = connector.getHierarchicalReferences(folder, uint(0), (refs, last) -> {
+      pages.addAll(Arrays.asList(refs));
+      return consumed;
+    });
+    assertEquals(2, pages.size());
+
+    // cancelled while the first page is consumed
+    assertTrue(browse.cancel(false));
+    consumed.complete(null);
+
+    assertEquals("continuation point not released", Collections.singletonList(Boolean.TRUE), browseNext);
+    assertEquals(2, pages.size());
+    assertNull(connector.getBrowseCache().get(new Tuple2<>(folder, uint(0))));
+    connector.shutdown();
+  }
+
+  @Test
+  public void pendingPublishRequestsFollowSubscriptionsAndRoundTrip() throws Exception {
+    Stub<UaSubscriptionManager> manager = Stub.of(UaSubscriptionManager.class).on("createSubscription",
+        args -> CompletableFuture.completedFuture(BatchSubscriptionManagerTest.newSubscription(StatusCode.GOOD, (Double) args[0]).get()));
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(newSlowClient(ROUND_TRIP).on("getSubscriptionManager", args -> manager.get()).get());
+    assertEquals(2, connector.getPendingPublishRequests());
+
+    for (double interval : new double[] { 100.0, 500.0, 1000.0 }) {
+      connector.subscribe(Collections.singletonList(new NodeId(2, "Tag" + interval)), interval).get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(3, connector.getBatchSubscriptionManager().getSubscriptions().size());
+    assertEquals("one per subscription", 3, connector.getPendingPublishRequests());
+
+    long rtt = connector.measureRoundTrip().get(10, TimeUnit.SECONDS);
+    assertTrue(rtt >= ROUND_TRIP);
+    int inTransit = (int) Math.ceil(rtt / 100.0);
+    assertEquals("plus the fastest responses in transit", Math.min(OpcUaClientConnector.MAX_PENDING_PUBLISH_REQUESTS, 3 + inTransit),
+        connector.getPendingPublishRequests());
+
+    connector.setMaxPendingPublishRequests(5);
+    assertEquals(5, connector.getPendingPublishRequests());
+    connector.shutdown();
+  }
+
+  @Test
+  public void badStaticAttributesNotCached() throws Exception {
+    AtomicInteger reads = new AtomicInteger();
+    Stub<UaClient> client = Stub.client().on("read", args -> {
+      DataValue value = reads.getAndIncrement() == 0 ? new DataValue(Variant.NULL_VALUE, new StatusCode(StatusCodes.Bad_Timeout))
+          : new DataValue(new Variant(LocalizedText.english("Pump")));
+      return CompletableFuture.completedFuture(new ReadResponse(null, new DataValue[] { value }, null));
+    });
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+
+    NodeId node = new NodeId(2, "Pump");
+    List<UInteger> displayName = Collections.singletonList(AttributeId.DisplayName.uid());
+    assertTrue(connector.read(node, displayName).get(10, TimeUnit.SECONDS).get(0).getStatusCode().isBad());
+    assertEquals(LocalizedText.english("Pump"), connector.read(node, displayName).get(10, TimeUnit.SECONDS).get(0).getValue().getValue());
+    // cached
+    assertEquals(LocalizedText.english("Pump"), connector.read(node, displayName).get(10, TimeUnit.SECONDS).get(0).getValue().getValue());
+    assertEquals(2, reads.get());
+    connector.shutdown();
+  }
+
+  /**
+   * Client stub which answers every read service call with a future completed by the test.
+   */
+  @SuppressWarnings("unchecked")
+  private static Stub<UaClient> newClient(Queue<Tuple2<List<ReadValueId>, CompletableFuture<ReadResponse>>> inFlight) {
+    return Stub.client().on("read", args -> {
+      CompletableFuture<ReadResponse> f = new CompletableFuture<>();
+      inFlight.add(new Tuple2<>((List<ReadValueId>) args[2], f));
+      return f;
+    });
+  }
+
+  /**
+   * Client stub which answers the read of the server time after the given round trip time.
+   */
+  @SuppressWarnings("unchecked")
+  private static Stub<UaClient> newSlowClient(long roundTrip) {
+    return Stub.client().on("readValues", args -> {
+      List<NodeId> nodes = (List<NodeId>) args[2];
+      if (!nodes.contains(Identifiers.Server_ServerStatus_CurrentTime)) {
+        return CompletableFuture.completedFuture(nodes.stream().map(n -> new DataValue(new Variant(uint(Stub.MAX_NODES)))).collect(Collectors.toList()));
+      }
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          Thread.sleep(roundTrip);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return Collections.singletonList(new DataValue(new Variant(DateTime.now())));
+      });
+    });
+  }
+
+  /**
+   * @param cp continuation point, {@code null} for the last page
+   * @param names browse names of the references
+   * @return browse result page
+   */
+  static BrowseResult page(ByteString cp, String... names) {
+    ReferenceDescription[] refs = Arrays.stream(names).map(n -> new ReferenceDescription(Identifiers.Organizes, true, new NodeId(2, n).expanded(),
+        new QualifiedName(2, n), LocalizedText.english(n), NodeClass.Variable, ExpandedNodeId.NULL_VALUE)).toArray(ReferenceDescription[]::new);
+    return new BrowseResult(StatusCode.GOOD, cp != null ? cp : ByteString.NULL_VALUE, refs);
+  }
+}
@@ -0,0 +1,92 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.comtel2000.opcua.client.service.OpcUaClientConnectorTest.page;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+public class PrefetchSchedulerTest {
+
+  @Test
+  public void prefetchQueueAndCancel() {
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    // browse never answered
+    connector.setClient(Stub.client().on("browse", args -> new CompletableFuture<>()).get());
+    PrefetchScheduler prefetch = new PrefetchScheduler(connector, uint(1));
+    prefetch.setMaxOutstanding(2);
+    prefetch.setMaxQueued(3);
+
+    List<Tuple2<NodeId, Integer>> requests = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      requests.add(new Tuple2<>(new NodeId(1, i), 1));
+    }
+    prefetch.update(requests);
+    assertEquals(2, prefetch.getOutstanding());
+    assertEquals(3, prefetch.getQueueSize());
+
+    // user moved away, only the first node is still requested
+    prefetch.update(requests.subList(0, 1));
+    assertEquals(1, prefetch.getOutstanding());
+    assertEquals(0, prefetch.getQueueSize());
+    assertEquals(1, prefetch.getCancelledCount());
+
+    prefetch.clear();
+    assertEquals(0, prefetch.getOutstanding());
+    connector.shutdown();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void cancelledPrefetchStopsBrowseNext() {
+    ByteString cp = ByteString.of(new byte[] { 1 });
+    Map<NodeId, CompletableFuture<BrowseResponse>> browses = new ConcurrentHashMap<>();
+    List<Boolean> browseNext = new CopyOnWriteArrayList<>();
+    Stub<UaClient> client = Stub.client()
+        .on("browse", args -> browses.computeIfAbsent(((List<BrowseDescription>) args[2]).get(0).getNodeId(), n -> new CompletableFuture<>()))
+        .on("browseNext", args -> {
+          browseNext.add((Boolean) args[0]);
+          return CompletableFuture.completedFuture(new BrowseNextResponse(null, new BrowseResult[] { page(null, "last") }, null));
+        });
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+    PrefetchScheduler prefetch = new PrefetchScheduler(connector, uint(1));
+    prefetch.setMaxOutstanding(2);
+    NodeId a = new NodeId(1, "A");
+    NodeId b = new NodeId(1, "B");
+    prefetch.update(Arrays.asList(new Tuple2<>(a, 1), new Tuple2<>(b, 1)));
+    assertEquals(2, prefetch.getOutstanding());
+
+    // the user moved away from A while its first page is in transit
+    prefetch.update(Collections.singletonList(new Tuple2<>(b, 1)));
+    assertEquals(1, prefetch.getCancelledCount());
+    browses.get(a).complete(new BrowseResponse(null, new BrowseResult[] { page(cp, "a1") }, null));
+    assertEquals("only the continuation point is released", Collections.singletonList(Boolean.TRUE), browseNext);
+    assertFalse(connector.getBrowseCache().contains(new Tuple2<>(a, uint(1))));
+
+    browses.get(b).complete(new BrowseResponse(null, new BrowseResult[] { page(cp, "b1") }, null));
+    assertEquals(Arrays.asList(Boolean.TRUE, Boolean.FALSE), browseNext);
+    assertTrue(connector.getBrowseCache().contains(new Tuple2<>(b, uint(1))));
+    assertEquals(1, prefetch.getFetchedCount());
+    connector.shutdown();
+  }
+}
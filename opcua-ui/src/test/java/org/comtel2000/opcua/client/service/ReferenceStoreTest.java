@@ -0,0 +1,55 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ExpandedNodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.QualifiedName;
+import org.eclipse.milo.opcua.stack.core.types.enumerated.NodeClass;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReferenceDescription;
+import org.junit.Test;
+
+public class ReferenceStoreTest {
+
+  @Test
+  public void referenceStore() {
+    ReferenceStore store = new ReferenceStore(2);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, store.add(new ReferenceDescription(Identifiers.Organizes, true, new ExpandedNodeId(new NodeId(2, uint(i))),
+          new QualifiedName(2, "n" + i), LocalizedText.english("n" + i), NodeClass.Variable, new ExpandedNodeId(Identifiers.BaseDataVariableType))));
+    }
+    ReferenceDescription s = new ReferenceDescription(Identifiers.HasComponent, true, new ExpandedNodeId(new NodeId(3, "s")),
+        new QualifiedName(3, "browse"), LocalizedText.english("display"), NodeClass.Object, null);
+    assertEquals(100, store.add(s));
+    // duplicates
+    assertEquals(-1, store.add(s));
+    assertEquals(-1, store.add(store.get(42)));
+    assertEquals(101, store.size());
+
+    assertEquals(new NodeId(2, uint(42)), store.getNodeId(42));
+    assertEquals("n42", store.getName(42));
+    assertEquals(new QualifiedName(2, "n42"), store.getBrowseName(42));
+    assertEquals(NodeClass.Variable, store.getNodeClass(42));
+    assertEquals(new ExpandedNodeId(Identifiers.BaseDataVariableType), store.getTypeDefinition(42));
+    assertTrue(store.contains(new NodeId(2, uint(99))));
+    assertFalse(store.contains(new NodeId(2, uint(100))));
+
+    ReferenceDescription r = store.get(100);
+    assertEquals(Identifiers.HasComponent, r.getReferenceTypeId());
+    assertEquals(new ExpandedNodeId(new NodeId(3, "s")), r.getNodeId());
+    assertEquals(new QualifiedName(3, "browse"), r.getBrowseName());
+    assertEquals("display", r.getDisplayName().getText());
+    assertEquals(NodeClass.Object, r.getNodeClass());
+    assertNull(r.getTypeDefinition());
+
+    store.clear();
+    assertEquals(0, store.size());
+    assertEquals(0, store.add(s));
+  }
+}
@@ -0,0 +1,57 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class RequestChunkerTest {
+
+  @Test
+  public void shortResultFails() throws Exception {
+    List<Integer> items = Arrays.asList(1, 2, 3);
+    for (int chunkSize : new int[] { 10, 2 }) {
+      try {
+        RequestChunker.call(items, chunkSize, 1, chunk -> CompletableFuture.completedFuture(chunk.subList(0, chunk.size() - 1)))
+            .get(10, TimeUnit.SECONDS);
+        fail("short result with chunk size " + chunkSize);
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+
+  @Test
+  public void completedChunksSentInLoop() throws Exception {
+    List<Integer> items = IntStream.range(0, 200_000).boxed().collect(Collectors.toList());
+    List<Integer> results = RequestChunker.call(items, 1, 4, chunk -> CompletableFuture.completedFuture(chunk)).get(10, TimeUnit.SECONDS);
+    assertEquals(items, results);
+  }
+
+  @Test
+  public void outstandingCallsBounded() throws Exception {
+    List<CompletableFuture<List<Integer>>> calls = new ArrayList<>();
+    CompletableFuture<List<Integer>> result = RequestChunker.call(Arrays.asList(1, 2, 3, 4, 5), 1, 2, chunk -> {
+      CompletableFuture<List<Integer>> call = new CompletableFuture<>();
+      calls.add(call);
+      return call.thenApply(v -> chunk);
+    });
+    assertEquals(2, calls.size());
+    calls.get(1).complete(null);
+    assertEquals(3, calls.size());
+    for (int i = 0; i < 5; i++) {
+      calls.get(i).complete(null);
+    }
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5), result.get(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,99 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaMonitoredItem;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscriptionManager;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.structured.MonitoredItemCreateRequest;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SessionRecoveryTest {
+
+  @Test
+  public void transferFailureOfUnmanagedSubscription() {
+    UaSubscription subscription = Stub.of(UaSubscription.class).on("getSubscriptionId", args -> uint(1)).get();
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    List<UaSubscription> lost = new ArrayList<>();
+    SessionRecovery recovery = new SessionRecovery(connector.getBatchSubscriptionManager(), lost::add);
+    assertFalse(connector.isActive(subscription));
+
+    recovery.onSubscriptionTransferFailed(subscription, StatusCode.BAD);
+    assertEquals(Collections.singletonList(subscription), lost);
+    assertEquals(1, recovery.getTransferFailureCount());
+    assertEquals(0, recovery.getRecreatedItemCount());
+    assertFalse(connector.isRecreated(subscription));
+    connector.shutdown();
+  }
+
+  @Test
+  public void transferFailureRecreatesItems() throws Exception {
+    AtomicInteger ids = new AtomicInteger();
+    Stub<UaSubscriptionManager> manager =
+        Stub.of(UaSubscriptionManager.class).on("createSubscription", args -> CompletableFuture.completedFuture(newSubscription(ids.incrementAndGet())));
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(Stub.client().on("getSubscriptionManager", args -> manager.get()).get());
+    MonitoredItemSpec spec = MonitoredItemSpec.builder().setQueueSize(10).build();
+    Tuple2<UaSubscription, List<UaMonitoredItem>> created =
+        connector.subscribe(Arrays.asList(new NodeId(2, "A"), new NodeId(2, "B")), spec).get(10, TimeUnit.SECONDS);
+    UaSubscription lost = created.v1;
+
+    CompletableFuture<Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>>> recreated = new CompletableFuture<>();
+    connector.onSubscriptionsRecreated(recreated::complete);
+    connector.getSessionRecovery().onSubscriptionTransferFailed(lost, StatusCode.BAD);
+    Map<UaMonitoredItem, Tuple2<UaSubscription, UaMonitoredItem>> replaced = recreated.get(10, TimeUnit.SECONDS);
+
+    assertEquals(2, replaced.size());
+    for (UaMonitoredItem item : created.v2) {
+      Tuple2<UaSubscription, UaMonitoredItem> replacement = replaced.get(item);
+      assertNotSame(lost, replacement.v1);
+      assertTrue(connector.isActive(replacement.v1));
+      assertEquals(item.getReadValueId().getNodeId(), replacement.v2.getReadValueId().getNodeId());
+      assertEquals(spec, connector.getBatchSubscriptionManager().getSpec(replacement.v2));
+    }
+    // views skip the lost items, the recovery is their only owner
+    assertFalse(connector.isActive(lost));
+    assertTrue(connector.isRecreated(lost));
+    assertEquals(2, connector.getSessionRecovery().getRecreatedItemCount());
+
+    connector.setClient(Stub.client().get());
+    assertFalse(connector.isRecreated(lost));
+    connector.shutdown();
+  }
+
+  /**
+   * @param id subscription id
+   * @return subscription which creates and keeps all items
+   */
+  @SuppressWarnings("unchecked")
+  private static UaSubscription newSubscription(int id) {
+    List<UaMonitoredItem> items = new CopyOnWriteArrayList<>();
+    return Stub.of(UaSubscription.class).on("createMonitoredItems", args -> {
+      List<UaMonitoredItem> created = ((List<MonitoredItemCreateRequest>) args[1]).stream()
+          .map(r -> BatchSubscriptionManagerTest.newItem(r, StatusCode.GOOD)).collect(Collectors.toList());
+      items.addAll(created);
+      return CompletableFuture.completedFuture(created);
+    }).on("getMonitoredItems", args -> ImmutableList.copyOf(items)).on("getSubscriptionId", args -> uint(id))
+        .on("getRequestedPublishingInterval", args -> 500.0).on("getRevisedPublishingInterval", args -> 500.0).get();
+  }
+}
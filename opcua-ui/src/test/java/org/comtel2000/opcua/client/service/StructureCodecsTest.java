@@ -0,0 +1,111 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.comtel2000.opcua.client.service.OpcUaClientConnectorTest.page;
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.Identifiers;
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseDescription;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseNextResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.BrowseResult;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadResponse;
+import org.eclipse.milo.opcua.stack.core.types.structured.ReadValueId;
+import org.junit.After;
+import org.junit.Test;
+
+public class StructureCodecsTest {
+
+  private final static String DICTIONARY = "<opc:TypeDictionary xmlns:opc=\"http://opcfoundation.org/BinarySchema/\""
+      + " xmlns:ua=\"http://opcfoundation.org/UA/\" xmlns:tns=\"urn:demo\" TargetNamespace=\"urn:demo\">"
+      + "<opc:EnumeratedType Name=\"Mode\" LengthInBits=\"32\"><opc:EnumeratedValue Name=\"Auto\" Value=\"1\"/></opc:EnumeratedType>"
+      + "<opc:StructuredType Name=\"Point\" BaseType=\"ua:ExtensionObject\">"
+      + "<opc:Field Name=\"X\" TypeName=\"opc:Double\"/><opc:Field Name=\"Y\" TypeName=\"opc:Double\"/></opc:StructuredType>"
+      + "<opc:StructuredType Name=\"Shape\" BaseType=\"ua:ExtensionObject\">"
+      + "<opc:Field Name=\"LabelSpecified\" TypeName=\"opc:Bit\"/><opc:Field Name=\"Reserved1\" TypeName=\"opc:Bit\" Length=\"31\"/>"
+      + "<opc:Field Name=\"Mode\" TypeName=\"tns:Mode\"/>"
+      + "<opc:Field Name=\"NoOfPoints\" TypeName=\"opc:Int32\"/><opc:Field Name=\"Points\" TypeName=\"tns:Point\" LengthField=\"NoOfPoints\"/>"
+      + "<opc:Field Name=\"Label\" TypeName=\"opc:String\" SwitchField=\"LabelSpecified\"/></opc:StructuredType>"
+      + "<opc:StructuredType Name=\"Foreign\"><opc:Field Name=\"F\" TypeName=\"ns1:Other\"/></opc:StructuredType>"
+      + "</opc:TypeDictionary>";
+
+  @After
+  public void clear() {
+    StructureCodecs.clear();
+  }
+
+  @Test
+  public void decodeStructure() throws Exception {
+    Map<String, StructureCodec> codecs = DataTypeDictionary.parse(DICTIONARY.getBytes(StandardCharsets.UTF_8)).compile();
+    assertEquals(2, codecs.size());
+
+    byte[] label = "L1".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer body = ByteBuffer.allocate(4 + 4 + 4 + 32 + 4 + label.length).order(ByteOrder.LITTLE_ENDIAN);
+    body.putInt(1).putInt(1).putInt(2).putDouble(1.5).putDouble(2.0).putDouble(3.0).putDouble(4.5).putInt(label.length).put(label);
+
+    Structure shape = codecs.get("Shape").decode(ByteString.of(body.array()));
+    assertEquals("Auto", shape.getValue("Mode"));
+    assertEquals("L1", shape.getValue("Label"));
+    assertEquals(2, ((Object[]) shape.getValue("Points")).length);
+    assertEquals("Shape {Mode=Auto, Points=[Point {X=1.5, Y=2.0}, Point {X=3.0, Y=4.5}], Label=L1}", shape.toString());
+  }
+
+  @Test
+  public void loadFollowsContinuationPoints() throws Exception {
+    ByteString cp = ByteString.of(new byte[] { 1 });
+    Stub<UaClient> client = newDictionaryClient(cp);
+    OpcUaClientConnector connector = new OpcUaClientConnector("test");
+    connector.setClient(client.get());
+
+    assertEquals(Integer.valueOf(2), StructureCodecs.load(connector).get(10, TimeUnit.SECONDS));
+    assertEquals("Point", StructureCodecs.get(new NodeId(2, "Point.Encoding")).getTypeName());
+    assertEquals("Shape", StructureCodecs.get(new NodeId(2, "Shape.Encoding")).getTypeName());
+    assertNull(StructureCodecs.get(new NodeId(2, "Foreign.Encoding")));
+    assertEquals(1, client.getCalls("browseNext"));
+    connector.shutdown();
+  }
+
+  /**
+   * Client stub with one dictionary whose second DataTypeDescription is returned on a BrowseNext
+   * page.
+   */
+  @SuppressWarnings("unchecked")
+  private static Stub<UaClient> newDictionaryClient(ByteString cp) {
+    return Stub.client().on("browse", args -> {
+      BrowseResult[] results = ((List<BrowseDescription>) args[2]).stream().map(bd -> {
+        NodeId node = bd.getNodeId();
+        if (node.equals(Identifiers.OPCBinarySchema_TypeSystem)) {
+          return page(null, "Dict");
+        }
+        if (node.equals(new NodeId(2, "Dict"))) {
+          return page(cp, "Point");
+        }
+        return page(null, node.getIdentifier() + ".Encoding");
+      }).toArray(BrowseResult[]::new);
+      return CompletableFuture.completedFuture(new BrowseResponse(null, results, null));
+    }).on("browseNext", args -> {
+      assertEquals(cp, ((List<ByteString>) args[1]).get(0));
+      return CompletableFuture.completedFuture(new BrowseNextResponse(null, new BrowseResult[] { page(null, "Shape") }, null));
+    }).on("read", args -> {
+      DataValue[] values = ((List<ReadValueId>) args[2]).stream().map(id -> {
+        Object name = id.getNodeId().getIdentifier();
+        return new DataValue(new Variant("Dict".equals(name) ? ByteString.of(DICTIONARY.getBytes(StandardCharsets.UTF_8)) : name));
+      }).toArray(DataValue[]::new);
+      return CompletableFuture.completedFuture(new ReadResponse(null, values, null));
+    });
+  }
+}
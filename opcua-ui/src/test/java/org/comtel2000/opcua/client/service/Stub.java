@@ -0,0 +1,110 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.milo.opcua.sdk.client.api.UaClient;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+
+/**
+ * Proxy stub of a Milo client interface for the service tests. Methods without an answer return a
+ * failed future (future result type), do nothing (void) or throw an
+ * {@link UnsupportedOperationException}.
+ */
+final class Stub<T> {
+
+  /** operation limit answered by the {@link #client()} stub */
+  final static int MAX_NODES = 1000;
+
+  @FunctionalInterface
+  interface Answer {
+    Object answer(Object[] args) throws Exception;
+  }
+
+  private final Map<String, Answer> answers = new ConcurrentHashMap<>();
+
+  private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+  private final T proxy;
+
+  private Stub(Class<T> type) {
+    this.proxy = type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (p, method, args) -> {
+      Object[] a = args != null ? args : new Object[0];
+      switch (method.getName()) {
+        case "hashCode":
+          return System.identityHashCode(p);
+        case "equals":
+          return p == a[0];
+        case "toString":
+          return type.getSimpleName() + " stub";
+        default:
+          break;
+      }
+      calls.computeIfAbsent(method.getName(), k -> new AtomicInteger()).incrementAndGet();
+      Answer answer = answers.get(method.getName());
+      if (answer != null) {
+        return answer.answer(a);
+      }
+      if (CompletableFuture.class.isAssignableFrom(method.getReturnType())) {
+        CompletableFuture<Object> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new UnsupportedOperationException(method.toString()));
+        return failed;
+      }
+      if (method.getReturnType() == void.class) {
+        return null;
+      }
+      throw new UnsupportedOperationException(method.toString());
+    }));
+  }
+
+  static <T> Stub<T> of(Class<T> type) {
+    return new Stub<>(type);
+  }
+
+  /**
+   * Client which answers the operation limits with {@link #MAX_NODES} and disconnects immediately.
+   *
+   * @return client stub
+   */
+  static Stub<UaClient> client() {
+    Stub<UaClient> client = of(UaClient.class);
+    client.on("readValues", args -> {
+      List<DataValue> limits = new ArrayList<>();
+      ((List<?>) args[2]).forEach(l -> limits.add(new DataValue(new Variant(uint(MAX_NODES)))));
+      return CompletableFuture.completedFuture(limits);
+    });
+    client.on("disconnect", args -> CompletableFuture.completedFuture(client.get()));
+    return client;
+  }
+
+  /**
+   * @param method method name (all overloads)
+   * @param answer answer of the call
+   * @return this
+   */
+  Stub<T> on(String method, Answer answer) {
+    answers.put(method, answer);
+    return this;
+  }
+
+  /**
+   * @param method method name
+   * @return number of calls of all overloads
+   */
+  int getCalls(String method) {
+    AtomicInteger count = calls.get(method);
+    return count != null ? count.get() : 0;
+  }
+
+  T get() {
+    return proxy;
+  }
+}
@@ -0,0 +1,37 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.milo.opcua.sdk.client.api.subscriptions.UaSubscription;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.junit.Test;
+
+public class SubscriptionMetricsTest {
+
+  @Test
+  public void subscriptionMetrics() {
+    UaSubscription subscription = Stub.of(UaSubscription.class).on("getRevisedPublishingInterval", args -> 100.0)
+        .on("getRevisedMaxKeepAliveCount", args -> uint(10)).get();
+    SubscriptionMetrics metrics = new SubscriptionMetrics(subscription, () -> 0L);
+    assertTrue(Double.isNaN(metrics.getPublishLatency()));
+    assertEquals(1000.0, metrics.getKeepAliveTime(), 0.0);
+
+    DateTime now = DateTime.now();
+    metrics.onDataChangeNotification(subscription, Collections.emptyList(), Arrays.asList(new DataValue(new Variant(1)), new DataValue(new Variant(2))), now);
+    metrics.onKeepAliveNotification(subscription, now);
+    metrics.onDataLost();
+    assertEquals(2, metrics.getNotificationCount());
+    assertEquals(2, metrics.getPublishCount());
+    assertEquals(1, metrics.getKeepAliveCount());
+    assertEquals(1, metrics.getDataLostCount());
+    assertEquals(0, metrics.getLateResponseCount());
+    assertTrue(metrics.getPublishLatency() >= 0);
+  }
+}
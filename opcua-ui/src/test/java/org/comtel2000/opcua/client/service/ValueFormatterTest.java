@@ -0,0 +1,92 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.eclipse.milo.opcua.stack.core.types.builtin.ByteString;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.LocalizedText;
+import org.eclipse.milo.opcua.stack.core.types.builtin.NodeId;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.junit.Test;
+
+public class ValueFormatterTest {
+
+  @Test
+  public void formatScalar() {
+    assertNull(OpcUaConverter.toString((Variant) null));
+    assertNull(OpcUaConverter.toString(Variant.NULL_VALUE));
+    assertEquals("true", OpcUaConverter.toString(new Variant(Boolean.TRUE)));
+    assertEquals("-42", OpcUaConverter.toString(new Variant(-42)));
+    assertEquals("4294967295", OpcUaConverter.toString(new Variant(uint(0xFFFFFFFFL))));
+    assertEquals("4.0", OpcUaConverter.toString(new Variant(4.0)));
+    assertEquals("1.0E23", OpcUaConverter.toString(new Variant(1e23)));
+    assertEquals("42.42", OpcUaConverter.toString(new Variant(42.42f)));
+    assertEquals("text", OpcUaConverter.toString(new Variant("text")));
+    assertEquals("text", OpcUaConverter.toString(new Variant(LocalizedText.english("text"))));
+  }
+
+  @Test
+  public void formatDouble() {
+    assertEquals("4", OpcUaConverter.toString(4.0));
+    assertEquals("4.25", OpcUaConverter.toString(4.25));
+    assertEquals("-0", OpcUaConverter.toString(-0.0));
+    assertEquals("NaN", OpcUaConverter.toString(Double.NaN));
+    assertEquals("-Infinity", OpcUaConverter.toString(Double.NEGATIVE_INFINITY));
+    assertEquals("1000000000000000", OpcUaConverter.toString(1e15));
+    assertEquals("9007199254740992", OpcUaConverter.toString(0x1p53));
+    // shortest decimal representation padded with zeros, not the exact binary value
+    assertEquals("1152921504606846980", OpcUaConverter.toString(0x1p60));
+    assertEquals("99999999999999990000000", OpcUaConverter.toString(1e23));
+    assertEquals("-10000000000000000000", OpcUaConverter.toString(-1e19));
+    double[] values = { 1.5, 3.0, -7.0, 1e7, 0x1p52 + 1, 0x1p53 + 2, 0x1p63, 1e20, 1e23, 1e300, -Double.MAX_VALUE };
+    for (double d : values) {
+      assertEquals(d % 1.0 != 0 ? String.format("%s", d) : String.format("%.0f", d), OpcUaConverter.toString(d));
+    }
+  }
+
+  @Test
+  public void formatArray() {
+    assertEquals("[1, 2, 3]", OpcUaConverter.toString(new Variant(new Integer[] { 1, 2, 3 })));
+    assertEquals("[1, -2]", OpcUaConverter.toString(new Variant(new byte[] { 1, -2 })));
+    assertEquals("[a, null]", OpcUaConverter.toString(new Variant(new String[] { "a", null })));
+    assertEquals("[[a], [b, c]]", OpcUaConverter.toString(new Variant(new String[][] { { "a" }, { "b", "c" } })));
+
+    Double[] values = new Double[ValueFormatter.getMaxArrayLength() + 1];
+    Arrays.fill(values, 1.5);
+    assertEquals(Arrays.toString(Arrays.copyOf(values, values.length - 1)) + "+", OpcUaConverter.toString(new Variant(values)));
+
+    // ByteStrings are not truncated
+    byte[] bytes = new byte[ValueFormatter.getMaxArrayLength() + 1];
+    assertEquals(Arrays.toString(bytes), OpcUaConverter.toString(new Variant(ByteString.of(bytes))));
+    assertEquals(Arrays.toString(Arrays.copyOf(bytes, bytes.length - 1)) + "+", OpcUaConverter.toString(new Variant(bytes)));
+  }
+
+  @Test
+  public void formatArrayElementsLikeArraysToString() {
+    NodeId[] nodes = { new NodeId(0, 11), new NodeId(2, "Demo") };
+    assertEquals(Arrays.toString(nodes), OpcUaConverter.toString(new Variant(nodes)));
+
+    LocalizedText[] texts = { LocalizedText.english("a"), new LocalizedText("de", "b") };
+    assertEquals(Arrays.toString(texts), OpcUaConverter.toString(new Variant(texts)));
+
+    DateTime[] times = { new DateTime(new Date(0L)), new DateTime(new Date(1477000000000L)) };
+    assertEquals(Arrays.toString(times), OpcUaConverter.toString(new Variant(times)));
+  }
+
+  @Test
+  public void formatDateTime() {
+    long[] times = { 0L, 1L, -1L, 10L, 120L, 999L, 1477000000000L, 1490490000000L, 253402300800000L };
+    for (long time : times) {
+      String expected = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+      assertEquals(expected, OpcUaConverter.toString(new Variant(new DateTime(new Date(time)))));
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.comtel2000.opcua.client.service;
+
+import static org.eclipse.milo.opcua.stack.core.types.builtin.unsigned.Unsigned.uint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.comtel2000.opcua.client.service.ValueRecordingReader.ValueType;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DataValue;
+import org.eclipse.milo.opcua.stack.core.types.builtin.DateTime;
+import org.eclipse.milo.opcua.stack.core.types.builtin.StatusCode;
+import org.eclipse.milo.opcua.stack.core.types.builtin.Variant;
+import org.junit.Test;
+
+public class ValueRecorderTest {
+
+  private final static int SAMPLES = ValueRecorder.BLOCK_SAMPLES + 100;
+
+  @Test
+  public void writeReadRoundTrip() throws Exception {
+    Path file = Files.createTempFile("values", ".rec");
+    try {
+      try (ValueRecorder recorder = ValueRecorder.create(file)) {
+        for (int i = 0; i < SAMPLES; i++) {
+          recorder.record(i % 3, sample(i));
+        }
+        assertEquals(SAMPLES, recorder.getSampleCount());
+      }
+      // last block cut after the used string area
+      long size = Files.size(file);
+      assertTrue("last block not cut: " + size, size < 2L * ValueRecorder.BLOCK_SIZE);
+      assertTrue(size > ValueRecorder.BLOCK_SIZE);
+
+      int count = 0;
+      try (ValueRecordingReader reader = ValueRecordingReader.open(file)) {
+        while (reader.next()) {
+          assertEquals(count % 3, reader.getClientHandle());
+          assertEquals(1000L + count, reader.getSourceTime());
+          switch (count % 3) {
+            case 0:
+              assertEquals(ValueType.DOUBLE, reader.getType());
+              assertEquals(count * 0.5, reader.getDouble(), 0.0);
+              break;
+            case 1:
+              assertEquals(ValueType.LONG, reader.getType());
+              assertEquals(count, reader.getLong());
+              break;
+            default:
+              assertEquals(ValueType.STRING, reader.getType());
+              assertEquals("v" + count, reader.getString());
+              assertEquals(StatusCode.BAD.getValue(), reader.getStatus());
+              break;
+          }
+          count++;
+        }
+      }
+      assertEquals(SAMPLES, count);
+
+      try (ValueRecordingReader reader = ValueRecordingReader.open(file).setTimeRange(1000L + SAMPLES - 1, Long.MAX_VALUE)) {
+        assertTrue(reader.next());
+        assertEquals(1000L + SAMPLES - 1, reader.getSourceTime());
+        assertFalse(reader.next());
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void emptyRecording() throws Exception {
+    Path file = Files.createTempFile("values", ".rec");
+    try {
+      ValueRecorder recorder = ValueRecorder.create(file);
+      recorder.close();
+      recorder.record(1, sample(1));
+      assertEquals(0, Files.size(file));
+      try (ValueRecordingReader reader = ValueRecordingReader.open(file)) {
+        assertFalse(reader.next());
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void failedWriteClosesRecording() throws Exception {
+    Path file = Files.createTempFile("values", ".rec");
+    try {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+      channel.close();
+      List<IOException> failures = new ArrayList<>();
+      ValueRecorder recorder = new ValueRecorder(channel, 0);
+      recorder.setOnFailure(failures::add);
+      for (int i = 0; i < ValueRecorder.BLOCK_SAMPLES; i++) {
+        recorder.record(1, sample(i));
+      }
+      try {
+        recorder.record(1, sample(0));
+        fail("block written to a closed channel");
+      } catch (UncheckedIOException e) {
+        assertEquals(e.getCause(), recorder.getFailure());
+      }
+      assertEquals(1, failures.size());
+      // ignored after the failure
+      recorder.record(1, sample(1));
+      recorder.close();
+      assertEquals(ValueRecorder.BLOCK_SAMPLES, recorder.getSampleCount());
+      assertEquals(1, failures.size());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static DataValue sample(int i) {
+    Object value;
+    switch (i % 3) {
+      case 0:
+        value = i * 0.5;
+        break;
+      case 1:
+        value = uint(i);
+        break;
+      default:
+        value = "v" + i;
+        break;
+    }
+    return new DataValue(new Variant(value), i % 3 == 2 ? StatusCode.BAD : StatusCode.GOOD, new DateTime(1000L + i), new DateTime(2000L + i));
+  }
+}